@@ -18,6 +18,7 @@
 
 package net.pterodactylus.fcp;
 
+import java.io.IOException;
 import java.io.InputStream;
 
 /**
@@ -36,6 +37,12 @@ public class AllData extends BaseMessage implements Identifiable {
 	/** The payload. */
 	private InputStream payloadInputStream;
 
+	/** Whether a listener has taken the payload. */
+	private volatile boolean payloadClaimed;
+
+	/** The exception that occured while storing the payload. */
+	private final IOException payloadException;
+
 	/**
 	 * Creates an “AllData” message that wraps the received message.
 	 *
@@ -45,8 +52,24 @@ public class AllData extends BaseMessage implements Identifiable {
 	 *            The payload
 	 */
 	public AllData(FcpMessage receivedMessage, InputStream payloadInputStream) {
+		this(receivedMessage, payloadInputStream, null);
+	}
+
+	/**
+	 * Creates an “AllData” message that wraps the received message.
+	 *
+	 * @param receivedMessage
+	 *            The received message
+	 * @param payloadInputStream
+	 *            The payload, or {@code null} if it could not be stored
+	 * @param payloadException
+	 *            The exception that occured while storing the payload, or
+	 *            {@code null}
+	 */
+	AllData(FcpMessage receivedMessage, InputStream payloadInputStream, IOException payloadException) {
 		super(receivedMessage);
 		this.payloadInputStream = payloadInputStream;
+		this.payloadException = payloadException;
 	}
 
 	/**
@@ -93,13 +116,41 @@ public class AllData extends BaseMessage implements Identifiable {
 	 * Returns the payload input stream. You <strong>have</strong> consume the
 	 * input stream before returning from the
 	 * {@link FcpListener#receivedAllData(FcpConnection, AllData)} method!
+	 * The payload is held by the connection’s {@link SpoolManager} until the
+	 * input stream is closed. A listener that calls this method takes over
+	 * the payload and has to close the stream; if no listener calls it, the
+	 * connection releases the payload after all listeners have been notified.
 	 *
-	 * @return The payload
+	 * @return The payload, or {@code null} if the payload could not be
+	 *         stored
+	 * @see #getPayloadException()
 	 */
 	public InputStream getPayloadInputStream() {
+		payloadClaimed = true;
 		return payloadInputStream;
 	}
 
+	/**
+	 * Returns the exception that occured while storing the payload, e.g.
+	 * because the disk quota of the connection’s {@link SpoolManager} was
+	 * exhausted. The payload has been skipped in that case.
+	 *
+	 * @return The exception, or {@code null} if the payload was stored
+	 */
+	public IOException getPayloadException() {
+		return payloadException;
+	}
+
+	/**
+	 * Returns whether a listener has taken the payload.
+	 *
+	 * @return {@code true} if {@link #getPayloadInputStream()} has been
+	 *         called, {@code false} otherwise
+	 */
+	boolean isPayloadClaimed() {
+		return payloadClaimed;
+	}
+
 	/**
 	 * Returns the content type of the found file.
 	 *
@@ -0,0 +1,399 @@
+/*
+ * jFCPlib - ConnectionOptions.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.net.Socket;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Options for an {@link FcpConnection}. The socket options are applied by
+ * {@link TcpTransport}; the stream buffer size, the threading options, and
+ * the message filter are used by the connection for every transport. The
+ * options for watching the global queue are used by the high-level client
+ * when it connects. Options that are not set keep the defaults of the
+ * operating system.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ConnectionOptions {
+
+	/** The default size of the stream buffers. */
+	public static final int DEFAULT_STREAM_BUFFER_SIZE = 65536;
+
+	/** The connect timeout in milliseconds, {@code 0} for no timeout. */
+	private int connectTimeout;
+
+	/** The read timeout in milliseconds, {@code 0} for no timeout. */
+	private int readTimeout;
+
+	/** The size of the socket’s receive buffer, {@code 0} for the default. */
+	private int receiveBufferSize;
+
+	/** The size of the socket’s send buffer, {@code 0} for the default. */
+	private int sendBufferSize;
+
+	/** Whether to disable Nagle’s algorithm, {@code null} for the default. */
+	private Boolean tcpNoDelay;
+
+	/** Whether to enable TCP keepalive, {@code null} for the default. */
+	private Boolean keepAlive;
+
+	/** The size of the stream buffers, {@code 0} for unbuffered streams. */
+	private int streamBufferSize = DEFAULT_STREAM_BUFFER_SIZE;
+
+	/** The factory for the reader thread, {@code null} for the default. */
+	private ThreadFactory threadFactory;
+
+	/** The executor that notifies listeners, {@code null} for the reader. */
+	private Executor dispatchExecutor;
+
+	/** Whether to watch the global queue. */
+	private boolean watchGlobal = true;
+
+	/** The events to receive for requests on the global queue. */
+	private Verbosity watchGlobalVerbosity = Verbosity.ALL;
+
+	/** The filter for received messages, {@code null} to accept all. */
+	private MessageFilter messageFilter;
+
+	/** The recorder for the connection’s traffic, {@code null} to not record. */
+	private TrafficRecorder trafficRecorder;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the connect timeout.
+	 *
+	 * @return The connect timeout in milliseconds, or {@code 0} if there is
+	 *         no timeout
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	/**
+	 * Sets the connect timeout. Without a timeout, connecting to an
+	 * unreachable node blocks until the operating system gives up.
+	 *
+	 * @param connectTimeout
+	 *            The connect timeout in milliseconds, or {@code 0} for no
+	 *            timeout
+	 * @return These options
+	 */
+	public ConnectionOptions setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+		return this;
+	}
+
+	/**
+	 * Returns the read timeout.
+	 *
+	 * @return The read timeout in milliseconds, or {@code 0} if there is no
+	 *         timeout
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * Sets the read timeout. The connection is closed if the node does not
+	 * send anything for the given time; because an idle node does not send
+	 * anything, this should only be used by clients that keep the node busy.
+	 *
+	 * @see Socket#setSoTimeout(int)
+	 * @param readTimeout
+	 *            The read timeout in milliseconds, or {@code 0} for no timeout
+	 * @return These options
+	 */
+	public ConnectionOptions setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+		return this;
+	}
+
+	/**
+	 * Returns the size of the socket’s receive buffer.
+	 *
+	 * @return The size of the receive buffer, or {@code 0} for the default
+	 */
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	/**
+	 * Sets the size of the socket’s receive buffer. The size is set before
+	 * connecting so that it can influence the TCP window.
+	 *
+	 * @see Socket#setReceiveBufferSize(int)
+	 * @param receiveBufferSize
+	 *            The size of the receive buffer, or {@code 0} for the default
+	 * @return These options
+	 */
+	public ConnectionOptions setReceiveBufferSize(int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+		return this;
+	}
+
+	/**
+	 * Returns the size of the socket’s send buffer.
+	 *
+	 * @return The size of the send buffer, or {@code 0} for the default
+	 */
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	/**
+	 * Sets the size of the socket’s send buffer.
+	 *
+	 * @see Socket#setSendBufferSize(int)
+	 * @param sendBufferSize
+	 *            The size of the send buffer, or {@code 0} for the default
+	 * @return These options
+	 */
+	public ConnectionOptions setSendBufferSize(int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+		return this;
+	}
+
+	/**
+	 * Returns whether Nagle’s algorithm is disabled.
+	 *
+	 * @return {@code true} if Nagle’s algorithm is disabled, {@code false} if
+	 *         it is enabled, {@code null} for the default
+	 */
+	public Boolean getTcpNoDelay() {
+		return tcpNoDelay;
+	}
+
+	/**
+	 * Sets whether Nagle’s algorithm is disabled.
+	 *
+	 * @see Socket#setTcpNoDelay(boolean)
+	 * @param tcpNoDelay
+	 *            {@code true} to disable Nagle’s algorithm, {@code false} to
+	 *            enable it, {@code null} for the default
+	 * @return These options
+	 */
+	public ConnectionOptions setTcpNoDelay(Boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+
+	/**
+	 * Returns whether TCP keepalive is enabled.
+	 *
+	 * @return {@code true} if keepalive is enabled, {@code false} if it is
+	 *         disabled, {@code null} for the default
+	 */
+	public Boolean getKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * Sets whether TCP keepalive is enabled.
+	 *
+	 * @see Socket#setKeepAlive(boolean)
+	 * @param keepAlive
+	 *            {@code true} to enable keepalive, {@code false} to disable
+	 *            it, {@code null} for the default
+	 * @return These options
+	 */
+	public ConnectionOptions setKeepAlive(Boolean keepAlive) {
+		this.keepAlive = keepAlive;
+		return this;
+	}
+
+	/**
+	 * Returns the size of the buffers of the streams from and to the node.
+	 *
+	 * @return The size of the stream buffers, or {@code 0} if the streams are
+	 *         not buffered
+	 */
+	public int getStreamBufferSize() {
+		return streamBufferSize;
+	}
+
+	/**
+	 * Sets the size of the buffers of the streams from and to the node.
+	 * Without buffering, every byte of a message header is read with a
+	 * separate call to the transport.
+	 *
+	 * @param streamBufferSize
+	 *            The size of the stream buffers, or {@code 0} to not buffer
+	 *            the streams
+	 * @return These options
+	 */
+	public ConnectionOptions setStreamBufferSize(int streamBufferSize) {
+		this.streamBufferSize = streamBufferSize;
+		return this;
+	}
+
+	/**
+	 * Returns the factory for the thread that reads messages from the node.
+	 *
+	 * @return The thread factory, or {@code null} for the default
+	 */
+	public ThreadFactory getThreadFactory() {
+		return threadFactory;
+	}
+
+	/**
+	 * Sets the factory for the thread that reads messages from the node. By
+	 * default a named, non-daemon platform thread is created.
+	 *
+	 * @see VirtualThreads#newThreadFactory(String)
+	 * @param threadFactory
+	 *            The thread factory, or {@code null} for the default
+	 * @return These options
+	 */
+	public ConnectionOptions setThreadFactory(ThreadFactory threadFactory) {
+		this.threadFactory = threadFactory;
+		return this;
+	}
+
+	/**
+	 * Returns the executor that notifies the listeners of the connection.
+	 *
+	 * @return The dispatch executor, or {@code null} if listeners are
+	 *         notified by the reader thread
+	 */
+	public Executor getDispatchExecutor() {
+		return dispatchExecutor;
+	}
+
+	/**
+	 * Sets the executor that notifies the listeners of the connection. With
+	 * a dispatch executor, slow listeners do not keep the reader thread from
+	 * reading the next message. Listeners are still notified one message at
+	 * a time, in the order the messages were received.
+	 *
+	 * @param dispatchExecutor
+	 *            The dispatch executor, or {@code null} to notify listeners
+	 *            from the reader thread
+	 * @return These options
+	 */
+	public ConnectionOptions setDispatchExecutor(Executor dispatchExecutor) {
+		this.dispatchExecutor = dispatchExecutor;
+		return this;
+	}
+
+	/**
+	 * Returns whether the client watches the global queue.
+	 *
+	 * @return {@code true} if the global queue is watched, {@code false}
+	 *         otherwise
+	 */
+	public boolean isWatchGlobal() {
+		return watchGlobal;
+	}
+
+	/**
+	 * Sets whether the client watches the global queue. A client that
+	 * watches the global queue receives the messages of all requests on the
+	 * global queue, including requests of other clients. Clients that only
+	 * care about their own requests should not watch the global queue.
+	 *
+	 * @see WatchGlobal
+	 * @param watchGlobal
+	 *            {@code true} to watch the global queue, {@code false} to
+	 *            only watch the client-local queue
+	 * @return These options
+	 */
+	public ConnectionOptions setWatchGlobal(boolean watchGlobal) {
+		this.watchGlobal = watchGlobal;
+		return this;
+	}
+
+	/**
+	 * Returns the events that are received for requests on the global queue.
+	 *
+	 * @return The verbosity mask for the global queue
+	 */
+	public Verbosity getWatchGlobalVerbosity() {
+		return watchGlobalVerbosity;
+	}
+
+	/**
+	 * Sets the events that are received for requests on the global queue.
+	 * {@link Verbosity#NONE} only delivers the messages that start and finish
+	 * requests, {@link Verbosity#PROGRESS} adds “SimpleProgress” messages.
+	 *
+	 * @param watchGlobalVerbosity
+	 *            The verbosity mask for the global queue
+	 * @return These options
+	 */
+	public ConnectionOptions setWatchGlobalVerbosity(Verbosity watchGlobalVerbosity) {
+		this.watchGlobalVerbosity = watchGlobalVerbosity;
+		return this;
+	}
+
+	/**
+	 * Returns the filter for received messages.
+	 *
+	 * @return The message filter, or {@code null} if all messages are passed
+	 *         to the listeners
+	 */
+	public MessageFilter getMessageFilter() {
+		return messageFilter;
+	}
+
+	/**
+	 * Sets the filter for received messages. The filter is applied by the
+	 * thread that reads from the node, before the payload of a message is
+	 * spooled and before listeners are notified.
+	 *
+	 * @see GlobalRequestFilter
+	 * @param messageFilter
+	 *            The message filter, or {@code null} to pass all messages to
+	 *            the listeners
+	 * @return These options
+	 */
+	public ConnectionOptions setMessageFilter(MessageFilter messageFilter) {
+		this.messageFilter = messageFilter;
+		return this;
+	}
+
+	/**
+	 * Returns the recorder for the connection’s traffic.
+	 *
+	 * @return The traffic recorder, or {@code null} if traffic is not
+	 *         recorded
+	 */
+	public TrafficRecorder getTrafficRecorder() {
+		return trafficRecorder;
+	}
+
+	/**
+	 * Sets the recorder for the connection’s traffic. The recorder taps the
+	 * streams of the transport when the connection is connected.
+	 *
+	 * @see ReplayTransport
+	 * @param trafficRecorder
+	 *            The traffic recorder, or {@code null} to not record traffic
+	 * @return These options
+	 */
+	public ConnectionOptions setTrafficRecorder(TrafficRecorder trafficRecorder) {
+		this.trafficRecorder = trafficRecorder;
+		return this;
+	}
+
+}
@@ -18,6 +18,7 @@
 
 package net.pterodactylus.fcp;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
@@ -34,6 +35,12 @@ public class FCPPluginReply extends BaseMessage implements Identifiable {
 	/** The payload input stream. */
 	private final InputStream payloadInputStream;
 
+	/** Whether a listener has taken the payload. */
+	private volatile boolean payloadClaimed;
+
+	/** The exception that occured while storing the payload. */
+	private final IOException payloadException;
+
 	/**
 	 * Creates a new “FCPPluginReply” message that wraps the received message.
 	 *
@@ -43,8 +50,25 @@ public class FCPPluginReply extends BaseMessage implements Identifiable {
 	 *            The optional input stream for the payload
 	 */
 	public FCPPluginReply(FcpMessage receivedMessage, InputStream payloadInputStream) {
+		this(receivedMessage, payloadInputStream, null);
+	}
+
+	/**
+	 * Creates a new “FCPPluginReply” message that wraps the received message.
+	 *
+	 * @param receivedMessage
+	 *            The received message
+	 * @param payloadInputStream
+	 *            The optional input stream for the payload, or {@code null}
+	 *            if it could not be stored
+	 * @param payloadException
+	 *            The exception that occured while storing the payload, or
+	 *            {@code null}
+	 */
+	FCPPluginReply(FcpMessage receivedMessage, InputStream payloadInputStream, IOException payloadException) {
 		super(receivedMessage);
 		this.payloadInputStream = payloadInputStream;
+		this.payloadException = payloadException;
 	}
 
 	/**
@@ -106,13 +130,38 @@ public class FCPPluginReply extends BaseMessage implements Identifiable {
 	}
 
 	/**
-	 * Returns the optional payload.
+	 * Returns the optional payload. A listener that calls this method takes
+	 * over the payload and has to close the stream; if no listener calls it,
+	 * the connection releases the payload after all listeners have been
+	 * notified.
 	 *
 	 * @return The payload of the reply, or <code>null</code> if there is no
 	 *         payload
 	 */
 	public InputStream getPayloadInputStream() {
+		payloadClaimed = true;
 		return payloadInputStream;
 	}
 
+	/**
+	 * Returns the exception that occured while storing the payload, e.g.
+	 * because the disk quota of the connection’s {@link SpoolManager} was
+	 * exhausted. The payload has been skipped in that case.
+	 *
+	 * @return The exception, or {@code null} if the payload was stored
+	 */
+	public IOException getPayloadException() {
+		return payloadException;
+	}
+
+	/**
+	 * Returns whether a listener has taken the payload.
+	 *
+	 * @return {@code true} if {@link #getPayloadInputStream()} has been
+	 *         called, {@code false} otherwise
+	 */
+	boolean isPayloadClaimed() {
+		return payloadClaimed;
+	}
+
 }
@@ -18,20 +18,27 @@
 
 package net.pterodactylus.fcp;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetAddress;
-import java.net.Socket;
 import java.net.UnknownHostException;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import net.pterodactylus.fcp.FcpUtils.TempInputStream;
+import com.google.common.io.ByteStreams;
 
 /**
  * An FCP connection to a Freenet node.
@@ -49,24 +56,33 @@ public class FcpConnection implements Closeable {
 	/** Listener management. */
 	private final FcpListenerManager fcpListenerManager = new FcpListenerManager(this);
 
-	/** The address of the node. */
-	private final InetAddress address;
+	/** The transport to the node. */
+	private final FcpTransport transport;
 
-	/** The port number of the node’s FCP port. */
-	private final int port;
-
-	/** The remote socket. */
-	private Socket remoteSocket;
+	/** The connection options. */
+	private final ConnectionOptions options;
 
 	/** The input stream from the node. */
-	private InputStream remoteInputStream;
+	private volatile InputStream remoteInputStream;
 
 	/** The output stream to the node. */
-	private OutputStream remoteOutputStream;
+	private volatile OutputStream remoteOutputStream;
+
+	/**
+	 * The lock for sending messages. A lock is used instead of synchronizing
+	 * so that virtual threads blocked on sending are not pinned.
+	 */
+	private final Lock sendLock = new ReentrantLock();
+
+	/** The executor that notifies listeners, or {@code null}. */
+	private volatile Executor dispatcher;
 
 	/** The connection handler. */
 	private FcpConnectionHandler connectionHandler;
 
+	/** The spool manager for received payloads. */
+	private volatile SpoolManager spoolManager = new SpoolManager();
+
 	/** Incoming message statistics. */
 	private static final Map<String, Integer> incomingMessageStatistics = Collections.synchronizedMap(new HashMap<String, Integer>());
 
@@ -130,8 +146,48 @@ public class FcpConnection implements Closeable {
 	 *            The port number of the node’s FCP port
 	 */
 	public FcpConnection(InetAddress address, int port) {
-		this.address = address;
-		this.port = port;
+		this(address, port, new ConnectionOptions());
+	}
+
+	/**
+	 * Creates a new FCP connection to the Freenet node running at the given
+	 * address, listening on the given port.
+	 *
+	 * @param address
+	 *            The address of the Freenet node
+	 * @param port
+	 *            The port number of the node’s FCP port
+	 * @param options
+	 *            The connection options
+	 */
+	public FcpConnection(InetAddress address, int port, ConnectionOptions options) {
+		this(new TcpTransport(address, port, options), options);
+	}
+
+	/**
+	 * Creates a new FCP connection to the Freenet node that is reached using
+	 * the given transport.
+	 *
+	 * @param transport
+	 *            The transport to the node
+	 */
+	public FcpConnection(FcpTransport transport) {
+		this(transport, new ConnectionOptions());
+	}
+
+	/**
+	 * Creates a new FCP connection to the Freenet node that is reached using
+	 * the given transport. Socket options have to be given to the transport
+	 * itself; only the stream buffer size is used by the connection.
+	 *
+	 * @param transport
+	 *            The transport to the node
+	 * @param options
+	 *            The connection options
+	 */
+	public FcpConnection(FcpTransport transport, ConnectionOptions options) {
+		this.transport = transport;
+		this.options = options;
 	}
 
 	//
@@ -158,6 +214,52 @@ public class FcpConnection implements Closeable {
 		fcpListenerManager.removeListener(fcpListener);
 	}
 
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the transport to the node.
+	 *
+	 * @return The transport to the node
+	 */
+	public FcpTransport getTransport() {
+		return transport;
+	}
+
+	/**
+	 * Returns the connection options.
+	 *
+	 * @return The connection options
+	 */
+	public ConnectionOptions getOptions() {
+		return options;
+	}
+
+	/**
+	 * Returns the spool manager that stores the payloads received from the
+	 * node.
+	 *
+	 * @return The spool manager of this connection
+	 */
+	public SpoolManager getSpoolManager() {
+		return spoolManager;
+	}
+
+	/**
+	 * Sets the spool manager that stores the payloads received from the node.
+	 * The spool manager is not closed when this connection is closed.
+	 *
+	 * @param spoolManager
+	 *            The spool manager to use
+	 */
+	public void setSpoolManager(SpoolManager spoolManager) {
+		if (spoolManager == null) {
+			throw new NullPointerException("spoolManager must not be null");
+		}
+		this.spoolManager = spoolManager;
+	}
+
 	public synchronized boolean isClosed() {
 		return connectionHandler == null;
 	}
@@ -178,11 +280,26 @@ public class FcpConnection implements Closeable {
 		if (connectionHandler != null) {
 			throw new IllegalStateException("already connected, disconnect first");
 		}
-		logger.info("connecting to " + address + ":" + port + "…");
-		remoteSocket = new Socket(address, port);
-		remoteInputStream = remoteSocket.getInputStream();
-		remoteOutputStream = remoteSocket.getOutputStream();
-		new Thread(connectionHandler = new FcpConnectionHandler(this, remoteInputStream)).start();
+		logger.info("connecting to " + transport + "…");
+		transport.connect();
+		remoteInputStream = transport.getInputStream();
+		remoteOutputStream = transport.getOutputStream();
+		TrafficRecorder trafficRecorder = options.getTrafficRecorder();
+		if (trafficRecorder != null) {
+			remoteInputStream = trafficRecorder.tapInputStream(remoteInputStream);
+			remoteOutputStream = trafficRecorder.tapOutputStream(remoteOutputStream);
+		}
+		if (options.getStreamBufferSize() > 0) {
+			remoteInputStream = new BufferedInputStream(remoteInputStream, options.getStreamBufferSize());
+			remoteOutputStream = new BufferedOutputStream(remoteOutputStream, options.getStreamBufferSize());
+		}
+		if (options.getDispatchExecutor() != null) {
+			dispatcher = new SerialExecutor(options.getDispatchExecutor());
+		}
+		connectionHandler = new FcpConnectionHandler(this, remoteInputStream);
+		ThreadFactory threadFactory = options.getThreadFactory();
+		Thread readerThread = (threadFactory != null) ? threadFactory.newThread(connectionHandler) : new Thread(connectionHandler, "FcpConnectionHandler " + transport);
+		readerThread.start();
 	}
 
 	/**
@@ -213,9 +330,14 @@ public class FcpConnection implements Closeable {
 	 * @throws IOException
 	 *             if an I/O error occurs
 	 */
-	public synchronized void sendMessage(FcpMessage fcpMessage) throws IOException {
+	public void sendMessage(FcpMessage fcpMessage) throws IOException {
 		logger.fine("sending message: " + fcpMessage.getName());
-		fcpMessage.write(remoteOutputStream);
+		sendLock.lock();
+		try {
+			fcpMessage.write(remoteOutputStream);
+		} finally {
+			sendLock.unlock();
+		}
 	}
 
 	//
@@ -224,15 +346,101 @@ public class FcpConnection implements Closeable {
 
 	/**
 	 * Handles the given message, notifying listeners. This message should only
-	 * be called by {@link FcpConnectionHandler}.
+	 * be called by {@link FcpConnectionHandler}. The payload of the message is
+	 * read before the listeners are notified, either directly or using the
+	 * dispatch executor. Messages rejected by the
+	 * {@link ConnectionOptions#getMessageFilter() message filter} are dropped
+	 * and their payload is skipped. If a payload can not be stored, e.g.
+	 * because the spool’s disk quota is exhausted, the rest of the payload is
+	 * skipped and the failure is reported with the message instead of
+	 * closing the connection.
 	 *
 	 * @param fcpMessage
 	 *            The received message
+	 * @throws IOException
+	 *             if the payload of the message can not be read
 	 */
-	void handleMessage(FcpMessage fcpMessage) throws IOException{
+	void handleMessage(final FcpMessage fcpMessage) throws IOException {
 		logger.fine("received message: " + fcpMessage.getName());
 		String messageName = fcpMessage.getName();
 		countMessage(messageName);
+		boolean hasPayload = "AllData".equals(messageName) || "FCPPluginReply".equals(messageName);
+		MessageFilter messageFilter = options.getMessageFilter();
+		if ((messageFilter != null) && !messageFilter.accept(fcpMessage)) {
+			if (hasPayload) {
+				ByteStreams.skipFully(remoteInputStream, FcpUtils.safeParseLong(fcpMessage.getField("DataLength")));
+			}
+			return;
+		}
+		InputStream payloadInputStream = null;
+		IOException payloadException = null;
+		if (hasPayload) {
+			long dataLength = FcpUtils.safeParseLong(fcpMessage.getField("DataLength"));
+			CountingInputStream countingInputStream = new CountingInputStream(remoteInputStream);
+			try {
+				payloadInputStream = getInputStream(countingInputStream, dataLength);
+			} catch (IOException ioe1) {
+				if (countingInputStream.hasFailed() || (dataLength < 0)) {
+					throw ioe1;
+				}
+				logger.log(Level.WARNING, "could not store payload of " + messageName + ", skipping it", ioe1);
+				ByteStreams.skipFully(remoteInputStream, dataLength - countingInputStream.getCount());
+				payloadException = ioe1;
+			}
+		}
+		final InputStream dispatchedPayloadInputStream = payloadInputStream;
+		final IOException dispatchedPayloadException = payloadException;
+		dispatch(new Runnable() {
+
+			@Override
+			public void run() {
+				dispatchMessage(fcpMessage, dispatchedPayloadInputStream, dispatchedPayloadException);
+			}
+		});
+	}
+
+	/**
+	 * Handles a disconnect from the node.
+	 *
+	 * @param throwable
+	 *            The exception that caused the disconnect, or
+	 *            <code>null</code> if there was no exception
+	 */
+	synchronized void handleDisconnect(final Throwable throwable) {
+		FcpUtils.close(remoteInputStream);
+		FcpUtils.close(remoteOutputStream);
+		FcpUtils.close(transport);
+		if (connectionHandler != null) {
+			connectionHandler.stop();
+			connectionHandler = null;
+			dispatch(new Runnable() {
+
+				@Override
+				public void run() {
+					fcpListenerManager.fireConnectionClosed(throwable);
+				}
+			});
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Notifies the listeners about the given message.
+	 *
+	 * @param fcpMessage
+	 *            The received message
+	 * @param payloadInputStream
+	 *            The payload of the message, or {@code null} if the message
+	 *            does not have a payload or it could not be stored
+	 * @param payloadException
+	 *            The exception that occured while storing the payload, or
+	 *            {@code null}
+	 */
+	private void dispatchMessage(FcpMessage fcpMessage, InputStream payloadInputStream, IOException payloadException) {
+		String messageName = fcpMessage.getName();
 		if ("SimpleProgress".equals(messageName)) {
 			fcpListenerManager.fireReceivedSimpleProgress(new SimpleProgress(fcpMessage));
 		} else if ("ProtocolError".equals(messageName)) {
@@ -272,8 +480,14 @@ public class FcpConnection implements Closeable {
 		} else if ("IdentifierCollision".equals(messageName)) {
 			fcpListenerManager.fireReceivedIdentifierCollision(new IdentifierCollision(fcpMessage));
 		} else if ("AllData".equals(messageName)) {
-			InputStream payloadInputStream = getInputStream(FcpUtils.safeParseLong(fcpMessage.getField("DataLength")));
-			fcpListenerManager.fireReceivedAllData(new AllData(fcpMessage, payloadInputStream));
+			AllData allData = new AllData(fcpMessage, payloadInputStream, payloadException);
+			try {
+				fcpListenerManager.fireReceivedAllData(allData);
+			} finally {
+				if (!allData.isPayloadClaimed()) {
+					FcpUtils.close(payloadInputStream);
+				}
+			}
 		} else if ("EndListPeerNotes".equals(messageName)) {
 			fcpListenerManager.fireReceivedEndListPeerNotes(new EndListPeerNotes(fcpMessage));
 		} else if ("EndListPeers".equals(messageName)) {
@@ -291,8 +505,14 @@ public class FcpConnection implements Closeable {
 		} else if ("UnknownNodeIdentifier".equals(messageName)) {
 			fcpListenerManager.fireReceivedUnknownNodeIdentifier(new UnknownNodeIdentifier(fcpMessage));
 		} else if ("FCPPluginReply".equals(messageName)) {
-			InputStream payloadInputStream = getInputStream(FcpUtils.safeParseLong(fcpMessage.getField("DataLength")));
-			fcpListenerManager.fireReceivedFCPPluginReply(new FCPPluginReply(fcpMessage, payloadInputStream));
+			FCPPluginReply fcpPluginReply = new FCPPluginReply(fcpMessage, payloadInputStream, payloadException);
+			try {
+				fcpListenerManager.fireReceivedFCPPluginReply(fcpPluginReply);
+			} finally {
+				if (!fcpPluginReply.isPayloadClaimed()) {
+					FcpUtils.close(payloadInputStream);
+				}
+			}
 		} else if ("PluginInfo".equals(messageName)) {
 			fcpListenerManager.fireReceivedPluginInfo(new PluginInfo(fcpMessage));
 		} else if ("PluginRemoved".equals(messageName)) {
@@ -319,27 +539,25 @@ public class FcpConnection implements Closeable {
 	}
 
 	/**
-	 * Handles a disconnect from the node.
+	 * Runs the given task using the dispatch executor, or in the current
+	 * thread if there is no dispatch executor or it rejects the task.
 	 *
-	 * @param throwable
-	 *            The exception that caused the disconnect, or
-	 *            <code>null</code> if there was no exception
+	 * @param task
+	 *            The task to run
 	 */
-	synchronized void handleDisconnect(Throwable throwable) {
-		FcpUtils.close(remoteInputStream);
-		FcpUtils.close(remoteOutputStream);
-		FcpUtils.close(remoteSocket);
-		if (connectionHandler != null) {
-			connectionHandler.stop();
-			connectionHandler = null;
-			fcpListenerManager.fireConnectionClosed(throwable);
+	private void dispatch(Runnable task) {
+		Executor dispatcher = this.dispatcher;
+		if (dispatcher != null) {
+			try {
+				dispatcher.execute(task);
+				return;
+			} catch (RejectedExecutionException ree1) {
+				logger.log(Level.WARNING, "dispatch executor rejected task, notifying listeners directly", ree1);
+			}
 		}
+		task.run();
 	}
 
-	//
-	// PRIVATE METHODS
-	//
-
 	/**
 	 * Incremets the counter in {@link #incomingMessageStatistics} by
 	 * <cod>1</code> for the given message name.
@@ -356,8 +574,125 @@ public class FcpConnection implements Closeable {
 		logger.finest("count for " + name + ": " + (oldValue + 1));
 	}
 
-	private synchronized InputStream getInputStream(long dataLength) throws IOException {
-		return new TempInputStream(remoteInputStream, dataLength);
+	/**
+	 * Spools a payload of the given length from the node and returns an input
+	 * stream for it. The payload is released when the returned stream is
+	 * closed.
+	 *
+	 * @param inputStream
+	 *            The input stream from the node
+	 * @param dataLength
+	 *            The length of the payload
+	 * @return An input stream for the payload
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private InputStream getInputStream(InputStream inputStream, long dataLength) throws IOException {
+		Spool spool = spoolManager.spool(inputStream, dataLength);
+		try {
+			return spool.openInputStream();
+		} finally {
+			spool.release();
+		}
+	}
+
+	/**
+	 * Input stream that counts the bytes read from the node and remembers
+	 * whether reading from the node failed, so that a failure to store a
+	 * payload can be told apart from a failure of the connection.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+
+		/** The number of bytes read. */
+		private long count;
+
+		/** Whether reading failed or the stream ended. */
+		private boolean failed;
+
+		/** The buffer for {@link #read()}. */
+		private final byte[] nextByte = new byte[1];
+
+		/**
+		 * Creates a new counting input stream.
+		 *
+		 * @param inputStream
+		 *            The input stream from the node
+		 */
+		public CountingInputStream(InputStream inputStream) {
+			super(inputStream);
+		}
+
+		/**
+		 * Returns the number of bytes read.
+		 *
+		 * @return The number of bytes read
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Returns whether reading from the node failed.
+		 *
+		 * @return {@code true} if reading failed or the stream ended,
+		 *         {@code false} otherwise
+		 */
+		public boolean hasFailed() {
+			return failed;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			return (read(nextByte, 0, 1) == -1) ? -1 : (nextByte[0] & 0xff);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			try {
+				int read = super.read(buffer, offset, length);
+				if (read == -1) {
+					failed = true;
+				} else {
+					count += read;
+				}
+				return read;
+			} catch (IOException ioe1) {
+				failed = true;
+				throw ioe1;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long skip(long length) throws IOException {
+			try {
+				long skipped = super.skip(length);
+				count += skipped;
+				return skipped;
+			} catch (IOException ioe1) {
+				failed = true;
+				throw ioe1;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
 	}
 
 }
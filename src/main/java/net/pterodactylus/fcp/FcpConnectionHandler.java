@@ -21,8 +21,6 @@ package net.pterodactylus.fcp;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.charset.Charset;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,6 +46,9 @@ class FcpConnectionHandler implements Runnable {
 	/** Whether the next read line feed should be ignored. */
 	private boolean ignoreNextLinefeed;
 
+	/** The buffer for lines read by {@link #readLine()}. */
+	private byte[] readBytes = new byte[512];
+
 	/**
 	 * Creates a new connection handler that operates on the given connection
 	 * and input stream.
@@ -133,7 +134,6 @@ class FcpConnectionHandler implements Runnable {
 	 *             if an I/O error occurs
 	 */
 	private String readLine() throws IOException {
-		byte[] readBytes = new byte[512];
 		int readIndex = 0;
 		while (true) {
 			int nextByte = remoteInputStream.read();
@@ -161,8 +161,7 @@ class FcpConnectionHandler implements Runnable {
 			}
 			readBytes[readIndex++] = (byte) nextByte;
 		}
-		ByteBuffer byteBuffer = ByteBuffer.wrap(readBytes, 0, readIndex);
-		return Charset.forName("UTF-8").decode(byteBuffer).toString();
+		return new String(readBytes, 0, readIndex, "UTF-8");
 	}
 
 }
@@ -160,6 +160,8 @@ public class FcpMessage implements Iterable<String> {
 	 * payload is written to the given output stream after the message as well.
 	 * That means that this method can only be called once because on the
 	 * second invocation the payload input stream could not be read (again).
+	 * A message with a payload is terminated by “Data” instead of
+	 * “EndMessage”, as required by the protocol.
 	 *
 	 * @param outputStream
 	 *            The output stream to write the message to
@@ -171,12 +173,11 @@ public class FcpMessage implements Iterable<String> {
 		for (Entry<String, String> fieldEntry : fields.entrySet()) {
 			writeLine(outputStream, fieldEntry.getKey() + "=" + fieldEntry.getValue());
 		}
-		writeLine(outputStream, "EndMessage");
-		outputStream.flush();
+		writeLine(outputStream, (payloadInputStream != null) ? "Data" : "EndMessage");
 		if (payloadInputStream != null) {
 			FcpUtils.copy(payloadInputStream, outputStream);
-			outputStream.flush();
 		}
+		outputStream.flush();
 	}
 
 	//
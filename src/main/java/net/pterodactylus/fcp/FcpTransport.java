@@ -0,0 +1,64 @@
+/*
+ * jFCPlib - FcpTransport.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A transport carries the byte streams of an {@link FcpConnection} to and
+ * from the node. A transport can be connected again after it has been closed.
+ *
+ * @see TcpTransport
+ * @see UnixDomainSocketTransport
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public interface FcpTransport extends Closeable {
+
+	/**
+	 * Connects this transport to the node.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void connect() throws IOException;
+
+	/**
+	 * Returns the input stream that delivers the data sent by the node. This
+	 * method must only be called while this transport is connected.
+	 *
+	 * @return The input stream from the node
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public InputStream getInputStream() throws IOException;
+
+	/**
+	 * Returns the output stream that delivers data to the node. This method
+	 * must only be called while this transport is connected.
+	 *
+	 * @return The output stream to the node
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public OutputStream getOutputStream() throws IOException;
+
+}
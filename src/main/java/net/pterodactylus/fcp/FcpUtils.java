@@ -163,7 +163,7 @@ public class FcpUtils {
 	 */
 	public static long safeParseLong(String value, long defaultValue) {
 		try {
-			return Integer.valueOf(value);
+			return Long.valueOf(value);
 		} catch (NumberFormatException nfe1) {
 			return defaultValue;
 		}
@@ -279,7 +279,11 @@ public class FcpUtils {
 	 * file or in memory, depending on the length of the input stream.
 	 *
 	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 * @deprecated Use a {@link SpoolManager} instead; every temporary file
+	 *             created by this class is registered with
+	 *             {@link File#deleteOnExit()}, which is never released
 	 */
+	@Deprecated
 	public static class TempInputStream extends InputStream {
 
 		/** The default maximum lenght for in-memory storage. */
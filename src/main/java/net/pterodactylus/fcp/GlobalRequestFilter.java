@@ -0,0 +1,125 @@
+/*
+ * jFCPlib - GlobalRequestFilter.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * {@link MessageFilter} that drops the messages of uninteresting requests on
+ * the global queue. Messages that do not belong to a request and messages of
+ * requests on the client-local queue are always accepted. Messages of
+ * global requests are accepted if the identifier of the request starts with
+ * one of the configured prefixes, or if the request has one of the
+ * configured client tokens. Because only some messages carry the client
+ * token of a request, the filter remembers the identifiers of requests it
+ * has accepted by their client token until the request is removed.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class GlobalRequestFilter implements MessageFilter {
+
+	/** The accepted identifier prefixes. */
+	private final Set<String> identifierPrefixes = new CopyOnWriteArraySet<String>();
+
+	/** The accepted client tokens. */
+	private final Set<String> clientTokens = new CopyOnWriteArraySet<String>();
+
+	/** The identifiers of requests accepted by their client token. */
+	private final Set<String> acceptedIdentifiers = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Accepts global requests whose identifier starts with the given prefix.
+	 *
+	 * @param identifierPrefix
+	 *            The prefix of the identifiers to accept
+	 * @return This filter
+	 */
+	public GlobalRequestFilter addIdentifierPrefix(String identifierPrefix) {
+		identifierPrefixes.add(identifierPrefix);
+		return this;
+	}
+
+	/**
+	 * Accepts global requests with the given client token.
+	 *
+	 * @param clientToken
+	 *            The client token to accept
+	 * @return This filter
+	 */
+	public GlobalRequestFilter addClientToken(String clientToken) {
+		clientTokens.add(clientToken);
+		return this;
+	}
+
+	//
+	// MESSAGEFILTER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean accept(FcpMessage fcpMessage) {
+		String identifier = fcpMessage.getField("Identifier");
+		if ((identifier == null) || !Boolean.parseBoolean(fcpMessage.getField("Global"))) {
+			return true;
+		}
+		if ("PersistentRequestRemoved".equals(fcpMessage.getName())) {
+			return acceptedIdentifiers.remove(identifier) || hasAcceptedPrefix(identifier);
+		}
+		if (hasAcceptedPrefix(identifier) || acceptedIdentifiers.contains(identifier)) {
+			return true;
+		}
+		String clientToken = fcpMessage.getField("ClientToken");
+		if ((clientToken != null) && clientTokens.contains(clientToken)) {
+			acceptedIdentifiers.add(identifier);
+			return true;
+		}
+		return false;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns whether the given identifier starts with an accepted prefix.
+	 *
+	 * @param identifier
+	 *            The identifier to check
+	 * @return {@code true} if the identifier has an accepted prefix,
+	 *         {@code false} otherwise
+	 */
+	private boolean hasAcceptedPrefix(String identifier) {
+		for (String identifierPrefix : identifierPrefixes) {
+			if (identifier.startsWith(identifierPrefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,42 @@
+/*
+ * jFCPlib - MessageFilter.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+/**
+ * Filter for the messages received by an {@link FcpConnection}. The filter
+ * is called by the thread that reads from the node, before the payload of a
+ * message is spooled and before the message is passed to any listener.
+ * Messages that are not accepted are dropped; their payload is skipped.
+ *
+ * @see ConnectionOptions#setMessageFilter(MessageFilter)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public interface MessageFilter {
+
+	/**
+	 * Returns whether the given message should be passed to the listeners of
+	 * the connection.
+	 *
+	 * @param fcpMessage
+	 *            The received message
+	 * @return {@code true} to pass the message on, {@code false} to drop it
+	 */
+	public boolean accept(FcpMessage fcpMessage);
+
+}
@@ -0,0 +1,234 @@
+/*
+ * jFCPlib - PayloadBufferPool.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Pool of direct {@link ByteBuffer}s for payloads that are held in memory.
+ * Buffers are organized in size classes whose sizes are powers of two between
+ * a minimum and a maximum buffer size; a request for a buffer is served from
+ * the smallest size class that can hold it. Released buffers are kept for
+ * reuse, up to a maximum number of buffers per size class.
+ * <p>
+ * A pool can be attached to a {@link SpoolManager} using
+ * {@link SpoolManager#setBufferPool(PayloadBufferPool)}; the buffers of
+ * in-memory spools are then returned to the pool once the last reference to
+ * the spool has been released.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class PayloadBufferPool {
+
+	/** The default size of the smallest size class. */
+	public static final int DEFAULT_MIN_BUFFER_SIZE = 1024;
+
+	/** The default size of the largest size class. */
+	public static final int DEFAULT_MAX_BUFFER_SIZE = 65536;
+
+	/** The default maximum number of idle buffers per size class. */
+	public static final int DEFAULT_MAX_POOLED_BUFFERS = 64;
+
+	/** The size of the smallest size class. */
+	private final int minBufferSize;
+
+	/** The size of the largest size class. */
+	private final int maxBufferSize;
+
+	/** The maximum number of idle buffers per size class. */
+	private final int maxPooledBuffers;
+
+	/** The idle buffers, one deque per size class. */
+	private final List<Deque<ByteBuffer>> pooledBuffers;
+
+	/** The number of buffers that have been allocated. */
+	private long allocatedBuffers;
+
+	/** The number of buffer requests that were served from the pool. */
+	private long reusedBuffers;
+
+	/**
+	 * Creates a new buffer pool with size classes from
+	 * {@link #DEFAULT_MIN_BUFFER_SIZE} to {@link #DEFAULT_MAX_BUFFER_SIZE}
+	 * bytes that keeps up to {@link #DEFAULT_MAX_POOLED_BUFFERS} idle buffers
+	 * per size class.
+	 */
+	public PayloadBufferPool() {
+		this(DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_BUFFERS);
+	}
+
+	/**
+	 * Creates a new buffer pool.
+	 *
+	 * @param minBufferSize
+	 *            The size of the smallest size class (must be a power of two)
+	 * @param maxBufferSize
+	 *            The size of the largest size class (must be a power of two)
+	 * @param maxPooledBuffers
+	 *            The maximum number of idle buffers per size class
+	 * @throws IllegalArgumentException
+	 *             if a buffer size is not a power of two, or
+	 *             {@code minBufferSize} is larger than {@code maxBufferSize}
+	 */
+	public PayloadBufferPool(int minBufferSize, int maxBufferSize, int maxPooledBuffers) throws IllegalArgumentException {
+		if ((Integer.bitCount(minBufferSize) != 1) || (Integer.bitCount(maxBufferSize) != 1)) {
+			throw new IllegalArgumentException("buffer sizes must be powers of two");
+		}
+		if (minBufferSize > maxBufferSize) {
+			throw new IllegalArgumentException("minBufferSize must not be larger than maxBufferSize");
+		}
+		this.minBufferSize = minBufferSize;
+		this.maxBufferSize = maxBufferSize;
+		this.maxPooledBuffers = maxPooledBuffers;
+		int sizeClasses = Integer.numberOfTrailingZeros(maxBufferSize) - Integer.numberOfTrailingZeros(minBufferSize) + 1;
+		pooledBuffers = new ArrayList<Deque<ByteBuffer>>(sizeClasses);
+		for (int sizeClass = 0; sizeClass < sizeClasses; sizeClass++) {
+			pooledBuffers.add(new ArrayDeque<ByteBuffer>());
+		}
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the size of the largest size class. Larger buffers can not be
+	 * requested from this pool.
+	 *
+	 * @return The size of the largest size class
+	 */
+	public int getMaxBufferSize() {
+		return maxBufferSize;
+	}
+
+	/**
+	 * Returns the size of the buffer that would be returned for a request of
+	 * the given length.
+	 *
+	 * @param length
+	 *            The requested length
+	 * @return The size of the buffer
+	 * @throws IllegalArgumentException
+	 *             if {@code length} is larger than the largest size class
+	 */
+	public int getBufferSize(int length) throws IllegalArgumentException {
+		return minBufferSize << getSizeClass(length);
+	}
+
+	/**
+	 * Returns the number of buffers that have been allocated by this pool.
+	 *
+	 * @return The number of allocated buffers
+	 */
+	public synchronized long getAllocatedBuffers() {
+		return allocatedBuffers;
+	}
+
+	/**
+	 * Returns the number of buffer requests that were served by reusing an
+	 * idle buffer.
+	 *
+	 * @return The number of reused buffers
+	 */
+	public synchronized long getReusedBuffers() {
+		return reusedBuffers;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns a cleared direct buffer whose limit is set to the given length.
+	 * The buffer should be returned to this pool using
+	 * {@link #release(ByteBuffer)} once it is not used anymore.
+	 *
+	 * @param length
+	 *            The requested length
+	 * @return A direct buffer that can hold {@code length} bytes
+	 * @throws IllegalArgumentException
+	 *             if {@code length} is larger than the largest size class
+	 */
+	public ByteBuffer acquire(int length) throws IllegalArgumentException {
+		int sizeClass = getSizeClass(length);
+		ByteBuffer buffer;
+		synchronized (this) {
+			buffer = pooledBuffers.get(sizeClass).poll();
+			if (buffer != null) {
+				reusedBuffers++;
+			} else {
+				allocatedBuffers++;
+			}
+		}
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(minBufferSize << sizeClass);
+		}
+		buffer.clear();
+		buffer.limit(length);
+		return buffer;
+	}
+
+	/**
+	 * Returns the given buffer to this pool. Buffers that were not acquired
+	 * from this pool are ignored.
+	 *
+	 * @param buffer
+	 *            The buffer to release
+	 */
+	public void release(ByteBuffer buffer) {
+		if (!buffer.isDirect() || (Integer.bitCount(buffer.capacity()) != 1) || (buffer.capacity() < minBufferSize) || (buffer.capacity() > maxBufferSize)) {
+			return;
+		}
+		int sizeClass = getSizeClass(buffer.capacity());
+		synchronized (this) {
+			if (pooledBuffers.get(sizeClass).size() < maxPooledBuffers) {
+				pooledBuffers.get(sizeClass).push(buffer);
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the index of the smallest size class that can hold the given
+	 * number of bytes.
+	 *
+	 * @param length
+	 *            The number of bytes
+	 * @return The index of the size class
+	 * @throws IllegalArgumentException
+	 *             if {@code length} is larger than the largest size class
+	 */
+	private int getSizeClass(int length) throws IllegalArgumentException {
+		if (length > maxBufferSize) {
+			throw new IllegalArgumentException("length " + length + " exceeds maximum buffer size " + maxBufferSize);
+		}
+		if (length <= minBufferSize) {
+			return 0;
+		}
+		return (32 - Integer.numberOfLeadingZeros(length - 1)) - Integer.numberOfTrailingZeros(minBufferSize);
+	}
+
+}
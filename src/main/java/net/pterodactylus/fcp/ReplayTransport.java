@@ -0,0 +1,364 @@
+/*
+ * jFCPlib - ReplayTransport.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.ByteStreams;
+
+/**
+ * {@link FcpTransport} implementation that plays back a recording made by a
+ * {@link TrafficRecorder}. The frames the node sent are delivered to the
+ * connection in their recorded order and at their recorded times, scaled by
+ * the speed of the replay; the frames the client sent are skipped, and
+ * everything the client sends during the replay is discarded. Elided
+ * payloads are replayed as zeroes of their recorded size. When the recording
+ * ends, the connection sees the end of the stream, just as if the node had
+ * closed it.
+ * <p>
+ * Since the replayed bytes pass through the connection’s regular reader,
+ * parser, and listeners, a replay can be used to benchmark them against real
+ * traffic, without a node.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ReplayTransport implements FcpTransport {
+
+	/** The speed that replays the recording without any delays. */
+	public static final double UNTHROTTLED = 0;
+
+	/** The recording to play back. */
+	private final File recording;
+
+	/** The speed of the replay. */
+	private final double speed;
+
+	/** The stream of the replayed frames, if connected. */
+	private ReplayInputStream replayInputStream;
+
+	/** The number of bytes the client has sent during the replay. */
+	private volatile long discardedBytes;
+
+	/**
+	 * Creates a new replay transport.
+	 *
+	 * @param recording
+	 *            The recording to play back
+	 * @param speed
+	 *            The speed of the replay, relative to the recorded speed
+	 *            ({@code 1} to replay at the original speed, {@code 10} to
+	 *            replay ten times as fast), or {@link #UNTHROTTLED} to replay
+	 *            without any delays
+	 */
+	public ReplayTransport(File recording, double speed) {
+		this.recording = recording;
+		this.speed = speed;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the recording that is played back.
+	 *
+	 * @return The recording
+	 */
+	public File getRecording() {
+		return recording;
+	}
+
+	/**
+	 * Returns the speed of the replay.
+	 *
+	 * @return The speed of the replay, or {@link #UNTHROTTLED}
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+	/**
+	 * Returns the number of bytes the client has sent during the replay.
+	 *
+	 * @return The number of discarded bytes
+	 */
+	public long getDiscardedBytes() {
+		return discardedBytes;
+	}
+
+	//
+	// FCPTRANSPORT METHODS
+	//
+
+	/**
+	 * Opens the recording and starts the replay. Every connect starts the
+	 * replay from the beginning.
+	 *
+	 * @throws IOException
+	 *             if the recording can not be opened, or is not a recording
+	 */
+	@Override
+	public synchronized void connect() throws IOException {
+		DataInputStream recordingInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(recording), 65536));
+		try {
+			if ((recordingInputStream.readInt() != TrafficRecorder.MAGIC) || (recordingInputStream.read() != TrafficRecorder.VERSION)) {
+				throw new IOException(recording + " is not a traffic recording");
+			}
+		} catch (IOException ioe1) {
+			FcpUtils.close(recordingInputStream);
+			throw ioe1;
+		}
+		replayInputStream = new ReplayInputStream(recordingInputStream);
+		discardedBytes = 0;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized InputStream getInputStream() throws IOException {
+		return replayInputStream;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized OutputStream getOutputStream() throws IOException {
+		return new OutputStream() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void write(int nextByte) {
+				discardedBytes++;
+			}
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void write(byte[] buffer, int offset, int length) {
+				discardedBytes += length;
+			}
+		};
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void close() {
+		FcpUtils.close(replayInputStream);
+		replayInputStream = null;
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "replay of " + recording;
+	}
+
+	/**
+	 * Input stream that delivers the inbound frames of a recording at their
+	 * recorded times.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private class ReplayInputStream extends InputStream {
+
+		/** The stream of the recording. */
+		private final DataInputStream recordingInputStream;
+
+		/** The time the replay started, in nanoseconds. */
+		private final long replayStartTime = System.nanoTime();
+
+		/** The time of the first frame, in microseconds, or {@code -1}. */
+		private long firstFrameTime = -1;
+
+		/** The time of the current frame, in microseconds. */
+		private long frameTime;
+
+		/** The bytes of the current frame. */
+		private byte[] frame = new byte[512];
+
+		/** The length of the current frame. */
+		private int frameLength;
+
+		/** The position in the current frame. */
+		private int framePosition;
+
+		/** The number of zeroes that are left of an elided payload. */
+		private long elidedRemaining;
+
+		/** Whether the stream has been closed. */
+		private volatile boolean closed;
+
+		/** The buffer for {@link #read()}. */
+		private final byte[] nextByte = new byte[1];
+
+		/**
+		 * Creates a new replay input stream.
+		 *
+		 * @param recordingInputStream
+		 *            The stream of the recording, positioned after the
+		 *            header
+		 */
+		public ReplayInputStream(DataInputStream recordingInputStream) {
+			this.recordingInputStream = recordingInputStream;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			int read = read(nextByte, 0, 1);
+			return (read == -1) ? -1 : (nextByte[0] & 0xff);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			while ((framePosition == frameLength) && (elidedRemaining == 0)) {
+				if (!nextFrame()) {
+					return -1;
+				}
+			}
+			if (elidedRemaining > 0) {
+				int elidedLength = (int) Math.min(length, elidedRemaining);
+				Arrays.fill(buffer, offset, offset + elidedLength, (byte) 0);
+				elidedRemaining -= elidedLength;
+				return elidedLength;
+			}
+			int frameRemaining = Math.min(length, frameLength - framePosition);
+			System.arraycopy(frame, framePosition, buffer, offset, frameRemaining);
+			framePosition += frameRemaining;
+			return frameRemaining;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			closed = true;
+			recordingInputStream.close();
+		}
+
+		//
+		// PRIVATE METHODS
+		//
+
+		/**
+		 * Reads the next inbound frame of the recording and waits until it is
+		 * due.
+		 *
+		 * @return {@code true} if a frame was read, {@code false} if the
+		 *         recording has ended
+		 * @throws IOException
+		 *             if the recording can not be read
+		 */
+		private boolean nextFrame() throws IOException {
+			while (true) {
+				if (closed) {
+					return false;
+				}
+				int type = recordingInputStream.read();
+				if (type == -1) {
+					return false;
+				}
+				long timeDelta = TrafficRecorder.readNumber(recordingInputStream);
+				long length = TrafficRecorder.readNumber(recordingInputStream);
+				if ((timeDelta < 0) || (length < 0)) {
+					throw new IOException("recording ends within a frame");
+				}
+				frameTime += timeDelta;
+				if (firstFrameTime == -1) {
+					firstFrameTime = frameTime;
+				}
+				boolean elided = (type & TrafficRecorder.ELIDED) != 0;
+				if ((type & TrafficRecorder.OUTBOUND) != 0) {
+					if (!elided) {
+						ByteStreams.skipFully(recordingInputStream, length);
+					}
+					continue;
+				}
+				if (elided) {
+					elidedRemaining = length;
+				} else {
+					if (length > Integer.MAX_VALUE) {
+						throw new IOException("frame too large: " + length);
+					}
+					if (length > frame.length) {
+						frame = new byte[(int) Math.max(length, frame.length * 2L)];
+					}
+					recordingInputStream.readFully(frame, 0, (int) length);
+					frameLength = (int) length;
+					framePosition = 0;
+				}
+				waitForFrame();
+				return true;
+			}
+		}
+
+		/**
+		 * Waits until the current frame is due, according to the speed of the
+		 * replay, or until the stream is closed.
+		 *
+		 * @throws InterruptedIOException
+		 *             if the thread is interrupted while waiting
+		 */
+		@SuppressWarnings("synthetic-access")
+		private void waitForFrame() throws InterruptedIOException {
+			if (speed <= 0) {
+				return;
+			}
+			long dueTime = replayStartTime + (long) (TimeUnit.MICROSECONDS.toNanos(frameTime - firstFrameTime) / speed);
+			long delay;
+			while (!closed && ((delay = dueTime - System.nanoTime()) > 0)) {
+				try {
+					TimeUnit.NANOSECONDS.sleep(Math.min(delay, TimeUnit.MILLISECONDS.toNanos(100)));
+				} catch (InterruptedException ie1) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("interrupted while replaying");
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,131 @@
+/*
+ * jFCPlib - SerialExecutor.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executor that runs tasks one after another, in the order they were
+ * submitted, using the threads of another executor. Only one task of a
+ * serial executor runs at any time, and no thread is occupied while there
+ * are no tasks.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class SerialExecutor implements Executor {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(SerialExecutor.class.getName());
+
+	/** The executor that runs the tasks. */
+	private final Executor executor;
+
+	/** The tasks that have not been run yet. */
+	private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+	/** Whether a drain task has been submitted to the executor. */
+	private boolean draining;
+
+	/** The task that runs the queued tasks. */
+	private final Runnable drainTask = new Runnable() {
+
+		@Override
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Creates a new serial executor.
+	 *
+	 * @param executor
+	 *            The executor that runs the tasks
+	 */
+	public SerialExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	//
+	// EXECUTOR METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void execute(Runnable task) {
+		synchronized (tasks) {
+			tasks.add(task);
+			if (draining) {
+				return;
+			}
+			draining = true;
+		}
+		boolean submitted = false;
+		try {
+			executor.execute(drainTask);
+			submitted = true;
+		} finally {
+			if (!submitted) {
+				synchronized (tasks) {
+					tasks.remove(task);
+					draining = false;
+				}
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Runs queued tasks until the queue is empty. If a task throws an
+	 * {@link Error}, draining stops; the remaining tasks are run by the drain
+	 * task that the next call to {@link #execute(Runnable)} submits.
+	 */
+	private void drain() {
+		try {
+			while (true) {
+				Runnable task;
+				synchronized (tasks) {
+					task = tasks.poll();
+					if (task == null) {
+						return;
+					}
+				}
+				try {
+					task.run();
+				} catch (RuntimeException re1) {
+					logger.log(Level.WARNING, "task threw exception", re1);
+				}
+			}
+		} finally {
+			synchronized (tasks) {
+				draining = false;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,409 @@
+/*
+ * jFCPlib - Spool.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A spool holds a payload received from the node, either in memory or in a
+ * spool file on disk. Spools are created by a {@link SpoolManager} and are
+ * reference-counted: every stream opened with {@link #openInputStream()} holds
+ * a reference that is released when the stream is closed. Once the last
+ * reference has been released the memory or the spool file is returned to the
+ * spool manager.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class Spool {
+
+	/** The spool manager that created this spool. */
+	private final SpoolManager spoolManager;
+
+	/** The length of the payload. */
+	private final long length;
+
+	/** The payload, if it is held in memory. */
+	private final ByteBuffer buffer;
+
+	/** The spool file, if the payload was spilled to disk. */
+	private final File file;
+
+	/** The number of references to this spool. */
+	private int references = 1;
+
+	/** Whether the spool file has been mapped into memory. */
+	private boolean mapped;
+
+	/**
+	 * Creates a new in-memory spool.
+	 *
+	 * @param spoolManager
+	 *            The spool manager that created this spool
+	 * @param buffer
+	 *            The payload, between the buffer’s position and its limit
+	 */
+	Spool(SpoolManager spoolManager, ByteBuffer buffer) {
+		this.spoolManager = spoolManager;
+		this.length = buffer.remaining();
+		this.buffer = buffer;
+		this.file = null;
+	}
+
+	/**
+	 * Creates a new spool that is backed by a spool file.
+	 *
+	 * @param spoolManager
+	 *            The spool manager that created this spool
+	 * @param file
+	 *            The spool file
+	 * @param length
+	 *            The length of the payload
+	 */
+	Spool(SpoolManager spoolManager, File file, long length) {
+		this.spoolManager = spoolManager;
+		this.length = length;
+		this.buffer = null;
+		this.file = file;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the length of the payload.
+	 *
+	 * @return The length of the payload
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns whether the payload was spilled to disk.
+	 *
+	 * @return {@code true} if the payload is stored in a spool file,
+	 *         {@code false} if it is held in memory
+	 */
+	public boolean isSpilled() {
+		return file != null;
+	}
+
+	/**
+	 * Returns the spool file.
+	 *
+	 * @return The spool file, or {@code null} if the payload is held in memory
+	 */
+	File getFile() {
+		return file;
+	}
+
+	/**
+	 * Returns the buffer holding the payload.
+	 *
+	 * @return The buffer holding the payload, or {@code null} if the payload
+	 *         was spilled to disk
+	 */
+	ByteBuffer getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Returns whether the spool file has been mapped into memory. A mapped
+	 * spool file is never reused because truncating it would invalidate the
+	 * mapping.
+	 *
+	 * @return {@code true} if the spool file has been mapped, {@code false}
+	 *         otherwise
+	 */
+	synchronized boolean isMapped() {
+		return mapped;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Opens a new input stream that reads the complete payload. The stream
+	 * holds a reference to this spool until it is closed.
+	 *
+	 * @return A new input stream for the payload
+	 * @throws IOException
+	 *             if the spool file can not be opened
+	 * @throws IllegalStateException
+	 *             if this spool has already been released
+	 */
+	public SpoolInputStream openInputStream() throws IOException, IllegalStateException {
+		retain();
+		try {
+			if (file == null) {
+				return new SpoolInputStream(new ByteBufferInputStream(buffer.duplicate()));
+			}
+			return new SpoolInputStream(new FileInputStream(file));
+		} catch (IOException ioe1) {
+			release();
+			throw ioe1;
+		}
+	}
+
+	/**
+	 * Maps the given region of the spool file into memory. The returned buffer
+	 * is read-only and stays valid after this spool has been released; the
+	 * payload stays charged to the disk quota until the buffer has been
+	 * garbage-collected.
+	 *
+	 * @param position
+	 *            The position of the region to map
+	 * @param size
+	 *            The size of the region to map
+	 * @return The mapped region of the spool file
+	 * @throws IOException
+	 *             if the spool file can not be mapped
+	 * @throws IllegalStateException
+	 *             if the payload is held in memory, or this spool has already
+	 *             been released
+	 */
+	public MappedByteBuffer map(long position, long size) throws IOException, IllegalStateException {
+		if (file == null) {
+			throw new IllegalStateException("payload is held in memory");
+		}
+		retain();
+		RandomAccessFile randomAccessFile = null;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "r");
+			synchronized (this) {
+				mapped = true;
+			}
+			MappedByteBuffer mappedBuffer = randomAccessFile.getChannel().map(MapMode.READ_ONLY, position, size);
+			spoolManager.addMapping(this, mappedBuffer);
+			return mappedBuffer;
+		} finally {
+			FcpUtils.close(randomAccessFile);
+			release();
+		}
+	}
+
+	/**
+	 * Adds a reference to this spool.
+	 *
+	 * @throws IllegalStateException
+	 *             if this spool has already been released
+	 */
+	public synchronized void retain() throws IllegalStateException {
+		if (references == 0) {
+			throw new IllegalStateException("spool has already been released");
+		}
+		references++;
+	}
+
+	/**
+	 * Removes a reference from this spool. When the last reference has been
+	 * removed the spool is returned to its spool manager and can not be used
+	 * anymore.
+	 */
+	public void release() {
+		synchronized (this) {
+			if (references == 0) {
+				return;
+			}
+			if (--references > 0) {
+				return;
+			}
+		}
+		spoolManager.release(this);
+	}
+
+	/**
+	 * Input stream that reads the payload of a spool and releases its
+	 * reference to the spool when it is closed.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public class SpoolInputStream extends FilterInputStream {
+
+		/** Whether this stream has been closed. */
+		private boolean closed;
+
+		/**
+		 * Creates a new spool input stream.
+		 *
+		 * @param inputStream
+		 *            The input stream to read the payload from
+		 */
+		SpoolInputStream(InputStream inputStream) {
+			super(inputStream);
+		}
+
+		/**
+		 * Returns the spool this stream reads from.
+		 *
+		 * @return The spool of this stream
+		 */
+		public Spool getSpool() {
+			return Spool.this;
+		}
+
+		/**
+		 * Returns a read-only channel for the spool file. The channel shares
+		 * its position with this stream; use
+		 * {@link FileChannel#read(ByteBuffer, long)} for random access without
+		 * disturbing sequential reads. The channel is closed when this stream
+		 * is closed, but closing the channel does not release the spool.
+		 *
+		 * @return A channel for the spool file, or {@code null} if the payload
+		 *         is held in memory
+		 */
+		public FileChannel getChannel() {
+			if (in instanceof FileInputStream) {
+				return ((FileInputStream) in).getChannel();
+			}
+			return null;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			synchronized (this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+			}
+			try {
+				super.close();
+			} finally {
+				release();
+			}
+		}
+
+	}
+
+	/**
+	 * Input stream that reads the remaining bytes of a {@link ByteBuffer}.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class ByteBufferInputStream extends InputStream {
+
+		/** The buffer to read from. */
+		private final ByteBuffer buffer;
+
+		/** Whether this stream has been closed. */
+		private volatile boolean closed;
+
+		/**
+		 * Creates a new input stream that reads from the given buffer.
+		 *
+		 * @param buffer
+		 *            The buffer to read from
+		 */
+		public ByteBufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int available() throws IOException {
+			checkOpen();
+			return buffer.remaining();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			checkOpen();
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			return buffer.get() & 0xff;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] data, int offset, int length) throws IOException {
+			checkOpen();
+			if (length == 0) {
+				return 0;
+			}
+			if (!buffer.hasRemaining()) {
+				return -1;
+			}
+			int read = Math.min(length, buffer.remaining());
+			buffer.get(data, offset, read);
+			return read;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long skip(long n) throws IOException {
+			checkOpen();
+			int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+			buffer.position(buffer.position() + skipped);
+			return skipped;
+		}
+
+		/**
+		 * Closes this stream. The buffer may be handed to another payload
+		 * once the spool has been released, so this stream refuses to read
+		 * from it afterwards.
+		 */
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		//
+		// PRIVATE METHODS
+		//
+
+		/**
+		 * Throws an exception if this stream has been closed.
+		 *
+		 * @throws IOException
+		 *             if this stream has been closed
+		 */
+		private void checkOpen() throws IOException {
+			if (closed) {
+				throw new IOException("stream closed");
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,688 @@
+/*
+ * jFCPlib - SpoolManager.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Manages the storage of payloads received from the node. Payloads that are
+ * small enough are held in memory as long as the global memory budget allows
+ * it; all other payloads are spilled to spool files in a configurable
+ * directory. Spool files are not registered with
+ * {@link File#deleteOnExit()}; they are deleted (or returned to a pool of
+ * reusable spool files) as soon as the last {@link Spool} reference has been
+ * released, so a long-running process does not accumulate state for every
+ * payload it has ever received.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class SpoolManager implements Closeable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(SpoolManager.class.getName());
+
+	/** Value for an unlimited memory budget or disk quota. */
+	public static final long UNLIMITED = -1;
+
+	/** The default maximum length of a payload that is held in memory. */
+	public static final long DEFAULT_MAX_MEMORY_LENGTH = 65536;
+
+	/** The default global memory budget. */
+	public static final long DEFAULT_MEMORY_BUDGET = 16 * 1024 * 1024;
+
+	/** The size of the buffer used to copy payloads. */
+	private static final int COPY_BUFFER_SIZE = 1 << 16;
+
+	/** The copy buffers, reused by every thread that spools payloads. */
+	private static final ThreadLocal<byte[]> copyBuffers = new ThreadLocal<byte[]>() {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected byte[] initialValue() {
+			return new byte[COPY_BUFFER_SIZE];
+		}
+	};
+
+	/** All spool files that currently exist, of all spool managers. */
+	private static final Set<File> existingFiles = Collections.synchronizedSet(new HashSet<File>());
+
+	static {
+		Runtime.getRuntime().addShutdownHook(new Thread("SpoolManager Cleanup") {
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void run() {
+				synchronized (existingFiles) {
+					for (File existingFile : existingFiles) {
+						existingFile.delete();
+					}
+				}
+			}
+		});
+	}
+
+	/** The directory for spool files, or {@code null} for the default. */
+	private final File directory;
+
+	/** The maximum length of a payload that is held in memory. */
+	private final long maxMemoryLength;
+
+	/** The maximum number of bytes held in memory by all spools. */
+	private final long memoryBudget;
+
+	/** The maximum number of bytes stored in spool files. */
+	private final long diskQuota;
+
+	/** The maximum number of idle spool files that are kept for reuse. */
+	private final int maxPooledFiles;
+
+	/** The pool for buffers of in-memory payloads, may be {@code null}. */
+	private volatile PayloadBufferPool bufferPool;
+
+	/** Idle spool files that can be reused. */
+	private final Deque<File> pooledFiles = new ArrayDeque<File>();
+
+	/** The number of bytes currently held in memory. */
+	private long memoryUsed;
+
+	/** The number of bytes currently stored in spool files. */
+	private long diskUsed;
+
+	/** The queue of mapped regions of spool files that are no longer used. */
+	private final ReferenceQueue<MappedByteBuffer> unusedMappings = new ReferenceQueue<MappedByteBuffer>();
+
+	/** The mapped regions of spool files that may still be in use. */
+	private final Set<Mapping> mappings = new HashSet<Mapping>();
+
+	/**
+	 * The mapped spools that are still charged to the disk quota, with the
+	 * number of their mapped regions plus one for the spool itself.
+	 */
+	private final Map<Spool, Integer> mappedSpools = new HashMap<Spool, Integer>();
+
+	/** Whether this spool manager has been closed. */
+	private boolean closed;
+
+	/**
+	 * Creates a new spool manager that stores spool files in the default
+	 * temporary-file directory, keeps payloads of up to
+	 * {@link #DEFAULT_MAX_MEMORY_LENGTH} bytes in memory using a budget of
+	 * {@link #DEFAULT_MEMORY_BUDGET} bytes, and does not reuse spool files.
+	 */
+	public SpoolManager() {
+		this(null);
+	}
+
+	/**
+	 * Creates a new spool manager that stores spool files in the given
+	 * directory, keeps payloads of up to {@link #DEFAULT_MAX_MEMORY_LENGTH}
+	 * bytes in memory using a budget of {@link #DEFAULT_MEMORY_BUDGET} bytes,
+	 * and does not reuse spool files.
+	 *
+	 * @param directory
+	 *            The directory for spool files, or {@code null} to use the
+	 *            default temporary-file directory
+	 */
+	public SpoolManager(File directory) {
+		this(directory, DEFAULT_MAX_MEMORY_LENGTH, DEFAULT_MEMORY_BUDGET, UNLIMITED, 0);
+	}
+
+	/**
+	 * Creates a new spool manager.
+	 *
+	 * @param directory
+	 *            The directory for spool files, or {@code null} to use the
+	 *            default temporary-file directory
+	 * @param maxMemoryLength
+	 *            The maximum length of a payload that is held in memory
+	 * @param memoryBudget
+	 *            The maximum number of bytes held in memory by all spools, or
+	 *            {@link #UNLIMITED}
+	 * @param diskQuota
+	 *            The maximum number of bytes stored in spool files, or
+	 *            {@link #UNLIMITED}
+	 * @param maxPooledFiles
+	 *            The maximum number of idle spool files that are kept for
+	 *            reuse
+	 */
+	public SpoolManager(File directory, long maxMemoryLength, long memoryBudget, long diskQuota, int maxPooledFiles) {
+		this.directory = directory;
+		this.maxMemoryLength = maxMemoryLength;
+		this.memoryBudget = memoryBudget;
+		this.diskQuota = diskQuota;
+		this.maxPooledFiles = maxPooledFiles;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the pool that provides the buffers for in-memory payloads.
+	 *
+	 * @return The buffer pool, or {@code null} if in-memory payloads are
+	 *         stored in heap arrays
+	 */
+	public PayloadBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * Sets the pool that provides the buffers for in-memory payloads. Payloads
+	 * that are larger than the pool’s maximum buffer size are stored in heap
+	 * arrays. The memory budget is charged with the full size of a pooled
+	 * buffer.
+	 *
+	 * @param bufferPool
+	 *            The buffer pool, or {@code null} to store in-memory payloads
+	 *            in heap arrays
+	 */
+	public void setBufferPool(PayloadBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * Returns the number of bytes that are currently held in memory.
+	 *
+	 * @return The number of bytes held in memory
+	 */
+	public synchronized long getMemoryUsed() {
+		return memoryUsed;
+	}
+
+	/**
+	 * Returns the number of bytes that are currently stored in spool files.
+	 *
+	 * @return The number of bytes stored in spool files
+	 */
+	public synchronized long getDiskUsed() {
+		releaseUnusedMappings();
+		return diskUsed;
+	}
+
+	/**
+	 * Returns the number of idle spool files that are available for reuse.
+	 *
+	 * @return The number of idle spool files
+	 */
+	public synchronized int getPooledFileCount() {
+		return pooledFiles.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Creates idle spool files until the pool contains the given number of
+	 * files, or the maximum number of pooled files has been reached.
+	 *
+	 * @param count
+	 *            The number of idle spool files to create
+	 * @throws IOException
+	 *             if a spool file can not be created
+	 */
+	public void preallocate(int count) throws IOException {
+		while (true) {
+			synchronized (this) {
+				checkOpen();
+				if ((pooledFiles.size() >= count) || (pooledFiles.size() >= maxPooledFiles)) {
+					return;
+				}
+			}
+			File spoolFile = createFile();
+			synchronized (this) {
+				pooledFiles.push(spoolFile);
+			}
+		}
+	}
+
+	/**
+	 * Reads a payload of the given length from the given input stream and
+	 * stores it in a new spool. If the length is {@code -1} the input stream
+	 * is read until it is exhausted. If the disk quota would be exceeded by
+	 * storing the payload, an {@link IOException} is thrown; in that case the
+	 * input stream has not necessarily been read completely.
+	 *
+	 * @param inputStream
+	 *            The input stream to read the payload from
+	 * @param length
+	 *            The length of the payload, or {@code -1} if the length is
+	 *            unknown
+	 * @return A new spool holding one reference
+	 * @throws IOException
+	 *             if an I/O error occurs, or the disk quota is exceeded
+	 */
+	public Spool spool(InputStream inputStream, long length) throws IOException {
+		if ((length > -1) && (length <= maxMemoryLength)) {
+			PayloadBufferPool bufferPool = this.bufferPool;
+			if ((bufferPool != null) && (length <= bufferPool.getMaxBufferSize())) {
+				int bufferSize = bufferPool.getBufferSize((int) length);
+				if (reserveMemory(bufferSize)) {
+					ByteBuffer buffer = bufferPool.acquire((int) length);
+					try {
+						readFully(inputStream, buffer);
+					} catch (IOException ioe1) {
+						bufferPool.release(buffer);
+						releaseMemory(bufferSize);
+						throw ioe1;
+					}
+					buffer.flip();
+					return new Spool(this, buffer);
+				}
+			} else if (reserveMemory(length)) {
+				byte[] data = new byte[(int) length];
+				try {
+					readFully(inputStream, ByteBuffer.wrap(data));
+				} catch (IOException ioe1) {
+					releaseMemory(length);
+					throw ioe1;
+				}
+				return new Spool(this, ByteBuffer.wrap(data));
+			}
+		}
+		return spill(inputStream, length);
+	}
+
+	/**
+	 * Deletes all idle spool files. Spool files that are still in use are
+	 * deleted once their spools have been released. This spool manager can
+	 * not be used to store payloads anymore after it has been closed.
+	 */
+	@Override
+	public void close() {
+		List<File> filesToDelete;
+		synchronized (this) {
+			closed = true;
+			filesToDelete = new ArrayList<File>(pooledFiles);
+			pooledFiles.clear();
+		}
+		for (File fileToDelete : filesToDelete) {
+			deleteFile(fileToDelete);
+		}
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the resources of the given spool to this spool manager. This
+	 * method is called by {@link Spool#release()} once the last reference to
+	 * the spool has been released.
+	 *
+	 * @param spool
+	 *            The released spool
+	 */
+	void release(Spool spool) {
+		if (!spool.isSpilled()) {
+			ByteBuffer buffer = spool.getBuffer();
+			releaseMemory(buffer.capacity());
+			PayloadBufferPool bufferPool = this.bufferPool;
+			if (buffer.isDirect() && (bufferPool != null)) {
+				bufferPool.release(buffer);
+			}
+			return;
+		}
+		if (spool.isMapped()) {
+			deleteFile(spool.getFile());
+			releaseMappedSpool(spool);
+		} else {
+			releaseDisk(spool.getLength());
+			releaseFile(spool.getFile());
+		}
+	}
+
+	/**
+	 * Keeps the given spool charged to the disk quota until the given mapped
+	 * region of its spool file is no longer used. The mapping keeps the disk
+	 * space of the spool file allocated even after the file was deleted.
+	 *
+	 * @param spool
+	 *            The mapped spool
+	 * @param buffer
+	 *            The mapped region of the spool file
+	 */
+	synchronized void addMapping(Spool spool, MappedByteBuffer buffer) {
+		Integer holders = mappedSpools.get(spool);
+		mappedSpools.put(spool, ((holders == null) ? 1 : holders) + 1);
+		mappings.add(new Mapping(spool, buffer, unusedMappings));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Copies the payload from the given input stream to a spool file.
+	 *
+	 * @param inputStream
+	 *            The input stream to read the payload from
+	 * @param length
+	 *            The length of the payload, or {@code -1} if the length is
+	 *            unknown
+	 * @return A new spool holding one reference
+	 * @throws IOException
+	 *             if an I/O error occurs, or the disk quota is exceeded
+	 */
+	private Spool spill(InputStream inputStream, long length) throws IOException {
+		long reserved = 0;
+		if (length > -1) {
+			reserveDisk(length);
+			reserved = length;
+		}
+		File spoolFile = null;
+		FileOutputStream fileOutputStream = null;
+		boolean success = false;
+		try {
+			spoolFile = acquireFile();
+			fileOutputStream = new FileOutputStream(spoolFile);
+			byte[] buffer = copyBuffers.get();
+			long copied = 0;
+			while ((length == -1) || (copied < length)) {
+				int toRead = ((length == -1) || ((length - copied) > buffer.length)) ? buffer.length : (int) (length - copied);
+				int read = inputStream.read(buffer, 0, toRead);
+				if (read == -1) {
+					if (length == -1) {
+						break;
+					}
+					throw new EOFException("stream reached eof");
+				}
+				if (length == -1) {
+					reserveDisk(read);
+					reserved += read;
+				}
+				fileOutputStream.write(buffer, 0, read);
+				copied += read;
+			}
+			fileOutputStream.close();
+			success = true;
+			return new Spool(this, spoolFile, copied);
+		} finally {
+			if (!success) {
+				FcpUtils.close(fileOutputStream);
+				releaseDisk(reserved);
+				if (spoolFile != null) {
+					releaseFile(spoolFile);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns an idle spool file from the pool, or creates a new spool file.
+	 *
+	 * @return A spool file
+	 * @throws IOException
+	 *             if a spool file can not be created
+	 */
+	private File acquireFile() throws IOException {
+		synchronized (this) {
+			checkOpen();
+			if (!pooledFiles.isEmpty()) {
+				return pooledFiles.pop();
+			}
+		}
+		return createFile();
+	}
+
+	/**
+	 * Creates a new spool file.
+	 *
+	 * @return The new spool file
+	 * @throws IOException
+	 *             if the spool file can not be created
+	 */
+	private File createFile() throws IOException {
+		File spoolFile = File.createTempFile("spool-", ".bin", directory);
+		existingFiles.add(spoolFile);
+		return spoolFile;
+	}
+
+	/**
+	 * Truncates the given spool file and returns it to the pool, or deletes
+	 * it if the pool is full or this spool manager has been closed.
+	 *
+	 * @param spoolFile
+	 *            The spool file to release
+	 */
+	private void releaseFile(File spoolFile) {
+		synchronized (this) {
+			if (!closed && (pooledFiles.size() < maxPooledFiles) && truncate(spoolFile)) {
+				pooledFiles.push(spoolFile);
+				return;
+			}
+		}
+		deleteFile(spoolFile);
+	}
+
+	/**
+	 * Truncates the given file to a length of 0.
+	 *
+	 * @param file
+	 *            The file to truncate
+	 * @return {@code true} if the file was truncated, {@code false} otherwise
+	 */
+	private static boolean truncate(File file) {
+		RandomAccessFile randomAccessFile = null;
+		try {
+			randomAccessFile = new RandomAccessFile(file, "rw");
+			randomAccessFile.setLength(0);
+			return true;
+		} catch (IOException ioe1) {
+			logger.warning("could not truncate spool file " + file);
+			return false;
+		} finally {
+			FcpUtils.close(randomAccessFile);
+		}
+	}
+
+	/**
+	 * Deletes the given spool file.
+	 *
+	 * @param spoolFile
+	 *            The spool file to delete
+	 */
+	private static void deleteFile(File spoolFile) {
+		if (!spoolFile.delete() && spoolFile.exists()) {
+			logger.warning("could not delete spool file " + spoolFile);
+			return;
+		}
+		existingFiles.remove(spoolFile);
+	}
+
+	/**
+	 * Tries to reserve the given number of bytes of the memory budget.
+	 *
+	 * @param length
+	 *            The number of bytes to reserve
+	 * @return {@code true} if the bytes were reserved, {@code false} if the
+	 *         memory budget is exhausted
+	 */
+	private synchronized boolean reserveMemory(long length) {
+		if ((memoryBudget != UNLIMITED) && ((memoryUsed + length) > memoryBudget)) {
+			return false;
+		}
+		memoryUsed += length;
+		return true;
+	}
+
+	/**
+	 * Returns the given number of bytes to the memory budget.
+	 *
+	 * @param length
+	 *            The number of bytes to return
+	 */
+	private synchronized void releaseMemory(long length) {
+		memoryUsed -= length;
+	}
+
+	/**
+	 * Reserves the given number of bytes of the disk quota.
+	 *
+	 * @param length
+	 *            The number of bytes to reserve
+	 * @throws IOException
+	 *             if the disk quota would be exceeded
+	 */
+	private synchronized void reserveDisk(long length) throws IOException {
+		releaseUnusedMappings();
+		if ((diskQuota != UNLIMITED) && ((diskUsed + length) > diskQuota)) {
+			throw new IOException("spool disk quota exceeded (" + diskUsed + " + " + length + " > " + diskQuota + ")");
+		}
+		diskUsed += length;
+	}
+
+	/**
+	 * Returns the given number of bytes to the disk quota.
+	 *
+	 * @param length
+	 *            The number of bytes to return
+	 */
+	private synchronized void releaseDisk(long length) {
+		diskUsed -= length;
+	}
+
+	/**
+	 * Drops one holder of the disk quota charge of the given mapped spool,
+	 * and returns the spool’s bytes to the disk quota if it was the last.
+	 *
+	 * @param spool
+	 *            The mapped spool
+	 */
+	private synchronized void releaseMappedSpool(Spool spool) {
+		Integer holders = mappedSpools.remove(spool);
+		if ((holders != null) && (holders > 1)) {
+			mappedSpools.put(spool, holders - 1);
+			return;
+		}
+		releaseDisk(spool.getLength());
+	}
+
+	/**
+	 * Releases the mapped spools of all mapped regions that have been
+	 * garbage-collected.
+	 */
+	private synchronized void releaseUnusedMappings() {
+		Reference<? extends MappedByteBuffer> unusedMapping;
+		while ((unusedMapping = unusedMappings.poll()) != null) {
+			mappings.remove(unusedMapping);
+			releaseMappedSpool(((Mapping) unusedMapping).spool);
+		}
+	}
+
+	/**
+	 * Checks whether this spool manager is still open.
+	 *
+	 * @throws IOException
+	 *             if this spool manager has been closed
+	 */
+	private void checkOpen() throws IOException {
+		if (closed) {
+			throw new IOException("spool manager is closed");
+		}
+	}
+
+	/**
+	 * Fills the given buffer up to its limit with bytes read from the given
+	 * input stream. Heap buffers are filled directly; direct buffers are
+	 * filled through the calling thread’s copy buffer.
+	 *
+	 * @param inputStream
+	 *            The input stream to read from
+	 * @param buffer
+	 *            The buffer to fill
+	 * @throws IOException
+	 *             if an I/O error occurs, or the end of the stream is reached
+	 *             before the buffer is filled
+	 */
+	private static void readFully(InputStream inputStream, ByteBuffer buffer) throws IOException {
+		byte[] copyBuffer = buffer.hasArray() ? buffer.array() : copyBuffers.get();
+		while (buffer.hasRemaining()) {
+			int read;
+			if (buffer.hasArray()) {
+				read = inputStream.read(copyBuffer, buffer.arrayOffset() + buffer.position(), buffer.remaining());
+			} else {
+				read = inputStream.read(copyBuffer, 0, Math.min(copyBuffer.length, buffer.remaining()));
+			}
+			if (read == -1) {
+				throw new EOFException("stream reached eof");
+			}
+			if (buffer.hasArray()) {
+				buffer.position(buffer.position() + read);
+			} else {
+				buffer.put(copyBuffer, 0, read);
+			}
+		}
+	}
+
+	/**
+	 * Reference to a mapped region of a spool file that is enqueued once the
+	 * region is no longer used.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Mapping extends PhantomReference<MappedByteBuffer> {
+
+		/** The mapped spool. */
+		private final Spool spool;
+
+		/**
+		 * Creates a new mapping reference.
+		 *
+		 * @param spool
+		 *            The mapped spool
+		 * @param buffer
+		 *            The mapped region of the spool file
+		 * @param queue
+		 *            The queue to enqueue the reference on
+		 */
+		Mapping(Spool spool, MappedByteBuffer buffer, ReferenceQueue<MappedByteBuffer> queue) {
+			super(buffer, queue);
+			this.spool = spool;
+		}
+
+	}
+
+}
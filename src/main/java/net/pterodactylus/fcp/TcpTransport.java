@@ -0,0 +1,176 @@
+/*
+ * jFCPlib - TcpTransport.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+/**
+ * {@link FcpTransport} implementation that connects to the node’s FCP port
+ * using TCP.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class TcpTransport implements FcpTransport {
+
+	/** The address of the node. */
+	private final InetAddress address;
+
+	/** The port number of the node’s FCP port. */
+	private final int port;
+
+	/** The connection options. */
+	private final ConnectionOptions options;
+
+	/** The socket, if connected. */
+	private Socket socket;
+
+	/**
+	 * Creates a new TCP transport.
+	 *
+	 * @param address
+	 *            The address of the node
+	 * @param port
+	 *            The port number of the node’s FCP port
+	 */
+	public TcpTransport(InetAddress address, int port) {
+		this(address, port, new ConnectionOptions());
+	}
+
+	/**
+	 * Creates a new TCP transport.
+	 *
+	 * @param address
+	 *            The address of the node
+	 * @param port
+	 *            The port number of the node’s FCP port
+	 * @param options
+	 *            The connection options
+	 */
+	public TcpTransport(InetAddress address, int port, ConnectionOptions options) {
+		this.address = address;
+		this.port = port;
+		this.options = options;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the address of the node.
+	 *
+	 * @return The address of the node
+	 */
+	public InetAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * Returns the port number of the node’s FCP port.
+	 *
+	 * @return The port number of the node’s FCP port
+	 */
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Returns the connection options.
+	 *
+	 * @return The connection options
+	 */
+	public ConnectionOptions getOptions() {
+		return options;
+	}
+
+	//
+	// FCPTRANSPORT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void connect() throws IOException {
+		Socket newSocket = new Socket();
+		try {
+			if (options.getReceiveBufferSize() > 0) {
+				newSocket.setReceiveBufferSize(options.getReceiveBufferSize());
+			}
+			if (options.getSendBufferSize() > 0) {
+				newSocket.setSendBufferSize(options.getSendBufferSize());
+			}
+			if (options.getTcpNoDelay() != null) {
+				newSocket.setTcpNoDelay(options.getTcpNoDelay());
+			}
+			if (options.getKeepAlive() != null) {
+				newSocket.setKeepAlive(options.getKeepAlive());
+			}
+			newSocket.setSoTimeout(options.getReadTimeout());
+			newSocket.connect(new InetSocketAddress(address, port), options.getConnectTimeout());
+		} catch (IOException ioe1) {
+			FcpUtils.close(newSocket);
+			throw ioe1;
+		}
+		socket = newSocket;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized InputStream getInputStream() throws IOException {
+		return socket.getInputStream();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized OutputStream getOutputStream() throws IOException {
+		return socket.getOutputStream();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void close() {
+		FcpUtils.close(socket);
+		socket = null;
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return address + ":" + port;
+	}
+
+}
@@ -0,0 +1,462 @@
+/*
+ * jFCPlib - TrafficRecorder.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Records the byte streams of an {@link FcpConnection} to a compact binary
+ * file, split into frames: the header of every message and its payload, if
+ * it has one. Every frame is recorded with its direction and the time it
+ * passed the connection, so that the recording can be played back with a
+ * {@link ReplayTransport}. Payloads can be elided, in which case only their
+ * sizes are recorded.
+ * <p>
+ * The recorder taps the streams of the transport below the connection’s
+ * stream buffers, so it sees the bytes in the chunks the buffers read and
+ * flush; headers are scanned for the end of the message, payloads are
+ * copied (or skipped) in bulk. If the recording can not be written, the
+ * recorder stops recording but the connection is not affected.
+ * <p>
+ * A recording starts with a magic number and a version byte. Each frame
+ * consists of a type byte, the microseconds since the previous frame and
+ * the length of the frame, both as variable-length numbers, and the bytes of
+ * the frame unless the frame is an elided payload.
+ *
+ * @see ConnectionOptions#setTrafficRecorder(TrafficRecorder)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class TrafficRecorder implements Closeable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(TrafficRecorder.class.getName());
+
+	/** The magic number at the start of a recording (“FCTR”). */
+	static final int MAGIC = 0x46435452;
+
+	/** The version of the recording format. */
+	static final int VERSION = 1;
+
+	/** The frame type flag for frames sent to the node. */
+	static final int OUTBOUND = 1;
+
+	/** The frame type flag for payload frames. */
+	static final int PAYLOAD = 2;
+
+	/** The frame type flag for payload frames whose bytes are not recorded. */
+	static final int ELIDED = 4;
+
+	/** The stream the recording is written to. */
+	private final OutputStream recordingOutputStream;
+
+	/** Whether to elide payloads. */
+	private final boolean elidePayloads;
+
+	/** The time the recording started, in nanoseconds. */
+	private final long startTime = System.nanoTime();
+
+	/** The time of the last recorded frame, in microseconds since the start. */
+	private long lastFrameTime;
+
+	/** The number of recorded frames. */
+	private long frameCount;
+
+	/** The number of bytes that passed the connection. */
+	private long byteCount;
+
+	/** Whether the recorder has stopped recording. */
+	private boolean stopped;
+
+	/**
+	 * Creates a new traffic recorder that writes to the given file.
+	 *
+	 * @param file
+	 *            The file to record to
+	 * @param elidePayloads
+	 *            {@code true} to only record the sizes of payloads,
+	 *            {@code false} to record their contents
+	 * @throws IOException
+	 *             if the file can not be created
+	 */
+	public TrafficRecorder(File file, boolean elidePayloads) throws IOException {
+		this(new FileOutputStream(file), elidePayloads);
+	}
+
+	/**
+	 * Creates a new traffic recorder that writes to the given stream.
+	 *
+	 * @param outputStream
+	 *            The stream to record to
+	 * @param elidePayloads
+	 *            {@code true} to only record the sizes of payloads,
+	 *            {@code false} to record their contents
+	 * @throws IOException
+	 *             if the header of the recording can not be written
+	 */
+	public TrafficRecorder(OutputStream outputStream, boolean elidePayloads) throws IOException {
+		this.recordingOutputStream = new BufferedOutputStream(outputStream, 65536);
+		this.elidePayloads = elidePayloads;
+		recordingOutputStream.write(new byte[] { (byte) (MAGIC >>> 24), (byte) (MAGIC >>> 16), (byte) (MAGIC >>> 8), (byte) MAGIC, VERSION });
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether payloads are elided.
+	 *
+	 * @return {@code true} if only the sizes of payloads are recorded,
+	 *         {@code false} if their contents are recorded
+	 */
+	public boolean isElidePayloads() {
+		return elidePayloads;
+	}
+
+	/**
+	 * Returns the number of recorded frames.
+	 *
+	 * @return The number of recorded frames
+	 */
+	public synchronized long getFrameCount() {
+		return frameCount;
+	}
+
+	/**
+	 * Returns the number of bytes that passed the tapped connections.
+	 *
+	 * @return The number of bytes that passed the connections
+	 */
+	public synchronized long getByteCount() {
+		return byteCount;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Flushes the recording and closes the file.
+	 *
+	 * @throws IOException
+	 *             if the recording can not be closed
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		stopped = true;
+		recordingOutputStream.close();
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Returns a stream that records everything that is read from the given
+	 * stream of a connection.
+	 *
+	 * @param inputStream
+	 *            The stream from the node
+	 * @return The tapped stream
+	 */
+	InputStream tapInputStream(InputStream inputStream) {
+		final FrameScanner frameScanner = new FrameScanner(0);
+		return new FilterInputStream(inputStream) {
+
+			@Override
+			public int read() throws IOException {
+				int nextByte = super.read();
+				if (nextByte != -1) {
+					frameScanner.scan(new byte[] { (byte) nextByte }, 0, 1);
+				}
+				return nextByte;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int read = super.read(buffer, offset, length);
+				if (read > 0) {
+					frameScanner.scan(buffer, offset, read);
+				}
+				return read;
+			}
+
+			@Override
+			public long skip(long length) throws IOException {
+				if (length <= 0) {
+					return 0;
+				}
+				int read = read(new byte[(int) Math.min(length, 65536)]);
+				return Math.max(read, 0);
+			}
+
+			@Override
+			public boolean markSupported() {
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns a stream that records everything that is written to the given
+	 * stream of a connection.
+	 *
+	 * @param outputStream
+	 *            The stream to the node
+	 * @return The tapped stream
+	 */
+	OutputStream tapOutputStream(OutputStream outputStream) {
+		final FrameScanner frameScanner = new FrameScanner(OUTBOUND);
+		return new FilterOutputStream(outputStream) {
+
+			@Override
+			public void write(int nextByte) throws IOException {
+				out.write(nextByte);
+				frameScanner.scan(new byte[] { (byte) nextByte }, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] buffer, int offset, int length) throws IOException {
+				out.write(buffer, offset, length);
+				frameScanner.scan(buffer, offset, length);
+			}
+		};
+	}
+
+	/**
+	 * Writes a number to the given stream using seven bits per byte; the
+	 * highest bit of a byte is set if more bytes follow.
+	 *
+	 * @param outputStream
+	 *            The stream to write to
+	 * @param value
+	 *            The non-negative number to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	static void writeNumber(OutputStream outputStream, long value) throws IOException {
+		while ((value & ~0x7fL) != 0) {
+			outputStream.write((int) ((value & 0x7f) | 0x80));
+			value >>>= 7;
+		}
+		outputStream.write((int) value);
+	}
+
+	/**
+	 * Reads a number written by {@link #writeNumber(OutputStream, long)}.
+	 *
+	 * @param inputStream
+	 *            The stream to read from
+	 * @return The number, or {@code -1} if the stream ended before the first
+	 *         byte of the number
+	 * @throws IOException
+	 *             if an I/O error occurs, or the stream ends within the number
+	 */
+	static long readNumber(InputStream inputStream) throws IOException {
+		long value = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			int nextByte = inputStream.read();
+			if (nextByte == -1) {
+				if (shift == 0) {
+					return -1;
+				}
+				throw new EOFException("recording ends within a number");
+			}
+			value |= (long) (nextByte & 0x7f) << shift;
+			if ((nextByte & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("invalid number in recording");
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Records a frame.
+	 *
+	 * @param type
+	 *            The type of the frame
+	 * @param buffer
+	 *            The buffer containing the frame
+	 * @param offset
+	 *            The offset of the frame in the buffer
+	 * @param length
+	 *            The length of the frame
+	 */
+	private synchronized void record(int type, byte[] buffer, int offset, long length) {
+		if (((type & ELIDED) == 0) || ((type & PAYLOAD) == 0)) {
+			byteCount += length;
+		}
+		if (stopped) {
+			return;
+		}
+		long frameTime = (System.nanoTime() - startTime) / 1000;
+		try {
+			recordingOutputStream.write(type);
+			writeNumber(recordingOutputStream, Math.max(frameTime - lastFrameTime, 0));
+			writeNumber(recordingOutputStream, length);
+			if ((type & ELIDED) == 0) {
+				recordingOutputStream.write(buffer, offset, (int) length);
+			}
+			lastFrameTime = Math.max(frameTime, lastFrameTime);
+			frameCount++;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "could not record traffic, stopping recorder", ioe1);
+			stopped = true;
+		}
+	}
+
+	/**
+	 * Counts the bytes of an elided payload.
+	 *
+	 * @param length
+	 *            The number of bytes
+	 */
+	private synchronized void countElided(long length) {
+		byteCount += length;
+	}
+
+	/**
+	 * Splits the byte stream of one direction of a connection into frames.
+	 * Headers are collected until their “EndMessage” or “Data” line; the
+	 * “DataLength” field of a header announces the size of the payload that
+	 * follows a “Data” line.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private class FrameScanner {
+
+		/** The direction flag of the frames. */
+		private final int direction;
+
+		/** The header that is being collected. */
+		private byte[] header = new byte[512];
+
+		/** The length of the collected header. */
+		private int headerLength;
+
+		/** The start of the current line in the collected header. */
+		private int lineStart;
+
+		/** The announced length of the payload. */
+		private long dataLength;
+
+		/** The number of payload bytes that are still expected. */
+		private long payloadRemaining;
+
+		/**
+		 * Creates a new frame scanner.
+		 *
+		 * @param direction
+		 *            The direction flag of the frames
+		 */
+		public FrameScanner(int direction) {
+			this.direction = direction;
+		}
+
+		/**
+		 * Scans bytes that passed the connection.
+		 *
+		 * @param buffer
+		 *            The buffer containing the bytes
+		 * @param offset
+		 *            The offset of the bytes in the buffer
+		 * @param length
+		 *            The number of bytes
+		 */
+		public synchronized void scan(byte[] buffer, int offset, int length) {
+			int position = offset;
+			int end = offset + length;
+			while (position < end) {
+				if (payloadRemaining > 0) {
+					int payloadLength = (int) Math.min(end - position, payloadRemaining);
+					if (elidePayloads) {
+						countElided(payloadLength);
+					} else {
+						record(direction | PAYLOAD, buffer, position, payloadLength);
+					}
+					payloadRemaining -= payloadLength;
+					position += payloadLength;
+					continue;
+				}
+				byte nextByte = buffer[position++];
+				if (headerLength == header.length) {
+					byte[] newHeader = new byte[header.length * 2];
+					System.arraycopy(header, 0, newHeader, 0, headerLength);
+					header = newHeader;
+				}
+				header[headerLength++] = nextByte;
+				if (nextByte == '\n') {
+					endLine();
+				}
+			}
+		}
+
+		/**
+		 * Processes the line that has just been completed.
+		 */
+		private void endLine() {
+			int lineEnd = headerLength - 1;
+			if ((lineEnd > lineStart) && (header[lineEnd - 1] == '\r')) {
+				lineEnd--;
+			}
+			String line = new String(header, lineStart, lineEnd - lineStart, Charsets.UTF_8).trim();
+			lineStart = headerLength;
+			if (line.regionMatches(true, 0, "DataLength=", 0, 11)) {
+				dataLength = Math.max(FcpUtils.safeParseLong(line.substring(11), 0), 0);
+			} else if ("EndMessage".equalsIgnoreCase(line)) {
+				endHeader();
+			} else if ("Data".equalsIgnoreCase(line)) {
+				payloadRemaining = dataLength;
+				endHeader();
+				if (elidePayloads && (payloadRemaining > 0)) {
+					record(direction | PAYLOAD | ELIDED, null, 0, payloadRemaining);
+				}
+			}
+		}
+
+		/**
+		 * Records the collected header and starts a new one.
+		 */
+		private void endHeader() {
+			record(direction, header, 0, headerLength);
+			headerLength = 0;
+			lineStart = 0;
+			dataLength = 0;
+		}
+
+	}
+
+}
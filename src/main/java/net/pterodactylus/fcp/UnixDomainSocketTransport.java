@@ -0,0 +1,288 @@
+/*
+ * jFCPlib - UnixDomainSocketTransport.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * {@link FcpTransport} implementation that connects to a Unix domain socket.
+ * Freenet nodes only listen on TCP ports, so this transport is meant to be
+ * used with a local proxy that relays a Unix domain socket to the node’s FCP
+ * port, e.g. when the FCP port is not reachable from a sandboxed process.
+ * <p>
+ * Unix domain socket channels were added in Java 16; as this library still
+ * runs on older Java versions they are created using reflection, and
+ * {@link #connect()} throws an {@link IOException} on older runtimes.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class UnixDomainSocketTransport implements FcpTransport {
+
+	/** The path of the socket file. */
+	private final File socketFile;
+
+	/** The socket channel, if connected. */
+	private SocketChannel socketChannel;
+
+	/**
+	 * Creates a new Unix domain socket transport.
+	 *
+	 * @param socketFile
+	 *            The path of the socket file
+	 */
+	public UnixDomainSocketTransport(File socketFile) {
+		this.socketFile = socketFile;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the path of the socket file.
+	 *
+	 * @return The path of the socket file
+	 */
+	public File getSocketFile() {
+		return socketFile;
+	}
+
+	//
+	// FCPTRANSPORT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void connect() throws IOException {
+		SocketChannel newSocketChannel = openChannel(SocketChannel.class);
+		try {
+			newSocketChannel.connect(createAddress(socketFile));
+		} catch (IOException ioe1) {
+			FcpUtils.close(newSocketChannel);
+			throw ioe1;
+		}
+		socketChannel = newSocketChannel;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized InputStream getInputStream() throws IOException {
+		return new ChannelInputStream(socketChannel);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized OutputStream getOutputStream() throws IOException {
+		return new ChannelOutputStream(socketChannel);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public synchronized void close() {
+		FcpUtils.close(socketChannel);
+		socketChannel = null;
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "unix:" + socketFile;
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Opens a new, unconnected Unix domain socket channel. The given channel
+	 * class must be either {@link SocketChannel} or
+	 * {@link ServerSocketChannel}.
+	 *
+	 * @param <T>
+	 *            The type of the channel
+	 * @param channelClass
+	 *            The class of the channel
+	 * @return The new channel
+	 * @throws IOException
+	 *             if the channel can not be opened, or Unix domain sockets
+	 *             are not supported by the runtime
+	 */
+	static <T> T openChannel(Class<T> channelClass) throws IOException {
+		try {
+			Class<?> protocolFamilyClass = Class.forName("java.net.ProtocolFamily");
+			Object unixProtocolFamily = Class.forName("java.net.StandardProtocolFamily").getField("UNIX").get(null);
+			return channelClass.cast(channelClass.getMethod("open", protocolFamilyClass).invoke(null, unixProtocolFamily));
+		} catch (InvocationTargetException ite1) {
+			if (ite1.getCause() instanceof IOException) {
+				throw (IOException) ite1.getCause();
+			}
+			throw new IOException("could not open unix domain socket", ite1.getCause());
+		} catch (Exception e1) {
+			throw new IOException("unix domain sockets are not supported by this runtime", e1);
+		}
+	}
+
+	/**
+	 * Creates the address of the Unix domain socket at the given path.
+	 *
+	 * @param socketFile
+	 *            The path of the socket file
+	 * @return The address of the socket
+	 * @throws IOException
+	 *             if Unix domain sockets are not supported by the runtime
+	 */
+	static SocketAddress createAddress(File socketFile) throws IOException {
+		try {
+			return (SocketAddress) Class.forName("java.net.UnixDomainSocketAddress").getMethod("of", String.class).invoke(null, socketFile.getPath());
+		} catch (Exception e1) {
+			throw new IOException("unix domain sockets are not supported by this runtime", e1);
+		}
+	}
+
+	/**
+	 * Input stream that reads from a blocking socket channel. Unlike the
+	 * streams returned by {@link java.nio.channels.Channels} this stream does
+	 * not lock the channel, so reading and writing can happen concurrently.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class ChannelInputStream extends InputStream {
+
+		/** The channel to read from. */
+		private final SocketChannel socketChannel;
+
+		/** The buffer for {@link #read()}. */
+		private final byte[] nextByte = new byte[1];
+
+		/**
+		 * Creates a new channel input stream.
+		 *
+		 * @param socketChannel
+		 *            The channel to read from
+		 */
+		public ChannelInputStream(SocketChannel socketChannel) {
+			this.socketChannel = socketChannel;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read() throws IOException {
+			int read;
+			do {
+				read = read(nextByte, 0, 1);
+			} while (read == 0);
+			return (read == -1) ? -1 : (nextByte[0] & 0xff);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] data, int offset, int length) throws IOException {
+			if (length == 0) {
+				return 0;
+			}
+			return socketChannel.read(ByteBuffer.wrap(data, offset, length));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			socketChannel.close();
+		}
+
+	}
+
+	/**
+	 * Output stream that writes to a blocking socket channel.
+	 *
+	 * @see ChannelInputStream
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class ChannelOutputStream extends OutputStream {
+
+		/** The channel to write to. */
+		private final SocketChannel socketChannel;
+
+		/**
+		 * Creates a new channel output stream.
+		 *
+		 * @param socketChannel
+		 *            The channel to write to
+		 */
+		public ChannelOutputStream(SocketChannel socketChannel) {
+			this.socketChannel = socketChannel;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int data) throws IOException {
+			write(new byte[] { (byte) data }, 0, 1);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] data, int offset, int length) throws IOException {
+			ByteBuffer buffer = ByteBuffer.wrap(data, offset, length);
+			while (buffer.hasRemaining()) {
+				socketChannel.write(buffer);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close() throws IOException {
+			socketChannel.close();
+		}
+
+	}
+
+}
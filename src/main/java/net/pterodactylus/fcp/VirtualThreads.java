@@ -0,0 +1,158 @@
+/*
+ * jFCPlib - VirtualThreads.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads on Java 21 or later. The library is compiled for
+ * older Java versions, so the virtual thread API is accessed using
+ * reflection. Use {@link #isAvailable()} to check whether virtual threads
+ * are supported by the running JVM.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class VirtualThreads {
+
+	/** The {@code Thread.ofVirtual()} method, or {@code null}. */
+	private static final Method ofVirtualMethod;
+
+	/** The {@code Thread.Builder.name(String, long)} method, or {@code null}. */
+	private static final Method nameMethod;
+
+	/** The {@code Thread.Builder.factory()} method, or {@code null}. */
+	private static final Method factoryMethod;
+
+	/** The {@code Executors.newThreadPerTaskExecutor()} method, or {@code null}. */
+	private static final Method newThreadPerTaskExecutorMethod;
+
+	static {
+		Method ofVirtual = null;
+		Method name = null;
+		Method factory = null;
+		Method newThreadPerTaskExecutor = null;
+		boolean available = false;
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builderClass.getMethod("name", String.class, long.class);
+			factory = builderClass.getMethod("factory");
+			newThreadPerTaskExecutor = Class.forName("java.util.concurrent.Executors").getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+			/* Java 19 and 20 have the API but throw unless preview is enabled. */
+			factory.invoke(ofVirtual.invoke(null));
+			available = true;
+		} catch (ClassNotFoundException cnfe1) {
+			/* Java 18 or older. */
+		} catch (NoSuchMethodException nsme1) {
+			/* Java 18 or older. */
+		} catch (IllegalAccessException iae1) {
+			/* not accessible. */
+		} catch (InvocationTargetException ite1) {
+			/* Java 19 or 20 without preview features. */
+		}
+		ofVirtualMethod = available ? ofVirtual : null;
+		nameMethod = available ? name : null;
+		factoryMethod = available ? factory : null;
+		newThreadPerTaskExecutorMethod = available ? newThreadPerTaskExecutor : null;
+	}
+
+	/**
+	 * Returns whether the running JVM supports virtual threads. On Java 19
+	 * and 20 virtual threads are only available if preview features are
+	 * enabled.
+	 *
+	 * @return {@code true} if virtual threads are supported, {@code false}
+	 *         otherwise
+	 */
+	public static boolean isAvailable() {
+		return newThreadPerTaskExecutorMethod != null;
+	}
+
+	/**
+	 * Creates a thread factory that creates virtual threads. The names of the
+	 * threads consist of the given prefix and a counter.
+	 *
+	 * @param namePrefix
+	 *            The prefix of the thread names
+	 * @return A thread factory for virtual threads
+	 * @throws UnsupportedOperationException
+	 *             if the running JVM does not support virtual threads
+	 */
+	public static ThreadFactory newThreadFactory(String namePrefix) throws UnsupportedOperationException {
+		if (!isAvailable()) {
+			throw new UnsupportedOperationException("virtual threads require Java 21");
+		}
+		Object builder = invoke(ofVirtualMethod, null);
+		builder = invoke(nameMethod, builder, namePrefix, 0L);
+		return (ThreadFactory) invoke(factoryMethod, builder);
+	}
+
+	/**
+	 * Creates an executor that runs every task in a new virtual thread. This
+	 * is the executor to use for clients that issue a large number of
+	 * concurrent blocking calls.
+	 *
+	 * @param namePrefix
+	 *            The prefix of the thread names
+	 * @return An executor that runs every task in a new virtual thread
+	 * @throws UnsupportedOperationException
+	 *             if the running JVM does not support virtual threads
+	 */
+	public static ExecutorService newExecutor(String namePrefix) throws UnsupportedOperationException {
+		return (ExecutorService) invoke(newThreadPerTaskExecutorMethod, null, newThreadFactory(namePrefix));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Invokes the given method, unwrapping reflection exceptions.
+	 *
+	 * @param method
+	 *            The method to invoke
+	 * @param object
+	 *            The object to invoke the method on, or {@code null} for a
+	 *            static method
+	 * @param parameters
+	 *            The parameters of the method
+	 * @return The return value of the method
+	 */
+	private static Object invoke(Method method, Object object, Object... parameters) {
+		try {
+			return method.invoke(object, parameters);
+		} catch (IllegalAccessException iae1) {
+			throw new UnsupportedOperationException("can not access " + method, iae1);
+		} catch (InvocationTargetException ite1) {
+			Throwable cause = ite1.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new UnsupportedOperationException(cause);
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * jFCPlib - BatchInsertListener.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.EventListener;
+
+/**
+ * Listener for the inserts started by
+ * {@link FcpClient#insert(Iterable, int, BatchInsertListener)}. The listener
+ * is notified in the thread that called that method.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public interface BatchInsertListener extends EventListener {
+
+	/**
+	 * Notifies a listener that an insert has been sent to the node. The
+	 * futures of the handle can be used to act on the earlier stages of the
+	 * insert.
+	 *
+	 * @param insertHandle
+	 *            The handle of the insert
+	 */
+	public void insertStarted(InsertHandle insertHandle);
+
+	/**
+	 * Notifies a listener that an insert has finished, either successfully
+	 * or not. The success future of the handle is done.
+	 *
+	 * @param insertHandle
+	 *            The handle of the insert
+	 */
+	public void insertFinished(InsertHandle insertHandle);
+
+}
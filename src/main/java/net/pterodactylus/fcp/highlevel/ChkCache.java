@@ -0,0 +1,631 @@
+/*
+ * jFCPlib - ChkCache.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import net.pterodactylus.fcp.FcpUtils;
+import net.pterodactylus.fcp.Spool;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Cache for the results of CHK requests. Data behind a CHK never changes, so
+ * successful results can be served from the cache without asking the node.
+ * <p>
+ * The cache has two tiers. The memory tier keeps a reference to the spools
+ * of small payloads that are held in memory; cached payloads are therefore
+ * not copied, but they do count against the memory budget of the
+ * {@link net.pterodactylus.fcp.SpoolManager}. The optional disk tier stores
+ * every payload in a file in the cache directory, named after the SHA-1 hash
+ * of the cache key; an index file records the length, content type and
+ * usage order of the files so that the cache survives restarts. Both tiers
+ * evict the least recently used entries first.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ChkCache implements Closeable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ChkCache.class.getName());
+
+	/** The name of the index file. */
+	private static final String INDEX_FILENAME = "index";
+
+	/** The version of the index file format. */
+	private static final int INDEX_VERSION = 1;
+
+	/** The length of a SHA-1 hash. */
+	private static final int HASH_LENGTH = 20;
+
+	/** The pattern of the names of the files of the disk tier. */
+	private static final Pattern HASH_PATTERN = Pattern.compile("[0-9a-f]{" + (HASH_LENGTH * 2) + "}");
+
+	/** The maximum size of the memory tier. */
+	private final long maxMemorySize;
+
+	/** The maximum size of a payload in the memory tier. */
+	private final long maxMemoryEntrySize;
+
+	/** The directory of the disk tier, or {@code null}. */
+	private final File directory;
+
+	/** The maximum size of the disk tier. */
+	private final long maxDiskSize;
+
+	/** The entries of the memory tier, in access order. */
+	private final LinkedHashMap<String, MemoryEntry> memoryEntries = new LinkedHashMap<String, MemoryEntry>(16, 0.75f, true);
+
+	/** The entries of the disk tier, by hash, in access order. */
+	private final LinkedHashMap<String, DiskEntry> diskEntries = new LinkedHashMap<String, DiskEntry>(16, 0.75f, true);
+
+	/** The hashes of the entries that are being written to disk. */
+	private final Set<String> pendingWrites = new HashSet<String>();
+
+	/** The executor that writes entries to disk, or {@code null}. */
+	private final ExecutorService diskWriter;
+
+	/** The current size of the memory tier. */
+	private long memorySize;
+
+	/** The current size of the disk tier. */
+	private long diskSize;
+
+	/** The number of hits in the memory tier. */
+	private long memoryHits;
+
+	/** The number of hits in the disk tier. */
+	private long diskHits;
+
+	/** The number of misses. */
+	private long misses;
+
+	/** The number of evicted entries. */
+	private long evictions;
+
+	/** Whether the cache has been closed. */
+	private boolean closed;
+
+	/**
+	 * Creates a new cache that only has a memory tier.
+	 *
+	 * @param maxMemorySize
+	 *            The maximum size of the memory tier
+	 * @param maxMemoryEntrySize
+	 *            The maximum size of a payload in the memory tier
+	 */
+	public ChkCache(long maxMemorySize, long maxMemoryEntrySize) {
+		this.maxMemorySize = maxMemorySize;
+		this.maxMemoryEntrySize = maxMemoryEntrySize;
+		this.directory = null;
+		this.maxDiskSize = 0;
+		this.diskWriter = null;
+	}
+
+	/**
+	 * Creates a new cache with a memory tier and a disk tier. If the
+	 * directory contains an index from an earlier cache, its entries are
+	 * loaded; files without an entry in the index are removed.
+	 *
+	 * @param maxMemorySize
+	 *            The maximum size of the memory tier
+	 * @param maxMemoryEntrySize
+	 *            The maximum size of a payload in the memory tier
+	 * @param directory
+	 *            The directory of the disk tier
+	 * @param maxDiskSize
+	 *            The maximum size of the disk tier
+	 * @throws IOException
+	 *             if the directory can not be created or read
+	 */
+	public ChkCache(long maxMemorySize, long maxMemoryEntrySize, File directory, long maxDiskSize) throws IOException {
+		this.maxMemorySize = maxMemorySize;
+		this.maxMemoryEntrySize = maxMemoryEntrySize;
+		this.directory = directory;
+		this.maxDiskSize = maxDiskSize;
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("could not create cache directory " + directory);
+		}
+		loadIndex();
+		diskWriter = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ChkCache writer %d").build());
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether results for the given URI can be cached.
+	 *
+	 * @param uri
+	 *            The URI to check
+	 * @return {@code true} if the URI is a CHK, {@code false} otherwise
+	 */
+	public static boolean isCacheable(String uri) {
+		return (uri != null) && uri.regionMatches(true, 0, "CHK@", 0, 4);
+	}
+
+	/**
+	 * Returns the number of requests that were served from the memory tier.
+	 *
+	 * @return The number of memory hits
+	 */
+	public synchronized long getMemoryHits() {
+		return memoryHits;
+	}
+
+	/**
+	 * Returns the number of requests that were served from the disk tier.
+	 *
+	 * @return The number of disk hits
+	 */
+	public synchronized long getDiskHits() {
+		return diskHits;
+	}
+
+	/**
+	 * Returns the number of requests that could not be served from the
+	 * cache.
+	 *
+	 * @return The number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries that were evicted from either tier.
+	 *
+	 * @return The number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the size of the payloads in the memory tier.
+	 *
+	 * @return The size of the memory tier
+	 */
+	public synchronized long getMemorySize() {
+		return memorySize;
+	}
+
+	/**
+	 * Returns the size of the payloads in the disk tier.
+	 *
+	 * @return The size of the disk tier
+	 */
+	public synchronized long getDiskSize() {
+		return diskSize;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns the cached result for the given URI.
+	 *
+	 * @param uri
+	 *            The URI of the request
+	 * @param filterData
+	 *            Whether the data of the request is filtered
+	 * @return A new result with its own input stream, or {@code null} if the
+	 *         URI is not cached
+	 */
+	public GetResult get(String uri, boolean filterData) {
+		String key = createKey(uri, filterData);
+		InputStream inputStream = null;
+		String contentType = null;
+		long length = 0;
+		synchronized (this) {
+			MemoryEntry memoryEntry = memoryEntries.get(key);
+			if (memoryEntry != null) {
+				try {
+					inputStream = memoryEntry.spool.openInputStream();
+					contentType = memoryEntry.contentType;
+					length = memoryEntry.spool.getLength();
+					memoryHits++;
+				} catch (IOException ioe1) {
+					/* can not happen for memory spools. */
+				}
+			}
+			if ((inputStream == null) && (directory != null)) {
+				String hash = hash(key);
+				DiskEntry diskEntry = diskEntries.get(hash);
+				if (diskEntry != null) {
+					try {
+						inputStream = new FileInputStream(new File(directory, hash));
+						contentType = diskEntry.contentType;
+						length = diskEntry.length;
+						diskHits++;
+					} catch (IOException ioe1) {
+						logger.log(Level.WARNING, "could not open cache file for " + uri, ioe1);
+						removeDiskEntry(hash);
+					}
+				}
+			}
+			if (inputStream == null) {
+				misses++;
+				return null;
+			}
+		}
+		return new GetResult().success(true).contentType(contentType).contentLength(length).inputStream(inputStream);
+	}
+
+	/**
+	 * Stores the given result in the cache. Only successful results for CHKs
+	 * are stored. The cache keeps its own reference to the payload, so the
+	 * given result can be consumed and closed as usual. Nothing is stored
+	 * once the cache has been closed.
+	 *
+	 * @param uri
+	 *            The URI of the request
+	 * @param filterData
+	 *            Whether the data of the request is filtered
+	 * @param getResult
+	 *            The result of the request
+	 */
+	public void put(String uri, boolean filterData, GetResult getResult) {
+		if (!isCacheable(uri) || !getResult.isSuccess()) {
+			return;
+		}
+		final Spool spool = getResult.getSpool();
+		if (spool == null) {
+			return;
+		}
+		String key = createKey(uri, filterData);
+		synchronized (this) {
+			if (closed) {
+				return;
+			}
+			if (!spool.isSpilled() && (spool.getLength() <= maxMemoryEntrySize) && (spool.getLength() <= maxMemorySize) && !memoryEntries.containsKey(key)) {
+				spool.retain();
+				memoryEntries.put(key, new MemoryEntry(spool, getResult.getContentType()));
+				memorySize += spool.getLength();
+				evictMemoryEntries();
+			}
+			if (directory == null) {
+				return;
+			}
+			final String hash = hash(key);
+			if (diskEntries.containsKey(hash) || pendingWrites.contains(hash) || (spool.getLength() > maxDiskSize)) {
+				return;
+			}
+			pendingWrites.add(hash);
+			spool.retain();
+			final String contentType = getResult.getContentType();
+			diskWriter.execute(new Runnable() {
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void run() {
+					try {
+						writeDiskEntry(hash, spool, contentType);
+					} finally {
+						spool.release();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Writes the index of the disk tier. This method does nothing if the
+	 * cache does not have a disk tier.
+	 *
+	 * @throws IOException
+	 *             if the index can not be written
+	 */
+	public synchronized void flush() throws IOException {
+		if (directory == null) {
+			return;
+		}
+		File temporaryIndexFile = new File(directory, INDEX_FILENAME + ".tmp");
+		DataOutputStream indexOutputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryIndexFile)));
+		try {
+			indexOutputStream.writeInt(INDEX_VERSION);
+			indexOutputStream.writeInt(diskEntries.size());
+			for (Entry<String, DiskEntry> diskEntry : diskEntries.entrySet()) {
+				indexOutputStream.write(BaseEncoding.base16().lowerCase().decode(diskEntry.getKey()));
+				indexOutputStream.writeLong(diskEntry.getValue().length);
+				indexOutputStream.writeUTF((diskEntry.getValue().contentType != null) ? diskEntry.getValue().contentType : "");
+			}
+		} finally {
+			FcpUtils.close(indexOutputStream);
+		}
+		File indexFile = new File(directory, INDEX_FILENAME);
+		if (!temporaryIndexFile.renameTo(indexFile)) {
+			indexFile.delete();
+			if (!temporaryIndexFile.renameTo(indexFile)) {
+				throw new IOException("could not replace " + indexFile);
+			}
+		}
+	}
+
+	/**
+	 * Releases the memory tier, waits for pending disk writes, and writes the
+	 * index of the disk tier. Results that are stored after the cache has
+	 * been closed are ignored.
+	 */
+	@Override
+	public void close() {
+		synchronized (this) {
+			closed = true;
+		}
+		if (diskWriter != null) {
+			diskWriter.shutdown();
+			try {
+				diskWriter.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException ie1) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			for (MemoryEntry memoryEntry : memoryEntries.values()) {
+				memoryEntry.spool.release();
+			}
+			memoryEntries.clear();
+			memorySize = 0;
+			try {
+				flush();
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, "could not write cache index", ioe1);
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates the cache key for the given request.
+	 *
+	 * @param uri
+	 *            The URI of the request
+	 * @param filterData
+	 *            Whether the data of the request is filtered
+	 * @return The cache key
+	 */
+	private static String createKey(String uri, boolean filterData) {
+		return filterData + ":" + uri;
+	}
+
+	/**
+	 * Returns the SHA-1 hash of the given cache key, in hexadecimal.
+	 *
+	 * @param key
+	 *            The cache key
+	 * @return The hash of the key
+	 */
+	private static String hash(String key) {
+		return Hashing.sha1().hashString(key, Charsets.UTF_8).toString();
+	}
+
+	/**
+	 * Evicts the least recently used entries from the memory tier until it
+	 * is within its size limit.
+	 */
+	private void evictMemoryEntries() {
+		Iterator<MemoryEntry> memoryEntryIterator = memoryEntries.values().iterator();
+		while ((memorySize > maxMemorySize) && memoryEntryIterator.hasNext()) {
+			MemoryEntry memoryEntry = memoryEntryIterator.next();
+			memoryEntryIterator.remove();
+			memorySize -= memoryEntry.spool.getLength();
+			memoryEntry.spool.release();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries from the disk tier until it is
+	 * within its size limit.
+	 */
+	private void evictDiskEntries() {
+		while (diskSize > maxDiskSize) {
+			String hash = diskEntries.keySet().iterator().next();
+			removeDiskEntry(hash);
+			evictions++;
+		}
+	}
+
+	/**
+	 * Removes the entry with the given hash from the disk tier.
+	 *
+	 * @param hash
+	 *            The hash of the entry
+	 */
+	private void removeDiskEntry(String hash) {
+		DiskEntry diskEntry = diskEntries.remove(hash);
+		if (diskEntry != null) {
+			diskSize -= diskEntry.length;
+			new File(directory, hash).delete();
+		}
+	}
+
+	/**
+	 * Writes the payload of the given spool to the disk tier. This method is
+	 * run by {@link #diskWriter}.
+	 *
+	 * @param hash
+	 *            The hash of the entry
+	 * @param spool
+	 *            The spool to write
+	 * @param contentType
+	 *            The content type of the payload
+	 */
+	private void writeDiskEntry(String hash, Spool spool, String contentType) {
+		File file = new File(directory, hash);
+		boolean written = false;
+		InputStream inputStream = null;
+		OutputStream outputStream = null;
+		try {
+			inputStream = spool.openInputStream();
+			outputStream = new FileOutputStream(file);
+			FcpUtils.copy(inputStream, outputStream);
+			outputStream.close();
+			written = true;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "could not write cache file " + file, ioe1);
+		} finally {
+			FcpUtils.close(inputStream);
+			FcpUtils.close(outputStream);
+		}
+		synchronized (this) {
+			pendingWrites.remove(hash);
+			if (!written) {
+				file.delete();
+				return;
+			}
+			diskEntries.put(hash, new DiskEntry(spool.getLength(), contentType));
+			diskSize += spool.getLength();
+			evictDiskEntries();
+		}
+	}
+
+	/**
+	 * Loads the index of the disk tier. Entries whose files are missing or
+	 * have the wrong length are dropped, and payload files that are not in
+	 * the index are deleted. Files whose names are not hashes are left alone,
+	 * as they do not belong to the cache.
+	 */
+	private void loadIndex() {
+		File indexFile = new File(directory, INDEX_FILENAME);
+		if (indexFile.exists()) {
+			DataInputStream indexInputStream = null;
+			try {
+				indexInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+				if (indexInputStream.readInt() == INDEX_VERSION) {
+					int entryCount = indexInputStream.readInt();
+					byte[] hashBytes = new byte[HASH_LENGTH];
+					for (int entryIndex = 0; entryIndex < entryCount; entryIndex++) {
+						indexInputStream.readFully(hashBytes);
+						long length = indexInputStream.readLong();
+						String contentType = indexInputStream.readUTF();
+						String hash = BaseEncoding.base16().lowerCase().encode(hashBytes);
+						if (new File(directory, hash).length() == length) {
+							diskEntries.put(hash, new DiskEntry(length, (contentType.length() > 0) ? contentType : null));
+							diskSize += length;
+						}
+					}
+				}
+			} catch (EOFException eofe1) {
+				logger.log(Level.WARNING, "cache index is truncated", eofe1);
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, "could not read cache index", ioe1);
+			} finally {
+				FcpUtils.close(indexInputStream);
+			}
+		}
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				if (HASH_PATTERN.matcher(file.getName()).matches() && !diskEntries.containsKey(file.getName())) {
+					file.delete();
+				}
+			}
+		}
+		evictDiskEntries();
+	}
+
+	/**
+	 * An entry of the memory tier.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class MemoryEntry {
+
+		/** The spool holding the payload. */
+		final Spool spool;
+
+		/** The content type of the payload. */
+		final String contentType;
+
+		/**
+		 * Creates a new memory entry.
+		 *
+		 * @param spool
+		 *            The spool holding the payload
+		 * @param contentType
+		 *            The content type of the payload
+		 */
+		MemoryEntry(Spool spool, String contentType) {
+			this.spool = spool;
+			this.contentType = contentType;
+		}
+
+	}
+
+	/**
+	 * An entry of the disk tier.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class DiskEntry {
+
+		/** The length of the payload. */
+		final long length;
+
+		/** The content type of the payload. */
+		final String contentType;
+
+		/**
+		 * Creates a new disk entry.
+		 *
+		 * @param length
+		 *            The length of the payload
+		 * @param contentType
+		 *            The content type of the payload
+		 */
+		DiskEntry(long length, String contentType) {
+			this.length = length;
+			this.contentType = contentType;
+		}
+
+	}
+
+}
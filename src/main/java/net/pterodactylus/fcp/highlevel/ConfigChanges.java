@@ -0,0 +1,142 @@
+/*
+ * jFCPlib - ConfigChanges.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes to a {@link Configuration}. Only values that differ from the
+ * current values of the configuration are kept, so the changes are the
+ * minimal set of options that have to be sent to the node; setting an option
+ * back to its current value removes it from the changes.
+ *
+ * @see Configuration#change()
+ * @see FcpClient#modifyConfig(ConfigChanges)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ConfigChanges {
+
+	/** The configuration that is changed. */
+	private final Configuration configuration;
+
+	/** The changed values, by option name. */
+	private final Map<String, String> changes = new LinkedHashMap<String, String>();
+
+	/**
+	 * Creates new changes to the given configuration.
+	 *
+	 * @param configuration
+	 *            The configuration to change
+	 */
+	ConfigChanges(Configuration configuration) {
+		this.configuration = configuration;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the configuration that is changed.
+	 *
+	 * @return The changed configuration
+	 */
+	public Configuration getConfiguration() {
+		return configuration;
+	}
+
+	/**
+	 * Returns the changed values.
+	 *
+	 * @return The changed values, by option name
+	 */
+	public Map<String, String> getChanges() {
+		return Collections.unmodifiableMap(changes);
+	}
+
+	/**
+	 * Returns whether any option has been changed.
+	 *
+	 * @return {@code true} if there are no changes, {@code false} otherwise
+	 */
+	public boolean isEmpty() {
+		return changes.isEmpty();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Sets the given option to the given value.
+	 *
+	 * @param option
+	 *            The name of the option
+	 * @param value
+	 *            The new value of the option
+	 * @return These changes
+	 * @throws IllegalArgumentException
+	 *             if the configuration does not have the option
+	 */
+	public ConfigChanges set(String option, String value) throws IllegalArgumentException {
+		ConfigOption configOption = configuration.getOption(option);
+		if (configOption == null) {
+			throw new IllegalArgumentException("unknown option " + option);
+		}
+		if (configOption.isCurrent(value)) {
+			changes.remove(option);
+		} else {
+			changes.put(option, value);
+		}
+		return this;
+	}
+
+	/**
+	 * Sets the given option to the given boolean value.
+	 *
+	 * @param option
+	 *            The name of the option
+	 * @param value
+	 *            The new value of the option
+	 * @return These changes
+	 * @throws IllegalArgumentException
+	 *             if the configuration does not have the option
+	 */
+	public ConfigChanges set(String option, boolean value) throws IllegalArgumentException {
+		return set(option, String.valueOf(value));
+	}
+
+	/**
+	 * Sets the given option to the given number value.
+	 *
+	 * @param option
+	 *            The name of the option
+	 * @param value
+	 *            The new value of the option
+	 * @return These changes
+	 * @throws IllegalArgumentException
+	 *             if the configuration does not have the option
+	 */
+	public ConfigChanges set(String option, long value) throws IllegalArgumentException {
+		return set(option, String.valueOf(value));
+	}
+
+}
@@ -0,0 +1,361 @@
+/*
+ * jFCPlib - ConfigOption.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+/**
+ * A single option of the node’s {@link Configuration}. The values of boolean
+ * and number options are parsed when the option is created; number values
+ * may carry the node’s unit suffixes, e.g. “k” for 1000 or “KiB” for 1024.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ConfigOption {
+
+	/**
+	 * The data types of options.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public enum DataType {
+
+		/** A string. */
+		STRING,
+
+		/** An integral number. */
+		NUMBER,
+
+		/** A boolean. */
+		BOOLEAN,
+
+		/** A list of strings, separated by semicolons. */
+		STRING_ARRAY;
+
+		/**
+		 * Returns the data type with the given name, as sent by the node.
+		 *
+		 * @param name
+		 *            The name of the data type
+		 * @return The data type, or {@link #STRING} if the name is unknown
+		 */
+		static DataType fromName(String name) {
+			if ("number".equalsIgnoreCase(name)) {
+				return NUMBER;
+			}
+			if ("boolean".equalsIgnoreCase(name)) {
+				return BOOLEAN;
+			}
+			if ("atomic".equalsIgnoreCase(name) || "stringArray".equalsIgnoreCase(name)) {
+				return STRING_ARRAY;
+			}
+			return STRING;
+		}
+
+	}
+
+	/** The name of the option. */
+	private final String name;
+
+	/** The data type of the option. */
+	private final DataType dataType;
+
+	/** The current value of the option, or {@code null}. */
+	private final String current;
+
+	/** The default value of the option, or {@code null}. */
+	private final String defaultValue;
+
+	/** The short description of the option, or {@code null}. */
+	private final String shortDescription;
+
+	/** The long description of the option, or {@code null}. */
+	private final String longDescription;
+
+	/** The sort order of the option. */
+	private final int sortOrder;
+
+	/** The expert flag of the option. */
+	private final boolean expert;
+
+	/** The force-write flag of the option. */
+	private final boolean forceWrite;
+
+	/** The parsed current number value, if the value is a number. */
+	private final long numberValue;
+
+	/** Whether the current value could be parsed as a number. */
+	private final boolean number;
+
+	/**
+	 * Creates a new config option.
+	 *
+	 * @param name
+	 *            The name of the option
+	 * @param dataType
+	 *            The data type of the option
+	 * @param current
+	 *            The current value of the option, or {@code null}
+	 * @param defaultValue
+	 *            The default value of the option, or {@code null}
+	 * @param shortDescription
+	 *            The short description of the option, or {@code null}
+	 * @param longDescription
+	 *            The long description of the option, or {@code null}
+	 * @param sortOrder
+	 *            The sort order of the option
+	 * @param expert
+	 *            The expert flag of the option
+	 * @param forceWrite
+	 *            The force-write flag of the option
+	 */
+	ConfigOption(String name, DataType dataType, String current, String defaultValue, String shortDescription, String longDescription, int sortOrder, boolean expert, boolean forceWrite) {
+		this.name = name;
+		this.dataType = dataType;
+		this.current = current;
+		this.defaultValue = defaultValue;
+		this.shortDescription = shortDescription;
+		this.longDescription = longDescription;
+		this.sortOrder = sortOrder;
+		this.expert = expert;
+		this.forceWrite = forceWrite;
+		Long parsedNumber = (dataType == DataType.NUMBER) ? parseNumber(current) : null;
+		number = parsedNumber != null;
+		numberValue = number ? parsedNumber : 0;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the name of the option, e.g. “node.name”.
+	 *
+	 * @return The name of the option
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the subsystem of the option, i.e. the part of the name before
+	 * the first dot.
+	 *
+	 * @return The subsystem of the option
+	 */
+	public String getSubsystem() {
+		int dot = name.indexOf('.');
+		return (dot == -1) ? name : name.substring(0, dot);
+	}
+
+	/**
+	 * Returns the data type of the option.
+	 *
+	 * @return The data type of the option
+	 */
+	public DataType getDataType() {
+		return dataType;
+	}
+
+	/**
+	 * Returns the current value of the option.
+	 *
+	 * @return The current value, or {@code null} if it was not requested
+	 */
+	public String getCurrent() {
+		return current;
+	}
+
+	/**
+	 * Returns the current value of a boolean option.
+	 *
+	 * @return The current value
+	 */
+	public boolean getBooleanValue() {
+		return Boolean.parseBoolean(current);
+	}
+
+	/**
+	 * Returns whether the current value is a valid number.
+	 *
+	 * @return {@code true} if {@link #getNumberValue()} can be used,
+	 *         {@code false} otherwise
+	 */
+	public boolean isNumber() {
+		return number;
+	}
+
+	/**
+	 * Returns the current value of a number option.
+	 *
+	 * @return The current value
+	 * @throws IllegalStateException
+	 *             if the current value is not a number
+	 */
+	public long getNumberValue() throws IllegalStateException {
+		if (!number) {
+			throw new IllegalStateException(name + " is not a number: " + current);
+		}
+		return numberValue;
+	}
+
+	/**
+	 * Returns the current value of a string array option.
+	 *
+	 * @return The strings of the current value
+	 */
+	public String[] getStringValues() {
+		if ((current == null) || (current.length() == 0)) {
+			return new String[0];
+		}
+		return current.split(";");
+	}
+
+	/**
+	 * Returns the default value of the option.
+	 *
+	 * @return The default value, or {@code null} if it was not requested
+	 */
+	public String getDefault() {
+		return defaultValue;
+	}
+
+	/**
+	 * Returns the short description of the option.
+	 *
+	 * @return The short description, or {@code null} if it was not requested
+	 */
+	public String getShortDescription() {
+		return shortDescription;
+	}
+
+	/**
+	 * Returns the long description of the option.
+	 *
+	 * @return The long description, or {@code null} if it was not requested
+	 */
+	public String getLongDescription() {
+		return longDescription;
+	}
+
+	/**
+	 * Returns the sort order of the option.
+	 *
+	 * @return The sort order, or {@code -1} if it is not known
+	 */
+	public int getSortOrder() {
+		return sortOrder;
+	}
+
+	/**
+	 * Returns whether the option is meant for experts.
+	 *
+	 * @return {@code true} if the option is an expert option, {@code false}
+	 *         otherwise
+	 */
+	public boolean isExpert() {
+		return expert;
+	}
+
+	/**
+	 * Returns whether the option is always written to the configuration
+	 * file.
+	 *
+	 * @return {@code true} if the option is always written, {@code false}
+	 *         otherwise
+	 */
+	public boolean isForceWrite() {
+		return forceWrite;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns whether the given value equals the current value of this
+	 * option. Boolean values are compared ignoring case, and number values
+	 * are compared numerically, so that “1k” equals “1000”.
+	 *
+	 * @param value
+	 *            The value to compare
+	 * @return {@code true} if the value equals the current value,
+	 *         {@code false} otherwise
+	 */
+	public boolean isCurrent(String value) {
+		if (value == null) {
+			return current == null;
+		}
+		if (dataType == DataType.BOOLEAN) {
+			return value.equalsIgnoreCase(current);
+		}
+		if (dataType == DataType.NUMBER) {
+			Long parsedValue = parseNumber(value);
+			if ((parsedValue != null) && number) {
+				return parsedValue == numberValue;
+			}
+		}
+		return value.equals(current);
+	}
+
+	/**
+	 * Returns a copy of this option with the given current value.
+	 *
+	 * @param current
+	 *            The new current value
+	 * @return The copy of this option
+	 */
+	ConfigOption withCurrent(String current) {
+		return new ConfigOption(name, dataType, current, defaultValue, shortDescription, longDescription, sortOrder, expert, forceWrite);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Parses a number with an optional unit suffix. “k”, “M”, “G”, and “T”
+	 * are powers of 1000, and “KiB”, “MiB”, “GiB”, and “TiB” are powers of
+	 * 1024.
+	 *
+	 * @param value
+	 *            The value to parse
+	 * @return The parsed number, or {@code null} if the value is not a number
+	 */
+	private static Long parseNumber(String value) {
+		if (value == null) {
+			return null;
+		}
+		String trimmedValue = value.trim();
+		long multiplier = 1;
+		String[] suffixes = { "KiB", "MiB", "GiB", "TiB", "k", "M", "G", "T" };
+		long[] multipliers = { 1L << 10, 1L << 20, 1L << 30, 1L << 40, 1000L, 1000000L, 1000000000L, 1000000000000L };
+		for (int index = 0; index < suffixes.length; index++) {
+			if (trimmedValue.endsWith(suffixes[index]) || ((index == 4) && trimmedValue.endsWith("K"))) {
+				multiplier = multipliers[index];
+				trimmedValue = trimmedValue.substring(0, trimmedValue.length() - ((index < 4) ? 3 : 1));
+				break;
+			}
+		}
+		try {
+			return Long.parseLong(trimmedValue.trim()) * multiplier;
+		} catch (NumberFormatException nfe1) {
+			return null;
+		}
+	}
+
+}
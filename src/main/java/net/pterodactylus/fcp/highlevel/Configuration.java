@@ -0,0 +1,201 @@
+/*
+ * jFCPlib - Configuration.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import net.pterodactylus.fcp.ConfigData;
+import net.pterodactylus.fcp.FcpUtils;
+
+/**
+ * Immutable snapshot of the node’s configuration. The snapshot is parsed
+ * once from a “ConfigData” message; its options are sorted by name, so the
+ * options of a subsystem, such as “node” or “fproxy”, are a contiguous
+ * range. Changes are collected with {@link #change()} and sent with
+ * {@link FcpClient#modifyConfig(ConfigChanges)}.
+ *
+ * @see FcpClient#getConfiguration()
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class Configuration {
+
+	/** The options, by name. */
+	private final NavigableMap<String, ConfigOption> options;
+
+	/**
+	 * Creates a new configuration from the given config data.
+	 *
+	 * @param configData
+	 *            The config data to parse
+	 */
+	public Configuration(ConfigData configData) {
+		this(parse(configData));
+	}
+
+	/**
+	 * Creates a new configuration with the given options.
+	 *
+	 * @param options
+	 *            The options, by name
+	 */
+	private Configuration(NavigableMap<String, ConfigOption> options) {
+		this.options = options;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the option with the given name.
+	 *
+	 * @param name
+	 *            The name of the option
+	 * @return The option, or {@code null} if there is no such option
+	 */
+	public ConfigOption getOption(String name) {
+		return options.get(name);
+	}
+
+	/**
+	 * Returns all options, sorted by name.
+	 *
+	 * @return All options
+	 */
+	public Collection<ConfigOption> getOptions() {
+		return Collections.unmodifiableCollection(options.values());
+	}
+
+	/**
+	 * Returns the options of the given subsystem, i.e. all options whose name
+	 * starts with the name of the subsystem and a dot.
+	 *
+	 * @param subsystem
+	 *            The name of the subsystem, e.g. “node” or “node.load”
+	 * @return The options of the subsystem, sorted by name
+	 */
+	public Collection<ConfigOption> getOptions(String subsystem) {
+		/* '/' is the character after '.', so this covers all “subsystem.*”. */
+		return Collections.unmodifiableCollection(options.subMap(subsystem + ".", true, subsystem + "/", false).values());
+	}
+
+	/**
+	 * Returns the names of all top-level subsystems.
+	 *
+	 * @return The names of the subsystems
+	 */
+	public Set<String> getSubsystems() {
+		Set<String> subsystems = new TreeSet<String>();
+		for (ConfigOption option : options.values()) {
+			subsystems.add(option.getSubsystem());
+		}
+		return subsystems;
+	}
+
+	/**
+	 * Returns the number of options.
+	 *
+	 * @return The number of options
+	 */
+	public int size() {
+		return options.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts collecting changes to this configuration.
+	 *
+	 * @return The changes to this configuration
+	 */
+	public ConfigChanges change() {
+		return new ConfigChanges(this);
+	}
+
+	/**
+	 * Returns a copy of this configuration with the current values of the
+	 * given config data, e.g. of the answer to a “ModifyConfig” message.
+	 * Options that only exist in the config data are added.
+	 *
+	 * @param configData
+	 *            The config data with the new values
+	 * @return The updated configuration
+	 */
+	Configuration update(ConfigData configData) {
+		NavigableMap<String, ConfigOption> updatedOptions = new TreeMap<String, ConfigOption>(options);
+		for (ConfigOption option : parse(configData).values()) {
+			ConfigOption oldOption = options.get(option.getName());
+			if (oldOption == null) {
+				updatedOptions.put(option.getName(), option);
+			} else if (option.getCurrent() != null) {
+				updatedOptions.put(option.getName(), oldOption.withCurrent(option.getCurrent()));
+			}
+		}
+		return new Configuration(updatedOptions);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Parses the options of the given config data. Every field name consists
+	 * of a category, such as “current” or “default”, and the name of the
+	 * option, which may contain dots itself.
+	 *
+	 * @param configData
+	 *            The config data to parse
+	 * @return The options, by name
+	 */
+	private static NavigableMap<String, ConfigOption> parse(ConfigData configData) {
+		Map<String, Map<String, String>> optionFields = new HashMap<String, Map<String, String>>();
+		for (Entry<String, String> field : configData.getFields().entrySet()) {
+			int dot = field.getKey().indexOf('.');
+			if (dot == -1) {
+				continue;
+			}
+			String option = field.getKey().substring(dot + 1);
+			Map<String, String> values = optionFields.get(option);
+			if (values == null) {
+				values = new HashMap<String, String>();
+				optionFields.put(option, values);
+			}
+			values.put(field.getKey().substring(0, dot), field.getValue());
+		}
+		NavigableMap<String, ConfigOption> options = new TreeMap<String, ConfigOption>();
+		for (Entry<String, Map<String, String>> option : optionFields.entrySet()) {
+			Map<String, String> values = option.getValue();
+			ConfigOption.DataType dataType = ConfigOption.DataType.fromName(values.get("dataType"));
+			int sortOrder = FcpUtils.safeParseInt(values.get("sortOrder"));
+			options.put(option.getKey(), new ConfigOption(option.getKey(), dataType, values.get("current"), values.get("default"), values.get("shortDescription"), values.get("longDescription"), sortOrder, Boolean.parseBoolean(values.get("expertFlag")), Boolean.parseBoolean(values.get("forceWriteFlag"))));
+		}
+		return options;
+	}
+
+}
@@ -26,14 +26,22 @@ import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicReference;
 
 import net.pterodactylus.fcp.AddPeer;
@@ -41,6 +49,8 @@ import net.pterodactylus.fcp.AllData;
 import net.pterodactylus.fcp.ClientGet;
 import net.pterodactylus.fcp.ClientHello;
 import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.ConfigData;
+import net.pterodactylus.fcp.ConnectionOptions;
 import net.pterodactylus.fcp.DataFound;
 import net.pterodactylus.fcp.EndListPeerNotes;
 import net.pterodactylus.fcp.EndListPeers;
@@ -50,12 +60,17 @@ import net.pterodactylus.fcp.FCPPluginReply;
 import net.pterodactylus.fcp.FcpAdapter;
 import net.pterodactylus.fcp.FcpConnection;
 import net.pterodactylus.fcp.FcpListener;
+import net.pterodactylus.fcp.FcpTransport;
+import net.pterodactylus.fcp.FcpUtils;
 import net.pterodactylus.fcp.GenerateSSK;
+import net.pterodactylus.fcp.GetConfig;
 import net.pterodactylus.fcp.GetFailed;
 import net.pterodactylus.fcp.GetNode;
+import net.pterodactylus.fcp.GetRequestStatus;
 import net.pterodactylus.fcp.ListPeerNotes;
 import net.pterodactylus.fcp.ListPeers;
 import net.pterodactylus.fcp.ListPersistentRequests;
+import net.pterodactylus.fcp.ModifyConfig;
 import net.pterodactylus.fcp.ModifyPeer;
 import net.pterodactylus.fcp.ModifyPeerNote;
 import net.pterodactylus.fcp.NodeData;
@@ -66,13 +81,22 @@ import net.pterodactylus.fcp.PeerNote;
 import net.pterodactylus.fcp.PeerRemoved;
 import net.pterodactylus.fcp.PersistentGet;
 import net.pterodactylus.fcp.PersistentPut;
+import net.pterodactylus.fcp.PersistentPutDir;
 import net.pterodactylus.fcp.ProtocolError;
 import net.pterodactylus.fcp.RemovePeer;
 import net.pterodactylus.fcp.SSKKeypair;
 import net.pterodactylus.fcp.SimpleProgress;
 import net.pterodactylus.fcp.WatchGlobal;
 
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
+import com.google.common.base.Supplier;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 /**
  * High-level FCP client that hides the details of the underlying FCP
@@ -100,6 +124,43 @@ public class FcpClient implements Closeable {
 	/** The listener for “connection closed” events. */
 	private FcpListener connectionClosedListener;
 
+	/** Forwards the messages of requests in flight to their listeners. */
+	private final RequestRouter requestRouter = new RequestRouter();
+
+	/**
+	 * Sends inserts again after a non-fatal failure, so that the data is not
+	 * uploaded on the connection’s reader thread. Idle threads exit after a
+	 * minute.
+	 */
+	private final ExecutorService retryExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("FcpClient insert retry %d").build());
+
+	/** Deduplicates concurrent get requests for the same URI. */
+	private final InFlightGets inFlightGets = new InFlightGets();
+
+	/** The cache for CHK requests, or {@code null}. */
+	private volatile ChkCache chkCache;
+
+	/** The cache for failed requests, or {@code null}. */
+	private volatile NegativeCache negativeCache;
+
+	/** The cache for redirects, or {@code null}. */
+	private volatile RedirectCache redirectCache;
+
+	/** The cache for node queries, or {@code null}. */
+	private QueryCache queryCache;
+
+	/** The mirror of the node’s persistent requests, or {@code null}. */
+	private RequestMirror requestMirror;
+
+	/** The journal of submitted requests, or {@code null}. */
+	private RequestJournal requestJournal;
+
+	/** Serializes the listings of the peer table. */
+	private final Object peerTableLock = new Object();
+
+	/** The table of the node’s peers, or {@code null}. */
+	private volatile PeerTable peerTable;
+
 	/**
 	 * Creates an FCP client with the given name.
 	 *
@@ -158,6 +219,16 @@ public class FcpClient implements Closeable {
 		this(new FcpConnection(host, port), false);
 	}
 
+	/**
+	 * Creates an FCP client that reaches the node using the given transport.
+	 *
+	 * @param transport
+	 *            The transport to the Freenet node
+	 */
+	public FcpClient(FcpTransport transport) {
+		this(new FcpConnection(transport), false);
+	}
+
 	/**
 	 * Creates a new high-level FCP client that will use the given connection.
 	 * This constructor will assume that the FCP connection is already
@@ -194,6 +265,7 @@ public class FcpClient implements Closeable {
 			}
 		};
 		fcpConnection.addFcpListener(connectionClosedListener);
+		fcpConnection.addFcpListener(requestRouter);
 	}
 
 	//
@@ -263,12 +335,139 @@ public class FcpClient implements Closeable {
 		return fcpConnection;
 	}
 
+	/**
+	 * Returns the cache for CHK requests.
+	 *
+	 * @return The CHK cache, or {@code null} if CHK requests are not cached
+	 */
+	public ChkCache getChkCache() {
+		return chkCache;
+	}
+
+	/**
+	 * Sets the cache for CHK requests. Successful results of CHK requests
+	 * are stored in the cache, and later requests for the same CHK are
+	 * served from the cache without contacting the node. The cache is not
+	 * closed by this client.
+	 *
+	 * @param chkCache
+	 *            The CHK cache, or {@code null} to not cache CHK requests
+	 */
+	public void setChkCache(ChkCache chkCache) {
+		this.chkCache = chkCache;
+	}
+
+	/**
+	 * Returns the cache for failed requests.
+	 *
+	 * @return The negative cache, or {@code null} if failures are not cached
+	 */
+	public NegativeCache getNegativeCache() {
+		return negativeCache;
+	}
+
+	/**
+	 * Sets the cache for failed requests. Requests that failed with a
+	 * cacheable error code are stored in the cache, and later requests for
+	 * the same URI fail with the same error code without contacting the node
+	 * until the failure expires.
+	 *
+	 * @param negativeCache
+	 *            The negative cache, or {@code null} to not cache failures
+	 */
+	public void setNegativeCache(NegativeCache negativeCache) {
+		this.negativeCache = negativeCache;
+	}
+
+	/**
+	 * Returns the cache for redirects.
+	 *
+	 * @return The redirect cache, or {@code null} if redirects are not cached
+	 */
+	public RedirectCache getRedirectCache() {
+		return redirectCache;
+	}
+
+	/**
+	 * Sets the cache for redirects. When a get request was redirected, the
+	 * resolved URI is stored in the cache, and later requests for the same
+	 * URI are sent for the resolved URI directly. If such a request fails,
+	 * the redirect is removed from the cache.
+	 *
+	 * @param redirectCache
+	 *            The redirect cache, or {@code null} to not cache redirects
+	 */
+	public void setRedirectCache(RedirectCache redirectCache) {
+		this.redirectCache = redirectCache;
+	}
+
+	/**
+	 * Returns the cache for node queries.
+	 *
+	 * @return The query cache, or {@code null} if node queries are not cached
+	 */
+	public synchronized QueryCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * Sets the cache for node queries. Concurrent identical calls of
+	 * {@link #getNodeInformation(Boolean, Boolean, Boolean)},
+	 * {@link #getPeers(boolean, boolean)}, and {@link #getConfig(boolean,
+	 * boolean, boolean)} are sent to the node only once, and their answers
+	 * are reused until they expire or the node announces a change. The cache
+	 * is added to the connection as a listener.
+	 *
+	 * @param queryCache
+	 *            The query cache, or {@code null} to not cache node queries
+	 */
+	public synchronized void setQueryCache(QueryCache queryCache) {
+		if (this.queryCache != null) {
+			fcpConnection.removeFcpListener(this.queryCache);
+		}
+		this.queryCache = queryCache;
+		if (queryCache != null) {
+			fcpConnection.addFcpListener(queryCache);
+		}
+	}
+
+	/**
+	 * Returns the journal of submitted requests.
+	 *
+	 * @return The request journal, or {@code null} if requests are not
+	 *         journaled
+	 */
+	public synchronized RequestJournal getRequestJournal() {
+		return requestJournal;
+	}
+
+	/**
+	 * Sets the journal of submitted requests. The journal is added to the
+	 * connection as a listener so that it records the terminal states of the
+	 * journaled requests.
+	 *
+	 * @see #recoverRequests()
+	 * @param requestJournal
+	 *            The request journal, or {@code null} to not journal requests
+	 */
+	public synchronized void setRequestJournal(RequestJournal requestJournal) {
+		if (this.requestJournal != null) {
+			fcpConnection.removeFcpListener(this.requestJournal);
+		}
+		this.requestJournal = requestJournal;
+		if (requestJournal != null) {
+			fcpConnection.addFcpListener(requestJournal);
+		}
+	}
+
 	//
 	// ACTIONS
 	//
 
 	/**
-	 * Connects the FCP client.
+	 * Connects the FCP client. Unless disabled in the
+	 * {@link ConnectionOptions connection options}, the client watches the
+	 * global queue with the configured verbosity.
 	 *
 	 * @param name
 	 *            The name of the client
@@ -291,8 +490,11 @@ public class FcpClient implements Closeable {
 				fcpConnection.connect();
 				ClientHello clientHello = new ClientHello(name);
 				fcpConnection.sendMessage(clientHello);
-				WatchGlobal watchGlobal = new WatchGlobal(true);
-				fcpConnection.sendMessage(watchGlobal);
+				ConnectionOptions options = fcpConnection.getOptions();
+				if (options.isWatchGlobal()) {
+					WatchGlobal watchGlobal = new WatchGlobal(true, options.getWatchGlobalVerbosity());
+					fcpConnection.sendMessage(watchGlobal);
+				}
 			}
 
 			/**
@@ -324,7 +526,9 @@ public class FcpClient implements Closeable {
 	}
 
 	/**
-	 * Returns the file with the given URI.
+	 * Returns the file with the given URI. Concurrent calls for the same URI
+	 * and options share a single request to the node; every caller receives
+	 * its own input stream for the data.
 	 *
 	 * @param uri
 	 *            The URI to get
@@ -339,54 +543,135 @@ public class FcpClient implements Closeable {
 	 */
 	public GetResult getURI(final String uri, final boolean filterData) throws IOException, FcpException {
 		checkConnected(true);
-		final GetResult getResult = new GetResult();
-		new ExtendedFcpAdapter() {
-
-			@SuppressWarnings("synthetic-access")
-			private final String identifier = createIdentifier("client-get");
+		GetResult getResult = waitFor(fetch(uri, filterData));
+		if (getResult.getException() instanceof FcpException) {
+			throw (FcpException) getResult.getException();
+		}
+		return getResult;
+	}
 
-			@Override
-			@SuppressWarnings("synthetic-access")
-			public void run() throws IOException {
-				ClientGet clientGet = new ClientGet(uri, identifier);
-				clientGet.setFilterData(filterData);
-				fcpConnection.sendMessage(clientGet);
+	/**
+	 * Gets all the given URIs, keeping up to {@code window} requests in
+	 * flight at the same time. New requests are sent as soon as earlier
+	 * requests finish, so the throughput is limited by the node and not by
+	 * round trips between client and node. Results are handed to the given
+	 * listener as they arrive; failed requests, including protocol errors
+	 * for single URIs, are reported as unsuccessful results. This method
+	 * returns once results for all URIs have been delivered.
+	 *
+	 * @param uris
+	 *            The URIs to get; the URIs are only iterated as requests
+	 *            are sent
+	 * @param filterData
+	 *            {@code true} to filter the retrieved data, {@code false}
+	 *            otherwise
+	 * @param window
+	 *            The maximum number of requests in flight
+	 * @param batchGetListener
+	 *            The listener for the results
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public void getURIs(Iterable<String> uris, boolean filterData, int window, BatchGetListener batchGetListener) throws IOException, FcpException {
+		if (window < 1) {
+			throw new IllegalArgumentException("window must be at least 1");
+		}
+		checkConnected(true);
+		final BlockingQueue<Entry<String, ListenableFuture<GetResult>>> finishedRequests = new LinkedBlockingQueue<Entry<String, ListenableFuture<GetResult>>>();
+		Iterator<String> uriIterator = uris.iterator();
+		int requestsInFlight = 0;
+		while (true) {
+			while ((requestsInFlight < window) && uriIterator.hasNext()) {
+				String uri = uriIterator.next();
+				final Entry<String, ListenableFuture<GetResult>> request = new SimpleImmutableEntry<String, ListenableFuture<GetResult>>(uri, fetch(uri, filterData));
+				request.getValue().addListener(new Runnable() {
+
+					@Override
+					public void run() {
+						finishedRequests.add(request);
+					}
+				}, MoreExecutors.sameThreadExecutor());
+				requestsInFlight++;
 			}
+			if (requestsInFlight == 0) {
+				break;
+			}
+			Entry<String, ListenableFuture<GetResult>> finishedRequest = Uninterruptibles.takeUninterruptibly(finishedRequests);
+			requestsInFlight--;
+			batchGetListener.gotResult(finishedRequest.getKey(), waitFor(finishedRequest.getValue()));
+		}
+	}
 
-			@Override
-			public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
-				if (!getFailed.getIdentifier().equals(identifier)) {
-					return;
-				}
-				if ((getFailed.getCode() == 27) || (getFailed.getCode() == 24)) {
-					/* redirect! */
-					String newUri = getFailed.getRedirectURI();
-					getResult.realUri(newUri);
-					try {
-						ClientGet clientGet = new ClientGet(newUri, identifier);
-						clientGet.setFilterData(filterData);
-						fcpConnection.sendMessage(clientGet);
-					} catch (IOException ioe1) {
-						getResult.success(false).exception(ioe1);
-						completionLatch.countDown();
+	/**
+	 * Starts the given insert and returns its handle without waiting for the
+	 * insert to finish. The futures of the handle complete as the insert
+	 * progresses: the URI future completes once the node has generated the
+	 * final URI, so work that only needs the URI can start long before the
+	 * insert has finished. Use {@link Insert#setEarlyEncode(boolean)} to
+	 * have the URI generated as early as possible.
+	 *
+	 * @param insert
+	 *            The insert to start
+	 * @return The handle of the insert
+	 * @throws FcpException
+	 *             if the client is not connected
+	 */
+	public InsertHandle insert(Insert insert) throws FcpException {
+		checkConnected(true);
+		return new InsertTask(fcpConnection, requestRouter, retryExecutor, new InsertHandle(insert, createIdentifier("client-put"))).start();
+	}
+
+	/**
+	 * Inserts all the given data, keeping up to {@code window} inserts in
+	 * flight at the same time. Inserts that fail with a non-fatal error are
+	 * sent again as often as {@link Insert#getRetries()} allows. The listener
+	 * is notified when an insert is sent and when it finishes. This method
+	 * returns once all inserts have finished, or throws an exception once
+	 * the connection to the node is lost.
+	 *
+	 * @param inserts
+	 *            The inserts to perform; the inserts are only iterated as
+	 *            they are sent
+	 * @param window
+	 *            The maximum number of inserts in flight
+	 * @param batchInsertListener
+	 *            The listener for the inserts
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public void insert(Iterable<Insert> inserts, int window, BatchInsertListener batchInsertListener) throws IOException, FcpException {
+		if (window < 1) {
+			throw new IllegalArgumentException("window must be at least 1");
+		}
+		checkConnected(true);
+		final BlockingQueue<InsertHandle> finishedInserts = new LinkedBlockingQueue<InsertHandle>();
+		Iterator<Insert> insertIterator = inserts.iterator();
+		int insertsInFlight = 0;
+		while (true) {
+			while ((insertsInFlight < window) && insertIterator.hasNext()) {
+				final InsertHandle insertHandle = insert(insertIterator.next());
+				insertHandle.getSuccessFuture().addListener(new Runnable() {
+
+					@Override
+					public void run() {
+						finishedInserts.add(insertHandle);
 					}
-				} else {
-					getResult.success(false).errorCode(getFailed.getCode());
-					completionLatch.countDown();
-				}
+				}, MoreExecutors.sameThreadExecutor());
+				insertsInFlight++;
+				batchInsertListener.insertStarted(insertHandle);
 			}
-
-			@Override
-			public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
-				if (!allData.getIdentifier().equals(identifier)) {
-					return;
-				}
-				getResult.success(true).contentType(allData.getContentType()).contentLength(allData.getDataLength()).inputStream(allData.getPayloadInputStream());
-				completionLatch.countDown();
+			if (insertsInFlight == 0) {
+				break;
 			}
-
-		}.execute();
-		return getResult;
+			InsertHandle finishedInsert = Uninterruptibles.takeUninterruptibly(finishedInserts);
+			insertsInFlight--;
+			batchInsertListener.insertFinished(finishedInsert);
+			checkConnected(true);
+		}
 	}
 
 	/**
@@ -422,6 +707,27 @@ public class FcpClient implements Closeable {
 	 */
 	public void detach() {
 		fcpConnection.removeFcpListener(connectionClosedListener);
+		fcpConnection.removeFcpListener(requestRouter);
+		synchronized (this) {
+			if (requestMirror != null) {
+				fcpConnection.removeFcpListener(requestMirror);
+				requestMirror = null;
+			}
+			if (queryCache != null) {
+				fcpConnection.removeFcpListener(queryCache);
+				queryCache = null;
+			}
+			if (requestJournal != null) {
+				fcpConnection.removeFcpListener(requestJournal);
+				requestJournal = null;
+			}
+		}
+		synchronized (peerTableLock) {
+			if (peerTable != null) {
+				fcpConnection.removeFcpListener(peerTable);
+				peerTable = null;
+			}
+		}
 	}
 
 	//
@@ -429,7 +735,13 @@ public class FcpClient implements Closeable {
 	//
 
 	/**
-	 * Returns all peers that the node has.
+	 * Returns all peers that the node has. If a {@link #getPeerTable(boolean,
+	 * boolean) peer table} with the requested data exists and no volatile
+	 * data is requested, the peers are returned from the table without
+	 * contacting the node. Otherwise the peers are listed, using the
+	 * {@link #setQueryCache(QueryCache) query cache} if there is one; volatile
+	 * data is never served from the table because the node does not send
+	 * updates when it changes.
 	 *
 	 * @param withMetadata
 	 *            <code>true</code> to include peer metadata
@@ -442,6 +754,34 @@ public class FcpClient implements Closeable {
 	 *             if an FCP error occurs
 	 */
 	public Collection<Peer> getPeers(final boolean withMetadata, final boolean withVolatile) throws IOException, FcpException {
+		PeerTable peerTable = getListedPeerTable(withMetadata, withVolatile);
+		if (peerTable != null) {
+			return new HashSet<Peer>(peerTable.getPeers());
+		}
+		return new HashSet<Peer>(query(QueryCache.PEERS + withMetadata + ":" + withVolatile, new QueryCache.Query<Set<Peer>>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public Set<Peer> run() throws IOException, FcpException {
+				return listPeers(withMetadata, withVolatile);
+			}
+		}));
+	}
+
+	/**
+	 * Lists the peers of the node.
+	 *
+	 * @param withMetadata
+	 *            <code>true</code> to include peer metadata
+	 * @param withVolatile
+	 *            <code>true</code> to include volatile peer data
+	 * @return The node’s peers
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	private Set<Peer> listPeers(final boolean withMetadata, final boolean withVolatile) throws IOException, FcpException {
 		final Set<Peer> peers = Collections.synchronizedSet(new HashSet<Peer>());
 		new ExtendedFcpAdapter() {
 
@@ -495,6 +835,10 @@ public class FcpClient implements Closeable {
 	 *             if an FCP error occurs
 	 */
 	public Collection<Peer> getDarknetPeers(boolean withMetadata, boolean withVolatile) throws IOException, FcpException {
+		PeerTable peerTable = getListedPeerTable(withMetadata, withVolatile);
+		if (peerTable != null) {
+			return new HashSet<Peer>(peerTable.getDarknetPeers());
+		}
 		Collection<Peer> allPeers = getPeers(withMetadata, withVolatile);
 		Collection<Peer> darknetPeers = new HashSet<Peer>();
 		for (Peer peer : allPeers) {
@@ -519,6 +863,10 @@ public class FcpClient implements Closeable {
 	 *             if an FCP error occurs
 	 */
 	public Collection<Peer> getOpennetPeers(boolean withMetadata, boolean withVolatile) throws IOException, FcpException {
+		PeerTable peerTable = getListedPeerTable(withMetadata, withVolatile);
+		if (peerTable != null) {
+			return new HashSet<Peer>(peerTable.getOpennetPeers());
+		}
 		Collection<Peer> allPeers = getPeers(withMetadata, withVolatile);
 		Collection<Peer> opennetPeers = new HashSet<Peer>();
 		for (Peer peer : allPeers) {
@@ -543,6 +891,10 @@ public class FcpClient implements Closeable {
 	 *             if an FCP error occurs
 	 */
 	public Collection<Peer> getSeedPeers(boolean withMetadata, boolean withVolatile) throws IOException, FcpException {
+		PeerTable peerTable = getListedPeerTable(withMetadata, withVolatile);
+		if (peerTable != null) {
+			return new HashSet<Peer>(peerTable.getSeedPeers());
+		}
 		Collection<Peer> allPeers = getPeers(withMetadata, withVolatile);
 		Collection<Peer> seedPeers = new HashSet<Peer>();
 		for (Peer peer : allPeers) {
@@ -553,6 +905,68 @@ public class FcpClient implements Closeable {
 		return seedPeers;
 	}
 
+	/**
+	 * Returns the table of the node’s peers. The first call lists the peers
+	 * of the node and waits for the listing; afterwards the table is kept up
+	 * to date by the “Peer” and “PeerRemoved” messages the node sends, and
+	 * later calls return the same table without contacting the node. If the
+	 * existing table does not include the requested data, or if the
+	 * connection was closed, a new table is created and listed.
+	 *
+	 * @param withMetadata
+	 *            <code>true</code> to include peer metadata
+	 * @param withVolatile
+	 *            <code>true</code> to include volatile peer data
+	 * @return The table of the node’s peers
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public PeerTable getPeerTable(boolean withMetadata, boolean withVolatile) throws IOException, FcpException {
+		checkConnected(true);
+		synchronized (peerTableLock) {
+			PeerTable peerTable = this.peerTable;
+			if ((peerTable != null) && !peerTable.isClosed() && (peerTable.isWithMetadata() || !withMetadata) && (peerTable.isWithVolatile() || !withVolatile)) {
+				return peerTable;
+			}
+			if (peerTable != null) {
+				fcpConnection.removeFcpListener(peerTable);
+				withMetadata |= peerTable.isWithMetadata();
+				withVolatile |= peerTable.isWithVolatile();
+			}
+			peerTable = new PeerTable(withMetadata, withVolatile);
+			fcpConnection.addFcpListener(peerTable);
+			this.peerTable = peerTable;
+			listPeers(peerTable);
+			return peerTable;
+		}
+	}
+
+	/**
+	 * Lists the peers of the node again and updates the peer table. Peers
+	 * that are missing from the new listing are removed from the table. If
+	 * there is no peer table yet, a table without metadata and volatile data
+	 * is created.
+	 *
+	 * @return The refreshed peer table
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public PeerTable refreshPeerTable() throws IOException, FcpException {
+		synchronized (peerTableLock) {
+			PeerTable peerTable = this.peerTable;
+			if ((peerTable == null) || peerTable.isClosed()) {
+				return getPeerTable(false, false);
+			}
+			checkConnected(true);
+			listPeers(peerTable);
+			return peerTable;
+		}
+	}
+
 	/**
 	 * Adds the given peer to the node.
 	 *
@@ -896,7 +1310,51 @@ public class FcpClient implements Closeable {
 	}
 
 	/**
-	 * Returns all currently visible persistent requests.
+	 * Returns the mirror of the node’s persistent requests. The first call
+	 * lists the persistent requests of the node and waits for the listing;
+	 * afterwards the mirror is kept up to date by the messages the node
+	 * sends, and later calls return the same mirror without contacting the
+	 * node. Once a mirror exists, {@link #getRequests(boolean)} is answered
+	 * from it, too. If the connection was closed, the next call creates a
+	 * new mirror.
+	 *
+	 * @return The mirror of the node’s persistent requests
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public RequestMirror getRequestMirror() throws IOException, FcpException {
+		checkConnected(true);
+		RequestMirror requestMirror;
+		boolean created = false;
+		synchronized (this) {
+			if ((this.requestMirror == null) || this.requestMirror.isClosed()) {
+				if (this.requestMirror != null) {
+					fcpConnection.removeFcpListener(this.requestMirror);
+				}
+				this.requestMirror = new RequestMirror();
+				fcpConnection.addFcpListener(this.requestMirror);
+				created = true;
+			}
+			requestMirror = this.requestMirror;
+		}
+		if (created) {
+			try {
+				fcpConnection.sendMessage(new ListPersistentRequests());
+			} catch (IOException ioe1) {
+				setDisconnected();
+				throw ioe1;
+			}
+		}
+		requestMirror.awaitListing();
+		return requestMirror;
+	}
+
+	/**
+	 * Returns all currently visible persistent requests. If a
+	 * {@link #getRequestMirror() request mirror} exists, the requests are
+	 * returned from the mirror without contacting the node.
 	 *
 	 * @param global
 	 *            <code>true</code> to return requests from the global queue,
@@ -909,6 +1367,13 @@ public class FcpClient implements Closeable {
 	 *             if an FCP error occurs
 	 */
 	public Collection<Request> getRequests(final boolean global) throws IOException, FcpException {
+		RequestMirror requestMirror;
+		synchronized (this) {
+			requestMirror = this.requestMirror;
+		}
+		if ((requestMirror != null) && requestMirror.isListed() && !requestMirror.isClosed()) {
+			return requestMirror.getRequests(global);
+		}
 		final Map<String, Request> requests = Collections.synchronizedMap(new HashMap<String, Request>());
 		new ExtendedFcpAdapter() {
 
@@ -1012,6 +1477,163 @@ public class FcpClient implements Closeable {
 		return requests.values();
 	}
 
+	/**
+	 * Lists the persistent requests of the node, handing out each request
+	 * while the listing is still being received. Unlike
+	 * {@link #getRequests(boolean)}, the listing is never held in memory as a
+	 * whole. The node can not filter the listing, so requests of other types
+	 * are dropped as soon as they arrive. The returned stream has to be
+	 * consumed to its end or closed.
+	 *
+	 * @param global
+	 *            {@code true} to include requests from the global queue,
+	 *            {@code false} to only include requests from the client-local
+	 *            queue
+	 * @param type
+	 *            The type of requests to include, {@link GetRequest},
+	 *            {@link PutRequest}, or {@link Request} for all requests
+	 * @param capacity
+	 *            The number of requests that can be received before the
+	 *            consumer has to catch up; if the consumer falls further
+	 *            behind, the node has to wait
+	 * @return The stream of requests
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public RequestStream streamRequests(boolean global, Class<? extends Request> type, int capacity) throws IOException, FcpException {
+		checkConnected(true);
+		RequestStream requestStream = new RequestStream(fcpConnection, global, type, capacity);
+		fcpConnection.addFcpListener(requestStream);
+		try {
+			fcpConnection.sendMessage(new ListPersistentRequests());
+		} catch (IOException ioe1) {
+			requestStream.close();
+			setDisconnected();
+			throw ioe1;
+		}
+		return requestStream;
+	}
+
+	/**
+	 * Reconciles the {@link #setRequestJournal(RequestJournal) request
+	 * journal} with the node after a restart. Only the requests that were
+	 * still pending when the journal was last written are queried from the
+	 * node; their terminal states are recorded by the journal as the node
+	 * reports them, and requests the node does not know anymore are removed
+	 * from the journal. Data that the node sends for finished downloads is
+	 * discarded.
+	 *
+	 * @return The journaled requests after reconciliation
+	 * @throws IllegalStateException
+	 *             if no request journal is set
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public List<JournalEntry> recoverRequests() throws IllegalStateException, IOException, FcpException {
+		checkConnected(true);
+		final RequestJournal requestJournal = getRequestJournal();
+		if (requestJournal == null) {
+			throw new IllegalStateException("no request journal set");
+		}
+		final List<JournalEntry> pendingEntries = requestJournal.getPendingEntries();
+		if (pendingEntries.isEmpty()) {
+			return requestJournal.getEntries();
+		}
+		final Set<String> pendingIdentifiers = new HashSet<String>();
+		for (JournalEntry pendingEntry : pendingEntries) {
+			pendingIdentifiers.add(pendingEntry.getIdentifier());
+		}
+		final JournalEntry lastEntry = pendingEntries.get(pendingEntries.size() - 1);
+		new ExtendedFcpAdapter() {
+
+			/** The number of status replies for the last request. */
+			private int lastReplies;
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() throws IOException {
+				for (JournalEntry pendingEntry : pendingEntries) {
+					sendGetRequestStatus(pendingEntry);
+				}
+				/*
+				 * the node answers in order, so the second answer for the last
+				 * request marks the end.
+				 */
+				sendGetRequestStatus(lastEntry);
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void receivedPersistentGet(FcpConnection fcpConnection, PersistentGet persistentGet) {
+				countReply(persistentGet.getIdentifier());
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void receivedPersistentPut(FcpConnection fcpConnection, PersistentPut persistentPut) {
+				countReply(persistentPut.getIdentifier());
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void receivedPersistentPutDir(FcpConnection fcpConnection, PersistentPutDir persistentPutDir) {
+				countReply(persistentPutDir.getIdentifier());
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void receivedProtocolError(FcpConnection fcpConnection, ProtocolError protocolError) {
+				if (!pendingIdentifiers.contains(protocolError.getIdentifier())) {
+					super.receivedProtocolError(fcpConnection, protocolError);
+					return;
+				}
+				countReply(protocolError.getIdentifier());
+			}
+
+			/**
+			 * Sends a “GetRequestStatus” message for the given request.
+			 *
+			 * @param journalEntry
+			 *            The journaled request
+			 * @throws IOException
+			 *             if an I/O error occurs
+			 */
+			@SuppressWarnings("synthetic-access")
+			private void sendGetRequestStatus(JournalEntry journalEntry) throws IOException {
+				GetRequestStatus getRequestStatus = new GetRequestStatus(journalEntry.getIdentifier());
+				getRequestStatus.setGlobal(journalEntry.isGlobal());
+				fcpConnection.sendMessage(getRequestStatus);
+			}
+
+			/**
+			 * Counts a status reply for the request with the given identifier,
+			 * and completes the recovery once the last request has been
+			 * answered twice.
+			 *
+			 * @param identifier
+			 *            The identifier of the request
+			 */
+			private void countReply(String identifier) {
+				if (lastEntry.getIdentifier().equals(identifier) && (++lastReplies == 2)) {
+					completionLatch.countDown();
+				}
+			}
+		}.execute();
+		return requestJournal.getEntries();
+	}
+
 	/**
 	 * Sends a message to a plugin and waits for the response.
 	 *
@@ -1078,6 +1700,7 @@ public class FcpClient implements Closeable {
 				if (!fcpPluginReply.getIdentifier().equals(identifier)) {
 					return;
 				}
+				FcpUtils.close(fcpPluginReply.getPayloadInputStream());
 				pluginReplies.putAll(fcpPluginReply.getReplies());
 				completionLatch.countDown();
 			}
@@ -1091,7 +1714,8 @@ public class FcpClient implements Closeable {
 	//
 
 	/**
-	 * Returns information about the node.
+	 * Returns information about the node, using the
+	 * {@link #setQueryCache(QueryCache) query cache} if there is one.
 	 *
 	 * @param giveOpennetRef
 	 *            Whether to return the OpenNet reference
@@ -1106,26 +1730,105 @@ public class FcpClient implements Closeable {
 	 *             if an I/O error occurs
 	 */
 	public NodeData getNodeInformation(final Boolean giveOpennetRef, final Boolean withPrivate, final Boolean withVolatile) throws IOException, FcpException {
-		final AtomicReference<NodeData> nodeDataWrapper = new AtomicReference<NodeData>();
+		return query(QueryCache.NODE + giveOpennetRef + ":" + withPrivate + ":" + withVolatile, new QueryCache.Query<NodeData>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public NodeData run() throws IOException, FcpException {
+				return requestNodeInformation(giveOpennetRef, withPrivate, withVolatile);
+			}
+		});
+	}
+
+	/**
+	 * Returns the configuration of the node, using the
+	 * {@link #setQueryCache(QueryCache) query cache} if there is one.
+	 *
+	 * @param withCurrent
+	 *            Whether to return the current values of the options
+	 * @param withDefaults
+	 *            Whether to return the default values of the options
+	 * @param withDetails
+	 *            Whether to return the descriptions, data types, sort orders,
+	 *            and the expert and force-write flags of the options
+	 * @return The configuration of the node
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public ConfigData getConfig(final boolean withCurrent, final boolean withDefaults, final boolean withDetails) throws IOException, FcpException {
+		return query(QueryCache.CONFIG + withCurrent + ":" + withDefaults + ":" + withDetails, new QueryCache.Query<ConfigData>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public ConfigData run() throws IOException, FcpException {
+				return requestConfig(withCurrent, withDefaults, withDetails);
+			}
+		});
+	}
+
+	/**
+	 * Returns a typed snapshot of the node’s configuration, including the
+	 * default values and the details of all options.
+	 *
+	 * @return The configuration of the node
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public Configuration getConfiguration() throws IOException, FcpException {
+		return new Configuration(getConfig(true, true, true));
+	}
+
+	/**
+	 * Sends the given changes to the node in a single “ModifyConfig”
+	 * message. If there are no changes, the node is not contacted.
+	 *
+	 * @param configChanges
+	 *            The changes to send
+	 * @return The changed configuration, with the current values returned
+	 *         by the node
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	public Configuration modifyConfig(final ConfigChanges configChanges) throws IOException, FcpException {
+		if (configChanges.isEmpty()) {
+			return configChanges.getConfiguration();
+		}
+		final AtomicReference<ConfigData> configDataWrapper = new AtomicReference<ConfigData>();
 		new ExtendedFcpAdapter() {
 
+			/** The ID of the “ModifyConfig” request. */
+			@SuppressWarnings("synthetic-access")
+			private String identifier = createIdentifier("modify-config");
+
 			@Override
 			@SuppressWarnings("synthetic-access")
 			public void run() throws IOException {
-				GetNode getNodeMessage = new GetNode(giveOpennetRef, withPrivate, withVolatile);
-				fcpConnection.sendMessage(getNodeMessage);
+				ModifyConfig modifyConfig = new ModifyConfig(identifier);
+				for (Entry<String, String> change : configChanges.getChanges().entrySet()) {
+					modifyConfig.setOption(change.getKey(), change.getValue());
+				}
+				fcpConnection.sendMessage(modifyConfig);
 			}
 
 			/**
 			 * {@inheritDoc}
 			 */
 			@Override
-			public void receivedNodeData(FcpConnection fcpConnection, NodeData nodeData) {
-				nodeDataWrapper.set(nodeData);
-				completionLatch.countDown();
+			public void receivedConfigData(FcpConnection fcpConnection, ConfigData configData) {
+				String replyIdentifier = configData.getField("Identifier");
+				if ((replyIdentifier == null) || replyIdentifier.equals(identifier)) {
+					configDataWrapper.set(configData);
+					completionLatch.countDown();
+				}
 			}
 		}.execute();
-		return nodeDataWrapper.get();
+		return configChanges.getConfiguration().update(configDataWrapper.get());
 	}
 
 	//
@@ -1143,6 +1846,215 @@ public class FcpClient implements Closeable {
 		return basename + "-" + System.currentTimeMillis() + "-" + (int) (Math.random() * Integer.MAX_VALUE);
 	}
 
+	/**
+	 * Runs the given node query, using the query cache if there is one.
+	 *
+	 * @param <T>
+	 *            The type of the answer
+	 * @param key
+	 *            The key of the query
+	 * @param query
+	 *            The query
+	 * @return The answer of the query
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	private <T> T query(String key, QueryCache.Query<T> query) throws IOException, FcpException {
+		QueryCache queryCache = getQueryCache();
+		if (queryCache == null) {
+			return query.run();
+		}
+		return queryCache.get(key, query);
+	}
+
+	/**
+	 * Requests information about the node.
+	 *
+	 * @param giveOpennetRef
+	 *            Whether to return the OpenNet reference
+	 * @param withPrivate
+	 *            Whether to return private node data
+	 * @param withVolatile
+	 *            Whether to return volatile node data
+	 * @return Node information
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	private NodeData requestNodeInformation(final Boolean giveOpennetRef, final Boolean withPrivate, final Boolean withVolatile) throws IOException, FcpException {
+		final AtomicReference<NodeData> nodeDataWrapper = new AtomicReference<NodeData>();
+		new ExtendedFcpAdapter() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() throws IOException {
+				GetNode getNodeMessage = new GetNode(giveOpennetRef, withPrivate, withVolatile);
+				fcpConnection.sendMessage(getNodeMessage);
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void receivedNodeData(FcpConnection fcpConnection, NodeData nodeData) {
+				nodeDataWrapper.set(nodeData);
+				completionLatch.countDown();
+			}
+		}.execute();
+		return nodeDataWrapper.get();
+	}
+
+	/**
+	 * Requests the configuration of the node.
+	 *
+	 * @param withCurrent
+	 *            Whether to return the current values of the options
+	 * @param withDefaults
+	 *            Whether to return the default values of the options
+	 * @param withDetails
+	 *            Whether to return the details of the options
+	 * @return The configuration of the node
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	private ConfigData requestConfig(final boolean withCurrent, final boolean withDefaults, final boolean withDetails) throws IOException, FcpException {
+		final AtomicReference<ConfigData> configDataWrapper = new AtomicReference<ConfigData>();
+		new ExtendedFcpAdapter() {
+
+			/** The ID of the “GetConfig” request. */
+			@SuppressWarnings("synthetic-access")
+			private String identifier = createIdentifier("get-config");
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() throws IOException {
+				GetConfig getConfig = new GetConfig(identifier);
+				getConfig.setWithCurrent(withCurrent);
+				getConfig.setWithDefaults(withDefaults);
+				getConfig.setWithShortDescription(withDetails);
+				getConfig.setWithLongDescription(withDetails);
+				getConfig.setWithDataTypes(withDetails);
+				getConfig.setWithSortOrder(withDetails);
+				getConfig.setWithExpertFlag(withDetails);
+				getConfig.setWithForceWriteFlag(withDetails);
+				fcpConnection.sendMessage(getConfig);
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			@Override
+			public void receivedConfigData(FcpConnection fcpConnection, ConfigData configData) {
+				String replyIdentifier = configData.getField("Identifier");
+				if ((replyIdentifier == null) || replyIdentifier.equals(identifier)) {
+					configDataWrapper.set(configData);
+					completionLatch.countDown();
+				}
+			}
+		}.execute();
+		return configDataWrapper.get();
+	}
+
+	/**
+	 * Starts a non-persistent get request for the given URI. If a request for
+	 * the same URI and options is already in flight, no new request is sent;
+	 * the returned future completes with the result of the request in
+	 * flight, with its own input stream for the payload.
+	 *
+	 * @param uri
+	 *            The URI to get
+	 * @param filterData
+	 *            {@code true} to filter the retrieved data, {@code false}
+	 *            otherwise
+	 * @return The future for the result of the request
+	 */
+	private ListenableFuture<GetResult> fetch(final String uri, final boolean filterData) {
+		final ChkCache chkCache = ChkCache.isCacheable(uri) ? this.chkCache : null;
+		if (chkCache != null) {
+			GetResult cachedResult = chkCache.get(uri, filterData);
+			if (cachedResult != null) {
+				return Futures.immediateFuture(cachedResult);
+			}
+		}
+		final NegativeCache negativeCache = this.negativeCache;
+		if (negativeCache != null) {
+			GetResult cachedFailure = negativeCache.get(uri, filterData);
+			if (cachedFailure != null) {
+				return Futures.immediateFuture(cachedFailure);
+			}
+		}
+		final RedirectCache redirectCache = this.redirectCache;
+		return inFlightGets.get(uri, filterData, new Supplier<ListenableFuture<GetResult>>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public ListenableFuture<GetResult> get() {
+				final String resolvedUri = (redirectCache != null) ? redirectCache.get(uri) : null;
+				ListenableFuture<GetResult> request = new GetTask(fcpConnection, requestRouter, createIdentifier("client-get"), (resolvedUri != null) ? resolvedUri : uri, filterData).start();
+				if ((chkCache == null) && (negativeCache == null) && (redirectCache == null)) {
+					return request;
+				}
+				return Futures.transform(request, new Function<GetResult, GetResult>() {
+
+					@Override
+					public GetResult apply(GetResult getResult) {
+						if (resolvedUri != null) {
+							if (getResult.getRealUri() == null) {
+								getResult.realUri(resolvedUri);
+							}
+							if (!getResult.isSuccess()) {
+								redirectCache.invalidate(uri);
+							}
+						}
+						if ((redirectCache != null) && (getResult.getRealUri() != null) && !getResult.getRealUri().equals(resolvedUri) && getResult.isSuccess()) {
+							redirectCache.put(uri, getResult.getRealUri());
+						}
+						if ((chkCache != null) && getResult.isSuccess()) {
+							chkCache.put(uri, filterData, getResult);
+						}
+						if ((negativeCache != null) && !getResult.isSuccess() && (resolvedUri == null)) {
+							negativeCache.put(uri, filterData, getResult);
+						}
+						return getResult;
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Waits for the given future to finish. An {@link IOException} that
+	 * failed the future marks this client as disconnected.
+	 *
+	 * @param future
+	 *            The future to wait for
+	 * @return The value of the future
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	private <T> T waitFor(ListenableFuture<T> future) throws IOException, FcpException {
+		try {
+			return Uninterruptibles.getUninterruptibly(future);
+		} catch (ExecutionException ee1) {
+			Throwable cause = ee1.getCause();
+			if (cause instanceof IOException) {
+				setDisconnected();
+				throw (IOException) cause;
+			}
+			if (cause instanceof FcpException) {
+				throw (FcpException) cause;
+			}
+			throw Throwables.propagate(cause);
+		}
+	}
+
 	/**
 	 * Checks whether the connection is in the required state.
 	 *
@@ -1157,6 +2069,52 @@ public class FcpClient implements Closeable {
 		}
 	}
 
+	/**
+	 * Returns the peer table if it has been listed with at least the given
+	 * data. Requests for volatile data never use the table as its volatile
+	 * data is only as fresh as the last listing.
+	 *
+	 * @param withMetadata
+	 *            <code>true</code> if the table has to include peer metadata
+	 * @param withVolatile
+	 *            <code>true</code> if the table has to include volatile peer
+	 *            data
+	 * @return The peer table, or {@code null} if there is no such table
+	 */
+	private PeerTable getListedPeerTable(boolean withMetadata, boolean withVolatile) {
+		PeerTable peerTable = this.peerTable;
+		if (withVolatile || (peerTable == null) || !peerTable.isListed() || peerTable.isClosed()) {
+			return null;
+		}
+		if (withMetadata && !peerTable.isWithMetadata()) {
+			return null;
+		}
+		return peerTable;
+	}
+
+	/**
+	 * Lists the peers of the node into the given peer table and waits for
+	 * the listing.
+	 *
+	 * @param peerTable
+	 *            The peer table to list the peers into
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	private void listPeers(PeerTable peerTable) throws IOException, FcpException {
+		String identifier = createIdentifier("list-peers");
+		peerTable.startListing(identifier);
+		try {
+			fcpConnection.sendMessage(new ListPeers(identifier, peerTable.isWithMetadata(), peerTable.isWithVolatile()));
+		} catch (IOException ioe1) {
+			setDisconnected();
+			throw ioe1;
+		}
+		peerTable.awaitListing();
+	}
+
 	/**
 	 * Tells the client that it is now disconnected. This method is called by
 	 * {@link ExtendedFcpAdapter} only.
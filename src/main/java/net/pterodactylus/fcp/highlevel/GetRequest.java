@@ -35,6 +35,7 @@ public class GetRequest extends Request {
 	 */
 	GetRequest(PersistentGet persistentGet) {
 		super(persistentGet.getIdentifier(), persistentGet.getClientToken(), persistentGet.isGlobal());
+		setPriority(persistentGet.getPriority());
 	}
 
 }
@@ -17,9 +17,15 @@
 
 package net.pterodactylus.fcp.highlevel;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.EventListener;
 
+import net.pterodactylus.fcp.Spool;
+import net.pterodactylus.fcp.Spool.SpoolInputStream;
+
 /**
  * A get result encapsulates the result of {@link FcpClient#getURI(String)}. It
  * is used to allow synchronous retrieval of a file without resorting to
@@ -36,6 +42,9 @@ public class GetResult {
 	/** The error code, if an error occured. */
 	private int errorCode;
 
+	/** Whether the error was fatal. */
+	private boolean fatal;
+
 	/** The exception, if an exception occured. */
 	private Throwable exception;
 
@@ -99,6 +108,30 @@ public class GetResult {
 		return this;
 	}
 
+	/**
+	 * Returns whether the node reported the error as fatal. A request that
+	 * failed fatally will fail again if it is retried; a request that failed
+	 * with a non-fatal error might succeed later.
+	 *
+	 * @return {@code true} if the error was fatal, {@code false} otherwise
+	 */
+	public boolean isFatal() {
+		return fatal;
+	}
+
+	/**
+	 * Sets whether the error was fatal.
+	 *
+	 * @param fatal
+	 *            {@code true} if the error was fatal, {@code false}
+	 *            otherwise
+	 * @return This result, to allow method chaining
+	 */
+	GetResult fatal(boolean fatal) {
+		this.fatal = fatal;
+		return this;
+	}
+
 	/**
 	 * Returns the exception, if any occured.
 	 *
@@ -204,6 +237,116 @@ public class GetResult {
 		return this;
 	}
 
+	/**
+	 * Returns whether the data was spilled to a spool file. Only spilled data
+	 * can be accessed using {@link #getChannel()} and {@link #map()}.
+	 *
+	 * @return {@code true} if the data is stored in a spool file,
+	 *         {@code false} otherwise
+	 */
+	public boolean isSpilled() {
+		Spool spool = getSpool();
+		return (spool != null) && spool.isSpilled();
+	}
+
+	/**
+	 * Returns a read-only channel that allows random access to the data, e.g.
+	 * for serving range requests. The channel shares its position with the
+	 * {@link #getInputStream() input stream} and is closed together with it;
+	 * the data is released only when the input stream is closed.
+	 *
+	 * @return A channel for the data, or {@code null} if the data was not
+	 *         spilled to a spool file
+	 */
+	public FileChannel getChannel() {
+		if (!isSpilled()) {
+			return null;
+		}
+		return ((SpoolInputStream) inputStream).getChannel();
+	}
+
+	/**
+	 * Maps the complete data into memory. The returned buffer is read-only and
+	 * stays valid after the input stream has been closed.
+	 *
+	 * @return The mapped data
+	 * @throws IOException
+	 *             if the data can not be mapped
+	 * @throws IllegalStateException
+	 *             if the data was not spilled to a spool file, or is larger
+	 *             than {@link Integer#MAX_VALUE} bytes
+	 */
+	public MappedByteBuffer map() throws IOException, IllegalStateException {
+		Spool spool = getSpool();
+		if ((spool != null) && (spool.getLength() > Integer.MAX_VALUE)) {
+			throw new IllegalStateException("data is too large to be mapped at once");
+		}
+		return map(0, (spool != null) ? spool.getLength() : 0);
+	}
+
+	/**
+	 * Maps the given region of the data into memory. The returned buffer is
+	 * read-only and stays valid after the input stream has been closed.
+	 *
+	 * @param position
+	 *            The position of the region to map
+	 * @param size
+	 *            The size of the region to map
+	 * @return The mapped region of the data
+	 * @throws IOException
+	 *             if the data can not be mapped
+	 * @throws IllegalStateException
+	 *             if the data was not spilled to a spool file
+	 */
+	public MappedByteBuffer map(long position, long size) throws IOException, IllegalStateException {
+		if (!isSpilled()) {
+			throw new IllegalStateException("data was not spilled to a spool file");
+		}
+		return getSpool().map(position, size);
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Creates a copy of this result with its own input stream. The new
+	 * stream reads the same spooled data from the beginning and keeps the
+	 * data alive until it is closed.
+	 *
+	 * @return A copy of this result
+	 * @throws IOException
+	 *             if the data can not be shared
+	 */
+	GetResult share() throws IOException {
+		GetResult getResult = new GetResult().success(success).errorCode(errorCode).fatal(fatal).exception(exception).realUri(realUri).contentType(contentType).contentLength(contentLength);
+		if (inputStream == null) {
+			return getResult;
+		}
+		Spool spool = getSpool();
+		if (spool == null) {
+			throw new IOException("data was not spooled and can not be shared");
+		}
+		try {
+			return getResult.inputStream(spool.openInputStream());
+		} catch (IllegalStateException ise1) {
+			throw new IOException("data has already been released", ise1);
+		}
+	}
+
+	/**
+	 * Returns the spool that holds the data.
+	 *
+	 * @return The spool holding the data, or {@code null} if the data is not
+	 *         held by a spool
+	 */
+	Spool getSpool() {
+		if (inputStream instanceof SpoolInputStream) {
+			return ((SpoolInputStream) inputStream).getSpool();
+		}
+		return null;
+	}
+
 	//
 	// OBJECT METHODS
 	//
@@ -213,7 +356,7 @@ public class GetResult {
 	 */
 	@Override
 	public String toString() {
-		return getClass().getName() + "[success=" + success + ",errorCode=" + errorCode + ",exception=" + exception + ",realUri=" + realUri + ",contentType=" + contentType + ",contentLength=" + contentLength + ",inputStream=" + inputStream + "]";
+		return getClass().getName() + "[success=" + success + ",errorCode=" + errorCode + ",fatal=" + fatal + ",exception=" + exception + ",realUri=" + realUri + ",contentType=" + contentType + ",contentLength=" + contentLength + ",inputStream=" + inputStream + "]";
 	}
 
 }
@@ -0,0 +1,223 @@
+/*
+ * jFCPlib - GetTask.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.IOException;
+
+import net.pterodactylus.fcp.AllData;
+import net.pterodactylus.fcp.ClientGet;
+import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.ProtocolError;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * A single non-persistent get request. The task sends a “ClientGet” message,
+ * follows redirects, and completes its future with the {@link GetResult}
+ * once the node has sent the data or has given up. Failures of a single
+ * request, including protocol errors, are reported in the result; the future
+ * only fails if the connection to the node fails.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class GetTask extends FcpAdapter {
+
+	/** The connection to the node. */
+	private final FcpConnection fcpConnection;
+
+	/** The request router of the client. */
+	private final RequestRouter requestRouter;
+
+	/** The identifier of the request. */
+	private final String identifier;
+
+	/** The URI to get. */
+	private final String uri;
+
+	/** Whether to filter the retrieved data. */
+	private final boolean filterData;
+
+	/** The result of the request. */
+	private final GetResult getResult = new GetResult();
+
+	/** The future for the result. */
+	private final SettableFuture<GetResult> future = SettableFuture.create();
+
+	/**
+	 * Creates a new get task.
+	 *
+	 * @param fcpConnection
+	 *            The connection to the node
+	 * @param requestRouter
+	 *            The request router of the client
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param uri
+	 *            The URI to get
+	 * @param filterData
+	 *            {@code true} to filter the retrieved data, {@code false}
+	 *            otherwise
+	 */
+	public GetTask(FcpConnection fcpConnection, RequestRouter requestRouter, String identifier, String uri, boolean filterData) {
+		this.fcpConnection = fcpConnection;
+		this.requestRouter = requestRouter;
+		this.identifier = identifier;
+		this.uri = uri;
+		this.filterData = filterData;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the future for the result of this task.
+	 *
+	 * @return The future for the result
+	 */
+	public ListenableFuture<GetResult> getFuture() {
+		return future;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts the request. If the request can not be sent, the future fails
+	 * with the {@link IOException}.
+	 *
+	 * @return The future for the result
+	 */
+	public ListenableFuture<GetResult> start() {
+		requestRouter.register(identifier, this);
+		try {
+			sendClientGet(uri);
+		} catch (IOException ioe1) {
+			requestRouter.unregister(identifier);
+			future.setException(ioe1);
+		}
+		return future;
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
+		if ((getFailed.getCode() == 27) || (getFailed.getCode() == 24)) {
+			/* redirect! */
+			String newUri = getFailed.getRedirectURI();
+			getResult.realUri(newUri);
+			try {
+				sendClientGet(newUri);
+			} catch (IOException ioe1) {
+				complete(getResult.success(false).exception(ioe1));
+			}
+		} else {
+			complete(getResult.success(false).errorCode(getFailed.getCode()).fatal(getFailed.isFatal()));
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
+		if (allData.getPayloadException() != null) {
+			complete(getResult.success(false).exception(allData.getPayloadException()));
+			return;
+		}
+		complete(getResult.success(true).contentType(allData.getContentType()).contentLength(allData.getDataLength()).inputStream(allData.getPayloadInputStream()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedProtocolError(FcpConnection fcpConnection, ProtocolError protocolError) {
+		complete(getResult.success(false).exception(new FcpException("Protocol error (" + protocolError.getCode() + ", " + protocolError.getCodeDescription())));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedCloseConnectionDuplicateClientName(FcpConnection fcpConnection, CloseConnectionDuplicateClientName closeConnectionDuplicateClientName) {
+		fail(new FcpException("Connection closed, duplicate client name"));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+		fail(new FcpException("Connection closed", throwable));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Sends a “ClientGet” message for the given URI.
+	 *
+	 * @param uri
+	 *            The URI to get
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void sendClientGet(String uri) throws IOException {
+		ClientGet clientGet = new ClientGet(uri, identifier);
+		clientGet.setFilterData(filterData);
+		fcpConnection.sendMessage(clientGet);
+	}
+
+	/**
+	 * Completes this task with the given result.
+	 *
+	 * @param getResult
+	 *            The result of the request
+	 */
+	private void complete(GetResult getResult) {
+		requestRouter.unregister(identifier);
+		future.set(getResult);
+	}
+
+	/**
+	 * Fails this task with the given exception.
+	 *
+	 * @param fcpException
+	 *            The exception to fail with
+	 */
+	private void fail(FcpException fcpException) {
+		requestRouter.unregister(identifier);
+		future.setException(fcpException);
+	}
+
+}
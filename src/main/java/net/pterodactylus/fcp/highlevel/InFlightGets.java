@@ -0,0 +1,150 @@
+/*
+ * jFCPlib - InFlightGets.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.base.Supplier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Deduplicates concurrent get requests for the same URI and options. The
+ * first caller starts the request; callers that ask for the same URI while
+ * the request is in flight wait for the same request. Every caller receives
+ * its own {@link GetResult} with its own input stream; all streams read the
+ * same spooled payload.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class InFlightGets {
+
+	/** The requests in flight, by URI and options. */
+	private final Map<String, List<SettableFuture<GetResult>>> inFlightGets = new HashMap<String, List<SettableFuture<GetResult>>>();
+
+	/**
+	 * Returns a future for the result of the given URI. If a request for the
+	 * URI with the same options is already in flight, the caller waits for
+	 * it; otherwise a new request is started using the given supplier.
+	 *
+	 * @param uri
+	 *            The URI to get
+	 * @param filterData
+	 *            {@code true} to filter the retrieved data, {@code false}
+	 *            otherwise
+	 * @param requestStarter
+	 *            Starts a new request for the URI
+	 * @return The future for the result of the request
+	 */
+	public ListenableFuture<GetResult> get(String uri, boolean filterData, Supplier<ListenableFuture<GetResult>> requestStarter) {
+		final String key = filterData + ":" + uri;
+		SettableFuture<GetResult> future = SettableFuture.create();
+		synchronized (inFlightGets) {
+			List<SettableFuture<GetResult>> waiters = inFlightGets.get(key);
+			if (waiters != null) {
+				waiters.add(future);
+				return future;
+			}
+			waiters = new ArrayList<SettableFuture<GetResult>>();
+			waiters.add(future);
+			inFlightGets.put(key, waiters);
+		}
+		ListenableFuture<GetResult> startedRequest;
+		try {
+			startedRequest = requestStarter.get();
+		} catch (RuntimeException re1) {
+			startedRequest = Futures.immediateFailedFuture(re1);
+		}
+		final ListenableFuture<GetResult> request = startedRequest;
+		request.addListener(new Runnable() {
+
+			@Override
+			public void run() {
+				finish(key, request);
+			}
+		}, MoreExecutors.sameThreadExecutor());
+		return future;
+	}
+
+	/**
+	 * Returns the number of distinct requests in flight.
+	 *
+	 * @return The number of requests in flight
+	 */
+	public int size() {
+		synchronized (inFlightGets) {
+			return inFlightGets.size();
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Hands the result of the finished request to all waiting callers. The
+	 * additional streams are opened before the first caller receives the
+	 * result, so that the first caller can not release the payload before
+	 * the other callers have a reference to it.
+	 *
+	 * @param key
+	 *            The key of the request
+	 * @param request
+	 *            The finished request
+	 */
+	private void finish(String key, ListenableFuture<GetResult> request) {
+		List<SettableFuture<GetResult>> waiters;
+		synchronized (inFlightGets) {
+			waiters = inFlightGets.remove(key);
+		}
+		GetResult getResult;
+		try {
+			getResult = request.get();
+		} catch (InterruptedException ie1) {
+			/* can not happen, the request is done. */
+			throw new AssertionError(ie1);
+		} catch (ExecutionException ee1) {
+			for (SettableFuture<GetResult> waiter : waiters) {
+				waiter.setException(ee1.getCause());
+			}
+			return;
+		}
+		List<GetResult> sharedResults = new ArrayList<GetResult>();
+		for (int index = 1; index < waiters.size(); index++) {
+			try {
+				sharedResults.add(getResult.share());
+			} catch (IOException ioe1) {
+				sharedResults.add(new GetResult().success(false).exception(ioe1).realUri(getResult.getRealUri()));
+			}
+		}
+		waiters.get(0).set(getResult);
+		for (int index = 1; index < waiters.size(); index++) {
+			waiters.get(index).set(sharedResults.get(index - 1));
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * jFCPlib - Insert.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.File;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.Files;
+
+/**
+ * Describes a single insert for {@link FcpClient}. The data of an insert is
+ * given as a {@link ByteSource} so that it can be read again if the insert
+ * has to be retried.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class Insert {
+
+	/** The URI to insert to. */
+	private final String uri;
+
+	/** The data to insert. */
+	private final ByteSource data;
+
+	/** The content type of the data. */
+	private String contentType;
+
+	/** How often to retry the insert after a non-fatal failure. */
+	private int retries;
+
+	/** Whether the node should generate the final URI early. */
+	private boolean earlyEncode;
+
+	/**
+	 * Creates a new insert of the given data.
+	 *
+	 * @param uri
+	 *            The URI to insert to, e.g. “CHK@”
+	 * @param data
+	 *            The data to insert
+	 */
+	public Insert(String uri, ByteSource data) {
+		this.uri = uri;
+		this.data = data;
+	}
+
+	/**
+	 * Creates a new insert of the given file. The file is read by the client
+	 * and sent to the node, so the node does not need access to it.
+	 *
+	 * @param uri
+	 *            The URI to insert to, e.g. “CHK@”
+	 * @param file
+	 *            The file to insert
+	 */
+	public Insert(String uri, File file) {
+		this(uri, Files.asByteSource(file));
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the URI to insert to.
+	 *
+	 * @return The URI to insert to
+	 */
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * Returns the data to insert.
+	 *
+	 * @return The data to insert
+	 */
+	public ByteSource getData() {
+		return data;
+	}
+
+	/**
+	 * Returns the content type of the data.
+	 *
+	 * @return The content type of the data, or {@code null} to let the node
+	 *         guess the content type
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * Sets the content type of the data.
+	 *
+	 * @param contentType
+	 *            The content type of the data, or {@code null} to let the
+	 *            node guess the content type
+	 * @return This insert
+	 */
+	public Insert setContentType(String contentType) {
+		this.contentType = contentType;
+		return this;
+	}
+
+	/**
+	 * Returns how often the insert is retried after a non-fatal failure.
+	 *
+	 * @return The number of retries
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * Sets how often the insert is retried after a non-fatal failure. The
+	 * client sends the insert again, so this is in addition to the retries
+	 * the node performs itself.
+	 *
+	 * @param retries
+	 *            The number of retries
+	 * @return This insert
+	 */
+	public Insert setRetries(int retries) {
+		this.retries = retries;
+		return this;
+	}
+
+	/**
+	 * Returns whether the node should generate the final URI of the insert
+	 * before it starts inserting.
+	 *
+	 * @return {@code true} if the URI should be generated early,
+	 *         {@code false} otherwise
+	 */
+	public boolean isEarlyEncode() {
+		return earlyEncode;
+	}
+
+	/**
+	 * Sets whether the node should generate the final URI of the insert
+	 * before it starts inserting. With early encoding, the URI future of the
+	 * {@link InsertHandle} completes as soon as the node has encoded the
+	 * data instead of after the top block has been inserted.
+	 *
+	 * @param earlyEncode
+	 *            {@code true} to generate the URI early, {@code false}
+	 *            otherwise
+	 * @return This insert
+	 */
+	public Insert setEarlyEncode(boolean earlyEncode) {
+		this.earlyEncode = earlyEncode;
+		return this;
+	}
+
+}
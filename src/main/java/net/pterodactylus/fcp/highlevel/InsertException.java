@@ -0,0 +1,72 @@
+/*
+ * jFCPlib - InsertException.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import net.pterodactylus.fcp.PutFailed;
+
+/**
+ * Exception that signals that the node could not insert the data of an
+ * {@link Insert}.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class InsertException extends FcpException {
+
+	/** The serial version UID. */
+	private static final long serialVersionUID = 1L;
+
+	/** The error code of the failure. */
+	private final int code;
+
+	/** Whether the failure was fatal. */
+	private final boolean fatal;
+
+	/**
+	 * Creates a new insert exception from the given “PutFailed” message.
+	 *
+	 * @param putFailed
+	 *            The “PutFailed” message
+	 */
+	public InsertException(PutFailed putFailed) {
+		super("Insert failed (" + putFailed.getCode() + ", " + putFailed.getCodeDescription() + ")");
+		this.code = putFailed.getCode();
+		this.fatal = putFailed.isFatal();
+	}
+
+	/**
+	 * Returns the error code of the failure.
+	 *
+	 * @return The error code
+	 */
+	public int getCode() {
+		return code;
+	}
+
+	/**
+	 * Returns whether the failure was fatal, i.e. whether retrying the insert
+	 * will fail again.
+	 *
+	 * @return {@code true} if the failure was fatal, {@code false} otherwise
+	 */
+	public boolean isFatal() {
+		return fatal;
+	}
+
+}
@@ -0,0 +1,164 @@
+/*
+ * jFCPlib - InsertHandle.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Handle for an {@link Insert} that has been started by {@link FcpClient}.
+ * The handle has a future for every stage of the insert; each future
+ * completes with the final URI of the insert. If the insert fails, all
+ * futures that have not completed yet fail with an {@link FcpException},
+ * usually an {@link InsertException}.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class InsertHandle {
+
+	/** The insert. */
+	private final Insert insert;
+
+	/** The identifier of the insert. */
+	private final String identifier;
+
+	/** The future for the generated URI. */
+	private final SettableFuture<String> uriFuture = SettableFuture.create();
+
+	/** The future for the insert becoming fetchable. */
+	private final SettableFuture<String> fetchableFuture = SettableFuture.create();
+
+	/** The future for the completion of the insert. */
+	private final SettableFuture<String> successFuture = SettableFuture.create();
+
+	/**
+	 * Creates a new insert handle.
+	 *
+	 * @param insert
+	 *            The insert
+	 * @param identifier
+	 *            The identifier of the insert
+	 */
+	InsertHandle(Insert insert, String identifier) {
+		this.insert = insert;
+		this.identifier = identifier;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the insert of this handle.
+	 *
+	 * @return The insert
+	 */
+	public Insert getInsert() {
+		return insert;
+	}
+
+	/**
+	 * Returns the identifier of the insert.
+	 *
+	 * @return The identifier of the insert
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the future that completes once the node has generated the final
+	 * URI of the insert (“URIGenerated”).
+	 *
+	 * @return The future for the generated URI
+	 */
+	public ListenableFuture<String> getUriFuture() {
+		return uriFuture;
+	}
+
+	/**
+	 * Returns the future that completes once the inserted data can be
+	 * fetched (“PutFetchable”), or once the insert has succeeded.
+	 *
+	 * @return The future for the insert becoming fetchable
+	 */
+	public ListenableFuture<String> getFetchableFuture() {
+		return fetchableFuture;
+	}
+
+	/**
+	 * Returns the future that completes once the insert has succeeded
+	 * (“PutSuccessful”).
+	 *
+	 * @return The future for the completion of the insert
+	 */
+	public ListenableFuture<String> getSuccessFuture() {
+		return successFuture;
+	}
+
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Completes the “URI generated” stage.
+	 *
+	 * @param uri
+	 *            The generated URI
+	 */
+	void uriGenerated(String uri) {
+		uriFuture.set(uri);
+	}
+
+	/**
+	 * Completes the “URI generated” and “fetchable” stages.
+	 *
+	 * @param uri
+	 *            The final URI
+	 */
+	void fetchable(String uri) {
+		uriGenerated(uri);
+		fetchableFuture.set(uri);
+	}
+
+	/**
+	 * Completes all stages.
+	 *
+	 * @param uri
+	 *            The final URI
+	 */
+	void succeeded(String uri) {
+		fetchable(uri);
+		successFuture.set(uri);
+	}
+
+	/**
+	 * Fails all stages that have not completed yet.
+	 *
+	 * @param fcpException
+	 *            The cause of the failure
+	 */
+	void failed(FcpException fcpException) {
+		uriFuture.setException(fcpException);
+		fetchableFuture.setException(fcpException);
+		successFuture.setException(fcpException);
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * jFCPlib - InsertTask.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import net.pterodactylus.fcp.ClientPut;
+import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.FcpUtils;
+import net.pterodactylus.fcp.IdentifierCollision;
+import net.pterodactylus.fcp.ProtocolError;
+import net.pterodactylus.fcp.PutFailed;
+import net.pterodactylus.fcp.PutFetchable;
+import net.pterodactylus.fcp.PutSuccessful;
+import net.pterodactylus.fcp.URIGenerated;
+
+/**
+ * A single non-persistent insert. The task sends a “ClientPut” message with
+ * the data of the insert, completes the stages of its {@link InsertHandle}
+ * as the node reports progress, and sends the insert again after a
+ * non-fatal “PutFailed” until the retries of the insert are used up. Retries
+ * are sent from the retry executor, so that the connection’s reader thread
+ * does not block while the data is uploaded again.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class InsertTask extends FcpAdapter {
+
+	/** The connection to the node. */
+	private final FcpConnection fcpConnection;
+
+	/** The request router of the client. */
+	private final RequestRouter requestRouter;
+
+	/** The executor that sends retries. */
+	private final Executor retryExecutor;
+
+	/** The handle of the insert. */
+	private final InsertHandle insertHandle;
+
+	/** The number of retries left. */
+	private int retriesLeft;
+
+	/**
+	 * Creates a new insert task.
+	 *
+	 * @param fcpConnection
+	 *            The connection to the node
+	 * @param requestRouter
+	 *            The request router of the client
+	 * @param retryExecutor
+	 *            The executor that sends retries
+	 * @param insertHandle
+	 *            The handle of the insert
+	 */
+	public InsertTask(FcpConnection fcpConnection, RequestRouter requestRouter, Executor retryExecutor, InsertHandle insertHandle) {
+		this.fcpConnection = fcpConnection;
+		this.requestRouter = requestRouter;
+		this.retryExecutor = retryExecutor;
+		this.insertHandle = insertHandle;
+		this.retriesLeft = insertHandle.getInsert().getRetries();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts the insert. If the insert can not be sent, the handle fails with
+	 * an {@link FcpException}.
+	 *
+	 * @return The handle of the insert
+	 */
+	public InsertHandle start() {
+		requestRouter.register(insertHandle.getIdentifier(), this);
+		sendClientPut();
+		return insertHandle;
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedURIGenerated(FcpConnection fcpConnection, URIGenerated uriGenerated) {
+		insertHandle.uriGenerated(uriGenerated.getURI());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFetchable(FcpConnection fcpConnection, PutFetchable putFetchable) {
+		insertHandle.fetchable(putFetchable.getURI());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutSuccessful(FcpConnection fcpConnection, PutSuccessful putSuccessful) {
+		requestRouter.unregister(insertHandle.getIdentifier());
+		insertHandle.succeeded(putSuccessful.getURI());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFailed(FcpConnection fcpConnection, PutFailed putFailed) {
+		if (!putFailed.isFatal() && (retriesLeft > 0)) {
+			retriesLeft--;
+			try {
+				retryExecutor.execute(new Runnable() {
+
+					@Override
+					@SuppressWarnings("synthetic-access")
+					public void run() {
+						sendClientPut();
+					}
+				});
+			} catch (RejectedExecutionException ree1) {
+				fail(new FcpException("Could not retry insert", ree1));
+			}
+			return;
+		}
+		fail(new InsertException(putFailed));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedIdentifierCollision(FcpConnection fcpConnection, IdentifierCollision identifierCollision) {
+		fail(new FcpException("Identifier collision"));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedProtocolError(FcpConnection fcpConnection, ProtocolError protocolError) {
+		fail(new FcpException("Protocol error (" + protocolError.getCode() + ", " + protocolError.getCodeDescription()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedCloseConnectionDuplicateClientName(FcpConnection fcpConnection, CloseConnectionDuplicateClientName closeConnectionDuplicateClientName) {
+		fail(new FcpException("Connection closed, duplicate client name"));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+		fail(new FcpException("Connection closed", throwable));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Sends the “ClientPut” message for the insert. If the data can not be
+	 * read or the message can not be sent, the insert fails.
+	 */
+	private void sendClientPut() {
+		Insert insert = insertHandle.getInsert();
+		ClientPut clientPut = new ClientPut(insert.getUri(), insertHandle.getIdentifier());
+		if (insert.getContentType() != null) {
+			clientPut.setMetadataContentType(insert.getContentType());
+		}
+		if (insert.isEarlyEncode()) {
+			clientPut.setEarlyEncode(true);
+		}
+		InputStream dataInputStream = null;
+		try {
+			clientPut.setDataLength(insert.getData().size());
+			dataInputStream = insert.getData().openBufferedStream();
+			clientPut.setPayloadInputStream(dataInputStream);
+			fcpConnection.sendMessage(clientPut);
+		} catch (IOException ioe1) {
+			fail(new FcpException("Could not send insert", ioe1));
+		} finally {
+			FcpUtils.close(dataInputStream);
+		}
+	}
+
+	/**
+	 * Fails the insert with the given exception.
+	 *
+	 * @param fcpException
+	 *            The cause of the failure
+	 */
+	private void fail(FcpException fcpException) {
+		requestRouter.unregister(insertHandle.getIdentifier());
+		insertHandle.failed(fcpException);
+	}
+
+}
@@ -0,0 +1,175 @@
+/*
+ * jFCPlib - JournalEntry.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * A request that was recorded in a {@link RequestJournal}. Entries are
+ * immutable; a change of state creates a new entry.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class JournalEntry {
+
+	/**
+	 * The states of a journaled request.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	public enum State {
+
+		/** The request has been submitted and has not finished yet. */
+		PENDING,
+
+		/** The request has finished successfully. */
+		SUCCEEDED,
+
+		/** The request has failed. */
+		FAILED,
+
+		/** The request has been removed from the node. */
+		REMOVED
+
+	}
+
+	/** The identifier of the request. */
+	private final String identifier;
+
+	/** The name of the message that started the request. */
+	private final String type;
+
+	/** The fields of the message that started the request. */
+	private final Map<String, String> options;
+
+	/** The state of the request. */
+	private final State state;
+
+	/** The error code of a failed request, or {@code -1}. */
+	private final int errorCode;
+
+	/**
+	 * Creates a new journal entry.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param type
+	 *            The name of the message that started the request
+	 * @param options
+	 *            The fields of the message that started the request
+	 * @param state
+	 *            The state of the request
+	 * @param errorCode
+	 *            The error code of a failed request, or {@code -1}
+	 */
+	JournalEntry(String identifier, String type, Map<String, String> options, State state, int errorCode) {
+		this.identifier = identifier;
+		this.type = type;
+		this.options = Collections.unmodifiableMap(options);
+		this.state = state;
+		this.errorCode = errorCode;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the identifier of the request.
+	 *
+	 * @return The identifier of the request
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the name of the message that started the request, e.g.
+	 * “ClientGet” or “ClientPut”.
+	 *
+	 * @return The type of the request
+	 */
+	public String getType() {
+		return type;
+	}
+
+	/**
+	 * Returns the URI of the request.
+	 *
+	 * @return The URI of the request
+	 */
+	public String getUri() {
+		return options.get("URI");
+	}
+
+	/**
+	 * Returns whether the request is on the global queue.
+	 *
+	 * @return {@code true} if the request is global, {@code false} otherwise
+	 */
+	public boolean isGlobal() {
+		return Boolean.parseBoolean(options.get("Global"));
+	}
+
+	/**
+	 * Returns the fields of the message that started the request.
+	 *
+	 * @return The options of the request
+	 */
+	public Map<String, String> getOptions() {
+		return options;
+	}
+
+	/**
+	 * Returns the state of the request.
+	 *
+	 * @return The state of the request
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Returns the error code of a failed request.
+	 *
+	 * @return The error code, or {@code -1} if the request has not failed
+	 */
+	public int getErrorCode() {
+		return errorCode;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns a copy of this entry with the given state.
+	 *
+	 * @param state
+	 *            The new state
+	 * @param errorCode
+	 *            The error code of a failed request, or {@code -1}
+	 * @return The copy of this entry
+	 */
+	JournalEntry withState(State state, int errorCode) {
+		return new JournalEntry(identifier, type, options, state, errorCode);
+	}
+
+}
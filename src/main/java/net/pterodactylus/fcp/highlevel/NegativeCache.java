@@ -0,0 +1,317 @@
+/*
+ * jFCPlib - NegativeCache.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Cache for failed get requests. A request that failed is remembered for a
+ * time that depends on its error code, and repeated requests for the same
+ * URI fail immediately during that time instead of tying up the node.
+ * <p>
+ * The time to live of a failure is taken from the time set for its error
+ * code with {@link #setTimeToLive(int, long, TimeUnit)}. Error codes without
+ * an explicit time use the time for fatal failures, which will not go away
+ * by retrying, or the (shorter) time for retriable failures. By default,
+ * “Data not found” and “All data not found” are cached for five minutes,
+ * “Route not found” and “Recently failed” for one minute, and errors that
+ * depend on the state of the node or the request (overload, internal
+ * errors, transfer failures, cancellation) are not cached at all.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class NegativeCache {
+
+	/** The default maximum number of cached failures. */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	/** The source of time. */
+	private final Ticker ticker;
+
+	/** The maximum number of cached failures. */
+	private final int maxEntries;
+
+	/** The times to live for specific error codes, in nanoseconds. */
+	private final Map<Integer, Long> timesToLive = new HashMap<Integer, Long>();
+
+	/** The time to live for fatal failures, in nanoseconds. */
+	private long fatalTimeToLive = TimeUnit.HOURS.toNanos(1);
+
+	/** The time to live for retriable failures, in nanoseconds. */
+	private long retriableTimeToLive = TimeUnit.SECONDS.toNanos(30);
+
+	/** The cached failures, in insertion order. */
+	private final LinkedHashMap<String, Failure> failures = new LinkedHashMap<String, Failure>();
+
+	/** The number of requests that were answered from the cache. */
+	private long hits;
+
+	/** The number of requests that were not found in the cache. */
+	private long misses;
+
+	/**
+	 * Creates a new negative cache with the default size.
+	 */
+	public NegativeCache() {
+		this(DEFAULT_MAX_ENTRIES, Ticker.systemTicker());
+	}
+
+	/**
+	 * Creates a new negative cache.
+	 *
+	 * @param maxEntries
+	 *            The maximum number of cached failures
+	 * @param ticker
+	 *            The source of time
+	 */
+	public NegativeCache(int maxEntries, Ticker ticker) {
+		this.maxEntries = maxEntries;
+		this.ticker = ticker;
+		/* data not found, all data not found. */
+		setTimeToLive(13, 5, TimeUnit.MINUTES);
+		setTimeToLive(28, 5, TimeUnit.MINUTES);
+		/* route not found, recently failed. */
+		setTimeToLive(14, 1, TimeUnit.MINUTES);
+		setTimeToLive(30, 1, TimeUnit.MINUTES);
+		/* bucket error, rejected overload, internal error, transfer failed, cancelled. */
+		for (int code : new int[] { 12, 15, 17, 18, 25 }) {
+			setTimeToLive(code, 0, TimeUnit.SECONDS);
+		}
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Sets the time to live for failures with the given error code. A time
+	 * of {@code 0} disables caching of the error code.
+	 *
+	 * @param code
+	 *            The error code
+	 * @param timeToLive
+	 *            The time to live
+	 * @param unit
+	 *            The unit of the time to live
+	 * @return This negative cache
+	 */
+	public synchronized NegativeCache setTimeToLive(int code, long timeToLive, TimeUnit unit) {
+		timesToLive.put(code, unit.toNanos(timeToLive));
+		return this;
+	}
+
+	/**
+	 * Sets the time to live for fatal failures whose error code does not have
+	 * its own time to live.
+	 *
+	 * @param timeToLive
+	 *            The time to live
+	 * @param unit
+	 *            The unit of the time to live
+	 * @return This negative cache
+	 */
+	public synchronized NegativeCache setFatalTimeToLive(long timeToLive, TimeUnit unit) {
+		fatalTimeToLive = unit.toNanos(timeToLive);
+		return this;
+	}
+
+	/**
+	 * Sets the time to live for retriable failures whose error code does not
+	 * have its own time to live.
+	 *
+	 * @param timeToLive
+	 *            The time to live
+	 * @param unit
+	 *            The unit of the time to live
+	 * @return This negative cache
+	 */
+	public synchronized NegativeCache setRetriableTimeToLive(long timeToLive, TimeUnit unit) {
+		retriableTimeToLive = unit.toNanos(timeToLive);
+		return this;
+	}
+
+	/**
+	 * Returns the number of requests that were answered from the cache.
+	 *
+	 * @return The number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests that were not found in the cache.
+	 *
+	 * @return The number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of cached failures, including expired failures that
+	 * have not been removed yet.
+	 *
+	 * @return The number of cached failures
+	 */
+	public synchronized int size() {
+		return failures.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns the cached failure for the given request.
+	 *
+	 * @param uri
+	 *            The URI of the request
+	 * @param filterData
+	 *            Whether the data of the request is filtered
+	 * @return A failed result with the cached error code, or {@code null} if
+	 *         no unexpired failure is cached
+	 */
+	public synchronized GetResult get(String uri, boolean filterData) {
+		String key = createKey(uri, filterData);
+		Failure failure = failures.get(key);
+		if ((failure != null) && (failure.expiry - ticker.read() <= 0)) {
+			failures.remove(key);
+			failure = null;
+		}
+		if (failure == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return new GetResult().success(false).errorCode(failure.code).fatal(failure.fatal);
+	}
+
+	/**
+	 * Stores the given result if it is a failure with a cacheable error code.
+	 *
+	 * @param uri
+	 *            The URI of the request
+	 * @param filterData
+	 *            Whether the data of the request is filtered
+	 * @param getResult
+	 *            The result of the request
+	 */
+	public synchronized void put(String uri, boolean filterData, GetResult getResult) {
+		if (getResult.isSuccess() || (getResult.getException() != null) || (getResult.getErrorCode() <= 0)) {
+			return;
+		}
+		long timeToLive = getTimeToLive(getResult.getErrorCode(), getResult.isFatal());
+		if (timeToLive <= 0) {
+			return;
+		}
+		String key = createKey(uri, filterData);
+		failures.remove(key);
+		failures.put(key, new Failure(getResult.getErrorCode(), getResult.isFatal(), ticker.read() + timeToLive));
+		while (failures.size() > maxEntries) {
+			failures.remove(failures.keySet().iterator().next());
+		}
+	}
+
+	/**
+	 * Removes the cached failure for the given URI, for both filtered and
+	 * unfiltered requests.
+	 *
+	 * @param uri
+	 *            The URI to remove
+	 */
+	public synchronized void invalidate(String uri) {
+		failures.remove(createKey(uri, true));
+		failures.remove(createKey(uri, false));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the time to live for a failure with the given error code.
+	 *
+	 * @param code
+	 *            The error code
+	 * @param fatal
+	 *            Whether the failure was fatal
+	 * @return The time to live, in nanoseconds
+	 */
+	private long getTimeToLive(int code, boolean fatal) {
+		Long timeToLive = timesToLive.get(code);
+		if (timeToLive != null) {
+			return timeToLive;
+		}
+		return fatal ? fatalTimeToLive : retriableTimeToLive;
+	}
+
+	/**
+	 * Creates the cache key for the given request.
+	 *
+	 * @param uri
+	 *            The URI of the request
+	 * @param filterData
+	 *            Whether the data of the request is filtered
+	 * @return The cache key
+	 */
+	private static String createKey(String uri, boolean filterData) {
+		return filterData + ":" + uri;
+	}
+
+	/**
+	 * A cached failure.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Failure {
+
+		/** The error code. */
+		final int code;
+
+		/** Whether the failure was fatal. */
+		final boolean fatal;
+
+		/** The time at which the failure expires, in ticker nanoseconds. */
+		final long expiry;
+
+		/**
+		 * Creates a new cached failure.
+		 *
+		 * @param code
+		 *            The error code
+		 * @param fatal
+		 *            Whether the failure was fatal
+		 * @param expiry
+		 *            The time at which the failure expires
+		 */
+		Failure(int code, boolean fatal, long expiry) {
+			this.code = code;
+			this.fatal = fatal;
+			this.expiry = expiry;
+		}
+
+	}
+
+}
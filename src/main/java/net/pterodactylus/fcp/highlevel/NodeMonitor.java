@@ -0,0 +1,565 @@
+/*
+ * jFCPlib - NodeMonitor.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.fcp.NodeData;
+
+/**
+ * Monitors the volatile data of the node, e.g. “averagePingTime”,
+ * “numberOfConnected”, or “totalOutputRate”. The monitor repeatedly
+ * requests the node data and records the chosen fields in a fixed-size time
+ * series outside of the Java heap. The polling interval adapts to the data:
+ * it is halved when a field changed by more than the change threshold since
+ * the last poll, and it is doubled when all fields were stable, always
+ * staying between the minimum and the maximum interval.
+ * <p>
+ * {@link ThresholdListener}s are notified when a field exceeds an upper
+ * threshold or falls below a lower threshold, and again when it recovers.
+ * Listeners are called from the polling thread and should return quickly.
+ *
+ * @see FcpClient#getNodeInformation(Boolean, Boolean, Boolean)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class NodeMonitor implements Closeable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(NodeMonitor.class.getName());
+
+	/** The client to poll the node with. */
+	private final FcpClient fcpClient;
+
+	/** The scheduler for the polls. */
+	private final ScheduledExecutorService scheduler;
+
+	/** The scheduler created by this monitor, or {@code null}. */
+	private final ScheduledExecutorService ownScheduler;
+
+	/** The names of the monitored volatile fields. */
+	private final List<String> fields;
+
+	/** The recorded values. */
+	private final TimeSeries timeSeries;
+
+	/** The thresholds of the fields. */
+	private final List<Threshold> thresholds = new CopyOnWriteArrayList<Threshold>();
+
+	/** The minimum polling interval, in milliseconds. */
+	private volatile long minimumInterval = 1000;
+
+	/** The maximum polling interval, in milliseconds. */
+	private volatile long maximumInterval = 60000;
+
+	/** The relative change of a field that counts as fast. */
+	private volatile double changeThreshold = 0.1;
+
+	/** The current polling interval, in milliseconds. */
+	private volatile long interval = 1000;
+
+	/** The values of the last poll, or {@code null}. */
+	private double[] lastValues;
+
+	/** The last received node data, or {@code null}. */
+	private volatile NodeData lastNodeData;
+
+	/** The next poll, or {@code null}. */
+	private ScheduledFuture<?> nextPoll;
+
+	/** Whether the monitor has been closed. */
+	private boolean closed;
+
+	/**
+	 * Creates a new node monitor with its own polling thread.
+	 *
+	 * @param fcpClient
+	 *            The client to poll the node with
+	 * @param capacity
+	 *            The number of polls to keep
+	 * @param fields
+	 *            The names of the volatile fields to monitor, without the
+	 *            “volatile.” prefix
+	 */
+	public NodeMonitor(FcpClient fcpClient, int capacity, String... fields) {
+		this(fcpClient, Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "NodeMonitor");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true, capacity, fields);
+	}
+
+	/**
+	 * Creates a new node monitor that polls on the given scheduler.
+	 *
+	 * @param fcpClient
+	 *            The client to poll the node with
+	 * @param scheduler
+	 *            The scheduler for the polls
+	 * @param capacity
+	 *            The number of polls to keep
+	 * @param fields
+	 *            The names of the volatile fields to monitor, without the
+	 *            “volatile.” prefix
+	 */
+	public NodeMonitor(FcpClient fcpClient, ScheduledExecutorService scheduler, int capacity, String... fields) {
+		this(fcpClient, scheduler, false, capacity, fields);
+	}
+
+	/**
+	 * Creates a new node monitor.
+	 *
+	 * @param fcpClient
+	 *            The client to poll the node with
+	 * @param scheduler
+	 *            The scheduler for the polls
+	 * @param ownScheduler
+	 *            {@code true} if the scheduler has to be shut down by
+	 *            {@link #close()}
+	 * @param capacity
+	 *            The number of polls to keep
+	 * @param fields
+	 *            The names of the volatile fields to monitor
+	 */
+	private NodeMonitor(FcpClient fcpClient, ScheduledExecutorService scheduler, boolean ownScheduler, int capacity, String... fields) {
+		this.fcpClient = fcpClient;
+		this.scheduler = scheduler;
+		this.ownScheduler = ownScheduler ? scheduler : null;
+		this.fields = Collections.unmodifiableList(Arrays.asList(fields.clone()));
+		timeSeries = new TimeSeries(capacity, fields.length);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the names of the monitored volatile fields.
+	 *
+	 * @return The monitored fields
+	 */
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Sets the bounds of the polling interval. The next poll uses the
+	 * minimum interval.
+	 *
+	 * @param minimumInterval
+	 *            The minimum time between two polls
+	 * @param maximumInterval
+	 *            The maximum time between two polls
+	 * @param unit
+	 *            The unit of the intervals
+	 * @return This node monitor
+	 */
+	public NodeMonitor setPollingInterval(long minimumInterval, long maximumInterval, TimeUnit unit) {
+		this.minimumInterval = unit.toMillis(minimumInterval);
+		this.maximumInterval = Math.max(this.minimumInterval, unit.toMillis(maximumInterval));
+		interval = this.minimumInterval;
+		return this;
+	}
+
+	/**
+	 * Sets the relative change of a field between two polls above which
+	 * polling is sped up.
+	 *
+	 * @param changeThreshold
+	 *            The relative change, e.g. {@code 0.1} for 10%
+	 * @return This node monitor
+	 */
+	public NodeMonitor setChangeThreshold(double changeThreshold) {
+		this.changeThreshold = changeThreshold;
+		return this;
+	}
+
+	/**
+	 * Returns the time until the next poll.
+	 *
+	 * @param unit
+	 *            The unit of the returned interval
+	 * @return The current polling interval
+	 */
+	public long getInterval(TimeUnit unit) {
+		return unit.convert(interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns the node data received by the last poll.
+	 *
+	 * @return The last node data, or {@code null} if no poll has succeeded
+	 *         yet
+	 */
+	public NodeData getLastNodeData() {
+		return lastNodeData;
+	}
+
+	/**
+	 * Returns the number of recorded polls.
+	 *
+	 * @return The number of recorded polls
+	 */
+	public int getSampleCount() {
+		synchronized (timeSeries) {
+			return timeSeries.size();
+		}
+	}
+
+	/**
+	 * Returns the statistics of a field in the given time window.
+	 *
+	 * @param field
+	 *            The name of the field
+	 * @param from
+	 *            The start of the window, in milliseconds since the epoch
+	 * @param to
+	 *            The end of the window, in milliseconds since the epoch
+	 * @return The statistics of the window
+	 * @throws IllegalArgumentException
+	 *             if the field is not monitored
+	 */
+	public WindowStatistics getStatistics(String field, long from, long to) throws IllegalArgumentException {
+		int column = getColumn(field);
+		synchronized (timeSeries) {
+			return timeSeries.aggregate(column, from, to);
+		}
+	}
+
+	/**
+	 * Returns the statistics of a field over the given time up to now.
+	 *
+	 * @param field
+	 *            The name of the field
+	 * @param window
+	 *            The length of the window
+	 * @param unit
+	 *            The unit of the window
+	 * @return The statistics of the window
+	 * @throws IllegalArgumentException
+	 *             if the field is not monitored
+	 */
+	public WindowStatistics getStatistics(String field, long window, TimeUnit unit) throws IllegalArgumentException {
+		long now = System.currentTimeMillis();
+		return getStatistics(field, now - unit.toMillis(window), now);
+	}
+
+	/**
+	 * Adds a threshold that is crossed when the field rises above the given
+	 * value, e.g. for the load or the bandwidth of the node.
+	 *
+	 * @param field
+	 *            The name of the field
+	 * @param threshold
+	 *            The highest acceptable value
+	 * @param thresholdListener
+	 *            The listener to notify
+	 * @return This node monitor
+	 * @throws IllegalArgumentException
+	 *             if the field is not monitored
+	 */
+	public NodeMonitor addUpperThreshold(String field, double threshold, ThresholdListener thresholdListener) throws IllegalArgumentException {
+		thresholds.add(new Threshold(getColumn(field), threshold, true, thresholdListener));
+		return this;
+	}
+
+	/**
+	 * Adds a threshold that is crossed when the field falls below the given
+	 * value, e.g. for the number of connected peers.
+	 *
+	 * @param field
+	 *            The name of the field
+	 * @param threshold
+	 *            The lowest acceptable value
+	 * @param thresholdListener
+	 *            The listener to notify
+	 * @return This node monitor
+	 * @throws IllegalArgumentException
+	 *             if the field is not monitored
+	 */
+	public NodeMonitor addLowerThreshold(String field, double threshold, ThresholdListener thresholdListener) throws IllegalArgumentException {
+		thresholds.add(new Threshold(getColumn(field), threshold, false, thresholdListener));
+		return this;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts polling the node.
+	 *
+	 * @return This node monitor
+	 */
+	public synchronized NodeMonitor start() {
+		if (!closed && (nextPoll == null)) {
+			schedule(0);
+		}
+		return this;
+	}
+
+	/**
+	 * Stops polling the node. A poll that is currently running is finished.
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (nextPoll != null) {
+			nextPoll.cancel(false);
+		}
+		if (ownScheduler != null) {
+			ownScheduler.shutdown();
+		}
+	}
+
+	/**
+	 * Records the given node data, adapts the polling interval, and notifies
+	 * the listeners of crossed thresholds.
+	 *
+	 * @param time
+	 *            The time of the poll, in milliseconds since the epoch
+	 * @param nodeData
+	 *            The received node data
+	 */
+	void process(long time, NodeData nodeData) {
+		lastNodeData = nodeData;
+		double[] values = new double[fields.size()];
+		for (int column = 0; column < values.length; column++) {
+			values[column] = parse(nodeData.getVolatile(fields.get(column)));
+		}
+		synchronized (timeSeries) {
+			timeSeries.add(time, values);
+		}
+		synchronized (this) {
+			if (changedFast(lastValues, values)) {
+				interval = Math.max(minimumInterval, interval / 2);
+			} else if (lastValues != null) {
+				interval = Math.min(maximumInterval, interval * 2);
+			}
+			lastValues = values;
+		}
+		for (Threshold threshold : thresholds) {
+			threshold.check(values[threshold.column]);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Polls the node once and schedules the next poll. If the poll fails,
+	 * the next poll happens after the maximum interval.
+	 */
+	private void poll() {
+		boolean polled = false;
+		try {
+			NodeData nodeData = fcpClient.getNodeInformation(false, false, true);
+			if (nodeData != null) {
+				process(System.currentTimeMillis(), nodeData);
+			}
+			polled = true;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "could not poll node", ioe1);
+		} catch (FcpException fe1) {
+			logger.log(Level.WARNING, "could not poll node", fe1);
+		} catch (RuntimeException re1) {
+			logger.log(Level.WARNING, "could not poll node", re1);
+		} finally {
+			synchronized (this) {
+				if (!polled) {
+					interval = maximumInterval;
+				}
+				if (!closed) {
+					schedule(interval);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Schedules the next poll. Has to be called while synchronized on this
+	 * monitor.
+	 *
+	 * @param delay
+	 *            The delay until the poll, in milliseconds
+	 */
+	private void schedule(long delay) {
+		nextPoll = scheduler.schedule(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				poll();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Returns whether any field changed by more than the change threshold.
+	 *
+	 * @param oldValues
+	 *            The values of the last poll, or {@code null}
+	 * @param newValues
+	 *            The values of the current poll
+	 * @return {@code true} if a field changed fast, {@code false} otherwise
+	 */
+	private boolean changedFast(double[] oldValues, double[] newValues) {
+		if (oldValues == null) {
+			return false;
+		}
+		for (int column = 0; column < newValues.length; column++) {
+			double oldValue = oldValues[column];
+			double newValue = newValues[column];
+			if (Double.isNaN(oldValue) || Double.isNaN(newValue)) {
+				continue;
+			}
+			double change = Math.abs(newValue - oldValue);
+			if ((oldValue == 0) ? (change > 0) : ((change / Math.abs(oldValue)) > changeThreshold)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the column of the given field.
+	 *
+	 * @param field
+	 *            The name of the field
+	 * @return The column of the field
+	 * @throws IllegalArgumentException
+	 *             if the field is not monitored
+	 */
+	private int getColumn(String field) throws IllegalArgumentException {
+		int column = fields.indexOf(field);
+		if (column == -1) {
+			throw new IllegalArgumentException("field " + field + " is not monitored");
+		}
+		return column;
+	}
+
+	/**
+	 * Parses the value of a volatile field.
+	 *
+	 * @param value
+	 *            The value of the field, or {@code null}
+	 * @return The parsed value, or {@link Double#NaN} if the value is missing
+	 *         or not a number
+	 */
+	private static double parse(String value) {
+		if (value == null) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException nfe1) {
+			return Double.NaN;
+		}
+	}
+
+	/**
+	 * A threshold of a field and whether it is currently crossed.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private class Threshold {
+
+		/** The column of the field. */
+		final int column;
+
+		/** The threshold. */
+		final double threshold;
+
+		/** {@code true} for an upper threshold, {@code false} for a lower. */
+		final boolean upper;
+
+		/** The listener to notify. */
+		final ThresholdListener thresholdListener;
+
+		/** Whether the threshold is currently crossed. */
+		boolean exceeded;
+
+		/**
+		 * Creates a new threshold.
+		 *
+		 * @param column
+		 *            The column of the field
+		 * @param threshold
+		 *            The threshold
+		 * @param upper
+		 *            {@code true} for an upper threshold, {@code false} for a
+		 *            lower threshold
+		 * @param thresholdListener
+		 *            The listener to notify
+		 */
+		Threshold(int column, double threshold, boolean upper, ThresholdListener thresholdListener) {
+			this.column = column;
+			this.threshold = threshold;
+			this.upper = upper;
+			this.thresholdListener = thresholdListener;
+		}
+
+		/**
+		 * Checks the given value against this threshold and notifies the
+		 * listener if the state of the threshold changed.
+		 *
+		 * @param value
+		 *            The current value of the field
+		 */
+		@SuppressWarnings("synthetic-access")
+		synchronized void check(double value) {
+			if (Double.isNaN(value)) {
+				return;
+			}
+			boolean nowExceeded = upper ? (value > threshold) : (value < threshold);
+			if (nowExceeded == exceeded) {
+				return;
+			}
+			exceeded = nowExceeded;
+			String field = fields.get(column);
+			try {
+				if (nowExceeded) {
+					thresholdListener.thresholdExceeded(field, value, threshold);
+				} else {
+					thresholdListener.thresholdRecovered(field, value, threshold);
+				}
+			} catch (RuntimeException re1) {
+				logger.log(Level.WARNING, "threshold listener failed", re1);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,317 @@
+/*
+ * jFCPlib - PeerStatisticsRecorder.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.fcp.Peer;
+
+/**
+ * Records the history of numeric volatile fields of the node’s peers, such
+ * as “averagePingTime” or “totalBytesIn”. Every peer has a fixed-size ring
+ * buffer that is allocated outside of the Java heap and holds the chosen
+ * fields as primitive columns, so a sample costs 8 bytes per field plus 8
+ * bytes for its timestamp, regardless of how the peer was received. When a
+ * buffer is full, its oldest samples are overwritten.
+ * <p>
+ * Samples are taken with {@link #sample(Iterable)}, or periodically from a
+ * {@link PeerTable} with {@link #schedule(FcpClient, ScheduledExecutorService, long, TimeUnit)}.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class PeerStatisticsRecorder {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(PeerStatisticsRecorder.class.getName());
+
+	/** The names of the recorded volatile fields. */
+	private final List<String> fields;
+
+	/** The number of samples kept per peer. */
+	private final int capacity;
+
+	/** The time series of the peers, by identity. */
+	private final ConcurrentMap<String, TimeSeries> timeSeries = new ConcurrentHashMap<String, TimeSeries>();
+
+	/** The lock that orders the samples. */
+	private final Object sampleLock = new Object();
+
+	/** The time of the last sample. */
+	private long lastTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * Creates a new recorder.
+	 *
+	 * @param capacity
+	 *            The number of samples to keep per peer
+	 * @param fields
+	 *            The names of the volatile fields to record, without the
+	 *            “volatile.” prefix
+	 */
+	public PeerStatisticsRecorder(int capacity, String... fields) {
+		this.capacity = capacity;
+		this.fields = Collections.unmodifiableList(Arrays.asList(fields.clone()));
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the names of the recorded volatile fields.
+	 *
+	 * @return The recorded fields
+	 */
+	public List<String> getFields() {
+		return fields;
+	}
+
+	/**
+	 * Returns the identities of all peers with recorded samples.
+	 *
+	 * @return The identities of the recorded peers
+	 */
+	public Set<String> getIdentities() {
+		return Collections.unmodifiableSet(timeSeries.keySet());
+	}
+
+	/**
+	 * Returns the number of samples recorded for the given peer.
+	 *
+	 * @param identity
+	 *            The identity of the peer
+	 * @return The number of samples
+	 */
+	public int getSampleCount(String identity) {
+		TimeSeries peerTimeSeries = timeSeries.get(identity);
+		if (peerTimeSeries == null) {
+			return 0;
+		}
+		synchronized (peerTimeSeries) {
+			return peerTimeSeries.size();
+		}
+	}
+
+	/**
+	 * Returns the statistics of a field of a peer in the given time window.
+	 *
+	 * @param identity
+	 *            The identity of the peer
+	 * @param field
+	 *            The name of the field
+	 * @param from
+	 *            The start of the window, in milliseconds since the epoch
+	 * @param to
+	 *            The end of the window, in milliseconds since the epoch
+	 * @return The statistics of the window
+	 * @throws IllegalArgumentException
+	 *             if the field is not recorded
+	 */
+	public WindowStatistics getStatistics(String identity, String field, long from, long to) throws IllegalArgumentException {
+		int column = fields.indexOf(field);
+		if (column == -1) {
+			throw new IllegalArgumentException("field " + field + " is not recorded");
+		}
+		TimeSeries peerTimeSeries = timeSeries.get(identity);
+		if (peerTimeSeries == null) {
+			return new WindowStatistics();
+		}
+		synchronized (peerTimeSeries) {
+			return peerTimeSeries.aggregate(column, from, to);
+		}
+	}
+
+	/**
+	 * Returns the statistics of a field of a peer over the given time up to
+	 * now.
+	 *
+	 * @param identity
+	 *            The identity of the peer
+	 * @param field
+	 *            The name of the field
+	 * @param window
+	 *            The length of the window
+	 * @param unit
+	 *            The unit of the window
+	 * @return The statistics of the window
+	 * @throws IllegalArgumentException
+	 *             if the field is not recorded
+	 */
+	public WindowStatistics getStatistics(String identity, String field, long window, TimeUnit unit) throws IllegalArgumentException {
+		long now = System.currentTimeMillis();
+		return getStatistics(identity, field, now - unit.toMillis(window), now);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Records a sample of the given peers, taken now. If the clock went back
+	 * since the last sample, the time of the last sample is used.
+	 *
+	 * @param peers
+	 *            The peers to sample; they should include volatile data
+	 */
+	public void sample(Iterable<Peer> peers) {
+		synchronized (sampleLock) {
+			sample(Math.max(System.currentTimeMillis(), lastTimestamp), peers);
+		}
+	}
+
+	/**
+	 * Records a sample of the given peers. Samples have to be recorded in
+	 * chronological order.
+	 *
+	 * @param timestamp
+	 *            The time of the sample, in milliseconds since the epoch
+	 * @param peers
+	 *            The peers to sample; they should include volatile data
+	 * @throws IllegalArgumentException
+	 *             if the sample is older than the last sample
+	 */
+	public void sample(long timestamp, Iterable<Peer> peers) throws IllegalArgumentException {
+		synchronized (sampleLock) {
+			if (timestamp < lastTimestamp) {
+				throw new IllegalArgumentException("sample at " + timestamp + " is older than last sample at " + lastTimestamp);
+			}
+			lastTimestamp = timestamp;
+			record(timestamp, peers);
+		}
+	}
+
+	/**
+	 * Forgets the history of the given peer.
+	 *
+	 * @param identity
+	 *            The identity of the peer
+	 */
+	public void remove(String identity) {
+		timeSeries.remove(identity);
+	}
+
+	/**
+	 * Periodically refreshes the peer table of the given client and samples
+	 * its peers. The peer table is created with volatile data if necessary.
+	 * Failures of a single refresh are logged and do not stop sampling.
+	 *
+	 * @param fcpClient
+	 *            The client to sample the peers of
+	 * @param scheduler
+	 *            The scheduler to run the sampling on
+	 * @param period
+	 *            The time between two samples
+	 * @param unit
+	 *            The unit of the period
+	 * @return The future of the periodic sampling, which can be used to stop
+	 *         it
+	 */
+	public ScheduledFuture<?> schedule(final FcpClient fcpClient, ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+		return scheduler.scheduleAtFixedRate(new Runnable() {
+
+			/** The peer table sampled by the last run. */
+			private PeerTable lastPeerTable;
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				try {
+					PeerTable peerTable = fcpClient.getPeerTable(false, true);
+					/* a new table has just been listed, only refresh old ones. */
+					if (peerTable == lastPeerTable) {
+						peerTable = fcpClient.refreshPeerTable();
+					}
+					lastPeerTable = peerTable;
+					sample(peerTable.getPeers());
+				} catch (IOException ioe1) {
+					logger.log(Level.WARNING, "could not sample peers", ioe1);
+				} catch (FcpException fe1) {
+					logger.log(Level.WARNING, "could not sample peers", fe1);
+				}
+			}
+		}, 0, period, unit);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Adds a sample of the given peers to their time series.
+	 *
+	 * @param timestamp
+	 *            The time of the sample, in milliseconds since the epoch
+	 * @param peers
+	 *            The peers to sample
+	 */
+	private void record(long timestamp, Iterable<Peer> peers) {
+		double[] sample = new double[fields.size()];
+		for (Peer peer : peers) {
+			String identity = peer.getIdentity();
+			if (identity == null) {
+				continue;
+			}
+			for (int column = 0; column < sample.length; column++) {
+				sample[column] = parse(peer.getVolatile(fields.get(column)));
+			}
+			TimeSeries peerTimeSeries = timeSeries.get(identity);
+			if (peerTimeSeries == null) {
+				TimeSeries newTimeSeries = new TimeSeries(capacity, sample.length);
+				peerTimeSeries = timeSeries.putIfAbsent(identity, newTimeSeries);
+				if (peerTimeSeries == null) {
+					peerTimeSeries = newTimeSeries;
+				}
+			}
+			synchronized (peerTimeSeries) {
+				peerTimeSeries.add(timestamp, sample);
+			}
+		}
+	}
+
+	/**
+	 * Parses the value of a volatile field.
+	 *
+	 * @param value
+	 *            The value of the field, or {@code null}
+	 * @return The parsed value, or {@link Double#NaN} if the value is missing
+	 *         or not a number
+	 */
+	private static double parse(String value) {
+		if (value == null) {
+			return Double.NaN;
+		}
+		try {
+			return Double.parseDouble(value);
+		} catch (NumberFormatException nfe1) {
+			return Double.NaN;
+		}
+	}
+
+}
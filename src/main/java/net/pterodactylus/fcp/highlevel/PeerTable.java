@@ -0,0 +1,394 @@
+/*
+ * jFCPlib - PeerTable.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.EndListPeers;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.Peer;
+import net.pterodactylus.fcp.PeerRemoved;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Table of the peers of the node. The table is filled by a “ListPeers”
+ * request and is then kept up to date by every “Peer” and “PeerRemoved”
+ * message the node sends, e.g. in answer to adding, modifying, or removing
+ * peers. Peers are indexed by identity and by their kind (darknet, opennet,
+ * seed), and all queries return live, unmodifiable views without contacting
+ * the node. Outside of its own listings, the table only replaces a peer with
+ * a “Peer” message that carries at least the metadata and volatile data the
+ * table was listed with, so that replies to other requests do not strip
+ * the peers of their data.
+ * <p>
+ * The table can be {@link FcpClient#refreshPeerTable() refreshed} to pick up
+ * changes the node does not announce, such as new volatile data; peers that
+ * are missing from the refreshed listing are removed.
+ *
+ * @see FcpClient#getPeerTable(boolean, boolean)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class PeerTable extends FcpAdapter {
+
+	/** Whether the listings include the peers’ metadata. */
+	private final boolean withMetadata;
+
+	/** Whether the listings include the peers’ volatile data. */
+	private final boolean withVolatile;
+
+	/** All peers, by identity. */
+	private final ConcurrentMap<String, Peer> peers = new ConcurrentHashMap<String, Peer>();
+
+	/** The darknet peers, by identity. */
+	private final ConcurrentMap<String, Peer> darknetPeers = new ConcurrentHashMap<String, Peer>();
+
+	/** The opennet peers, by identity. */
+	private final ConcurrentMap<String, Peer> opennetPeers = new ConcurrentHashMap<String, Peer>();
+
+	/** The seed peers, by identity. */
+	private final ConcurrentMap<String, Peer> seedPeers = new ConcurrentHashMap<String, Peer>();
+
+	/** The listing that is currently being received, or {@code null}. */
+	private volatile Listing listing;
+
+	/** Whether a listing has been received completely. */
+	private volatile boolean listed;
+
+	/** The reason the table was closed, or {@code null}. */
+	private volatile FcpException closeReason;
+
+	/**
+	 * Creates a new peer table.
+	 *
+	 * @param withMetadata
+	 *            {@code true} if the listings include the peers’ metadata
+	 * @param withVolatile
+	 *            {@code true} if the listings include the peers’ volatile
+	 *            data
+	 */
+	PeerTable(boolean withMetadata, boolean withVolatile) {
+		this.withMetadata = withMetadata;
+		this.withVolatile = withVolatile;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the listings of this table include the peers’
+	 * metadata.
+	 *
+	 * @return {@code true} if the peers’ metadata is included, {@code false}
+	 *         otherwise
+	 */
+	public boolean isWithMetadata() {
+		return withMetadata;
+	}
+
+	/**
+	 * Returns whether the listings of this table include the peers’ volatile
+	 * data.
+	 *
+	 * @return {@code true} if the peers’ volatile data is included,
+	 *         {@code false} otherwise
+	 */
+	public boolean isWithVolatile() {
+		return withVolatile;
+	}
+
+	/**
+	 * Returns whether a listing has been received completely.
+	 *
+	 * @return {@code true} if the table has been listed, {@code false}
+	 *         otherwise
+	 */
+	public boolean isListed() {
+		return listed;
+	}
+
+	/**
+	 * Returns whether the table has stopped being updated because the
+	 * connection was closed.
+	 *
+	 * @return {@code true} if the table is closed, {@code false} otherwise
+	 */
+	public boolean isClosed() {
+		return closeReason != null;
+	}
+
+	/**
+	 * Returns the peer with the given identity.
+	 *
+	 * @param identity
+	 *            The identity of the peer
+	 * @return The peer, or {@code null} if there is no such peer
+	 */
+	public Peer getPeer(String identity) {
+		return peers.get(identity);
+	}
+
+	/**
+	 * Returns all peers.
+	 *
+	 * @return All peers
+	 */
+	public Collection<Peer> getPeers() {
+		return Collections.unmodifiableCollection(peers.values());
+	}
+
+	/**
+	 * Returns all darknet peers.
+	 *
+	 * @return The darknet peers
+	 */
+	public Collection<Peer> getDarknetPeers() {
+		return Collections.unmodifiableCollection(darknetPeers.values());
+	}
+
+	/**
+	 * Returns all opennet peers that are not seed nodes.
+	 *
+	 * @return The opennet peers
+	 */
+	public Collection<Peer> getOpennetPeers() {
+		return Collections.unmodifiableCollection(opennetPeers.values());
+	}
+
+	/**
+	 * Returns all seed peers.
+	 *
+	 * @return The seed peers
+	 */
+	public Collection<Peer> getSeedPeers() {
+		return Collections.unmodifiableCollection(seedPeers.values());
+	}
+
+	/**
+	 * Returns the number of peers.
+	 *
+	 * @return The number of peers
+	 */
+	public int size() {
+		return peers.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Starts a new listing with the given identifier. Peers that are not
+	 * part of the listing are removed when the listing ends.
+	 *
+	 * @param identifier
+	 *            The identifier of the “ListPeers” request
+	 */
+	void startListing(String identifier) {
+		listing = new Listing(identifier);
+	}
+
+	/**
+	 * Waits until the current listing has been received.
+	 *
+	 * @throws FcpException
+	 *             if the connection was closed before the listing was
+	 *             received
+	 */
+	void awaitListing() throws FcpException {
+		Listing listing = this.listing;
+		if (listing != null) {
+			Uninterruptibles.awaitUninterruptibly(listing.latch);
+		}
+		if (closeReason != null) {
+			throw closeReason;
+		}
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPeer(FcpConnection fcpConnection, Peer peer) {
+		String identity = peer.getIdentity();
+		if (identity == null) {
+			return;
+		}
+		Listing listing = this.listing;
+		boolean fromListing = (listing != null) && listing.identifier.equals(peer.getIdentifier());
+		if (fromListing) {
+			listing.identities.add(identity);
+		} else if (peers.containsKey(identity) && !hasListedData(peer)) {
+			return;
+		}
+		Peer oldPeer = peers.put(identity, peer);
+		if (oldPeer != null) {
+			getIndex(oldPeer).remove(identity);
+		}
+		getIndex(peer).put(identity, peer);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedEndListPeers(FcpConnection fcpConnection, EndListPeers endListPeers) {
+		Listing listing = this.listing;
+		if ((listing == null) || !listing.identifier.equals(endListPeers.getIdentifier())) {
+			return;
+		}
+		for (String identity : peers.keySet()) {
+			if (!listing.identities.contains(identity)) {
+				remove(identity);
+			}
+		}
+		this.listing = null;
+		listed = true;
+		listing.latch.countDown();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPeerRemoved(FcpConnection fcpConnection, PeerRemoved peerRemoved) {
+		remove(peerRemoved.getIdentity());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedCloseConnectionDuplicateClientName(FcpConnection fcpConnection, CloseConnectionDuplicateClientName closeConnectionDuplicateClientName) {
+		close(new FcpException("Connection closed, duplicate client name"));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+		close(new FcpException("Connection closed", throwable));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Removes the peer with the given identity from the table.
+	 *
+	 * @param identity
+	 *            The identity of the peer
+	 */
+	private void remove(String identity) {
+		if (identity == null) {
+			return;
+		}
+		Peer peer = peers.remove(identity);
+		if (peer != null) {
+			getIndex(peer).remove(identity);
+		}
+	}
+
+	/**
+	 * Returns whether the given peer carries the data this table is listed
+	 * with.
+	 *
+	 * @param peer
+	 *            The peer
+	 * @return {@code true} if the peer carries metadata and volatile data as
+	 *         far as the table’s listings do, {@code false} otherwise
+	 */
+	private boolean hasListedData(Peer peer) {
+		return (!withMetadata || !peer.getMetadataFields().isEmpty()) && (!withVolatile || !peer.getVolatileFields().isEmpty());
+	}
+
+	/**
+	 * Returns the index for the kind of the given peer.
+	 *
+	 * @param peer
+	 *            The peer
+	 * @return The index for the peer’s kind
+	 */
+	private ConcurrentMap<String, Peer> getIndex(Peer peer) {
+		if (peer.isSeed()) {
+			return seedPeers;
+		}
+		return peer.isOpennet() ? opennetPeers : darknetPeers;
+	}
+
+	/**
+	 * Closes this table, releasing threads that wait for a listing.
+	 *
+	 * @param fcpException
+	 *            The reason for closing the table
+	 */
+	private void close(FcpException fcpException) {
+		if (closeReason == null) {
+			closeReason = fcpException;
+		}
+		Listing listing = this.listing;
+		if (listing != null) {
+			listing.latch.countDown();
+		}
+	}
+
+	/**
+	 * A listing that is currently being received.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Listing {
+
+		/** The identifier of the “ListPeers” request. */
+		final String identifier;
+
+		/** The identities of the peers in the listing. */
+		final Set<String> identities = Collections.synchronizedSet(new HashSet<String>());
+
+		/** Released when the listing has been received. */
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		/**
+		 * Creates a new listing.
+		 *
+		 * @param identifier
+		 *            The identifier of the “ListPeers” request
+		 */
+		Listing(String identifier) {
+			this.identifier = identifier;
+		}
+
+	}
+
+}
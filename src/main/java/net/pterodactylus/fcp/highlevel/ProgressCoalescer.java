@@ -0,0 +1,335 @@
+/*
+ * jFCPlib - ProgressCoalescer.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.Closeable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.fcp.DataFound;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.PersistentRequestRemoved;
+import net.pterodactylus.fcp.PutFailed;
+import net.pterodactylus.fcp.PutSuccessful;
+import net.pterodactylus.fcp.SimpleProgress;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Reduces the “SimpleProgress” messages of a connection to at most one
+ * update per request and interval. The coalescer is added to a connection
+ * as a listener; it keeps the latest progress of every request and passes
+ * it to its {@link ProgressListener} when the interval since the last
+ * update of the request has passed. Updates that change whether the total
+ * is finalized or whether all required blocks have succeeded are passed on
+ * immediately. Progress that was held back is delivered by a periodic flush
+ * and when the request finishes.
+ * <p>
+ * Every request has a single {@link RequestProgress} record that is updated
+ * in place; the listener is called while the record is locked, so it should
+ * return quickly.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ProgressCoalescer extends FcpAdapter implements Closeable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(ProgressCoalescer.class.getName());
+
+	/** The listener for the coalesced progress. */
+	private final ProgressListener progressListener;
+
+	/** The minimum time between two updates of a request, in nanoseconds. */
+	private final long interval;
+
+	/** The source of time. */
+	private final Ticker ticker;
+
+	/** The scheduler created by this coalescer, or {@code null}. */
+	private final ScheduledExecutorService ownScheduler;
+
+	/** The periodic flush, or {@code null}. */
+	private final ScheduledFuture<?> flushTask;
+
+	/** The progress of the requests, by identifier. */
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+	/**
+	 * Creates a new progress coalescer with its own flush thread.
+	 *
+	 * @param progressListener
+	 *            The listener for the coalesced progress
+	 * @param interval
+	 *            The minimum time between two updates of a request
+	 * @param unit
+	 *            The unit of the interval
+	 */
+	public ProgressCoalescer(ProgressListener progressListener, long interval, TimeUnit unit) {
+		this(progressListener, interval, unit, Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "ProgressCoalescer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		}), true, Ticker.systemTicker());
+	}
+
+	/**
+	 * Creates a new progress coalescer that flushes held-back progress using
+	 * the given scheduler.
+	 *
+	 * @param progressListener
+	 *            The listener for the coalesced progress
+	 * @param interval
+	 *            The minimum time between two updates of a request
+	 * @param unit
+	 *            The unit of the interval
+	 * @param scheduler
+	 *            The scheduler for the periodic flush, or {@code null} to only
+	 *            flush on {@link #flush()}
+	 * @param ticker
+	 *            The source of time
+	 */
+	public ProgressCoalescer(ProgressListener progressListener, long interval, TimeUnit unit, ScheduledExecutorService scheduler, Ticker ticker) {
+		this(progressListener, interval, unit, scheduler, false, ticker);
+	}
+
+	/**
+	 * Creates a new progress coalescer.
+	 *
+	 * @param progressListener
+	 *            The listener for the coalesced progress
+	 * @param interval
+	 *            The minimum time between two updates of a request
+	 * @param unit
+	 *            The unit of the interval
+	 * @param scheduler
+	 *            The scheduler for the periodic flush, or {@code null}
+	 * @param ownScheduler
+	 *            {@code true} if the scheduler has to be shut down by
+	 *            {@link #close()}
+	 * @param ticker
+	 *            The source of time
+	 */
+	private ProgressCoalescer(ProgressListener progressListener, long interval, TimeUnit unit, ScheduledExecutorService scheduler, boolean ownScheduler, Ticker ticker) {
+		this.progressListener = progressListener;
+		this.interval = unit.toNanos(interval);
+		this.ticker = ticker;
+		this.ownScheduler = ownScheduler ? scheduler : null;
+		if (scheduler != null) {
+			flushTask = scheduler.scheduleWithFixedDelay(new Runnable() {
+
+				@Override
+				public void run() {
+					flush();
+				}
+			}, interval, interval, unit);
+		} else {
+			flushTask = null;
+		}
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Delivers the progress that has been held back for requests whose
+	 * interval since their last update has passed.
+	 */
+	public void flush() {
+		long now = ticker.read();
+		for (Entry entry : entries.values()) {
+			synchronized (entry) {
+				if (entry.dirty && ((now - entry.lastDelivery) >= interval)) {
+					deliver(entry, now);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops the periodic flush. Progress that has been held back is not
+	 * delivered anymore.
+	 */
+	@Override
+	public void close() {
+		if (flushTask != null) {
+			flushTask.cancel(false);
+		}
+		if (ownScheduler != null) {
+			ownScheduler.shutdown();
+		}
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedSimpleProgress(FcpConnection fcpConnection, SimpleProgress simpleProgress) {
+		String identifier = simpleProgress.getIdentifier();
+		Entry entry = entries.get(identifier);
+		if (entry == null) {
+			Entry newEntry = new Entry(new RequestProgress(identifier));
+			entry = entries.putIfAbsent(identifier, newEntry);
+			if (entry == null) {
+				entry = newEntry;
+			}
+		}
+		synchronized (entry) {
+			boolean stateChanged = entry.requestProgress.update(simpleProgress);
+			long now = ticker.read();
+			if (stateChanged || !entry.delivered || ((now - entry.lastDelivery) >= interval)) {
+				deliver(entry, now);
+			} else {
+				entry.dirty = true;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedDataFound(FcpConnection fcpConnection, DataFound dataFound) {
+		finish(dataFound.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
+		finish(getFailed.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutSuccessful(FcpConnection fcpConnection, PutSuccessful putSuccessful) {
+		finish(putSuccessful.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFailed(FcpConnection fcpConnection, PutFailed putFailed) {
+		finish(putFailed.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentRequestRemoved(FcpConnection fcpConnection, PersistentRequestRemoved persistentRequestRemoved) {
+		finish(persistentRequestRemoved.getIdentifier());
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Delivers held-back progress of the finished request with the given
+	 * identifier and forgets the request.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	private void finish(String identifier) {
+		Entry entry = entries.remove(identifier);
+		if (entry == null) {
+			return;
+		}
+		synchronized (entry) {
+			if (entry.dirty) {
+				deliver(entry, ticker.read());
+			}
+		}
+	}
+
+	/**
+	 * Passes the progress of the given entry to the listener. The caller has
+	 * to hold the lock of the entry.
+	 *
+	 * @param entry
+	 *            The entry to deliver
+	 * @param now
+	 *            The current time of the ticker
+	 */
+	private void deliver(Entry entry, long now) {
+		entry.dirty = false;
+		entry.delivered = true;
+		entry.lastDelivery = now;
+		try {
+			progressListener.progressUpdated(entry.requestProgress);
+		} catch (RuntimeException re1) {
+			logger.log(Level.WARNING, "progress listener failed", re1);
+		}
+	}
+
+	/**
+	 * The coalescing state of a single request.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Entry {
+
+		/** The progress of the request. */
+		final RequestProgress requestProgress;
+
+		/** Whether the progress has been delivered at least once. */
+		boolean delivered;
+
+		/** Whether there is progress that has not been delivered. */
+		boolean dirty;
+
+		/** The time of the last delivery, in ticker nanoseconds. */
+		long lastDelivery;
+
+		/**
+		 * Creates a new entry.
+		 *
+		 * @param requestProgress
+		 *            The progress of the request
+		 */
+		Entry(RequestProgress requestProgress) {
+			this.requestProgress = requestProgress;
+		}
+
+	}
+
+}
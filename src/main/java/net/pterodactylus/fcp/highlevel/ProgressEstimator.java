@@ -0,0 +1,385 @@
+/*
+ * jFCPlib - ProgressEstimator.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import net.pterodactylus.fcp.DataFound;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.PersistentRequestRemoved;
+import net.pterodactylus.fcp.PutFailed;
+import net.pterodactylus.fcp.PutSuccessful;
+import net.pterodactylus.fcp.SimpleProgress;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Estimates the throughput and the remaining time of requests from their
+ * “SimpleProgress” messages. The rate of every request is an exponentially
+ * weighted moving average of its succeeded blocks per second; the weight of
+ * older progress decays with the configured time constant, also while no
+ * progress arrives, so the rate of a stalled request approaches zero. An
+ * aggregate rate over all requests is kept the same way.
+ * <p>
+ * The estimator can be added to a connection as a listener, or it can be
+ * fed by a {@link ProgressCoalescer}. Only a few numbers are kept for every
+ * request, and finished or removed requests are forgotten.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class ProgressEstimator extends FcpAdapter implements ProgressListener {
+
+	/** The source of time. */
+	private final Ticker ticker;
+
+	/** The time constant of the moving averages, in nanoseconds. */
+	private final long timeConstant;
+
+	/** The estimates of the requests, by identifier. */
+	private final ConcurrentMap<String, Estimate> estimates = new ConcurrentHashMap<String, Estimate>();
+
+	/** The estimate of the aggregate throughput. */
+	private final Estimate aggregate;
+
+	/**
+	 * Creates a new progress estimator.
+	 *
+	 * @param timeConstant
+	 *            The time after which the weight of progress has dropped to
+	 *            1/e
+	 * @param unit
+	 *            The unit of the time constant
+	 */
+	public ProgressEstimator(long timeConstant, TimeUnit unit) {
+		this(timeConstant, unit, Ticker.systemTicker());
+	}
+
+	/**
+	 * Creates a new progress estimator.
+	 *
+	 * @param timeConstant
+	 *            The time after which the weight of progress has dropped to
+	 *            1/e
+	 * @param unit
+	 *            The unit of the time constant
+	 * @param ticker
+	 *            The source of time
+	 */
+	public ProgressEstimator(long timeConstant, TimeUnit unit, Ticker ticker) {
+		this.timeConstant = unit.toNanos(timeConstant);
+		this.ticker = ticker;
+		aggregate = new Estimate(ticker.read());
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of requests that are being tracked.
+	 *
+	 * @return The number of tracked requests
+	 */
+	public int size() {
+		return estimates.size();
+	}
+
+	/**
+	 * Returns the throughput of the given request.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @return The throughput in blocks per second, or {@code 0} if the
+	 *         request is unknown
+	 */
+	public double getRate(String identifier) {
+		Estimate estimate = estimates.get(identifier);
+		if (estimate == null) {
+			return 0;
+		}
+		synchronized (estimate) {
+			return estimate.getRate(ticker.read(), timeConstant);
+		}
+	}
+
+	/**
+	 * Returns the estimated time until the given request has all required
+	 * blocks.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param unit
+	 *            The unit of the returned time
+	 * @return The estimated remaining time, or {@code -1} if the request is
+	 *         unknown or not making progress
+	 */
+	public long getEta(String identifier, TimeUnit unit) {
+		Estimate estimate = estimates.get(identifier);
+		if (estimate == null) {
+			return -1;
+		}
+		synchronized (estimate) {
+			double rate = estimate.getRate(ticker.read(), timeConstant);
+			if (rate <= 0) {
+				return -1;
+			}
+			int remainingBlocks = Math.max(0, estimate.requiredBlocks - estimate.succeededBlocks);
+			return unit.convert((long) ((remainingBlocks / rate) * 1e9), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * Returns the throughput of all requests together.
+	 *
+	 * @return The aggregate throughput in blocks per second
+	 */
+	public double getTotalRate() {
+		synchronized (aggregate) {
+			return aggregate.getRate(ticker.read(), timeConstant);
+		}
+	}
+
+	/**
+	 * Returns the identifiers of all unfinished requests that have not made
+	 * progress for at least the given time.
+	 *
+	 * @param time
+	 *            The minimum time without progress
+	 * @param unit
+	 *            The unit of the time
+	 * @return The identifiers of the stalled requests
+	 */
+	public List<String> getStalledRequests(long time, TimeUnit unit) {
+		long now = ticker.read();
+		long stallTime = unit.toNanos(time);
+		List<String> stalledRequests = new ArrayList<String>();
+		for (Entry<String, Estimate> estimate : estimates.entrySet()) {
+			synchronized (estimate.getValue()) {
+				if ((now - estimate.getValue().lastProgress) >= stallTime) {
+					stalledRequests.add(estimate.getKey());
+				}
+			}
+		}
+		return stalledRequests;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Records the progress of a request.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param succeededBlocks
+	 *            The number of succeeded blocks
+	 * @param requiredBlocks
+	 *            The number of required blocks
+	 */
+	public void update(String identifier, int succeededBlocks, int requiredBlocks) {
+		long now = ticker.read();
+		Estimate estimate = estimates.get(identifier);
+		if (estimate == null) {
+			Estimate newEstimate = new Estimate(now);
+			newEstimate.succeededBlocks = succeededBlocks;
+			estimate = estimates.putIfAbsent(identifier, newEstimate);
+			if (estimate == null) {
+				estimate = newEstimate;
+			}
+		}
+		int newBlocks;
+		synchronized (estimate) {
+			newBlocks = Math.max(0, succeededBlocks - estimate.succeededBlocks);
+			estimate.requiredBlocks = requiredBlocks;
+			estimate.succeededBlocks = succeededBlocks;
+			estimate.add(newBlocks, now, timeConstant);
+		}
+		if (newBlocks > 0) {
+			synchronized (aggregate) {
+				aggregate.add(newBlocks, now, timeConstant);
+			}
+		}
+	}
+
+	/**
+	 * Stops tracking the given request.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	public void remove(String identifier) {
+		estimates.remove(identifier);
+	}
+
+	//
+	// PROGRESSLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void progressUpdated(RequestProgress requestProgress) {
+		update(requestProgress.getIdentifier(), requestProgress.getSucceededBlocks(), requestProgress.getRequiredBlocks());
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedSimpleProgress(FcpConnection fcpConnection, SimpleProgress simpleProgress) {
+		update(simpleProgress.getIdentifier(), simpleProgress.getSucceeded(), simpleProgress.getRequired());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedDataFound(FcpConnection fcpConnection, DataFound dataFound) {
+		remove(dataFound.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
+		remove(getFailed.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutSuccessful(FcpConnection fcpConnection, PutSuccessful putSuccessful) {
+		remove(putSuccessful.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFailed(FcpConnection fcpConnection, PutFailed putFailed) {
+		remove(putFailed.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentRequestRemoved(FcpConnection fcpConnection, PersistentRequestRemoved persistentRequestRemoved) {
+		remove(persistentRequestRemoved.getIdentifier());
+	}
+
+	/**
+	 * Exponentially weighted moving average of a block rate. Access has to
+	 * be synchronized on the estimate.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Estimate {
+
+		/** The rate at the time of the last update, in blocks per second. */
+		double rate;
+
+		/** The time of the last update, in ticker nanoseconds. */
+		long lastUpdate;
+
+		/** The weight of a block in the interval before the last update. */
+		double lastFactor;
+
+		/** The time of the last progress, in ticker nanoseconds. */
+		long lastProgress;
+
+		/** The number of succeeded blocks. */
+		int succeededBlocks;
+
+		/** The number of required blocks. */
+		int requiredBlocks;
+
+		/**
+		 * Creates a new estimate.
+		 *
+		 * @param now
+		 *            The current time of the ticker
+		 */
+		Estimate(long now) {
+			lastUpdate = now;
+			lastProgress = now;
+		}
+
+		/**
+		 * Adds the given number of blocks that succeeded since the last
+		 * update. The blocks are spread over the time since the last update.
+		 *
+		 * @param blocks
+		 *            The number of new blocks
+		 * @param now
+		 *            The current time of the ticker
+		 * @param timeConstant
+		 *            The time constant of the average, in nanoseconds
+		 */
+		void add(int blocks, long now, long timeConstant) {
+			long elapsed = now - lastUpdate;
+			if (elapsed > 0) {
+				double weight = Math.exp(-(double) elapsed / timeConstant);
+				lastFactor = (1 - weight) / (elapsed / 1e9);
+				rate = (rate * weight) + (blocks * lastFactor);
+			} else {
+				/* blocks at the same time belong to the last interval. */
+				rate += blocks * ((lastFactor > 0) ? lastFactor : (1e9 / timeConstant));
+			}
+			lastUpdate = now;
+			if (blocks > 0) {
+				lastProgress = now;
+			}
+		}
+
+		/**
+		 * Returns the rate, decayed to the given time.
+		 *
+		 * @param now
+		 *            The current time of the ticker
+		 * @param timeConstant
+		 *            The time constant of the average, in nanoseconds
+		 * @return The rate in blocks per second
+		 */
+		double getRate(long now, long timeConstant) {
+			long elapsed = now - lastUpdate;
+			if (elapsed <= 0) {
+				return rate;
+			}
+			return rate * Math.exp(-(double) elapsed / timeConstant);
+		}
+
+	}
+
+}
@@ -35,6 +35,7 @@ public class PutRequest extends Request {
 	 */
 	PutRequest(PersistentPut persistentPut) {
 		super(persistentPut.getIdentifier(), persistentPut.getClientToken(), persistentPut.isGlobal());
+		setPriority(persistentPut.getPriority());
 	}
 
 }
@@ -0,0 +1,384 @@
+/*
+ * jFCPlib - QueryCache.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.ConfigData;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.Peer;
+import net.pterodactylus.fcp.PeerRemoved;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Cache for the answers of queries that do not change the node, such as the
+ * node information, the list of peers, and the configuration. Concurrent
+ * identical queries are sent to the node only once, and all callers receive
+ * the same answer; the answer is then kept for a short time to live, so a
+ * number of monitors polling the node cause no more load than a single one.
+ * A time to live of {@code 0} only coalesces concurrent queries.
+ * <p>
+ * The cache is added to the connection by
+ * {@link FcpClient#setQueryCache(QueryCache)}. Answers are discarded early
+ * when the node announces a change: “Peer” and “PeerRemoved” messages
+ * invalidate the peer lists, and “ConfigData” messages invalidate the
+ * configuration and the node information. Queries that are in flight are
+ * not invalidated because the node answers them after the announced change.
+ * Failed queries are not cached.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class QueryCache extends FcpAdapter {
+
+	/** The key prefix of node information queries. */
+	static final String NODE = "node:";
+
+	/** The key prefix of peer list queries. */
+	static final String PEERS = "peers:";
+
+	/** The key prefix of configuration queries. */
+	static final String CONFIG = "config:";
+
+	/** The source of time. */
+	private final Ticker ticker;
+
+	/** The time to live of an answer, in nanoseconds. */
+	private final long timeToLive;
+
+	/** The queries, by key. */
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/** The number of queries that were answered without a new request. */
+	private long hits;
+
+	/** The number of queries that were sent to the node. */
+	private long misses;
+
+	/**
+	 * Creates a new query cache.
+	 *
+	 * @param timeToLive
+	 *            The time to live of an answer
+	 * @param unit
+	 *            The unit of the time to live
+	 */
+	public QueryCache(long timeToLive, TimeUnit unit) {
+		this(timeToLive, unit, Ticker.systemTicker());
+	}
+
+	/**
+	 * Creates a new query cache.
+	 *
+	 * @param timeToLive
+	 *            The time to live of an answer
+	 * @param unit
+	 *            The unit of the time to live
+	 * @param ticker
+	 *            The source of time
+	 */
+	public QueryCache(long timeToLive, TimeUnit unit, Ticker ticker) {
+		this.timeToLive = unit.toNanos(timeToLive);
+		this.ticker = ticker;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of queries that were answered by a cached answer or
+	 * by a query that was already in flight.
+	 *
+	 * @return The number of cache hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of queries that were sent to the node.
+	 *
+	 * @return The number of cache misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Discards all cached answers whose key starts with the given prefix.
+	 *
+	 * @param prefix
+	 *            The prefix of the keys to invalidate
+	 */
+	public synchronized void invalidate(String prefix) {
+		Iterator<Map.Entry<String, Entry>> entryIterator = entries.entrySet().iterator();
+		while (entryIterator.hasNext()) {
+			Map.Entry<String, Entry> entry = entryIterator.next();
+			if (entry.getKey().startsWith(prefix) && entry.getValue().future.isDone()) {
+				entryIterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * Discards all cached answers.
+	 */
+	public void invalidateAll() {
+		invalidate("");
+	}
+
+	/**
+	 * Returns the answer of the query with the given key. If the query is in
+	 * flight or has a cached answer, the caller receives that answer;
+	 * otherwise the query is executed in the calling thread.
+	 *
+	 * @param <T>
+	 *            The type of the answer
+	 * @param key
+	 *            The key of the query, which has to include all of its
+	 *            options
+	 * @param query
+	 *            The query
+	 * @return The answer of the query
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	@SuppressWarnings("unchecked")
+	<T> T get(String key, Query<T> query) throws IOException, FcpException {
+		Entry entry;
+		boolean cached;
+		synchronized (this) {
+			entry = entries.get(key);
+			cached = (entry != null) && (!entry.future.isDone() || (ticker.read() < entry.expiry));
+			if (cached) {
+				hits++;
+			} else {
+				misses++;
+				entry = new Entry();
+				entries.put(key, entry);
+			}
+		}
+		if (cached) {
+			return (T) await(entry);
+		}
+		return (T) execute(key, entry, query);
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPeer(FcpConnection fcpConnection, Peer peer) {
+		invalidate(PEERS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPeerRemoved(FcpConnection fcpConnection, PeerRemoved peerRemoved) {
+		invalidate(PEERS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedConfigData(FcpConnection fcpConnection, ConfigData configData) {
+		invalidate(CONFIG);
+		invalidate(NODE);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedCloseConnectionDuplicateClientName(FcpConnection fcpConnection, CloseConnectionDuplicateClientName closeConnectionDuplicateClientName) {
+		invalidateAll();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+		invalidateAll();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Executes the query and hands its answer to all waiting callers.
+	 *
+	 * @param key
+	 *            The key of the query
+	 * @param entry
+	 *            The entry of the query
+	 * @param query
+	 *            The query
+	 * @return The answer of the query
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws FcpException
+	 *             if an FCP error occurs
+	 */
+	private Object execute(String key, Entry entry, Query<?> query) throws IOException, FcpException {
+		Object answer;
+		try {
+			answer = query.run();
+		} catch (IOException ioe1) {
+			fail(key, entry, ioe1);
+			throw ioe1;
+		} catch (FcpException fe1) {
+			fail(key, entry, fe1);
+			throw fe1;
+		} catch (RuntimeException re1) {
+			fail(key, entry, re1);
+			throw re1;
+		}
+		synchronized (this) {
+			entry.expiry = ticker.read() + timeToLive;
+			if (timeToLive <= 0) {
+				remove(key, entry);
+			}
+		}
+		entry.future.set(answer);
+		return answer;
+	}
+
+	/**
+	 * Removes the failed query and hands the failure to all waiting callers.
+	 *
+	 * @param key
+	 *            The key of the query
+	 * @param entry
+	 *            The entry of the query
+	 * @param throwable
+	 *            The failure
+	 */
+	private void fail(String key, Entry entry, Throwable throwable) {
+		synchronized (this) {
+			remove(key, entry);
+		}
+		entry.future.setException(throwable);
+	}
+
+	/**
+	 * Removes the given entry if it is still the entry of the given key.
+	 *
+	 * @param key
+	 *            The key of the query
+	 * @param entry
+	 *            The entry to remove
+	 */
+	private void remove(String key, Entry entry) {
+		if (entries.get(key) == entry) {
+			entries.remove(key);
+		}
+	}
+
+	/**
+	 * Waits for the answer of the given entry.
+	 *
+	 * @param entry
+	 *            The entry to wait for
+	 * @return The answer of the query
+	 * @throws IOException
+	 *             if the query failed with an I/O error
+	 * @throws FcpException
+	 *             if the query failed with an FCP error
+	 */
+	private static Object await(Entry entry) throws IOException, FcpException {
+		try {
+			return Uninterruptibles.getUninterruptibly(entry.future);
+		} catch (ExecutionException ee1) {
+			Throwable cause = ee1.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof FcpException) {
+				throw (FcpException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new FcpException("Query failed", cause);
+		}
+	}
+
+	/**
+	 * A query to the node.
+	 *
+	 * @param <T>
+	 *            The type of the answer
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	interface Query<T> {
+
+		/**
+		 * Sends the query to the node and waits for the answer.
+		 *
+		 * @return The answer of the node
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 * @throws FcpException
+		 *             if an FCP error occurs
+		 */
+		T run() throws IOException, FcpException;
+
+	}
+
+	/**
+	 * A query that is in flight or has been answered.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Entry {
+
+		/** The answer of the query. */
+		final SettableFuture<Object> future = SettableFuture.create();
+
+		/** The time the answer expires, in ticker nanoseconds. */
+		long expiry;
+
+	}
+
+}
@@ -0,0 +1,240 @@
+/*
+ * jFCPlib - RedirectCache.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Cache for the redirects followed by get requests. When a request for a
+ * URI was redirected, the URI the request was finally answered for is
+ * remembered, and the next request for the same URI is sent for the
+ * resolved URI directly, saving the round trips for the redirects.
+ * <p>
+ * Redirects of USKs point to the newest known edition and change when a new
+ * edition is found, so they expire after a time to live. Redirects of other
+ * keys are kept until they are evicted because the cache is full, or until
+ * a request for the resolved URI fails.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class RedirectCache {
+
+	/** The default maximum number of cached redirects. */
+	public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+	/** The source of time. */
+	private final Ticker ticker;
+
+	/** The cached redirects, least recently used first. */
+	private final LinkedHashMap<String, Redirect> redirects;
+
+	/** The time to live for redirects of USKs, in nanoseconds. */
+	private long uskTimeToLive = TimeUnit.MINUTES.toNanos(5);
+
+	/** The number of requests that were redirected from the cache. */
+	private long hits;
+
+	/** The number of requests that were not found in the cache. */
+	private long misses;
+
+	/**
+	 * Creates a new redirect cache with the default size.
+	 */
+	public RedirectCache() {
+		this(DEFAULT_MAX_ENTRIES, Ticker.systemTicker());
+	}
+
+	/**
+	 * Creates a new redirect cache.
+	 *
+	 * @param maxEntries
+	 *            The maximum number of cached redirects
+	 * @param ticker
+	 *            The source of time
+	 */
+	public RedirectCache(final int maxEntries, Ticker ticker) {
+		this.ticker = ticker;
+		redirects = new LinkedHashMap<String, Redirect>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Entry<String, Redirect> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Sets the time to live for redirects of USKs. A time of {@code 0}
+	 * disables caching of USK redirects.
+	 *
+	 * @param timeToLive
+	 *            The time to live
+	 * @param unit
+	 *            The unit of the time to live
+	 * @return This redirect cache
+	 */
+	public synchronized RedirectCache setUskTimeToLive(long timeToLive, TimeUnit unit) {
+		uskTimeToLive = unit.toNanos(timeToLive);
+		return this;
+	}
+
+	/**
+	 * Returns the number of requests that were redirected from the cache.
+	 *
+	 * @return The number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of requests that were not found in the cache.
+	 *
+	 * @return The number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of cached redirects, including expired redirects
+	 * that have not been removed yet.
+	 *
+	 * @return The number of cached redirects
+	 */
+	public synchronized int size() {
+		return redirects.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Returns the resolved URI for the given URI.
+	 *
+	 * @param uri
+	 *            The requested URI
+	 * @return The URI the request was redirected to, or {@code null} if no
+	 *         unexpired redirect is cached
+	 */
+	public synchronized String get(String uri) {
+		Redirect redirect = redirects.get(uri);
+		if ((redirect != null) && (redirect.expiry != null) && (redirect.expiry - ticker.read() <= 0)) {
+			redirects.remove(uri);
+			redirect = null;
+		}
+		if (redirect == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return redirect.target;
+	}
+
+	/**
+	 * Stores a redirect. Storing the redirect a USK already has does not
+	 * extend its time to live.
+	 *
+	 * @param uri
+	 *            The requested URI
+	 * @param resolvedUri
+	 *            The URI the request was redirected to
+	 */
+	public synchronized void put(String uri, String resolvedUri) {
+		if (uri.equals(resolvedUri)) {
+			return;
+		}
+		Long expiry = null;
+		if (isUsk(uri)) {
+			if (uskTimeToLive <= 0) {
+				return;
+			}
+			Redirect redirect = redirects.get(uri);
+			if ((redirect != null) && redirect.target.equals(resolvedUri) && ((redirect.expiry == null) || (redirect.expiry - ticker.read() > 0))) {
+				return;
+			}
+			expiry = ticker.read() + uskTimeToLive;
+		}
+		redirects.put(uri, new Redirect(resolvedUri, expiry));
+	}
+
+	/**
+	 * Removes the redirect for the given URI.
+	 *
+	 * @param uri
+	 *            The requested URI
+	 */
+	public synchronized void invalidate(String uri) {
+		redirects.remove(uri);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns whether the given URI is a USK.
+	 *
+	 * @param uri
+	 *            The URI to check
+	 * @return {@code true} if the URI is a USK, {@code false} otherwise
+	 */
+	private static boolean isUsk(String uri) {
+		return uri.regionMatches(true, 0, "USK@", 0, 4);
+	}
+
+	/**
+	 * A cached redirect.
+	 *
+	 * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+	 */
+	private static class Redirect {
+
+		/** The URI the request was redirected to. */
+		final String target;
+
+		/** The expiry time in ticker nanoseconds, or {@code null}. */
+		final Long expiry;
+
+		/**
+		 * Creates a new cached redirect.
+		 *
+		 * @param target
+		 *            The URI the request was redirected to
+		 * @param expiry
+		 *            The expiry time, or {@code null} if the redirect does
+		 *            not expire
+		 */
+		Redirect(String target, Long expiry) {
+			this.target = target;
+			this.expiry = expiry;
+		}
+
+	}
+
+}
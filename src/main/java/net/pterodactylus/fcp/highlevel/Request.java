@@ -20,10 +20,13 @@ package net.pterodactylus.fcp.highlevel;
 
 import net.pterodactylus.fcp.PersistentGet;
 import net.pterodactylus.fcp.PersistentPut;
+import net.pterodactylus.fcp.Priority;
 
 /**
  * Wrapper class around request responses from the node, such as
- * {@link PersistentGet} or {@link PersistentPut}.
+ * {@link PersistentGet} or {@link PersistentPut}. The state of a request can
+ * be updated by the thread that receives messages from the node while other
+ * threads read it, so all mutable fields are volatile.
  *
  * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
  */
@@ -33,46 +36,49 @@ public abstract class Request {
 	private final String identifier;
 
 	/** The client token of the request. */
-	private final String clientToken;
+	private volatile String clientToken;
 
 	/** Whether the request is on the global queue. */
 	private final boolean global;
 
+	/** The priority of the request. */
+	private volatile Priority priority = Priority.unknown;
+
 	/** Whether the get request is complete. */
-	private boolean complete;
+	private volatile boolean complete;
 
 	/** Whether the get request has failed. */
-	private boolean failed;
+	private volatile boolean failed;
 
 	/** The data length. */
-	private long length;
+	private volatile long length;
 
 	/** The mime type. */
-	private String contentType;
+	private volatile String contentType;
 
 	/** The error code in case of failure. */
-	private int errorCode;
+	private volatile int errorCode;
 
 	/** Whether the failure is fatal. */
-	private boolean fatal;
+	private volatile boolean fatal;
 
 	/** The total number of blocks. */
-	private int totalBlocks;
+	private volatile int totalBlocks;
 
 	/** The required number of blocks. */
-	private int requiredBlocks;
+	private volatile int requiredBlocks;
 
 	/** The successfully processed number of blocks. */
-	private int succeededBlocks;
+	private volatile int succeededBlocks;
 
 	/** The number of failed blocks. */
-	private int failedBlocks;
+	private volatile int failedBlocks;
 
 	/** The number of fatally failed blocks. */
-	private int fatallyFailedBlocks;
+	private volatile int fatallyFailedBlocks;
 
 	/** Whether the total number of blocks is finalized. */
-	private boolean finalizedTotal;
+	private volatile boolean finalizedTotal;
 
 	/**
 	 * Creates a new request with the given identifier and client token.
@@ -109,6 +115,16 @@ public abstract class Request {
 		return clientToken;
 	}
 
+	/**
+	 * Sets the client token of the request.
+	 *
+	 * @param clientToken
+	 *            The request’s client token
+	 */
+	void setClientToken(String clientToken) {
+		this.clientToken = clientToken;
+	}
+
 	/**
 	 * Returns whether this request is on the global queue.
 	 *
@@ -119,6 +135,26 @@ public abstract class Request {
 		return global;
 	}
 
+	/**
+	 * Returns the priority of the request.
+	 *
+	 * @return The request’s priority, or {@link Priority#unknown} if the
+	 *         priority is not known
+	 */
+	public Priority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the priority of the request.
+	 *
+	 * @param priority
+	 *            The request’s priority
+	 */
+	void setPriority(Priority priority) {
+		this.priority = priority;
+	}
+
 	/**
 	 * Returns whether this request is complete.
 	 *
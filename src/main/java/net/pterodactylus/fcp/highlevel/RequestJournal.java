@@ -0,0 +1,646 @@
+/*
+ * jFCPlib - RequestJournal.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+import net.pterodactylus.fcp.DataFound;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.FcpMessage;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.PersistentRequestRemoved;
+import net.pterodactylus.fcp.ProtocolError;
+import net.pterodactylus.fcp.PutFailed;
+import net.pterodactylus.fcp.PutSuccessful;
+
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Append-only journal of the persistent requests a client has submitted.
+ * Every submitted request is recorded with its identifier and all of its
+ * options, and every change to a terminal state is appended as it arrives
+ * from the node. After a restart the journal is replayed, and only the
+ * requests that were still pending have to be
+ * {@link FcpClient#recoverRequests() reconciled} with the node instead of
+ * listing the whole queue.
+ * <p>
+ * The journal file is memory-mapped, so appending a record is a copy into
+ * the page cache; records survive a crash of the process but are only
+ * forced to the disk by {@link #compact()} and {@link #close()}. Every record
+ * is prefixed with its length and its checksum, and replaying stops at the
+ * first truncated or damaged record. Once the journal contains many more
+ * records than live requests, it is compacted into a new file that replaces
+ * the old one. Compaction runs on a thread of its own, so that the
+ * connection’s threads never wait for the new file to be written.
+ *
+ * @see FcpClient#setRequestJournal(RequestJournal)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class RequestJournal extends FcpAdapter implements Closeable {
+
+	/** The logger. */
+	private static final Logger logger = Logger.getLogger(RequestJournal.class.getName());
+
+	/** The record type of a submitted request. */
+	private static final byte SUBMITTED = 1;
+
+	/** The record type of a change of state. */
+	private static final byte STATE = 2;
+
+	/** The protocol error code for an unknown identifier. */
+	private static final int NO_SUCH_IDENTIFIER = 15;
+
+	/** The initial size of the mapped region. */
+	private static final int INITIAL_SIZE = 64 * 1024;
+
+	/** The minimum number of records before the journal is compacted. */
+	private static final int MINIMUM_COMPACTION_RECORDS = 1024;
+
+	/** The journal file. */
+	private final File file;
+
+	/** The journaled requests, by identifier, in order of submission. */
+	private final Map<String, JournalEntry> entries = new LinkedHashMap<String, JournalEntry>();
+
+	/** The open journal file. */
+	private RandomAccessFile randomAccessFile;
+
+	/** The mapped journal file; its position is the end of the journal. */
+	private MappedByteBuffer buffer;
+
+	/** The number of records in the journal file. */
+	private int records;
+
+	/** The executor that compacts the journal. */
+	private final ExecutorService compactor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setDaemon(true).setNameFormat("RequestJournal compactor %d").build());
+
+	/** Serializes compactions. */
+	private final Object compactionLock = new Object();
+
+	/** Whether a compaction has been submitted to the compactor. */
+	private boolean compactionScheduled;
+
+	/** The records appended during a compaction, or {@code null}. */
+	private List<byte[]> compactionBacklog;
+
+	/**
+	 * Opens the given journal file and replays its records. The file is
+	 * created if it does not exist.
+	 *
+	 * @param file
+	 *            The journal file
+	 * @throws IOException
+	 *             if the file can not be opened
+	 */
+	public RequestJournal(File file) throws IOException {
+		this.file = file;
+		open();
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the entry of the request with the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @return The entry of the request, or {@code null} if the request is not
+	 *         journaled
+	 */
+	public synchronized JournalEntry getEntry(String identifier) {
+		return entries.get(identifier);
+	}
+
+	/**
+	 * Returns all journaled requests, in order of submission. Removed
+	 * requests are not returned.
+	 *
+	 * @return The journaled requests
+	 */
+	public synchronized List<JournalEntry> getEntries() {
+		return new ArrayList<JournalEntry>(entries.values());
+	}
+
+	/**
+	 * Returns all journaled requests that have not finished yet.
+	 *
+	 * @return The pending requests
+	 */
+	public synchronized List<JournalEntry> getPendingEntries() {
+		List<JournalEntry> pendingEntries = new ArrayList<JournalEntry>();
+		for (JournalEntry entry : entries.values()) {
+			if (entry.getState() == JournalEntry.State.PENDING) {
+				pendingEntries.add(entry);
+			}
+		}
+		return pendingEntries;
+	}
+
+	/**
+	 * Returns the number of journaled requests.
+	 *
+	 * @return The number of journaled requests
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Records the given request and sends it to the node. The request is
+	 * recorded first, so that it is not lost if the process ends before the
+	 * node answers.
+	 *
+	 * @param fcpConnection
+	 *            The connection to send the request on
+	 * @param message
+	 *            The “ClientGet” or “ClientPut” message of the request
+	 * @throws IOException
+	 *             if the request can not be recorded or sent
+	 */
+	public void submit(FcpConnection fcpConnection, FcpMessage message) throws IOException {
+		record(message);
+		fcpConnection.sendMessage(message);
+	}
+
+	/**
+	 * Records the given request.
+	 *
+	 * @param message
+	 *            The “ClientGet” or “ClientPut” message of the request
+	 * @throws IOException
+	 *             if the request can not be recorded
+	 * @throws IllegalArgumentException
+	 *             if the message does not have an identifier
+	 */
+	public synchronized void record(FcpMessage message) throws IOException, IllegalArgumentException {
+		String identifier = message.getField("Identifier");
+		if (identifier == null) {
+			throw new IllegalArgumentException("message has no identifier");
+		}
+		Map<String, String> options = new LinkedHashMap<String, String>(message.getFields());
+		options.remove("Identifier");
+		JournalEntry entry = new JournalEntry(identifier, message.getName(), options, JournalEntry.State.PENDING, -1);
+		append(encodeSubmitted(entry));
+		entries.put(identifier, entry);
+		compactIfNecessary();
+	}
+
+	/**
+	 * Removes the request with the given identifier from the journal, e.g.
+	 * after its result has been processed.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	public void remove(String identifier) {
+		update(identifier, JournalEntry.State.REMOVED, -1);
+	}
+
+	/**
+	 * Rewrites the journal so that it only contains the records of the
+	 * journaled requests. The new journal is written to a temporary file
+	 * which then replaces the journal file. The journal is only locked while
+	 * its entries are encoded and while the files are swapped; records that
+	 * are appended in the meantime are carried over to the new journal. If
+	 * the journal file can not be replaced, the old journal is reopened and
+	 * stays in use.
+	 *
+	 * @throws IOException
+	 *             if the journal can not be rewritten
+	 */
+	public void compact() throws IOException {
+		synchronized (compactionLock) {
+			ByteArrayOutputStream compactedRecords = new ByteArrayOutputStream();
+			DataOutputStream recordOutputStream = new DataOutputStream(compactedRecords);
+			synchronized (this) {
+				for (JournalEntry entry : entries.values()) {
+					writeRecord(recordOutputStream, encodeSubmitted(entry));
+					if (entry.getState() != JournalEntry.State.PENDING) {
+						writeRecord(recordOutputStream, encodeState(entry.getIdentifier(), entry.getState(), entry.getErrorCode()));
+					}
+				}
+				compactionBacklog = new ArrayList<byte[]>();
+			}
+			File compactedFile = new File(file.getPath() + ".compact");
+			RandomAccessFile compactedRandomAccessFile = new RandomAccessFile(compactedFile, "rw");
+			boolean keepCompactedFile = false;
+			try {
+				compactedRandomAccessFile.setLength(0);
+				compactedRandomAccessFile.write(compactedRecords.toByteArray());
+				compactedRandomAccessFile.getFD().sync();
+				synchronized (this) {
+					ByteArrayOutputStream backlogRecords = new ByteArrayOutputStream();
+					DataOutputStream backlogOutputStream = new DataOutputStream(backlogRecords);
+					for (byte[] record : compactionBacklog) {
+						writeRecord(backlogOutputStream, record);
+					}
+					backlogOutputStream.writeInt(0);
+					compactedRandomAccessFile.write(backlogRecords.toByteArray());
+					compactedRandomAccessFile.close();
+					randomAccessFile.close();
+					buffer = null;
+					try {
+						if (!compactedFile.renameTo(file) && !(file.delete() && compactedFile.renameTo(file))) {
+							if (file.exists()) {
+								throw new IOException("could not replace " + file + " with " + compactedFile);
+							}
+							/* the old journal is gone, the compacted file is the only copy. */
+							keepCompactedFile = true;
+							Files.copy(compactedFile, file);
+							keepCompactedFile = false;
+						}
+					} finally {
+						open();
+					}
+				}
+			} finally {
+				compactedRandomAccessFile.close();
+				if (!keepCompactedFile) {
+					compactedFile.delete();
+				}
+				synchronized (this) {
+					compactionBacklog = null;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for a running compaction, forces the journal to the disk, and
+	 * closes it.
+	 *
+	 * @throws IOException
+	 *             if the journal can not be closed
+	 */
+	@Override
+	public void close() throws IOException {
+		compactor.shutdown();
+		try {
+			compactor.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException ie1) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			buffer.force();
+			randomAccessFile.close();
+		}
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedDataFound(FcpConnection fcpConnection, DataFound dataFound) {
+		update(dataFound.getIdentifier(), JournalEntry.State.SUCCEEDED, -1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
+		update(getFailed.getIdentifier(), JournalEntry.State.FAILED, getFailed.getCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutSuccessful(FcpConnection fcpConnection, PutSuccessful putSuccessful) {
+		update(putSuccessful.getIdentifier(), JournalEntry.State.SUCCEEDED, -1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFailed(FcpConnection fcpConnection, PutFailed putFailed) {
+		update(putFailed.getIdentifier(), JournalEntry.State.FAILED, putFailed.getCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentRequestRemoved(FcpConnection fcpConnection, PersistentRequestRemoved persistentRequestRemoved) {
+		update(persistentRequestRemoved.getIdentifier(), JournalEntry.State.REMOVED, -1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedProtocolError(FcpConnection fcpConnection, ProtocolError protocolError) {
+		if (protocolError.getCode() == NO_SUCH_IDENTIFIER) {
+			update(protocolError.getIdentifier(), JournalEntry.State.REMOVED, -1);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Maps the journal file and replays its records.
+	 *
+	 * @throws IOException
+	 *             if the file can not be mapped
+	 */
+	private void open() throws IOException {
+		entries.clear();
+		records = 0;
+		randomAccessFile = new RandomAccessFile(file, "rw");
+		long size = Math.max(randomAccessFile.length(), INITIAL_SIZE);
+		buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, size);
+		while (buffer.remaining() >= 12) {
+			int start = buffer.position();
+			int length = buffer.getInt();
+			long checksum = buffer.getLong();
+			if ((length <= 0) || (length > buffer.remaining())) {
+				buffer.position(start);
+				break;
+			}
+			byte[] record = new byte[length];
+			buffer.get(record);
+			if (checksum(record) != checksum) {
+				logger.log(Level.WARNING, "ignoring damaged journal record at " + start);
+				buffer.position(start);
+				break;
+			}
+			try {
+				apply(record);
+			} catch (IOException ioe1) {
+				logger.log(Level.WARNING, "ignoring corrupt journal record at " + start, ioe1);
+				buffer.position(start);
+				break;
+			}
+			records++;
+		}
+		if (buffer.remaining() >= 4) {
+			buffer.putInt(buffer.position(), 0);
+		}
+	}
+
+	/**
+	 * Changes the state of a journaled request and records the change.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param state
+	 *            The new state of the request
+	 * @param errorCode
+	 *            The error code of a failed request, or {@code -1}
+	 */
+	private synchronized void update(String identifier, JournalEntry.State state, int errorCode) {
+		JournalEntry entry = entries.get(identifier);
+		if ((entry == null) || ((entry.getState() == state) && (entry.getErrorCode() == errorCode))) {
+			return;
+		}
+		try {
+			append(encodeState(identifier, state, errorCode));
+			apply(entry, state, errorCode);
+			compactIfNecessary();
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "could not journal state of " + identifier, ioe1);
+		}
+	}
+
+	/**
+	 * Applies a change of state to the journaled requests.
+	 *
+	 * @param entry
+	 *            The entry of the request
+	 * @param state
+	 *            The new state of the request
+	 * @param errorCode
+	 *            The error code of a failed request, or {@code -1}
+	 */
+	private void apply(JournalEntry entry, JournalEntry.State state, int errorCode) {
+		if (state == JournalEntry.State.REMOVED) {
+			entries.remove(entry.getIdentifier());
+		} else {
+			entries.put(entry.getIdentifier(), entry.withState(state, errorCode));
+		}
+	}
+
+	/**
+	 * Applies a record that was read from the journal file.
+	 *
+	 * @param record
+	 *            The record
+	 * @throws IOException
+	 *             if the record can not be decoded
+	 */
+	private void apply(byte[] record) throws IOException {
+		DataInputStream recordInputStream = new DataInputStream(new ByteArrayInputStream(record));
+		byte type = recordInputStream.readByte();
+		String identifier = recordInputStream.readUTF();
+		if (type == SUBMITTED) {
+			String name = recordInputStream.readUTF();
+			int optionCount = recordInputStream.readInt();
+			Map<String, String> options = new LinkedHashMap<String, String>();
+			for (int index = 0; index < optionCount; index++) {
+				options.put(recordInputStream.readUTF(), recordInputStream.readUTF());
+			}
+			entries.put(identifier, new JournalEntry(identifier, name, options, JournalEntry.State.PENDING, -1));
+		} else if (type == STATE) {
+			int stateIndex = recordInputStream.readByte();
+			int errorCode = recordInputStream.readInt();
+			if ((stateIndex < 0) || (stateIndex >= JournalEntry.State.values().length)) {
+				throw new IOException("invalid state " + stateIndex);
+			}
+			JournalEntry entry = entries.get(identifier);
+			if (entry != null) {
+				apply(entry, JournalEntry.State.values()[stateIndex], errorCode);
+			}
+		} else {
+			throw new IOException("invalid record type " + type);
+		}
+	}
+
+	/**
+	 * Appends a record to the journal file, growing the mapped region if
+	 * necessary. The record is followed by an end marker that is
+	 * overwritten by the next record.
+	 *
+	 * @param record
+	 *            The record to append
+	 * @throws IOException
+	 *             if the mapped region can not be grown
+	 */
+	private void append(byte[] record) throws IOException {
+		int requiredSize = buffer.position() + 12 + record.length + 4;
+		if (requiredSize > buffer.capacity()) {
+			int position = buffer.position();
+			buffer = randomAccessFile.getChannel().map(MapMode.READ_WRITE, 0, Math.max(requiredSize, 2L * buffer.capacity()));
+			buffer.position(position);
+		}
+		buffer.putInt(record.length);
+		buffer.putLong(checksum(record));
+		buffer.put(record);
+		buffer.putInt(buffer.position(), 0);
+		records++;
+		if (compactionBacklog != null) {
+			compactionBacklog.add(record);
+		}
+	}
+
+	/**
+	 * Submits a compaction to the compactor if the journal contains many
+	 * more records than journaled requests. Has to be called while
+	 * synchronized on this journal.
+	 */
+	private void compactIfNecessary() {
+		if (compactionScheduled || (records < Math.max(MINIMUM_COMPACTION_RECORDS, 4 * entries.size()))) {
+			return;
+		}
+		try {
+			compactor.execute(new Runnable() {
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void run() {
+					try {
+						compact();
+					} catch (IOException ioe1) {
+						logger.log(Level.WARNING, "could not compact journal " + file, ioe1);
+					} finally {
+						synchronized (RequestJournal.this) {
+							compactionScheduled = false;
+						}
+					}
+				}
+			});
+			compactionScheduled = true;
+		} catch (RejectedExecutionException ree1) {
+			/* journal is closed. */
+		}
+	}
+
+	/**
+	 * Encodes the record of a submitted request.
+	 *
+	 * @param entry
+	 *            The entry of the request
+	 * @return The encoded record
+	 * @throws IOException
+	 *             if the record can not be encoded
+	 */
+	private static byte[] encodeSubmitted(JournalEntry entry) throws IOException {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream recordOutputStream = new DataOutputStream(record);
+		recordOutputStream.writeByte(SUBMITTED);
+		recordOutputStream.writeUTF(entry.getIdentifier());
+		recordOutputStream.writeUTF(entry.getType());
+		recordOutputStream.writeInt(entry.getOptions().size());
+		for (Entry<String, String> option : entry.getOptions().entrySet()) {
+			recordOutputStream.writeUTF(option.getKey());
+			recordOutputStream.writeUTF(option.getValue());
+		}
+		recordOutputStream.flush();
+		return record.toByteArray();
+	}
+
+	/**
+	 * Encodes the record of a change of state.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param state
+	 *            The new state of the request
+	 * @param errorCode
+	 *            The error code of a failed request, or {@code -1}
+	 * @return The encoded record
+	 * @throws IOException
+	 *             if the record can not be encoded
+	 */
+	private static byte[] encodeState(String identifier, JournalEntry.State state, int errorCode) throws IOException {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		DataOutputStream recordOutputStream = new DataOutputStream(record);
+		recordOutputStream.writeByte(STATE);
+		recordOutputStream.writeUTF(identifier);
+		recordOutputStream.writeByte(state.ordinal());
+		recordOutputStream.writeInt(errorCode);
+		recordOutputStream.flush();
+		return record.toByteArray();
+	}
+
+	/**
+	 * Writes a record with its length and checksum to the given stream.
+	 *
+	 * @param recordOutputStream
+	 *            The stream to write to
+	 * @param record
+	 *            The record to write
+	 * @throws IOException
+	 *             if the record can not be written
+	 */
+	private static void writeRecord(DataOutputStream recordOutputStream, byte[] record) throws IOException {
+		recordOutputStream.writeInt(record.length);
+		recordOutputStream.writeLong(checksum(record));
+		recordOutputStream.write(record);
+	}
+
+	/**
+	 * Calculates the checksum of a record.
+	 *
+	 * @param record
+	 *            The record
+	 * @return The checksum of the record
+	 */
+	private static long checksum(byte[] record) {
+		CRC32 crc32 = new CRC32();
+		crc32.update(record);
+		return crc32.getValue();
+	}
+
+}
@@ -0,0 +1,333 @@
+/*
+ * jFCPlib - RequestMirror.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+
+import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.DataFound;
+import net.pterodactylus.fcp.EndListPersistentRequests;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.PersistentGet;
+import net.pterodactylus.fcp.PersistentPut;
+import net.pterodactylus.fcp.PersistentRequestModified;
+import net.pterodactylus.fcp.PersistentRequestRemoved;
+import net.pterodactylus.fcp.Priority;
+import net.pterodactylus.fcp.PutFailed;
+import net.pterodactylus.fcp.PutSuccessful;
+import net.pterodactylus.fcp.SimpleProgress;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Mirror of the persistent requests of the node. The mirror is filled once
+ * by the answer to a “ListPersistentRequests” message and is then kept up
+ * to date by the messages the node sends for new, progressing, finished,
+ * modified, and removed requests. Because the client watches the global
+ * queue, these messages also arrive for requests of other clients.
+ * <p>
+ * Once the initial listing has been received, all queries are answered from
+ * the mirror without contacting the node. When the connection is closed, the
+ * mirror stops being updated and {@link #isClosed()} returns {@code true}.
+ *
+ * @see FcpClient#getRequestMirror()
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class RequestMirror extends FcpAdapter {
+
+	/** The mirrored requests, by identifier. */
+	private final ConcurrentMap<String, Request> requests = new ConcurrentHashMap<String, Request>();
+
+	/** Released once the initial listing has been received or the mirror was closed. */
+	private final CountDownLatch listingLatch = new CountDownLatch(1);
+
+	/** Whether the initial listing has been received. */
+	private volatile boolean listed;
+
+	/** The reason the mirror was closed, or {@code null}. */
+	private volatile FcpException closeReason;
+
+	/**
+	 * Creates a new request mirror. The mirror has to be added to the
+	 * connection before the “ListPersistentRequests” message is sent.
+	 */
+	RequestMirror() {
+		/* do nothing. */
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the initial listing has been received.
+	 *
+	 * @return {@code true} if the initial listing has been received,
+	 *         {@code false} otherwise
+	 */
+	public boolean isListed() {
+		return listed;
+	}
+
+	/**
+	 * Returns whether the mirror has stopped being updated because the
+	 * connection was closed.
+	 *
+	 * @return {@code true} if the mirror is closed, {@code false} otherwise
+	 */
+	public boolean isClosed() {
+		return closeReason != null;
+	}
+
+	/**
+	 * Returns the request with the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @return The request, or {@code null} if there is no such request
+	 */
+	public Request getRequest(String identifier) {
+		return requests.get(identifier);
+	}
+
+	/**
+	 * Returns all mirrored requests. The returned collection is a live view
+	 * of the mirror and can not be modified.
+	 *
+	 * @return All mirrored requests
+	 */
+	public Collection<Request> getRequests() {
+		return Collections.unmodifiableCollection(requests.values());
+	}
+
+	/**
+	 * Returns a snapshot of the mirrored requests.
+	 *
+	 * @param global
+	 *            {@code true} to include requests from the global queue,
+	 *            {@code false} to only include requests from the client-local
+	 *            queue
+	 * @return The mirrored requests
+	 */
+	public List<Request> getRequests(boolean global) {
+		List<Request> snapshot = new ArrayList<Request>(requests.size());
+		for (Request request : requests.values()) {
+			if (!request.isGlobal() || global) {
+				snapshot.add(request);
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Returns the number of mirrored requests.
+	 *
+	 * @return The number of mirrored requests
+	 */
+	public int size() {
+		return requests.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Waits until the initial listing has been received.
+	 *
+	 * @throws FcpException
+	 *             if the connection was closed before the listing was
+	 *             received
+	 */
+	void awaitListing() throws FcpException {
+		Uninterruptibles.awaitUninterruptibly(listingLatch);
+		if (!listed) {
+			throw closeReason;
+		}
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentGet(FcpConnection fcpConnection, PersistentGet persistentGet) {
+		requests.put(persistentGet.getIdentifier(), new GetRequest(persistentGet));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentPut(FcpConnection fcpConnection, PersistentPut persistentPut) {
+		requests.put(persistentPut.getIdentifier(), new PutRequest(persistentPut));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedEndListPersistentRequests(FcpConnection fcpConnection, EndListPersistentRequests endListPersistentRequests) {
+		listed = true;
+		listingLatch.countDown();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedSimpleProgress(FcpConnection fcpConnection, SimpleProgress simpleProgress) {
+		Request request = requests.get(simpleProgress.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setTotalBlocks(simpleProgress.getTotal());
+		request.setRequiredBlocks(simpleProgress.getRequired());
+		request.setFailedBlocks(simpleProgress.getFailed());
+		request.setFatallyFailedBlocks(simpleProgress.getFatallyFailed());
+		request.setSucceededBlocks(simpleProgress.getSucceeded());
+		request.setFinalizedTotal(simpleProgress.isFinalizedTotal());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedDataFound(FcpConnection fcpConnection, DataFound dataFound) {
+		Request request = requests.get(dataFound.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setComplete(true);
+		request.setLength(dataFound.getDataLength());
+		request.setContentType(dataFound.getMetadataContentType());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
+		Request request = requests.get(getFailed.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setComplete(true);
+		request.setFailed(true);
+		request.setFatal(getFailed.isFatal());
+		request.setErrorCode(getFailed.getCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutSuccessful(FcpConnection fcpConnection, PutSuccessful putSuccessful) {
+		Request request = requests.get(putSuccessful.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setComplete(true);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFailed(FcpConnection fcpConnection, PutFailed putFailed) {
+		Request request = requests.get(putFailed.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setComplete(true);
+		request.setFailed(true);
+		request.setFatal(putFailed.isFatal());
+		request.setErrorCode(putFailed.getCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentRequestModified(FcpConnection fcpConnection, PersistentRequestModified persistentRequestModified) {
+		Request request = requests.get(persistentRequestModified.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		if (persistentRequestModified.getClientToken() != null) {
+			request.setClientToken(persistentRequestModified.getClientToken());
+		}
+		if (persistentRequestModified.getPriority() != Priority.unknown) {
+			request.setPriority(persistentRequestModified.getPriority());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentRequestRemoved(FcpConnection fcpConnection, PersistentRequestRemoved persistentRequestRemoved) {
+		requests.remove(persistentRequestRemoved.getIdentifier());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedCloseConnectionDuplicateClientName(FcpConnection fcpConnection, CloseConnectionDuplicateClientName closeConnectionDuplicateClientName) {
+		close(new FcpException("Connection closed, duplicate client name"));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+		close(new FcpException("Connection closed", throwable));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Closes this mirror, releasing threads that wait for the listing.
+	 *
+	 * @param fcpException
+	 *            The reason for closing the mirror
+	 */
+	private void close(FcpException fcpException) {
+		if (closeReason == null) {
+			closeReason = fcpException;
+		}
+		listingLatch.countDown();
+	}
+
+}
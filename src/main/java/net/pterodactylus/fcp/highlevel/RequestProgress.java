@@ -0,0 +1,178 @@
+/*
+ * jFCPlib - RequestProgress.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import net.pterodactylus.fcp.SimpleProgress;
+
+/**
+ * The progress of a single request, as reported by a {@link ProgressCoalescer}.
+ * There is only one progress record per request; it is updated in place with
+ * every “SimpleProgress” message, so listeners that want to keep the values
+ * have to copy them.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class RequestProgress {
+
+	/** The identifier of the request. */
+	private final String identifier;
+
+	/** The total number of blocks. */
+	private int totalBlocks;
+
+	/** The required number of blocks. */
+	private int requiredBlocks;
+
+	/** The number of succeeded blocks. */
+	private int succeededBlocks;
+
+	/** The number of failed blocks. */
+	private int failedBlocks;
+
+	/** The number of fatally failed blocks. */
+	private int fatallyFailedBlocks;
+
+	/** Whether the total number of blocks is finalized. */
+	private boolean finalizedTotal;
+
+	/**
+	 * Creates a new progress record.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	RequestProgress(String identifier) {
+		this.identifier = identifier;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the identifier of the request.
+	 *
+	 * @return The request’s identifier
+	 */
+	public String getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the total number of blocks of the request.
+	 *
+	 * @return The total number of blocks
+	 */
+	public int getTotalBlocks() {
+		return totalBlocks;
+	}
+
+	/**
+	 * Returns the number of blocks required to finish the request.
+	 *
+	 * @return The number of required blocks
+	 */
+	public int getRequiredBlocks() {
+		return requiredBlocks;
+	}
+
+	/**
+	 * Returns the number of succeeded blocks.
+	 *
+	 * @return The number of succeeded blocks
+	 */
+	public int getSucceededBlocks() {
+		return succeededBlocks;
+	}
+
+	/**
+	 * Returns the number of failed blocks.
+	 *
+	 * @return The number of failed blocks
+	 */
+	public int getFailedBlocks() {
+		return failedBlocks;
+	}
+
+	/**
+	 * Returns the number of fatally failed blocks.
+	 *
+	 * @return The number of fatally failed blocks
+	 */
+	public int getFatallyFailedBlocks() {
+		return fatallyFailedBlocks;
+	}
+
+	/**
+	 * Returns whether the total number of blocks is finalized.
+	 *
+	 * @return {@code true} if the total number of blocks is finalized,
+	 *         {@code false} otherwise
+	 */
+	public boolean isFinalizedTotal() {
+		return finalizedTotal;
+	}
+
+	/**
+	 * Returns whether all required blocks have succeeded.
+	 *
+	 * @return {@code true} if all required blocks have succeeded,
+	 *         {@code false} otherwise
+	 */
+	public boolean isSucceeded() {
+		return (requiredBlocks > 0) && (succeededBlocks >= requiredBlocks);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Updates this progress record from the given message.
+	 *
+	 * @param simpleProgress
+	 *            The progress message
+	 * @return {@code true} if the finalized or succeeded state of the request
+	 *         changed, {@code false} otherwise
+	 */
+	boolean update(SimpleProgress simpleProgress) {
+		boolean wasFinalizedTotal = finalizedTotal;
+		boolean wasSucceeded = isSucceeded();
+		totalBlocks = simpleProgress.getTotal();
+		requiredBlocks = simpleProgress.getRequired();
+		succeededBlocks = simpleProgress.getSucceeded();
+		failedBlocks = simpleProgress.getFailed();
+		fatallyFailedBlocks = simpleProgress.getFatallyFailed();
+		finalizedTotal = simpleProgress.isFinalizedTotal();
+		return (wasFinalizedTotal != finalizedTotal) || (wasSucceeded != isSucceeded());
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return getClass().getName() + "[identifier=" + identifier + ",succeeded=" + succeededBlocks + ",required=" + requiredBlocks + ",total=" + totalBlocks + ",failed=" + failedBlocks + ",fatallyFailed=" + fatallyFailedBlocks + ",finalizedTotal=" + finalizedTotal + "]";
+	}
+
+}
@@ -0,0 +1,276 @@
+/*
+ * jFCPlib - RequestRouter.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.pterodactylus.fcp.AllData;
+import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.DataFound;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.FcpListener;
+import net.pterodactylus.fcp.FinishedCompression;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.IdentifierCollision;
+import net.pterodactylus.fcp.ProtocolError;
+import net.pterodactylus.fcp.PutFailed;
+import net.pterodactylus.fcp.PutFetchable;
+import net.pterodactylus.fcp.PutSuccessful;
+import net.pterodactylus.fcp.SimpleProgress;
+import net.pterodactylus.fcp.StartedCompression;
+import net.pterodactylus.fcp.URIGenerated;
+
+/**
+ * Forwards request-related messages to the listener that is registered for
+ * the identifier of the message. A request router is added to the
+ * connection once, so that the number of listeners on the connection does
+ * not grow with the number of requests in flight. Messages that concern the
+ * whole connection, and protocol errors without an identifier, are
+ * forwarded to all registered listeners.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class RequestRouter extends FcpAdapter {
+
+	/** The registered listeners, by request identifier. */
+	private final ConcurrentMap<String, FcpListener> listeners = new ConcurrentHashMap<String, FcpListener>();
+
+	/**
+	 * Registers the given listener for the request with the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @param fcpListener
+	 *            The listener to forward the request’s messages to
+	 * @throws IllegalStateException
+	 *             if a listener is already registered for the identifier
+	 */
+	public void register(String identifier, FcpListener fcpListener) throws IllegalStateException {
+		if (listeners.putIfAbsent(identifier, fcpListener) != null) {
+			throw new IllegalStateException("identifier " + identifier + " is already in use");
+		}
+	}
+
+	/**
+	 * Removes the listener for the request with the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 */
+	public void unregister(String identifier) {
+		listeners.remove(identifier);
+	}
+
+	/**
+	 * Returns the number of requests that have a registered listener.
+	 *
+	 * @return The number of registered requests
+	 */
+	public int size() {
+		return listeners.size();
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedURIGenerated(FcpConnection fcpConnection, URIGenerated uriGenerated) {
+		FcpListener fcpListener = getListener(uriGenerated.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedURIGenerated(fcpConnection, uriGenerated);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedDataFound(FcpConnection fcpConnection, DataFound dataFound) {
+		FcpListener fcpListener = getListener(dataFound.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedDataFound(fcpConnection, dataFound);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
+		FcpListener fcpListener = getListener(allData.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedAllData(fcpConnection, allData);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedSimpleProgress(FcpConnection fcpConnection, SimpleProgress simpleProgress) {
+		FcpListener fcpListener = getListener(simpleProgress.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedSimpleProgress(fcpConnection, simpleProgress);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedStartedCompression(FcpConnection fcpConnection, StartedCompression startedCompression) {
+		FcpListener fcpListener = getListener(startedCompression.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedStartedCompression(fcpConnection, startedCompression);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedFinishedCompression(FcpConnection fcpConnection, FinishedCompression finishedCompression) {
+		FcpListener fcpListener = getListener(finishedCompression.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedFinishedCompression(fcpConnection, finishedCompression);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
+		FcpListener fcpListener = getListener(getFailed.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedGetFailed(fcpConnection, getFailed);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFailed(FcpConnection fcpConnection, PutFailed putFailed) {
+		FcpListener fcpListener = getListener(putFailed.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedPutFailed(fcpConnection, putFailed);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedIdentifierCollision(FcpConnection fcpConnection, IdentifierCollision identifierCollision) {
+		FcpListener fcpListener = getListener(identifierCollision.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedIdentifierCollision(fcpConnection, identifierCollision);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutSuccessful(FcpConnection fcpConnection, PutSuccessful putSuccessful) {
+		FcpListener fcpListener = getListener(putSuccessful.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedPutSuccessful(fcpConnection, putSuccessful);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPutFetchable(FcpConnection fcpConnection, PutFetchable putFetchable) {
+		FcpListener fcpListener = getListener(putFetchable.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedPutFetchable(fcpConnection, putFetchable);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * A protocol error without an identifier can not be attributed to a
+	 * single request, so it is forwarded to all registered listeners.
+	 */
+	@Override
+	public void receivedProtocolError(FcpConnection fcpConnection, ProtocolError protocolError) {
+		if (protocolError.getIdentifier() == null) {
+			for (FcpListener fcpListener : listeners.values()) {
+				fcpListener.receivedProtocolError(fcpConnection, protocolError);
+			}
+			return;
+		}
+		FcpListener fcpListener = getListener(protocolError.getIdentifier());
+		if (fcpListener != null) {
+			fcpListener.receivedProtocolError(fcpConnection, protocolError);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedCloseConnectionDuplicateClientName(FcpConnection fcpConnection, CloseConnectionDuplicateClientName closeConnectionDuplicateClientName) {
+		for (FcpListener fcpListener : listeners.values()) {
+			fcpListener.receivedCloseConnectionDuplicateClientName(fcpConnection, closeConnectionDuplicateClientName);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+		for (FcpListener fcpListener : listeners.values()) {
+			fcpListener.connectionClosed(fcpConnection, throwable);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the listener for the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request, may be {@code null}
+	 * @return The listener for the request, or {@code null} if there is no
+	 *         listener for the request
+	 */
+	private FcpListener getListener(String identifier) {
+		if (identifier == null) {
+			return null;
+		}
+		return listeners.get(identifier);
+	}
+
+}
@@ -0,0 +1,336 @@
+/*
+ * jFCPlib - RequestStream.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import net.pterodactylus.fcp.CloseConnectionDuplicateClientName;
+import net.pterodactylus.fcp.DataFound;
+import net.pterodactylus.fcp.EndListPersistentRequests;
+import net.pterodactylus.fcp.FcpAdapter;
+import net.pterodactylus.fcp.FcpConnection;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.PersistentGet;
+import net.pterodactylus.fcp.PersistentPut;
+import net.pterodactylus.fcp.ProtocolError;
+import net.pterodactylus.fcp.SimpleProgress;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+
+/**
+ * Iterator over the answer to a “ListPersistentRequests” message that hands
+ * out every request while the listing is still being received, instead of
+ * collecting the whole listing first.
+ * <p>
+ * The node sends the state of a request (“SimpleProgress”, “DataFound”,
+ * “GetFailed”) directly after the “PersistentGet” or “PersistentPut” for the
+ * request, so a request is handed out as soon as the next request or the
+ * end of the listing arrives; only a single incomplete request is kept
+ * around. Requests that do not match the requested type or queue are
+ * skipped before they are created.
+ * <p>
+ * Requests are passed to the consumer through a bounded queue. If the
+ * consumer falls behind, the thread that receives messages from the node
+ * waits for the consumer, which in turn makes the node wait. A stream that
+ * is not consumed to its end has to be {@link #close() closed}.
+ *
+ * @see FcpClient#streamRequests(boolean, Class, int)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class RequestStream extends FcpAdapter implements Iterator<Request>, Closeable {
+
+	/** Marks the end of the listing in the queue. */
+	private static final Object END = new Object();
+
+	/** The connection to the node. */
+	private final FcpConnection fcpConnection;
+
+	/** Whether to include requests from the global queue. */
+	private final boolean global;
+
+	/** The type of requests to include. */
+	private final Class<? extends Request> type;
+
+	/** The requests that have not been consumed yet. */
+	private final BlockingQueue<Object> queue;
+
+	/** The request whose state is still being received. */
+	private Request pendingRequest;
+
+	/** The next element of the queue, {@code null} if not taken yet. */
+	private Object next;
+
+	/** Whether this stream was closed. */
+	private volatile boolean closed;
+
+	/**
+	 * Creates a new request stream. The stream has to be added to the
+	 * connection before the “ListPersistentRequests” message is sent.
+	 *
+	 * @param fcpConnection
+	 *            The connection to the node
+	 * @param global
+	 *            {@code true} to include requests from the global queue,
+	 *            {@code false} to only include requests from the client-local
+	 *            queue
+	 * @param type
+	 *            The type of requests to include
+	 * @param capacity
+	 *            The number of requests that can be received before the
+	 *            consumer has to catch up
+	 */
+	RequestStream(FcpConnection fcpConnection, boolean global, Class<? extends Request> type, int capacity) {
+		this.fcpConnection = fcpConnection;
+		this.global = global;
+		this.type = type;
+		this.queue = new ArrayBlockingQueue<Object>(capacity + 1);
+	}
+
+	//
+	// ITERATOR METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * This method waits until the next request or the end of the listing has
+	 * been received.
+	 *
+	 * @throws IllegalStateException
+	 *             if the listing failed; the cause is the {@link FcpException}
+	 */
+	@Override
+	public boolean hasNext() throws IllegalStateException {
+		if (next == null) {
+			if (closed) {
+				next = END;
+			} else {
+				next = Uninterruptibles.takeUninterruptibly(queue);
+			}
+		}
+		if (next instanceof FcpException) {
+			throw new IllegalStateException("listing failed", (FcpException) next);
+		}
+		return next != END;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Request next() throws IllegalStateException {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		Request request = (Request) next;
+		next = null;
+		return request;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Stops receiving the listing and drops all requests that have not been
+	 * consumed yet.
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		fcpConnection.removeFcpListener(this);
+		queue.clear();
+		/* wake up a consumer waiting in hasNext(). */
+		queue.offer(END);
+	}
+
+	//
+	// FCPLISTENER METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentGet(FcpConnection fcpConnection, PersistentGet persistentGet) {
+		handOut();
+		if ((!persistentGet.isGlobal() || global) && type.isAssignableFrom(GetRequest.class)) {
+			pendingRequest = new GetRequest(persistentGet);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedPersistentPut(FcpConnection fcpConnection, PersistentPut persistentPut) {
+		handOut();
+		if ((!persistentPut.isGlobal() || global) && type.isAssignableFrom(PutRequest.class)) {
+			pendingRequest = new PutRequest(persistentPut);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedSimpleProgress(FcpConnection fcpConnection, SimpleProgress simpleProgress) {
+		Request request = getPendingRequest(simpleProgress.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setTotalBlocks(simpleProgress.getTotal());
+		request.setRequiredBlocks(simpleProgress.getRequired());
+		request.setFailedBlocks(simpleProgress.getFailed());
+		request.setFatallyFailedBlocks(simpleProgress.getFatallyFailed());
+		request.setSucceededBlocks(simpleProgress.getSucceeded());
+		request.setFinalizedTotal(simpleProgress.isFinalizedTotal());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedDataFound(FcpConnection fcpConnection, DataFound dataFound) {
+		Request request = getPendingRequest(dataFound.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setComplete(true);
+		request.setLength(dataFound.getDataLength());
+		request.setContentType(dataFound.getMetadataContentType());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedGetFailed(FcpConnection fcpConnection, GetFailed getFailed) {
+		Request request = getPendingRequest(getFailed.getIdentifier());
+		if (request == null) {
+			return;
+		}
+		request.setComplete(true);
+		request.setFailed(true);
+		request.setFatal(getFailed.isFatal());
+		request.setErrorCode(getFailed.getCode());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedEndListPersistentRequests(FcpConnection fcpConnection, EndListPersistentRequests endListPersistentRequests) {
+		handOut();
+		finish(END);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Only protocol errors without an identifier end the listing; errors for
+	 * other requests on the same connection are ignored.
+	 */
+	@Override
+	public void receivedProtocolError(FcpConnection fcpConnection, ProtocolError protocolError) {
+		if (protocolError.getIdentifier() != null) {
+			return;
+		}
+		finish(new FcpException("Protocol error (" + protocolError.getCode() + ", " + protocolError.getCodeDescription()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void receivedCloseConnectionDuplicateClientName(FcpConnection fcpConnection, CloseConnectionDuplicateClientName closeConnectionDuplicateClientName) {
+		finish(new FcpException("Connection closed, duplicate client name"));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+		finish(new FcpException("Connection closed", throwable));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the pending request if it has the given identifier.
+	 *
+	 * @param identifier
+	 *            The identifier of the request
+	 * @return The pending request, or {@code null}
+	 */
+	private Request getPendingRequest(String identifier) {
+		if ((pendingRequest != null) && pendingRequest.getIdentifier().equals(identifier)) {
+			return pendingRequest;
+		}
+		return null;
+	}
+
+	/**
+	 * Passes the pending request to the consumer, waiting for the consumer
+	 * if the queue is full.
+	 */
+	private void handOut() {
+		if (pendingRequest != null) {
+			enqueue(pendingRequest);
+			pendingRequest = null;
+		}
+	}
+
+	/**
+	 * Ends the stream with the given element and stops listening to the
+	 * connection.
+	 *
+	 * @param element
+	 *            {@link #END} or the {@link FcpException} that ended the
+	 *            listing
+	 */
+	private void finish(Object element) {
+		fcpConnection.removeFcpListener(this);
+		enqueue(element);
+	}
+
+	/**
+	 * Adds the given element to the queue, unless this stream was closed.
+	 *
+	 * @param element
+	 *            The element to add
+	 */
+	private void enqueue(Object element) {
+		if (!closed) {
+			Uninterruptibles.putUninterruptibly(queue, element);
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+/*
+ * jFCPlib - ThresholdListener.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.util.EventListener;
+
+/**
+ * Listener for values of the node that cross a threshold.
+ *
+ * @see NodeMonitor#addUpperThreshold(String, double, ThresholdListener)
+ * @see NodeMonitor#addLowerThreshold(String, double, ThresholdListener)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public interface ThresholdListener extends EventListener {
+
+	/**
+	 * Notifies a listener that a value has crossed its threshold.
+	 *
+	 * @param field
+	 *            The name of the volatile field
+	 * @param value
+	 *            The current value
+	 * @param threshold
+	 *            The threshold that was crossed
+	 */
+	public void thresholdExceeded(String field, double value, double threshold);
+
+	/**
+	 * Notifies a listener that a value that had crossed its threshold is
+	 * back within the threshold.
+	 *
+	 * @param field
+	 *            The name of the volatile field
+	 * @param value
+	 *            The current value
+	 * @param threshold
+	 *            The threshold
+	 */
+	public void thresholdRecovered(String field, double value, double threshold);
+
+}
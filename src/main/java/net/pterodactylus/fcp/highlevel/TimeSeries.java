@@ -0,0 +1,170 @@
+/*
+ * jFCPlib - TimeSeries.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * Fixed-size ring buffer of samples with a timestamp and a number of
+ * numeric columns. The buffer is allocated outside of the Java heap and is
+ * laid out by column: first all timestamps, then all values of the first
+ * column, and so on. When the buffer is full, the oldest sample is
+ * overwritten. Missing values are stored as {@link Double#NaN} and are
+ * ignored by {@link #aggregate(int, long, long)}.
+ * <p>
+ * Access has to be synchronized by the caller.
+ *
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+class TimeSeries {
+
+	/** The maximum number of samples. */
+	private final int capacity;
+
+	/** The timestamps of the samples. */
+	private final LongBuffer timestamps;
+
+	/** The values of the samples, one column after the other. */
+	private final DoubleBuffer values;
+
+	/** The index of the next sample to write. */
+	private int next;
+
+	/** The number of stored samples. */
+	private int size;
+
+	/**
+	 * Creates a new time series.
+	 *
+	 * @param capacity
+	 *            The maximum number of samples
+	 * @param columns
+	 *            The number of value columns
+	 */
+	TimeSeries(int capacity, int columns) {
+		this.capacity = capacity;
+		ByteBuffer buffer = ByteBuffer.allocateDirect(capacity * 8 * (1 + columns));
+		timestamps = buffer.asLongBuffer();
+		buffer.position(capacity * 8);
+		values = buffer.slice().asDoubleBuffer();
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of stored samples.
+	 *
+	 * @return The number of samples
+	 */
+	int size() {
+		return size;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds a sample, overwriting the oldest sample if the buffer is full.
+	 * Samples have to be added in chronological order.
+	 *
+	 * @param timestamp
+	 *            The time of the sample
+	 * @param sample
+	 *            The values of the sample, one per column
+	 */
+	void add(long timestamp, double[] sample) {
+		timestamps.put(next, timestamp);
+		for (int column = 0; column < sample.length; column++) {
+			values.put((column * capacity) + next, sample[column]);
+		}
+		next = (next + 1) % capacity;
+		size = Math.min(size + 1, capacity);
+	}
+
+	/**
+	 * Aggregates the values of the given column of all samples taken in the
+	 * given time window.
+	 *
+	 * @param column
+	 *            The index of the column
+	 * @param from
+	 *            The start of the window (inclusive)
+	 * @param to
+	 *            The end of the window (inclusive)
+	 * @return The statistics of the window
+	 */
+	WindowStatistics aggregate(int column, long from, long to) {
+		WindowStatistics statistics = new WindowStatistics();
+		int offset = column * capacity;
+		/* walk from the oldest to the newest sample in the window. */
+		int end = firstSampleAfter(to);
+		for (int sample = (from == Long.MIN_VALUE) ? 0 : firstSampleAfter(from - 1); sample < end; sample++) {
+			int index = getIndex(sample);
+			double value = values.get(offset + index);
+			if (!Double.isNaN(value)) {
+				statistics.add(timestamps.get(index), value);
+			}
+		}
+		return statistics;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the index in the buffers of the given sample.
+	 *
+	 * @param sample
+	 *            The number of the sample, {@code 0} being the oldest sample
+	 * @return The index of the sample in the buffers
+	 */
+	private int getIndex(int sample) {
+		return (next - size + sample + capacity) % capacity;
+	}
+
+	/**
+	 * Returns the oldest sample that was taken after the given time. As the
+	 * samples are stored in chronological order, a binary search is used.
+	 *
+	 * @param timestamp
+	 *            The time to search for
+	 * @return The number of the oldest sample taken after the given time, or
+	 *         the number of samples if there is no such sample
+	 */
+	private int firstSampleAfter(long timestamp) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (timestamps.get(getIndex(middle)) > timestamp) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+ * jFCPlib - WindowStatistics.java - Copyright © 2026 David Roden
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+
+package net.pterodactylus.fcp.highlevel;
+
+/**
+ * Statistics of the samples of a single value in a time window.
+ *
+ * @see PeerStatisticsRecorder#getStatistics(String, String, long, long)
+ * @author David ‘Bombe’ Roden &lt;bombe@freenetproject.org&gt;
+ */
+public class WindowStatistics {
+
+	/** The number of samples. */
+	private int count;
+
+	/** The smallest value. */
+	private double min = Double.NaN;
+
+	/** The largest value. */
+	private double max = Double.NaN;
+
+	/** The sum of all values. */
+	private double sum;
+
+	/** The time of the first sample. */
+	private long firstTime;
+
+	/** The value of the first sample. */
+	private double firstValue = Double.NaN;
+
+	/** The time of the last sample. */
+	private long lastTime;
+
+	/** The value of the last sample. */
+	private double lastValue = Double.NaN;
+
+	/**
+	 * Creates empty window statistics.
+	 */
+	WindowStatistics() {
+		/* do nothing. */
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of samples in the window.
+	 *
+	 * @return The number of samples
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * Returns the smallest value in the window.
+	 *
+	 * @return The smallest value, or {@link Double#NaN} if there are no
+	 *         samples
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * Returns the largest value in the window.
+	 *
+	 * @return The largest value, or {@link Double#NaN} if there are no
+	 *         samples
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Returns the mean of the values in the window.
+	 *
+	 * @return The mean value, or {@link Double#NaN} if there are no samples
+	 */
+	public double getMean() {
+		return (count == 0) ? Double.NaN : (sum / count);
+	}
+
+	/**
+	 * Returns the value of the last sample in the window.
+	 *
+	 * @return The last value, or {@link Double#NaN} if there are no samples
+	 */
+	public double getLast() {
+		return lastValue;
+	}
+
+	/**
+	 * Returns the rate of change of the value in the window, i.e. the
+	 * difference between the last and the first value divided by the time
+	 * between them. For counters, such as the number of transferred bytes,
+	 * this is the throughput.
+	 *
+	 * @return The change of the value per second, or {@link Double#NaN} if
+	 *         there are less than two samples
+	 */
+	public double getRate() {
+		if ((count < 2) || (lastTime == firstTime)) {
+			return Double.NaN;
+		}
+		return (lastValue - firstValue) / ((lastTime - firstTime) / 1000.0);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds a sample. Samples have to be added in chronological order.
+	 *
+	 * @param time
+	 *            The time of the sample, in milliseconds
+	 * @param value
+	 *            The value of the sample
+	 */
+	void add(long time, double value) {
+		if (count == 0) {
+			firstTime = time;
+			firstValue = value;
+			min = value;
+			max = value;
+		} else {
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+		}
+		lastTime = time;
+		lastValue = value;
+		sum += value;
+		count++;
+	}
+
+}
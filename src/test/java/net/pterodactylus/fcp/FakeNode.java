@@ -0,0 +1,161 @@
+package net.pterodactylus.fcp;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+
+/**
+ * A fake Freenet node for tests. The node listens on a loopback port; tests
+ * read the messages sent by the client with {@link #readMessage()} and answer
+ * them with {@link #send(String, String...)}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FakeNode implements Closeable {
+
+	private final ServerSocket serverSocket;
+	private Socket socket;
+	private InputStream inputStream;
+	private OutputStream outputStream;
+	private byte[] lastPayload;
+
+	public FakeNode() throws IOException {
+		serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+		serverSocket.setSoTimeout(10000);
+	}
+
+	public FcpTransport getTransport() {
+		return new TcpTransport(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+	}
+
+	/**
+	 * Reads the next message from the client, waiting for the client to
+	 * connect first.
+	 *
+	 * @return The next message, or {@code null} if no message arrived within
+	 *         the timeout
+	 */
+	public FcpMessage readMessage() throws IOException {
+		return readMessage(10000);
+	}
+
+	public FcpMessage readMessage(int timeout) throws IOException {
+		accept();
+		socket.setSoTimeout(timeout);
+		try {
+			String name;
+			do {
+				name = readLine();
+			} while (name.length() == 0);
+			FcpMessage fcpMessage = new FcpMessage(name);
+			while (true) {
+				String line = readLine();
+				if ("EndMessage".equals(line)) {
+					return fcpMessage;
+				}
+				if ("Data".equals(line)) {
+					lastPayload = new byte[Integer.parseInt(fcpMessage.getField("DataLength"))];
+					for (int offset = 0; offset < lastPayload.length;) {
+						int read = inputStream.read(lastPayload, offset, lastPayload.length - offset);
+						if (read == -1) {
+							throw new IOException("unexpected end of stream");
+						}
+						offset += read;
+					}
+					return fcpMessage;
+				}
+				int equalSign = line.indexOf('=');
+				fcpMessage.setField(line.substring(0, equalSign), line.substring(equalSign + 1));
+			}
+		} catch (SocketTimeoutException ste1) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the payload of the last message read by {@link #readMessage()}.
+	 */
+	public byte[] getLastPayload() {
+		return lastPayload;
+	}
+
+	/**
+	 * Sends a message to the client.
+	 *
+	 * @param name
+	 *            The name of the message
+	 * @param fields
+	 *            The fields of the message, as “key=value”
+	 */
+	public void send(String name, String... fields) throws IOException {
+		sendWithData(name, null, fields);
+	}
+
+	public void sendWithData(String name, byte[] data, String... fields) throws IOException {
+		accept();
+		StringBuilder message = new StringBuilder(name).append('\n');
+		for (String field : fields) {
+			message.append(field).append('\n');
+		}
+		if (data != null) {
+			message.append("DataLength=").append(data.length).append('\n').append("Data\n");
+		} else {
+			message.append("EndMessage\n");
+		}
+		outputStream.write(message.toString().getBytes("UTF-8"));
+		if (data != null) {
+			outputStream.write(data);
+		}
+		outputStream.flush();
+	}
+
+	/**
+	 * Answers the “ClientHello” and “WatchGlobal” messages sent by
+	 * {@code FcpClient.connect()}.
+	 */
+	public void handshake() throws IOException {
+		readMessage();
+		send("NodeHello", "ConnectionIdentifier=fake", "FCPVersion=2.0", "Node=Fred");
+		readMessage();
+	}
+
+	@Override
+	public void close() {
+		FcpUtils.close(socket);
+		try {
+			serverSocket.close();
+		} catch (IOException ioe1) {
+			/* ignore. */
+		}
+	}
+
+	private synchronized void accept() throws IOException {
+		if (socket == null) {
+			socket = serverSocket.accept();
+			inputStream = new BufferedInputStream(socket.getInputStream());
+			outputStream = socket.getOutputStream();
+		}
+	}
+
+	private String readLine() throws IOException {
+		ByteArrayOutputStream line = new ByteArrayOutputStream();
+		while (true) {
+			int nextByte = inputStream.read();
+			if (nextByte == -1) {
+				throw new IOException("unexpected end of stream");
+			}
+			if (nextByte == '\n') {
+				return new String(line.toByteArray(), "UTF-8").trim();
+			}
+			line.write(nextByte);
+		}
+	}
+
+}
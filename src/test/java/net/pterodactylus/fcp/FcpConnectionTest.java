@@ -0,0 +1,105 @@
+package net.pterodactylus.fcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FcpConnection}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FcpConnectionTest {
+
+	private final SpoolManager spoolManager = new SpoolManager(null, 4, SpoolManager.UNLIMITED, 0, 0);
+	private final List<AllData> allDatas = new CopyOnWriteArrayList<AllData>();
+	private final List<FCPPluginReply> fcpPluginReplies = new CopyOnWriteArrayList<FCPPluginReply>();
+	private final CountDownLatch endListPeers = new CountDownLatch(1);
+	private FakeNode fakeNode;
+	private FcpConnection fcpConnection;
+
+	@Before
+	public void connect() throws IOException {
+		fakeNode = new FakeNode();
+		fcpConnection = new FcpConnection(fakeNode.getTransport());
+		fcpConnection.setSpoolManager(spoolManager);
+		fcpConnection.addFcpListener(new FcpAdapter() {
+
+			@Override
+			public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
+				allDatas.add(allData);
+			}
+
+			@Override
+			public void receivedFCPPluginReply(FcpConnection fcpConnection, FCPPluginReply fcpPluginReply) {
+				fcpPluginReplies.add(fcpPluginReply);
+			}
+
+			@Override
+			public void receivedEndListPeers(FcpConnection fcpConnection, EndListPeers endListPeers) {
+				FcpConnectionTest.this.endListPeers.countDown();
+			}
+		});
+		fcpConnection.connect();
+	}
+
+	@After
+	public void close() {
+		fcpConnection.close();
+		fakeNode.close();
+		spoolManager.close();
+	}
+
+	@Test
+	public void unclaimedPayloadIsReleasedAfterDispatch() throws Exception {
+		fakeNode.sendWithData("AllData", "abc".getBytes("UTF-8"), "Identifier=unclaimed");
+		fakeNode.send("EndListPeers");
+		assertThat(endListPeers.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(allDatas.size(), is(1));
+		assertThat(allDatas.get(0).getPayloadException(), nullValue());
+		assertThat(spoolManager.getMemoryUsed(), is(0L));
+	}
+
+	@Test
+	public void unclaimedPluginReplyReturnsItsBufferToThePool() throws Exception {
+		PayloadBufferPool bufferPool = new PayloadBufferPool(4, 4, 1);
+		spoolManager.setBufferPool(bufferPool);
+		fakeNode.sendWithData("FCPPluginReply", "abc".getBytes("UTF-8"), "Identifier=first", "PluginName=plugin");
+		fakeNode.sendWithData("FCPPluginReply", "def".getBytes("UTF-8"), "Identifier=second", "PluginName=plugin");
+		fakeNode.send("EndListPeers");
+		assertThat(endListPeers.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(fcpPluginReplies.size(), is(2));
+		assertThat(bufferPool.getAllocatedBuffers(), is(1L));
+		assertThat(bufferPool.getReusedBuffers(), is(1L));
+		assertThat(spoolManager.getMemoryUsed(), is(0L));
+	}
+
+	@Test
+	public void payloadExceedingDiskQuotaIsSkippedAndReported() throws Exception {
+		fakeNode.sendWithData("AllData", "too large for the quota".getBytes("UTF-8"), "Identifier=large");
+		fakeNode.sendWithData("AllData", "abc".getBytes("UTF-8"), "Identifier=small");
+		fakeNode.send("EndListPeers");
+		assertThat(endListPeers.await(10, TimeUnit.SECONDS), is(true));
+		assertThat(allDatas.size(), is(2));
+		assertThat(allDatas.get(0).getPayloadException(), instanceOf(IOException.class));
+		assertThat(allDatas.get(0).getPayloadInputStream(), nullValue());
+		assertThat(allDatas.get(1).getIdentifier(), is("small"));
+		assertThat(allDatas.get(1).getPayloadException(), nullValue());
+		assertThat(fcpConnection.isClosed(), is(false));
+		assertThat(spoolManager.getDiskUsed(), is(0L));
+		assertThat(allDatas.get(1).getPayloadInputStream(), notNullValue());
+	}
+
+}
@@ -0,0 +1,70 @@
+package net.pterodactylus.fcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link GlobalRequestFilter}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class GlobalRequestFilterTest {
+
+	private final GlobalRequestFilter globalRequestFilter = new GlobalRequestFilter().addIdentifierPrefix("mine-").addClientToken("token");
+
+	@Test
+	public void messagesWithoutIdentifierAndLocalMessagesAreAccepted() {
+		assertThat(globalRequestFilter.accept(message("NodeHello")), is(true));
+		assertThat(globalRequestFilter.accept(message("SimpleProgress", "Identifier=other")), is(true));
+		assertThat(globalRequestFilter.accept(message("SimpleProgress", "Identifier=other", "Global=true")), is(false));
+		assertThat(globalRequestFilter.accept(message("SimpleProgress", "Identifier=mine-1", "Global=true")), is(true));
+	}
+
+	@Test
+	public void requestsAcceptedByClientTokenAreRememberedUntilRemoved() {
+		assertThat(globalRequestFilter.accept(message("PersistentGet", "Identifier=tokened", "Global=true", "ClientToken=token")), is(true));
+		assertThat(globalRequestFilter.accept(message("SimpleProgress", "Identifier=tokened", "Global=true")), is(true));
+		assertThat(globalRequestFilter.accept(message("PersistentRequestRemoved", "Identifier=tokened", "Global=true")), is(true));
+		assertThat(globalRequestFilter.accept(message("SimpleProgress", "Identifier=tokened", "Global=true")), is(false));
+	}
+
+	@Test
+	public void payloadOfFilteredMessageIsSkipped() throws Exception {
+		FakeNode fakeNode = new FakeNode();
+		FcpConnection fcpConnection = new FcpConnection(fakeNode.getTransport(), new ConnectionOptions().setMessageFilter(globalRequestFilter));
+		final BlockingQueue<String> identifiers = new LinkedBlockingQueue<String>();
+		fcpConnection.addFcpListener(new FcpAdapter() {
+
+			@Override
+			public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
+				identifiers.add(allData.getIdentifier());
+				FcpUtils.close(allData.getPayloadInputStream());
+			}
+		});
+		try {
+			fcpConnection.connect();
+			fakeNode.sendWithData("AllData", new byte[100000], "Identifier=other", "Global=true");
+			fakeNode.sendWithData("AllData", new byte[10], "Identifier=mine-1", "Global=true");
+			assertThat(identifiers.poll(10, TimeUnit.SECONDS), is("mine-1"));
+		} finally {
+			fcpConnection.close();
+			fakeNode.close();
+		}
+	}
+
+	private static FcpMessage message(String name, String... fields) {
+		FcpMessage fcpMessage = new FcpMessage(name);
+		for (String field : fields) {
+			int equalSign = field.indexOf('=');
+			fcpMessage.setField(field.substring(0, equalSign), field.substring(equalSign + 1));
+		}
+		return fcpMessage;
+	}
+
+}
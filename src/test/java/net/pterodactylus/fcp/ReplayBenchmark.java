@@ -0,0 +1,69 @@
+package net.pterodactylus.fcp;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a recording made by a {@link TrafficRecorder} into an
+ * {@link FcpConnection} and measures how fast the connection reads, parses,
+ * and dispatches the recorded messages. Replaying at the original speed
+ * shows whether the client keeps up with the recorded node; replaying
+ * unthrottled shows the maximum throughput of the reader and the listeners.
+ * <p>
+ * Usage: {@code ReplayBenchmark recording [speed [rounds]]}, where a speed
+ * of 0 replays without delays.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ReplayBenchmark {
+
+	public static void main(String... arguments) throws Exception {
+		if (arguments.length < 1) {
+			System.out.println("usage: ReplayBenchmark recording [speed [rounds]]");
+			return;
+		}
+		File recording = new File(arguments[0]);
+		double speed = (arguments.length > 1) ? Double.parseDouble(arguments[1]) : ReplayTransport.UNTHROTTLED;
+		int rounds = (arguments.length > 2) ? Integer.parseInt(arguments[2]) : 5;
+		for (int round = 0; round < rounds; round++) {
+			final AtomicLong messageCount = new AtomicLong();
+			final AtomicLong payloadBytes = new AtomicLong();
+			final CountDownLatch closedLatch = new CountDownLatch(1);
+			ConnectionOptions options = new ConnectionOptions().setMessageFilter(new MessageFilter() {
+
+				@Override
+				public boolean accept(FcpMessage fcpMessage) {
+					messageCount.incrementAndGet();
+					return true;
+				}
+			});
+			FcpConnection fcpConnection = new FcpConnection(new ReplayTransport(recording, speed), options);
+			fcpConnection.addFcpListener(new FcpAdapter() {
+
+				@Override
+				public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
+					payloadBytes.addAndGet(allData.getDataLength());
+					FcpUtils.close(allData.getPayloadInputStream());
+				}
+
+				@Override
+				public void receivedFCPPluginReply(FcpConnection fcpConnection, FCPPluginReply fcpPluginReply) {
+					payloadBytes.addAndGet(fcpPluginReply.getDataLength());
+					FcpUtils.close(fcpPluginReply.getPayloadInputStream());
+				}
+
+				@Override
+				public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+					closedLatch.countDown();
+				}
+			});
+			long startTime = System.nanoTime();
+			fcpConnection.connect();
+			closedLatch.await();
+			long duration = System.nanoTime() - startTime;
+			System.out.println(String.format("round %d: %d messages, %d payload bytes in %.1f ms, %.0f messages/s, %.2f µs/message", round + 1, messageCount.get(), payloadBytes.get(), duration / 1e6, messageCount.get() / (duration / 1e9), (duration / 1e3) / Math.max(messageCount.get(), 1)));
+		}
+	}
+
+}
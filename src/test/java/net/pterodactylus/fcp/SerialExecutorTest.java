@@ -0,0 +1,109 @@
+package net.pterodactylus.fcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SerialExecutor}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SerialExecutorTest {
+
+	@Test
+	public void tasksAreRunInSubmissionOrder() throws InterruptedException {
+		ExecutorService executorService = Executors.newFixedThreadPool(4);
+		SerialExecutor serialExecutor = new SerialExecutor(executorService);
+		final List<Integer> results = Collections.synchronizedList(new ArrayList<Integer>());
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger maximumRunning = new AtomicInteger();
+		List<Integer> expectedResults = new ArrayList<Integer>();
+		for (int index = 0; index < 1000; index++) {
+			final int taskIndex = index;
+			expectedResults.add(index);
+			serialExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					int nowRunning = running.incrementAndGet();
+					if (nowRunning > maximumRunning.get()) {
+						maximumRunning.set(nowRunning);
+					}
+					results.add(taskIndex);
+					running.decrementAndGet();
+				}
+			});
+		}
+		executorService.shutdown();
+		executorService.awaitTermination(10, TimeUnit.SECONDS);
+		assertThat(results, is(expectedResults));
+		assertThat(maximumRunning.get(), is(1));
+	}
+
+	@Test
+	public void exceptionDoesNotStopLaterTasks() throws InterruptedException {
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		SerialExecutor serialExecutor = new SerialExecutor(executorService);
+		final AtomicInteger counter = new AtomicInteger();
+		serialExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				throw new IllegalStateException();
+			}
+		});
+		serialExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				counter.incrementAndGet();
+			}
+		});
+		executorService.shutdown();
+		executorService.awaitTermination(10, TimeUnit.SECONDS);
+		assertThat(counter.get(), is(1));
+	}
+
+	@Test
+	public void errorDoesNotStopLaterTasks() {
+		SerialExecutor serialExecutor = new SerialExecutor(new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		final AtomicInteger counter = new AtomicInteger();
+		try {
+			serialExecutor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					throw new AssertionError();
+				}
+			});
+		} catch (AssertionError ae1) {
+			/* expected. */
+		}
+		serialExecutor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				counter.incrementAndGet();
+			}
+		});
+		assertThat(counter.get(), is(1));
+	}
+
+}
@@ -0,0 +1,198 @@
+package net.pterodactylus.fcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link SpoolManager}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SpoolManagerTest {
+
+	private File directory;
+	private SpoolManager spoolManager;
+
+	@Before
+	public void setupSpoolManager() throws IOException {
+		directory = File.createTempFile("spool-test-", "");
+		directory.delete();
+		directory.mkdir();
+		spoolManager = new SpoolManager(directory, 16, 32, 256, 2);
+	}
+
+	@After
+	public void removeDirectory() {
+		spoolManager.close();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void smallPayloadIsHeldInMemory() throws IOException {
+		Spool spool = spoolManager.spool(createPayload(16), 16);
+		assertThat(spool.isSpilled(), is(false));
+		assertThat(spoolManager.getMemoryUsed(), is(16L));
+		assertThat(read(spool.openInputStream()), is(createPayloadBytes(16)));
+		spool.release();
+		assertThat(spoolManager.getMemoryUsed(), is(0L));
+	}
+
+	@Test
+	public void bufferOfPooledPayloadIsReused() throws IOException {
+		PayloadBufferPool bufferPool = new PayloadBufferPool(8, 16, 1);
+		spoolManager.setBufferPool(bufferPool);
+		Spool spool = spoolManager.spool(createPayload(12), 12);
+		assertThat(spoolManager.getMemoryUsed(), is(16L));
+		assertThat(read(spool.openInputStream()), is(createPayloadBytes(12)));
+		spool.release();
+		assertThat(spoolManager.getMemoryUsed(), is(0L));
+		spool = spoolManager.spool(createPayload(10), 10);
+		assertThat(read(spool.openInputStream()), is(createPayloadBytes(10)));
+		assertThat(bufferPool.getAllocatedBuffers(), is(1L));
+		assertThat(bufferPool.getReusedBuffers(), is(1L));
+	}
+
+	@Test
+	public void closedStreamDoesNotReadFromReusedBuffer() throws IOException {
+		PayloadBufferPool bufferPool = new PayloadBufferPool(8, 16, 1);
+		spoolManager.setBufferPool(bufferPool);
+		Spool spool = spoolManager.spool(createPayload(12), 12);
+		InputStream inputStream = spool.openInputStream();
+		spool.release();
+		inputStream.read();
+		inputStream.close();
+		Spool otherSpool = spoolManager.spool(new ByteArrayInputStream(new byte[12]), 12);
+		assertThat(bufferPool.getReusedBuffers(), is(1L));
+		try {
+			inputStream.read();
+			fail();
+		} catch (IOException ioe1) {
+			/* expected. */
+		}
+		otherSpool.release();
+	}
+
+	@Test
+	public void largePayloadIsSpilledToDisk() throws IOException {
+		Spool spool = spoolManager.spool(createPayload(100), 100);
+		assertThat(spool.isSpilled(), is(true));
+		assertThat(spoolManager.getDiskUsed(), is(100L));
+		assertThat(read(spool.openInputStream()), is(createPayloadBytes(100)));
+		spool.release();
+		assertThat(spoolManager.getDiskUsed(), is(0L));
+	}
+
+	@Test
+	public void payloadIsSpilledWhenMemoryBudgetIsExhausted() throws IOException {
+		Spool firstSpool = spoolManager.spool(createPayload(16), 16);
+		Spool secondSpool = spoolManager.spool(createPayload(16), 16);
+		Spool thirdSpool = spoolManager.spool(createPayload(16), 16);
+		assertThat(firstSpool.isSpilled(), is(false));
+		assertThat(secondSpool.isSpilled(), is(false));
+		assertThat(thirdSpool.isSpilled(), is(true));
+	}
+
+	@Test
+	public void spoolIsReleasedWhenLastStreamIsClosed() throws IOException {
+		Spool spool = spoolManager.spool(createPayload(100), 100);
+		InputStream firstStream = spool.openInputStream();
+		InputStream secondStream = spool.openInputStream();
+		spool.release();
+		firstStream.close();
+		assertThat(spoolManager.getDiskUsed(), is(100L));
+		assertThat(read(secondStream), is(createPayloadBytes(100)));
+		assertThat(spoolManager.getDiskUsed(), is(0L));
+	}
+
+	@Test
+	public void releasedSpoolFilesAreReused() throws IOException {
+		spoolManager.preallocate(2);
+		assertThat(directory.listFiles().length, is(2));
+		spoolManager.spool(createPayload(100), 100).release();
+		spoolManager.spool(createPayload(100), 100).release();
+		assertThat(spoolManager.getPooledFileCount(), is(2));
+		assertThat(directory.listFiles().length, is(2));
+		assertThat(directory.listFiles()[0].length(), is(0L));
+	}
+
+	@Test
+	public void mappedSpoolFilesAreNotReused() throws IOException {
+		Spool spool = spoolManager.spool(createPayload(100), 100);
+		ByteBuffer mappedBuffer = spool.map(10, 20);
+		spool.release();
+		assertThat(mappedBuffer.get(0), is((byte) 10));
+		assertThat(spoolManager.getPooledFileCount(), is(0));
+		assertThat(directory.listFiles().length, is(0));
+	}
+
+	@Test
+	public void mappedSpoolStaysChargedUntilMappingIsCollected() throws Exception {
+		Spool spool = spoolManager.spool(createPayload(100), 100);
+		ByteBuffer mappedBuffer = spool.map(10, 20);
+		spool.release();
+		assertThat(mappedBuffer.get(0), is((byte) 10));
+		assertThat(spoolManager.getDiskUsed(), is(100L));
+		mappedBuffer = null;
+		long deadline = System.currentTimeMillis() + 10000;
+		while ((spoolManager.getDiskUsed() != 0) && (System.currentTimeMillis() < deadline)) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertThat(spoolManager.getDiskUsed(), is(0L));
+	}
+
+	@Test
+	public void spoolFilesAreDeletedWhenManagerIsClosed() throws IOException {
+		spoolManager.spool(createPayload(100), 100).release();
+		spoolManager.close();
+		assertThat(directory.listFiles().length, is(0));
+	}
+
+	@Test(expected = IOException.class)
+	public void exceedingTheDiskQuotaThrowsException() throws IOException {
+		spoolManager.spool(createPayload(300), 300);
+	}
+
+	@Test(expected = IOException.class)
+	public void exceedingTheDiskQuotaWithUnknownLengthThrowsException() throws IOException {
+		spoolManager.spool(createPayload(300), -1);
+	}
+
+	private static InputStream createPayload(int length) {
+		return new ByteArrayInputStream(createPayloadBytes(length));
+	}
+
+	private static byte[] createPayloadBytes(int length) {
+		byte[] payload = new byte[length];
+		for (int index = 0; index < length; index++) {
+			payload[index] = (byte) index;
+		}
+		return payload;
+	}
+
+	private static byte[] read(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			FcpUtils.copy(inputStream, outputStream);
+		} finally {
+			inputStream.close();
+		}
+		return outputStream.toByteArray();
+	}
+
+}
@@ -0,0 +1,146 @@
+package net.pterodactylus.fcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link TrafficRecorder} and {@link ReplayTransport}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class TrafficRecorderTest {
+
+	private final FakeNode fakeNode = new FakeNode();
+	private File recording;
+
+	public TrafficRecorderTest() throws IOException {
+	}
+
+	@Before
+	public void createRecording() throws IOException {
+		recording = File.createTempFile("traffic-recorder-test-", "");
+	}
+
+	@After
+	public void removeRecording() {
+		fakeNode.close();
+		recording.delete();
+	}
+
+	@Test
+	public void recordedTrafficIsReplayedToListeners() throws Exception {
+		TrafficRecorder trafficRecorder = record(false, 0);
+		assertThat(trafficRecorder.getFrameCount(), greaterThanOrEqualTo(7L));
+		MessageCollector messageCollector = replay(ReplayTransport.UNTHROTTLED);
+		assertThat(messageCollector.names, contains("NodeHello", "AllData", "EndListPeers"));
+		assertThat(messageCollector.payloads, contains("payload"));
+	}
+
+	@Test
+	public void elidedPayloadsAreReplayedAsZeroes() throws Exception {
+		TrafficRecorder trafficRecorder = record(true, 0);
+		assertThat(trafficRecorder.getFrameCount(), is(7L));
+		MessageCollector messageCollector = replay(ReplayTransport.UNTHROTTLED);
+		assertThat(messageCollector.names, contains("NodeHello", "AllData", "EndListPeers"));
+		assertThat(messageCollector.payloads, contains("\0\0\0\0\0\0\0"));
+	}
+
+	@Test
+	public void replayKeepsRecordedDelaysScaledBySpeed() throws Exception {
+		record(true, 400);
+		long startTime = System.nanoTime();
+		replay(2);
+		assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), greaterThanOrEqualTo(190L));
+	}
+
+	@Test(expected = IOException.class)
+	public void replayingSomethingElseFails() throws IOException {
+		FileOutputStream fileOutputStream = new FileOutputStream(recording);
+		fileOutputStream.write("NodeHello\nEndMessage\n".getBytes("UTF-8"));
+		fileOutputStream.close();
+		new ReplayTransport(recording, ReplayTransport.UNTHROTTLED).connect();
+	}
+
+	private TrafficRecorder record(boolean elidePayloads, long delay) throws Exception {
+		TrafficRecorder trafficRecorder = new TrafficRecorder(recording, elidePayloads);
+		FcpConnection fcpConnection = new FcpConnection(fakeNode.getTransport(), new ConnectionOptions().setTrafficRecorder(trafficRecorder));
+		MessageCollector messageCollector = new MessageCollector();
+		fcpConnection.addFcpListener(messageCollector);
+		fcpConnection.connect();
+		fcpConnection.sendMessage(new ClientHello("test"));
+		fakeNode.readMessage();
+		fakeNode.send("NodeHello", "ConnectionIdentifier=fake", "FCPVersion=2.0", "Node=Fred");
+		fcpConnection.sendMessage(new FcpMessage("ListPeers", new ByteArrayInputStream("data".getBytes("UTF-8"))).put("DataLength", "4"));
+		fakeNode.readMessage();
+		Thread.sleep(delay);
+		fakeNode.sendWithData("AllData", "payload".getBytes("UTF-8"), "Identifier=get");
+		fakeNode.send("EndListPeers");
+		messageCollector.endListPeers.await(10, TimeUnit.SECONDS);
+		fcpConnection.close();
+		trafficRecorder.close();
+		return trafficRecorder;
+	}
+
+	private MessageCollector replay(double speed) throws Exception {
+		FcpConnection fcpConnection = new FcpConnection(new ReplayTransport(recording, speed));
+		MessageCollector messageCollector = new MessageCollector();
+		fcpConnection.addFcpListener(messageCollector);
+		fcpConnection.connect();
+		assertThat(messageCollector.closed.await(10, TimeUnit.SECONDS), is(true));
+		return messageCollector;
+	}
+
+	private static class MessageCollector extends FcpAdapter {
+
+		private final List<String> names = Collections.synchronizedList(new ArrayList<String>());
+		private final List<String> payloads = Collections.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch endListPeers = new CountDownLatch(1);
+		private final CountDownLatch closed = new CountDownLatch(1);
+
+		@Override
+		public void receivedNodeHello(FcpConnection fcpConnection, NodeHello nodeHello) {
+			names.add("NodeHello");
+		}
+
+		@Override
+		public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
+			names.add("AllData");
+			try {
+				payloads.add(new String(ByteStreams.toByteArray(allData.getPayloadInputStream()), "UTF-8"));
+			} catch (IOException ioe1) {
+				payloads.add(ioe1.getMessage());
+			}
+		}
+
+		@Override
+		public void receivedEndListPeers(FcpConnection fcpConnection, EndListPeers endListPeers) {
+			names.add("EndListPeers");
+			this.endListPeers.countDown();
+		}
+
+		@Override
+		public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+			closed.countDown();
+		}
+
+	}
+
+}
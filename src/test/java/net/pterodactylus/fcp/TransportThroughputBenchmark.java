@@ -0,0 +1,137 @@
+package net.pterodactylus.fcp;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the payload throughput of {@link TcpTransport} and
+ * {@link UnixDomainSocketTransport} for different stream and socket buffer
+ * sizes. A fake node sends a number of “AllData” messages over each
+ * transport; the benchmark measures how fast an {@link FcpConnection}
+ * receives and spools them. The Unix domain socket variant requires Java 16
+ * or later.
+ * <p>
+ * Usage: {@code TransportThroughputBenchmark [payloadSize [messageCount]]}
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class TransportThroughputBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	public static void main(String... arguments) throws Exception {
+		int payloadSize = (arguments.length > 0) ? Integer.parseInt(arguments[0]) : 65536;
+		int messageCount = (arguments.length > 1) ? Integer.parseInt(arguments[1]) : 16384;
+		System.out.println("payload size: " + payloadSize + " bytes, messages: " + messageCount);
+		for (int streamBufferSize : new int[] { 0, 8192, 65536 }) {
+			for (int socketBufferSize : new int[] { 0, 65536, 1 << 20 }) {
+				ConnectionOptions options = new ConnectionOptions().setStreamBufferSize(streamBufferSize).setReceiveBufferSize(socketBufferSize).setSendBufferSize(socketBufferSize);
+				String configuration = String.format("stream buffer %6d, socket buffers %7d", streamBufferSize, socketBufferSize);
+				for (int round = 0; round < ROUNDS; round++) {
+					ServerSocketChannel tcpServerChannel = ServerSocketChannel.open();
+					tcpServerChannel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+					FcpTransport tcpTransport = new TcpTransport(tcpServerChannel.socket().getInetAddress(), tcpServerChannel.socket().getLocalPort(), options);
+					report("tcp, " + configuration, round, payloadSize, messageCount, measure(tcpServerChannel, tcpTransport, options, payloadSize, messageCount));
+				}
+				if (socketBufferSize != 0) {
+					continue;
+				}
+				for (int round = 0; round < ROUNDS; round++) {
+					File socketFile = new File(System.getProperty("java.io.tmpdir"), "jfcplib-benchmark-" + System.nanoTime() + ".sock");
+					ServerSocketChannel unixServerChannel;
+					try {
+						unixServerChannel = UnixDomainSocketTransport.openChannel(ServerSocketChannel.class);
+					} catch (IOException ioe1) {
+						System.out.println("unix: " + ioe1.getMessage());
+						break;
+					}
+					bind(unixServerChannel, UnixDomainSocketTransport.createAddress(socketFile));
+					try {
+						report("unix, " + configuration, round, payloadSize, messageCount, measure(unixServerChannel, new UnixDomainSocketTransport(socketFile), options, payloadSize, messageCount));
+					} finally {
+						socketFile.delete();
+					}
+				}
+			}
+		}
+	}
+
+	private static long measure(final ServerSocketChannel serverChannel, FcpTransport transport, ConnectionOptions options, final int payloadSize, final int messageCount) throws Exception {
+		Thread nodeThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					SocketChannel clientChannel = serverChannel.accept();
+					try {
+						sendAllData(clientChannel, payloadSize, messageCount);
+					} finally {
+						clientChannel.close();
+					}
+				} catch (IOException ioe1) {
+					ioe1.printStackTrace();
+				} finally {
+					FcpUtils.close(serverChannel);
+				}
+			}
+		});
+		nodeThread.start();
+		final CountDownLatch closedLatch = new CountDownLatch(1);
+		final AtomicLong receivedBytes = new AtomicLong();
+		FcpConnection fcpConnection = new FcpConnection(transport, options);
+		fcpConnection.setSpoolManager(new SpoolManager(null, payloadSize, SpoolManager.UNLIMITED, SpoolManager.UNLIMITED, 0));
+		fcpConnection.addFcpListener(new FcpAdapter() {
+
+			@Override
+			public void receivedAllData(FcpConnection fcpConnection, AllData allData) {
+				receivedBytes.addAndGet(allData.getDataLength());
+				FcpUtils.close(allData.getPayloadInputStream());
+			}
+
+			@Override
+			public void connectionClosed(FcpConnection fcpConnection, Throwable throwable) {
+				closedLatch.countDown();
+			}
+		});
+		long startTime = System.nanoTime();
+		fcpConnection.connect();
+		closedLatch.await();
+		long duration = System.nanoTime() - startTime;
+		nodeThread.join();
+		if (receivedBytes.get() != ((long) payloadSize * messageCount)) {
+			throw new IllegalStateException("received " + receivedBytes.get() + " bytes");
+		}
+		return duration;
+	}
+
+	private static void sendAllData(SocketChannel clientChannel, int payloadSize, int messageCount) throws IOException {
+		ByteBuffer header = ByteBuffer.wrap(("AllData\r\nIdentifier=benchmark\r\nDataLength=" + payloadSize + "\r\nData\r\n").getBytes("UTF-8"));
+		ByteBuffer payload = ByteBuffer.allocateDirect(payloadSize);
+		ByteBuffer[] message = new ByteBuffer[] { header, payload };
+		for (int messageIndex = 0; messageIndex < messageCount; messageIndex++) {
+			header.rewind();
+			payload.rewind();
+			while (payload.hasRemaining()) {
+				clientChannel.write(message);
+			}
+		}
+	}
+
+	private static void bind(ServerSocketChannel serverChannel, SocketAddress address) throws Exception {
+		ServerSocketChannel.class.getMethod("bind", SocketAddress.class).invoke(serverChannel, address);
+	}
+
+	private static void report(String transport, int round, int payloadSize, int messageCount, long duration) {
+		double megabytes = ((double) payloadSize * messageCount) / (1 << 20);
+		System.out.println(String.format("%s (round %d): %.1f MiB/s, %.1f µs/message", transport, round + 1, megabytes / (duration / 1e9), (duration / 1e3) / messageCount));
+	}
+
+}
@@ -0,0 +1,83 @@
+package net.pterodactylus.fcp;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link UnixDomainSocketTransport}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class UnixDomainSocketTransportTest {
+
+	private File socketFile;
+	private ServerSocketChannel serverChannel;
+	private UnixDomainSocketTransport transport;
+
+	@Before
+	public void listen() throws Exception {
+		socketFile = File.createTempFile("unix-transport-test-", ".socket");
+		socketFile.delete();
+		try {
+			serverChannel = UnixDomainSocketTransport.openChannel(ServerSocketChannel.class);
+		} catch (IOException ioe1) {
+			Assume.assumeNoException(ioe1);
+		}
+		ServerSocketChannel.class.getMethod("bind", SocketAddress.class).invoke(serverChannel, UnixDomainSocketTransport.createAddress(socketFile));
+		transport = new UnixDomainSocketTransport(socketFile);
+		transport.connect();
+	}
+
+	@After
+	public void close() {
+		if (transport != null) {
+			transport.close();
+		}
+		FcpUtils.close(serverChannel);
+		socketFile.delete();
+	}
+
+	@Test
+	public void singleBytesAndArraysAreReadFromTheChannel() throws IOException {
+		SocketChannel nodeChannel = serverChannel.accept();
+		nodeChannel.write(ByteBuffer.wrap(new byte[] { 'a', (byte) 0xff, 'b', 'c', 'd' }));
+		nodeChannel.close();
+		InputStream inputStream = transport.getInputStream();
+		assertThat(inputStream.read(), is((int) 'a'));
+		assertThat(inputStream.read(), is(0xff));
+		byte[] data = new byte[3];
+		int read = 0;
+		while (read < data.length) {
+			read += inputStream.read(data, read, data.length - read);
+		}
+		assertThat(new String(data, "UTF-8"), is("bcd"));
+		assertThat(inputStream.read(), is(-1));
+	}
+
+	@Test
+	public void writtenBytesArriveAtTheChannel() throws IOException {
+		SocketChannel nodeChannel = serverChannel.accept();
+		transport.getOutputStream().write(new byte[] { 'a', 'b' });
+		transport.getOutputStream().write('c');
+		ByteBuffer buffer = ByteBuffer.allocate(3);
+		while (buffer.hasRemaining()) {
+			nodeChannel.read(buffer);
+		}
+		nodeChannel.close();
+		assertThat(new String(buffer.array(), "UTF-8"), is("abc"));
+	}
+
+}
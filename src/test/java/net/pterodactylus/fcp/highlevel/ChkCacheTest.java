@@ -0,0 +1,143 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import net.pterodactylus.fcp.Spool;
+import net.pterodactylus.fcp.SpoolManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ChkCache}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ChkCacheTest {
+
+	private final SpoolManager spoolManager = new SpoolManager(null, 64, SpoolManager.UNLIMITED, SpoolManager.UNLIMITED, 0);
+	private File directory;
+
+	@Before
+	public void createDirectory() throws IOException {
+		directory = File.createTempFile("chk-cache-test-", "");
+		directory.delete();
+	}
+
+	@After
+	public void removeDirectory() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		spoolManager.close();
+	}
+
+	@Test
+	public void smallResultIsServedFromMemory() throws IOException {
+		ChkCache chkCache = new ChkCache(16, 8);
+		GetResult getResult = createResult("aaaa");
+		chkCache.put("CHK@a", true, getResult);
+		getResult.getInputStream().close();
+		assertThat(FcpClientTest.read(chkCache.get("CHK@a", true).getInputStream()), is("aaaa"));
+		assertThat(chkCache.get("CHK@a", false), nullValue());
+		assertThat(chkCache.getMemoryHits(), is(1L));
+		assertThat(chkCache.getMisses(), is(1L));
+		assertThat(spoolManager.getMemoryUsed(), is(4L));
+		chkCache.close();
+		assertThat(spoolManager.getMemoryUsed(), is(0L));
+	}
+
+	@Test
+	public void onlyChksAreCached() throws IOException {
+		ChkCache chkCache = new ChkCache(16, 8);
+		chkCache.put("USK@a/b/1", true, createResult("aaaa"));
+		assertThat(chkCache.get("USK@a/b/1", true), nullValue());
+	}
+
+	@Test
+	public void leastRecentlyUsedEntryIsEvicted() throws IOException {
+		ChkCache chkCache = new ChkCache(8, 8);
+		chkCache.put("CHK@a", true, createResult("aaaa"));
+		chkCache.put("CHK@b", true, createResult("bbbb"));
+		FcpClientTest.read(chkCache.get("CHK@a", true).getInputStream());
+		chkCache.put("CHK@c", true, createResult("cccc"));
+		assertThat(chkCache.get("CHK@b", true), nullValue());
+		assertThat(chkCache.get("CHK@a", true), notNullValue());
+		assertThat(chkCache.getEvictions(), is(1L));
+		assertThat(chkCache.getMemorySize(), is(8L));
+	}
+
+	@Test
+	public void diskTierSurvivesRestart() throws IOException {
+		ChkCache chkCache = new ChkCache(0, 0, directory, 1024);
+		GetResult getResult = createResult("disk data");
+		chkCache.put("CHK@d", false, getResult.contentType("text/plain"));
+		getResult.getInputStream().close();
+		chkCache.close();
+		chkCache = new ChkCache(0, 0, directory, 1024);
+		GetResult cachedResult = chkCache.get("CHK@d", false);
+		assertThat(cachedResult.getContentType(), is("text/plain"));
+		assertThat(cachedResult.getContentLength(), is(9L));
+		assertThat(FcpClientTest.read(cachedResult.getInputStream()), is("disk data"));
+		assertThat(chkCache.getDiskHits(), is(1L));
+		assertThat(chkCache.getDiskSize(), is(9L));
+		chkCache.close();
+	}
+
+	@Test
+	public void diskTierEvictsWhenFull() throws IOException {
+		ChkCache chkCache = new ChkCache(0, 0, directory, 10);
+		chkCache.put("CHK@a", false, createResult("aaaaaa"));
+		chkCache.put("CHK@b", false, createResult("bbbbbb"));
+		chkCache.close();
+		assertThat(chkCache.getEvictions(), is(1L));
+		assertThat(directory.list().length, is(2));
+	}
+
+	@Test
+	public void foreignFilesInCacheDirectoryAreKept() throws IOException {
+		directory.mkdirs();
+		File foreignFile = new File(directory, "notes.txt");
+		File orphanedEntry = new File(directory, "0123456789abcdef0123456789abcdef01234567");
+		new FileOutputStream(foreignFile).close();
+		new FileOutputStream(orphanedEntry).close();
+		new ChkCache(0, 0, directory, 1024).close();
+		assertThat(foreignFile.exists(), is(true));
+		assertThat(orphanedEntry.exists(), is(false));
+	}
+
+	@Test
+	public void resultsAreNotStoredAfterClose() throws IOException {
+		ChkCache chkCache = new ChkCache(16, 8, directory, 1024);
+		chkCache.close();
+		GetResult getResult = createResult("aaaa");
+		chkCache.put("CHK@a", true, getResult);
+		getResult.getInputStream().close();
+		assertThat(chkCache.get("CHK@a", true), nullValue());
+		assertThat(spoolManager.getMemoryUsed(), is(0L));
+	}
+
+	private GetResult createResult(String data) throws IOException {
+		byte[] bytes = data.getBytes("UTF-8");
+		Spool spool = spoolManager.spool(new ByteArrayInputStream(bytes), bytes.length);
+		try {
+			return new GetResult().success(true).contentLength(bytes.length).inputStream(spool.openInputStream());
+		} finally {
+			spool.release();
+		}
+	}
+
+}
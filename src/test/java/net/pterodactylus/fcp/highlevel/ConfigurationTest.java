@@ -0,0 +1,102 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.pterodactylus.fcp.ConfigData;
+import net.pterodactylus.fcp.FcpMessage;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link Configuration}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ConfigurationTest {
+
+	private final Configuration configuration = new Configuration(configData(
+			"current.node.name", "node",
+			"dataType.node.name", "string",
+			"current.node.outputBandwidthLimit", "32KiB",
+			"default.node.outputBandwidthLimit", "15k",
+			"dataType.node.outputBandwidthLimit", "number",
+			"sortOrder.node.outputBandwidthLimit", "3",
+			"expertFlag.node.outputBandwidthLimit", "true",
+			"current.node.load.enabled", "true",
+			"dataType.node.load.enabled", "boolean",
+			"current.fproxy.port", "8888",
+			"dataType.fproxy.port", "number",
+			"current.fproxy.allowedHosts", "127.0.0.1;0:0:0:0:0:0:0:1",
+			"dataType.fproxy.allowedHosts", "atomic"));
+
+	@Test
+	public void optionsAreParsedIntoTypedValues() {
+		ConfigOption bandwidthLimit = configuration.getOption("node.outputBandwidthLimit");
+		assertThat(bandwidthLimit.getDataType(), is(ConfigOption.DataType.NUMBER));
+		assertThat(bandwidthLimit.getNumberValue(), is(32768L));
+		assertThat(bandwidthLimit.getDefault(), is("15k"));
+		assertThat(bandwidthLimit.getSortOrder(), is(3));
+		assertThat(bandwidthLimit.isExpert(), is(true));
+		assertThat(configuration.getOption("node.load.enabled").getBooleanValue(), is(true));
+		assertThat(configuration.getOption("fproxy.allowedHosts").getStringValues().length, is(2));
+		assertThat(configuration.getOption("node.name").getSortOrder(), is(-1));
+	}
+
+	@Test
+	public void optionsAreIndexedBySubsystem() {
+		assertThat(configuration.getSubsystems(), contains("fproxy", "node"));
+		assertThat(names(configuration.getOptions("node")), contains("node.load.enabled", "node.name", "node.outputBandwidthLimit"));
+		assertThat(names(configuration.getOptions("node.load")), contains("node.load.enabled"));
+		assertThat(configuration.getOptions("fproxy").size(), is(2));
+	}
+
+	@Test
+	public void changesContainOnlyDifferingValues() {
+		ConfigChanges changes = configuration.change()
+				.set("node.name", "node")
+				.set("node.outputBandwidthLimit", 32768)
+				.set("node.load.enabled", "TRUE")
+				.set("fproxy.port", 8889);
+		assertThat(changes.getChanges().size(), is(1));
+		assertThat(changes.getChanges().get("fproxy.port"), is("8889"));
+		changes.set("fproxy.port", "8888");
+		assertThat(changes.isEmpty(), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void changingUnknownOptionIsRejected() {
+		configuration.change().set("node.unknown", true);
+	}
+
+	@Test
+	public void updateReplacesCurrentValuesOnly() {
+		Configuration updatedConfiguration = configuration.update(configData("current.node.outputBandwidthLimit", "64KiB"));
+		ConfigOption bandwidthLimit = updatedConfiguration.getOption("node.outputBandwidthLimit");
+		assertThat(bandwidthLimit.getNumberValue(), is(65536L));
+		assertThat(bandwidthLimit.getDefault(), is("15k"));
+		assertThat(updatedConfiguration.getOption("node.name").getCurrent(), is("node"));
+		assertThat(configuration.getOption("node.outputBandwidthLimit").getNumberValue(), is(32768L));
+	}
+
+	private static List<String> names(Iterable<ConfigOption> options) {
+		List<String> names = new ArrayList<String>();
+		for (ConfigOption option : options) {
+			names.add(option.getName());
+		}
+		return names;
+	}
+
+	private static ConfigData configData(String... fields) {
+		FcpMessage message = new FcpMessage("ConfigData");
+		for (int index = 0; index < fields.length; index += 2) {
+			message.setField(fields[index], fields[index + 1]);
+		}
+		return new ConfigData(message);
+	}
+
+}
@@ -0,0 +1,636 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.pterodactylus.fcp.ClientGet;
+import net.pterodactylus.fcp.FakeNode;
+import net.pterodactylus.fcp.FcpMessage;
+import net.pterodactylus.fcp.FcpUtils;
+import net.pterodactylus.fcp.Peer;
+import net.pterodactylus.fcp.Persistence;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Ticker;
+import com.google.common.io.ByteSource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link FcpClient}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FcpClientTest {
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private FakeNode fakeNode;
+	private FcpClient fcpClient;
+
+	@Before
+	public void connectClient() throws Exception {
+		fakeNode = new FakeNode();
+		fcpClient = new FcpClient(fakeNode.getTransport());
+		Future<?> connected = executorService.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				fcpClient.connect("test");
+				return null;
+			}
+		});
+		fakeNode.handshake();
+		connected.get(10, TimeUnit.SECONDS);
+	}
+
+	@After
+	public void disconnectClient() {
+		fcpClient.close();
+		fakeNode.close();
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void getURIsKeepsWindowOfRequestsInFlightAndFollowsRedirects() throws Exception {
+		final Map<String, String> results = new ConcurrentHashMap<String, String>();
+		Future<?> batch = executorService.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				fcpClient.getURIs(Arrays.asList("KSK@a", "KSK@b", "KSK@c"), false, 2, new BatchGetListener() {
+
+					@Override
+					public void gotResult(String uri, GetResult getResult) {
+						results.put(uri, getResult.isSuccess() ? read(getResult.getInputStream()) : ("failed " + getResult.getErrorCode()));
+					}
+				});
+				return null;
+			}
+		});
+		FcpMessage firstGet = fakeNode.readMessage();
+		FcpMessage secondGet = fakeNode.readMessage();
+		assertThat(firstGet.getField("URI"), is("KSK@a"));
+		assertThat(secondGet.getField("URI"), is("KSK@b"));
+		assertThat(fakeNode.readMessage(200), nullValue());
+		fakeNode.send("GetFailed", "Identifier=" + firstGet.getField("Identifier"), "Code=27", "RedirectURI=KSK@a2");
+		FcpMessage redirectedGet = fakeNode.readMessage();
+		assertThat(redirectedGet.getField("URI"), is("KSK@a2"));
+		assertThat(redirectedGet.getField("Identifier"), is(firstGet.getField("Identifier")));
+		fakeNode.sendWithData("AllData", "b".getBytes("UTF-8"), "Identifier=" + secondGet.getField("Identifier"));
+		FcpMessage thirdGet = fakeNode.readMessage();
+		assertThat(thirdGet.getField("URI"), is("KSK@c"));
+		fakeNode.send("GetFailed", "Identifier=" + thirdGet.getField("Identifier"), "Code=28");
+		fakeNode.sendWithData("AllData", "a".getBytes("UTF-8"), "Identifier=" + firstGet.getField("Identifier"));
+		batch.get(10, TimeUnit.SECONDS);
+		assertThat(results.get("KSK@a"), is("a"));
+		assertThat(results.get("KSK@b"), is("b"));
+		assertThat(results.get("KSK@c"), is("failed 28"));
+	}
+
+	@Test
+	public void protocolErrorWithoutIdentifierFailsPipelinedGets() throws Exception {
+		final Map<String, String> results = new ConcurrentHashMap<String, String>();
+		Future<?> batch = executorService.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				fcpClient.getURIs(Arrays.asList("KSK@a", "KSK@b"), false, 2, new BatchGetListener() {
+
+					@Override
+					public void gotResult(String uri, GetResult getResult) {
+						results.put(uri, getResult.isSuccess() ? "success" : getResult.getException().getMessage());
+					}
+				});
+				return null;
+			}
+		});
+		fakeNode.readMessage();
+		fakeNode.readMessage();
+		fakeNode.send("ProtocolError", "Code=1", "CodeDescription=ClientHello must be first message", "Fatal=false", "Global=false");
+		batch.get(10, TimeUnit.SECONDS);
+		assertThat(results.size(), is(2));
+		assertThat(results.get("KSK@a").startsWith("Protocol error (1"), is(true));
+		assertThat(results.get("KSK@b").startsWith("Protocol error (1"), is(true));
+	}
+
+	@Test
+	public void concurrentGetsOfSameUriShareOneRequest() throws Exception {
+		Callable<String> getURI = new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return read(fcpClient.getURI("CHK@shared", false).getInputStream());
+			}
+		};
+		Future<String> firstGet = executorService.submit(getURI);
+		FcpMessage clientGet = fakeNode.readMessage();
+		Future<String> secondGet = executorService.submit(getURI);
+		Future<String> unfilteredGet = executorService.submit(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return read(fcpClient.getURI("CHK@shared", true).getInputStream());
+			}
+		});
+		FcpMessage filteredClientGet = fakeNode.readMessage();
+		assertThat(filteredClientGet.getField("FilterData"), is("true"));
+		assertThat(fakeNode.readMessage(200), nullValue());
+		fakeNode.sendWithData("AllData", "shared".getBytes("UTF-8"), "Identifier=" + clientGet.getField("Identifier"));
+		fakeNode.sendWithData("AllData", "filtered".getBytes("UTF-8"), "Identifier=" + filteredClientGet.getField("Identifier"));
+		assertThat(firstGet.get(10, TimeUnit.SECONDS), is("shared"));
+		assertThat(secondGet.get(10, TimeUnit.SECONDS), is("shared"));
+		assertThat(unfilteredGet.get(10, TimeUnit.SECONDS), is("filtered"));
+	}
+
+	@Test
+	public void cachedChkIsServedWithoutNode() throws Exception {
+		ChkCache chkCache = new ChkCache(1024, 1024);
+		fcpClient.setChkCache(chkCache);
+		Future<String> firstGet = executorService.submit(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return read(fcpClient.getURI("CHK@cached").getInputStream());
+			}
+		});
+		FcpMessage clientGet = fakeNode.readMessage();
+		fakeNode.sendWithData("AllData", "cached".getBytes("UTF-8"), "Identifier=" + clientGet.getField("Identifier"));
+		assertThat(firstGet.get(10, TimeUnit.SECONDS), is("cached"));
+		assertThat(read(fcpClient.getURI("CHK@cached").getInputStream()), is("cached"));
+		assertThat(chkCache.getMemoryHits(), is(1L));
+		assertThat(chkCache.getMisses(), is(1L));
+		chkCache.close();
+	}
+
+	@Test
+	public void cachedFailureIsServedWithoutNode() throws Exception {
+		NegativeCache negativeCache = new NegativeCache();
+		fcpClient.setNegativeCache(negativeCache);
+		Future<GetResult> firstGet = executorService.submit(new Callable<GetResult>() {
+
+			@Override
+			public GetResult call() throws Exception {
+				return fcpClient.getURI("KSK@missing");
+			}
+		});
+		FcpMessage clientGet = fakeNode.readMessage();
+		fakeNode.send("GetFailed", "Identifier=" + clientGet.getField("Identifier"), "Code=13", "Fatal=false");
+		assertThat(firstGet.get(10, TimeUnit.SECONDS).getErrorCode(), is(13));
+		GetResult cachedFailure = fcpClient.getURI("KSK@missing");
+		assertThat(cachedFailure.isSuccess(), is(false));
+		assertThat(cachedFailure.getErrorCode(), is(13));
+		assertThat(negativeCache.getHits(), is(1L));
+	}
+
+	@Test
+	public void cachedRedirectIsFollowedDirectly() throws Exception {
+		RedirectCache redirectCache = new RedirectCache();
+		fcpClient.setRedirectCache(redirectCache);
+		Future<GetResult> firstGet = executorService.submit(new Callable<GetResult>() {
+
+			@Override
+			public GetResult call() throws Exception {
+				return fcpClient.getURI("USK@site/1/");
+			}
+		});
+		FcpMessage clientGet = fakeNode.readMessage();
+		fakeNode.send("GetFailed", "Identifier=" + clientGet.getField("Identifier"), "Code=27", "RedirectURI=USK@site/2/");
+		assertThat(fakeNode.readMessage().getField("URI"), is("USK@site/2/"));
+		fakeNode.sendWithData("AllData", "site".getBytes("UTF-8"), "Identifier=" + clientGet.getField("Identifier"));
+		read(firstGet.get(10, TimeUnit.SECONDS).getInputStream());
+		Future<GetResult> secondGet = executorService.submit(new Callable<GetResult>() {
+
+			@Override
+			public GetResult call() throws Exception {
+				return fcpClient.getURI("USK@site/1/");
+			}
+		});
+		clientGet = fakeNode.readMessage();
+		assertThat(clientGet.getField("URI"), is("USK@site/2/"));
+		fakeNode.sendWithData("AllData", "site".getBytes("UTF-8"), "Identifier=" + clientGet.getField("Identifier"));
+		GetResult getResult = secondGet.get(10, TimeUnit.SECONDS);
+		assertThat(getResult.getRealUri(), is("USK@site/2/"));
+		assertThat(read(getResult.getInputStream()), is("site"));
+		assertThat(redirectCache.getHits(), is(1L));
+	}
+
+	@Test
+	public void cachedUskRedirectExpiresDespiteRepeatedFetches() throws Exception {
+		final AtomicLong nanos = new AtomicLong();
+		RedirectCache redirectCache = new RedirectCache(16, new Ticker() {
+
+			@Override
+			public long read() {
+				return nanos.get();
+			}
+		});
+		redirectCache.setUskTimeToLive(1, TimeUnit.MINUTES);
+		fcpClient.setRedirectCache(redirectCache);
+		assertThat(fetchSite(new String[] { "USK@site/2/" }), is("USK@site/1/"));
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(40));
+		assertThat(fetchSite(new String[0]), is("USK@site/2/"));
+		nanos.addAndGet(TimeUnit.SECONDS.toNanos(40));
+		assertThat(fetchSite(new String[0]), is("USK@site/1/"));
+	}
+
+	@Test
+	public void requestMirrorIsListedOnceAndUpdatedFromEvents() throws Exception {
+		Future<RequestMirror> mirror = executorService.submit(new Callable<RequestMirror>() {
+
+			@Override
+			public RequestMirror call() throws Exception {
+				return fcpClient.getRequestMirror();
+			}
+		});
+		assertThat(fakeNode.readMessage().getName(), is("ListPersistentRequests"));
+		fakeNode.send("PersistentGet", "Identifier=get", "Global=true", "PriorityClass=2");
+		fakeNode.send("PersistentPut", "Identifier=put", "Global=false");
+		fakeNode.send("EndListPersistentRequests");
+		RequestMirror requestMirror = mirror.get(10, TimeUnit.SECONDS);
+		assertThat(requestMirror.size(), is(2));
+		fakeNode.send("SimpleProgress", "Identifier=get", "Total=10", "Required=8", "Succeeded=4", "Failed=0", "FatallyFailed=0", "FinalizedTotal=true");
+		fakeNode.send("PersistentRequestModified", "Identifier=get", "ClientToken=token");
+		fakeNode.send("PersistentRequestRemoved", "Identifier=put", "Global=false");
+		long deadline = System.currentTimeMillis() + 10000;
+		while ((requestMirror.size() > 1) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		Request getRequest = requestMirror.getRequest("get");
+		assertThat(getRequest.getSucceededBlocks(), is(4));
+		assertThat(getRequest.getClientToken(), is("token"));
+		assertThat(fcpClient.getRequests(true).size(), is(1));
+		assertThat(fcpClient.getRequests(false).size(), is(0));
+		assertThat(fcpClient.getRequestMirror(), is(requestMirror));
+		assertThat(fakeNode.readMessage(100), nullValue());
+	}
+
+	@Test
+	public void requestStreamHandsOutRequestsWithTheirState() throws Exception {
+		RequestStream requestStream = fcpClient.streamRequests(true, GetRequest.class, 1);
+		assertThat(fakeNode.readMessage().getName(), is("ListPersistentRequests"));
+		fakeNode.send("PersistentGet", "Identifier=first", "Global=true");
+		fakeNode.send("DataFound", "Identifier=first", "Global=true", "DataLength=5");
+		fakeNode.send("PersistentPut", "Identifier=put", "Global=true");
+		assertThat(requestStream.next().getLength(), is(5L));
+		fakeNode.send("ProtocolError", "Identifier=other", "Code=15", "Global=false");
+		fakeNode.send("PersistentGet", "Identifier=second", "Global=true");
+		fakeNode.send("GetFailed", "Identifier=second", "Global=true", "Code=13");
+		fakeNode.send("EndListPersistentRequests");
+		Request second = requestStream.next();
+		assertThat(second.getIdentifier(), is("second"));
+		assertThat(second.getErrorCode(), is(13));
+		assertThat(requestStream.hasNext(), is(false));
+	}
+
+	@Test
+	public void peerTableIsListedOnceAndUpdatedFromEvents() throws Exception {
+		Future<PeerTable> table = executorService.submit(new Callable<PeerTable>() {
+
+			@Override
+			public PeerTable call() throws Exception {
+				return fcpClient.getPeerTable(false, false);
+			}
+		});
+		FcpMessage listPeers = fakeNode.readMessage();
+		String identifier = listPeers.getField("Identifier");
+		fakeNode.send("Peer", "Identifier=" + identifier, "identity=dark", "opennet=false");
+		fakeNode.send("Peer", "Identifier=" + identifier, "identity=open", "opennet=true");
+		fakeNode.send("EndListPeers", "Identifier=" + identifier);
+		PeerTable peerTable = table.get(10, TimeUnit.SECONDS);
+		assertThat(peerTable.getDarknetPeers().size(), is(1));
+		assertThat(peerTable.getOpennetPeers().size(), is(1));
+		fakeNode.send("Peer", "Identifier=modify", "identity=dark", "opennet=false", "seed=true");
+		fakeNode.send("PeerRemoved", "Identity=open");
+		long deadline = System.currentTimeMillis() + 10000;
+		while (!peerTable.getOpennetPeers().isEmpty() && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		assertThat(peerTable.getDarknetPeers().size(), is(0));
+		assertThat(peerTable.getSeedPeers().size(), is(1));
+		assertThat(fcpClient.getPeers(false, false).size(), is(1));
+		assertThat(fcpClient.getPeerTable(false, false), is(peerTable));
+		assertThat(fakeNode.readMessage(100), nullValue());
+	}
+
+	@Test
+	public void volatilePeerDataIsListedDespitePeerTable() throws Exception {
+		Future<PeerTable> table = executorService.submit(new Callable<PeerTable>() {
+
+			@Override
+			public PeerTable call() throws Exception {
+				return fcpClient.getPeerTable(false, true);
+			}
+		});
+		FcpMessage listPeers = fakeNode.readMessage();
+		fakeNode.send("Peer", "Identifier=" + listPeers.getField("Identifier"), "identity=dark", "volatile.status=CONNECTED");
+		fakeNode.send("EndListPeers", "Identifier=" + listPeers.getField("Identifier"));
+		table.get(10, TimeUnit.SECONDS);
+		Future<Collection<Peer>> peers = executorService.submit(new Callable<Collection<Peer>>() {
+
+			@Override
+			public Collection<Peer> call() throws Exception {
+				return fcpClient.getPeers(false, true);
+			}
+		});
+		listPeers = fakeNode.readMessage();
+		assertThat(listPeers.getName(), is("ListPeers"));
+		fakeNode.send("Peer", "Identifier=" + listPeers.getField("Identifier"), "identity=dark", "volatile.status=DISCONNECTED");
+		fakeNode.send("EndListPeers", "Identifier=" + listPeers.getField("Identifier"));
+		assertThat(peers.get(10, TimeUnit.SECONDS).iterator().next().getVolatile("status"), is("DISCONNECTED"));
+	}
+
+	@Test
+	public void peerStatisticsRecorderListsPeersOnceOnFirstSample() throws Exception {
+		PeerStatisticsRecorder recorder = new PeerStatisticsRecorder(4, "averagePingTime");
+		ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+		try {
+			recorder.schedule(fcpClient, scheduler, 1, TimeUnit.HOURS);
+			FcpMessage listPeers = fakeNode.readMessage();
+			fakeNode.send("Peer", "Identifier=" + listPeers.getField("Identifier"), "identity=dark", "volatile.averagePingTime=100");
+			fakeNode.send("EndListPeers", "Identifier=" + listPeers.getField("Identifier"));
+			long deadline = System.currentTimeMillis() + 10000;
+			while ((recorder.getSampleCount("dark") == 0) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			assertThat(recorder.getSampleCount("dark"), is(1));
+			assertThat(fakeNode.readMessage(100), nullValue());
+		} finally {
+			scheduler.shutdownNow();
+		}
+	}
+
+	@Test
+	public void nodeMonitorKeepsPollingWhenAListenerThrows() throws Exception {
+		NodeMonitor nodeMonitor = new NodeMonitor(fcpClient, 10, "numberOfConnected").setPollingInterval(10, 10, TimeUnit.MILLISECONDS);
+		nodeMonitor.addUpperThreshold("numberOfConnected", 0, new ThresholdListener() {
+
+			@Override
+			public void thresholdExceeded(String field, double value, double threshold) {
+				throw new IllegalStateException();
+			}
+
+			@Override
+			public void thresholdRecovered(String field, double value, double threshold) {
+			}
+		}).start();
+		try {
+			for (int poll = 0; poll < 2; poll++) {
+				assertThat(fakeNode.readMessage().getName(), is("GetNode"));
+				fakeNode.send("NodeData", "version=Fred,0.7,1.0,1470", "lastGoodVersion=Fred,0.7,1.0,1468", "ark.pubURI=SSK@ark", "ark.number=1", "auth.negTypes=10", "volatile.numberOfConnected=3");
+			}
+			assertThat(fakeNode.readMessage().getName(), is("GetNode"));
+		} finally {
+			nodeMonitor.close();
+		}
+	}
+
+	@Test
+	public void nodeMonitorPollsVolatileNodeData() throws Exception {
+		NodeMonitor nodeMonitor = new NodeMonitor(fcpClient, 10, "numberOfConnected").setPollingInterval(10, 100, TimeUnit.MILLISECONDS).start();
+		try {
+			for (int poll = 0; poll < 2; poll++) {
+				FcpMessage getNode = fakeNode.readMessage();
+				assertThat(getNode.getName(), is("GetNode"));
+				assertThat(getNode.getField("WithVolatile"), is("true"));
+				fakeNode.send("NodeData", "version=Fred,0.7,1.0,1470", "lastGoodVersion=Fred,0.7,1.0,1468", "ark.pubURI=SSK@ark", "ark.number=1", "auth.negTypes=10", "volatile.numberOfConnected=" + (poll + 3));
+			}
+			long deadline = System.currentTimeMillis() + 10000;
+			while ((nodeMonitor.getSampleCount() < 2) && (System.currentTimeMillis() < deadline)) {
+				Thread.sleep(10);
+			}
+			assertThat(nodeMonitor.getStatistics("numberOfConnected", 0, Long.MAX_VALUE).getMean(), is(3.5));
+		} finally {
+			nodeMonitor.close();
+		}
+	}
+
+	@Test
+	public void configIsCachedUntilNodeAnnouncesChange() throws Exception {
+		fcpClient.setQueryCache(new QueryCache(1, TimeUnit.MINUTES));
+		Callable<String> getConfig = new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return fcpClient.getConfig(true, false, false).getCurrent("node.name");
+			}
+		};
+		Future<String> firstConfig = executorService.submit(getConfig);
+		FcpMessage firstGetConfig = fakeNode.readMessage();
+		assertThat(firstGetConfig.getName(), is("GetConfig"));
+		fakeNode.send("ConfigData", "Identifier=" + firstGetConfig.getField("Identifier"), "current.node.name=first");
+		assertThat(firstConfig.get(10, TimeUnit.SECONDS), is("first"));
+		assertThat(getConfig.call(), is("first"));
+		assertThat(fakeNode.readMessage(100), nullValue());
+		fakeNode.send("ConfigData", "current.node.name=second");
+		Future<String> secondConfig = null;
+		long deadline = System.currentTimeMillis() + 10000;
+		FcpMessage secondGetConfig = null;
+		while ((secondGetConfig == null) && (System.currentTimeMillis() < deadline)) {
+			secondConfig = executorService.submit(getConfig);
+			secondGetConfig = fakeNode.readMessage(100);
+			if (secondGetConfig == null) {
+				secondConfig.get(10, TimeUnit.SECONDS);
+			}
+		}
+		fakeNode.send("ConfigData", "Identifier=" + secondGetConfig.getField("Identifier"), "current.node.name=second");
+		assertThat(secondConfig.get(10, TimeUnit.SECONDS), is("second"));
+	}
+
+	@Test
+	public void modifyConfigSendsOnlyChangedOptions() throws Exception {
+		Future<Configuration> configuration = executorService.submit(new Callable<Configuration>() {
+
+			@Override
+			public Configuration call() throws Exception {
+				return fcpClient.getConfiguration();
+			}
+		});
+		FcpMessage getConfig = fakeNode.readMessage();
+		assertThat(getConfig.getField("WithDefaults"), is("true"));
+		fakeNode.send("ConfigData", "Identifier=" + getConfig.getField("Identifier"), "current.node.name=node", "current.fproxy.port=8888", "dataType.fproxy.port=number");
+		final ConfigChanges changes = configuration.get(10, TimeUnit.SECONDS).change().set("node.name", "node").set("fproxy.port", 8889);
+		Future<Configuration> changedConfiguration = executorService.submit(new Callable<Configuration>() {
+
+			@Override
+			public Configuration call() throws Exception {
+				return fcpClient.modifyConfig(changes);
+			}
+		});
+		FcpMessage modifyConfig = fakeNode.readMessage();
+		assertThat(modifyConfig.getName(), is("ModifyConfig"));
+		assertThat(modifyConfig.getField("fproxy.port"), is("8889"));
+		assertThat(modifyConfig.hasField("node.name"), is(false));
+		fakeNode.send("ConfigData", "Identifier=" + modifyConfig.getField("Identifier"), "current.node.name=node", "current.fproxy.port=8889");
+		assertThat(changedConfiguration.get(10, TimeUnit.SECONDS).getOption("fproxy.port").getNumberValue(), is(8889L));
+		assertThat(fcpClient.modifyConfig(changedConfiguration.get().change().set("fproxy.port", 8889)).getOption("fproxy.port").getCurrent(), is("8889"));
+		assertThat(fakeNode.readMessage(100), nullValue());
+	}
+
+	@Test
+	public void recoverRequestsQueriesOnlyPendingJournaledRequests() throws Exception {
+		File journalFile = File.createTempFile("request-journal-", "");
+		try {
+			RequestJournal requestJournal = new RequestJournal(journalFile);
+			for (String identifier : Arrays.asList("done", "running", "gone")) {
+				ClientGet clientGet = new ClientGet("KSK@" + identifier, identifier);
+				clientGet.setPersistence(Persistence.forever);
+				clientGet.setGlobal(true);
+				requestJournal.record(clientGet);
+			}
+			fcpClient.setRequestJournal(requestJournal);
+			fakeNode.send("DataFound", "Identifier=done", "Global=true", "DataLength=4");
+			Future<List<JournalEntry>> entries = executorService.submit(new Callable<List<JournalEntry>>() {
+
+				@Override
+				public List<JournalEntry> call() throws Exception {
+					return fcpClient.recoverRequests();
+				}
+			});
+			FcpMessage runningStatus = fakeNode.readMessage();
+			assertThat(runningStatus.getName(), is("GetRequestStatus"));
+			assertThat(runningStatus.getField("Identifier"), is("running"));
+			assertThat(runningStatus.getField("Global"), is("true"));
+			assertThat(runningStatus.hasField("OnlyData"), is(false));
+			assertThat(fakeNode.readMessage().getField("Identifier"), is("gone"));
+			assertThat(fakeNode.readMessage().getField("Identifier"), is("gone"));
+			fakeNode.send("PersistentGet", "Identifier=running", "Global=true", "URI=KSK@running");
+			fakeNode.send("GetFailed", "Identifier=running", "Global=true", "Code=13");
+			fakeNode.send("ProtocolError", "Identifier=gone", "Global=true", "Code=15");
+			assertThat(entries.isDone(), is(false));
+			fakeNode.send("ProtocolError", "Identifier=gone", "Global=true", "Code=15");
+			List<JournalEntry> recoveredEntries = entries.get(10, TimeUnit.SECONDS);
+			assertThat(recoveredEntries.size(), is(2));
+			assertThat(requestJournal.getEntry("running").getState(), is(JournalEntry.State.FAILED));
+			assertThat(requestJournal.getEntry("gone"), nullValue());
+			assertThat(fcpClient.recoverRequests().size(), is(2));
+			assertThat(fakeNode.readMessage(100), nullValue());
+			requestJournal.close();
+		} finally {
+			journalFile.delete();
+		}
+	}
+
+	@Test
+	public void insertRetriesNonFatalFailuresAndCompletesStages() throws Exception {
+		final Map<String, InsertHandle> handles = new ConcurrentHashMap<String, InsertHandle>();
+		Future<?> batch = executorService.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				List<Insert> inserts = Arrays.asList(new Insert("CHK@", ByteSource.wrap("first".getBytes("UTF-8"))).setRetries(1), new Insert("CHK@", ByteSource.wrap("second".getBytes("UTF-8"))));
+				fcpClient.insert(inserts, 1, new BatchInsertListener() {
+
+					@Override
+					public void insertStarted(InsertHandle insertHandle) {
+						handles.put(read(insertHandle.getInsert().getData()), insertHandle);
+					}
+
+					@Override
+					public void insertFinished(InsertHandle insertHandle) {
+						/* do nothing. */
+					}
+				});
+				return null;
+			}
+		});
+		FcpMessage firstPut = fakeNode.readMessage();
+		assertThat(new String(fakeNode.getLastPayload(), "UTF-8"), is("first"));
+		assertThat(fakeNode.readMessage(200), nullValue());
+		String identifier = firstPut.getField("Identifier");
+		fakeNode.send("PutFailed", "Identifier=" + identifier, "Code=10", "Fatal=false");
+		FcpMessage retriedPut = fakeNode.readMessage();
+		assertThat(retriedPut.getField("Identifier"), is(identifier));
+		fakeNode.send("URIGenerated", "Identifier=" + identifier, "URI=CHK@first");
+		assertThat(handles.get("first").getUriFuture().get(10, TimeUnit.SECONDS), is("CHK@first"));
+		assertThat(handles.get("first").getSuccessFuture().isDone(), is(false));
+		fakeNode.send("PutSuccessful", "Identifier=" + identifier, "URI=CHK@first");
+		FcpMessage secondPut = fakeNode.readMessage();
+		assertThat(new String(fakeNode.getLastPayload(), "UTF-8"), is("second"));
+		fakeNode.send("PutFailed", "Identifier=" + secondPut.getField("Identifier"), "Code=10", "Fatal=false");
+		batch.get(10, TimeUnit.SECONDS);
+		assertThat(handles.get("first").getFetchableFuture().get(), is("CHK@first"));
+		try {
+			handles.get("second").getSuccessFuture().get();
+			fail();
+		} catch (ExecutionException ee1) {
+			assertThat(((InsertException) ee1.getCause()).getCode(), is(10));
+		}
+	}
+
+	@Test
+	public void uriFutureOfEarlyEncodedInsertCompletesBeforeInsertFinishes() throws Exception {
+		InsertHandle insertHandle = fcpClient.insert(new Insert("CHK@", ByteSource.wrap(new byte[] { 1, 2, 3 })).setEarlyEncode(true));
+		FcpMessage clientPut = fakeNode.readMessage();
+		assertThat(clientPut.getField("EarlyEncode"), is("true"));
+		fakeNode.send("URIGenerated", "Identifier=" + insertHandle.getIdentifier(), "URI=CHK@early");
+		assertThat(insertHandle.getUriFuture().get(10, TimeUnit.SECONDS), is("CHK@early"));
+		assertThat(insertHandle.getFetchableFuture().isDone(), is(false));
+		fakeNode.send("PutFetchable", "Identifier=" + insertHandle.getIdentifier(), "URI=CHK@early");
+		assertThat(insertHandle.getFetchableFuture().get(10, TimeUnit.SECONDS), is("CHK@early"));
+		assertThat(insertHandle.getSuccessFuture().isDone(), is(false));
+		fakeNode.send("PutSuccessful", "Identifier=" + insertHandle.getIdentifier(), "URI=CHK@early");
+		assertThat(insertHandle.getSuccessFuture().get(10, TimeUnit.SECONDS), is("CHK@early"));
+	}
+
+	private String fetchSite(String[] redirects) throws Exception {
+		Future<GetResult> get = executorService.submit(new Callable<GetResult>() {
+
+			@Override
+			public GetResult call() throws Exception {
+				return fcpClient.getURI("USK@site/1/");
+			}
+		});
+		FcpMessage clientGet = fakeNode.readMessage();
+		String requestedUri = clientGet.getField("URI");
+		for (String redirect : redirects) {
+			fakeNode.send("GetFailed", "Identifier=" + clientGet.getField("Identifier"), "Code=27", "RedirectURI=" + redirect);
+			fakeNode.readMessage();
+		}
+		fakeNode.sendWithData("AllData", "site".getBytes("UTF-8"), "Identifier=" + clientGet.getField("Identifier"));
+		read(get.get(10, TimeUnit.SECONDS).getInputStream());
+		return requestedUri;
+	}
+
+	static String read(ByteSource byteSource) {
+		try {
+			return byteSource.asCharSource(Charsets.UTF_8).read();
+		} catch (IOException ioe1) {
+			throw new RuntimeException(ioe1);
+		}
+	}
+
+	static String read(InputStream inputStream) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			FcpUtils.copy(inputStream, outputStream);
+			return new String(outputStream.toByteArray(), "UTF-8");
+		} catch (IOException ioe1) {
+			throw new RuntimeException(ioe1);
+		} finally {
+			FcpUtils.close(inputStream);
+		}
+	}
+
+}
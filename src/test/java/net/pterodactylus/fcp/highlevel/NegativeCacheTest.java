@@ -0,0 +1,83 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Unit test for {@link NegativeCache}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class NegativeCacheTest {
+
+	private final FakeTicker ticker = new FakeTicker();
+	private final NegativeCache negativeCache = new NegativeCache(2, ticker);
+
+	@Test
+	public void failureExpiresAfterTimeToLiveOfItsCode() {
+		negativeCache.put("KSK@a", true, failure(13, false));
+		GetResult cachedFailure = negativeCache.get("KSK@a", true);
+		assertThat(cachedFailure.isSuccess(), is(false));
+		assertThat(cachedFailure.getErrorCode(), is(13));
+		assertThat(negativeCache.get("KSK@a", false), nullValue());
+		ticker.advance(5, TimeUnit.MINUTES);
+		assertThat(negativeCache.get("KSK@a", true), nullValue());
+		assertThat(negativeCache.getHits(), is(1L));
+		assertThat(negativeCache.getMisses(), is(2L));
+	}
+
+	@Test
+	public void transientFailuresAreNotCached() {
+		negativeCache.put("KSK@a", true, failure(15, false));
+		negativeCache.put("KSK@b", true, new GetResult().success(true));
+		assertThat(negativeCache.size(), is(0));
+	}
+
+	@Test
+	public void unknownCodesUseFatalOrRetriableTimeToLive() {
+		negativeCache.setFatalTimeToLive(10, TimeUnit.SECONDS).setRetriableTimeToLive(1, TimeUnit.SECONDS);
+		negativeCache.put("KSK@fatal", true, failure(20, true));
+		negativeCache.put("KSK@retriable", true, failure(21, false));
+		ticker.advance(2, TimeUnit.SECONDS);
+		assertThat(negativeCache.get("KSK@fatal", true).isFatal(), is(true));
+		assertThat(negativeCache.get("KSK@retriable", true), nullValue());
+	}
+
+	@Test
+	public void oldestFailureIsEvicted() {
+		negativeCache.put("KSK@a", true, failure(13, false));
+		negativeCache.put("KSK@b", true, failure(13, false));
+		negativeCache.put("KSK@c", true, failure(13, false));
+		assertThat(negativeCache.get("KSK@a", true), nullValue());
+		assertThat(negativeCache.get("KSK@c", true).getErrorCode(), is(13));
+		negativeCache.invalidate("KSK@c");
+		assertThat(negativeCache.get("KSK@c", true), nullValue());
+	}
+
+	private static GetResult failure(int code, boolean fatal) {
+		return new GetResult().success(false).errorCode(code).fatal(fatal);
+	}
+
+	private static class FakeTicker extends Ticker {
+
+		private long nanos;
+
+		public void advance(long duration, TimeUnit unit) {
+			nanos += unit.toNanos(duration);
+		}
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+
+	}
+
+}
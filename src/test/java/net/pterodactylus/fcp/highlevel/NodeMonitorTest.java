@@ -0,0 +1,98 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.pterodactylus.fcp.FcpMessage;
+import net.pterodactylus.fcp.NodeData;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link NodeMonitor}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class NodeMonitorTest {
+
+	private final NodeMonitor nodeMonitor = new NodeMonitor(null, null, 10, "numberOfConnected", "totalOutputRate").setPollingInterval(1, 8, TimeUnit.SECONDS);
+	private final List<String> events = new ArrayList<String>();
+
+	@Test
+	public void intervalBacksOffWhileStableAndSpeedsUpOnChange() {
+		nodeMonitor.process(1000, nodeData("10", "1000"));
+		assertThat(nodeMonitor.getInterval(TimeUnit.SECONDS), is(1L));
+		nodeMonitor.process(2000, nodeData("10", "1050"));
+		assertThat(nodeMonitor.getInterval(TimeUnit.SECONDS), is(2L));
+		nodeMonitor.process(4000, nodeData("10", "1000"));
+		nodeMonitor.process(8000, nodeData("10", "1000"));
+		nodeMonitor.process(16000, nodeData("10", "1000"));
+		assertThat(nodeMonitor.getInterval(TimeUnit.SECONDS), is(8L));
+		nodeMonitor.process(24000, nodeData("5", "1000"));
+		assertThat(nodeMonitor.getInterval(TimeUnit.SECONDS), is(4L));
+	}
+
+	@Test
+	public void valuesAreRecorded() {
+		nodeMonitor.process(1000, nodeData("10", "1000"));
+		nodeMonitor.process(2000, nodeData("12", null));
+		nodeMonitor.process(3000, nodeData("8", "3000"));
+		assertThat(nodeMonitor.getSampleCount(), is(3));
+		WindowStatistics connected = nodeMonitor.getStatistics("numberOfConnected", 0, 3000);
+		assertThat(connected.getMin(), is(8.0));
+		assertThat(connected.getMax(), is(12.0));
+		assertThat(connected.getMean(), is(10.0));
+		assertThat(nodeMonitor.getStatistics("totalOutputRate", 0, 3000).getCount(), is(2));
+		assertThat(nodeMonitor.getLastNodeData().getVolatile("numberOfConnected"), is("8"));
+	}
+
+	@Test
+	public void thresholdListenersAreNotifiedOnCrossingOnly() {
+		nodeMonitor.addLowerThreshold("numberOfConnected", 5, new RecordingThresholdListener());
+		nodeMonitor.addUpperThreshold("totalOutputRate", 2000, new RecordingThresholdListener());
+		nodeMonitor.process(1000, nodeData("10", "1000"));
+		nodeMonitor.process(2000, nodeData("4", "2500"));
+		nodeMonitor.process(3000, nodeData("3", "3000"));
+		nodeMonitor.process(4000, nodeData("6", "3000"));
+		assertThat(events, contains("exceeded:numberOfConnected:4.0", "exceeded:totalOutputRate:2500.0", "recovered:numberOfConnected:6.0"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void thresholdOfUnmonitoredFieldIsRejected() {
+		nodeMonitor.addUpperThreshold("usedJavaMemory", 1, new RecordingThresholdListener());
+	}
+
+	private static NodeData nodeData(String numberOfConnected, String totalOutputRate) {
+		FcpMessage message = new FcpMessage("NodeData");
+		message.setField("version", "Fred,0.7,1.0,1470");
+		message.setField("lastGoodVersion", "Fred,0.7,1.0,1468");
+		message.setField("ark.pubURI", "SSK@ark");
+		message.setField("ark.number", "1");
+		message.setField("auth.negTypes", "10");
+		message.setField("volatile.numberOfConnected", numberOfConnected);
+		if (totalOutputRate != null) {
+			message.setField("volatile.totalOutputRate", totalOutputRate);
+		}
+		return new NodeData(message);
+	}
+
+	private class RecordingThresholdListener implements ThresholdListener {
+
+		@Override
+		public void thresholdExceeded(String field, double value, double threshold) {
+			events.add("exceeded:" + field + ":" + value);
+		}
+
+		@Override
+		public void thresholdRecovered(String field, double value, double threshold) {
+			events.add("recovered:" + field + ":" + value);
+		}
+
+	}
+
+}
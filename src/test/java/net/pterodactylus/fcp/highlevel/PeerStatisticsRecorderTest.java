@@ -0,0 +1,103 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static java.util.Arrays.asList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.is;
+
+import net.pterodactylus.fcp.FcpMessage;
+import net.pterodactylus.fcp.Peer;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PeerStatisticsRecorder}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class PeerStatisticsRecorderTest {
+
+	private final PeerStatisticsRecorder recorder = new PeerStatisticsRecorder(3, "averagePingTime", "totalBytesIn");
+
+	@Test
+	public void windowIsAggregatedPerPeerAndField() {
+		recorder.sample(1000, asList(peer("a", "100", "0"), peer("b", "50", "0")));
+		recorder.sample(2000, asList(peer("a", "300", "2048"), peer("b", "70", "100")));
+		recorder.sample(3000, asList(peer("a", "200", "4096")));
+		assertThat(recorder.getIdentities(), containsInAnyOrder("a", "b"));
+		assertThat(recorder.getSampleCount("b"), is(2));
+		WindowStatistics pingTimes = recorder.getStatistics("a", "averagePingTime", 0, 3000);
+		assertThat(pingTimes.getCount(), is(3));
+		assertThat(pingTimes.getMin(), is(100.0));
+		assertThat(pingTimes.getMax(), is(300.0));
+		assertThat(pingTimes.getMean(), is(200.0));
+		assertThat(pingTimes.getLast(), is(200.0));
+		WindowStatistics bytesIn = recorder.getStatistics("a", "totalBytesIn", 2000, 3000);
+		assertThat(bytesIn.getCount(), is(2));
+		assertThat(bytesIn.getRate(), closeTo(2048, 0.001));
+	}
+
+	@Test
+	public void oldestSamplesAreOverwritten() {
+		for (int sample = 1; sample <= 5; sample++) {
+			recorder.sample(sample * 1000, asList(peer("a", String.valueOf(sample), "0")));
+		}
+		assertThat(recorder.getSampleCount("a"), is(3));
+		WindowStatistics pingTimes = recorder.getStatistics("a", "averagePingTime", 0, Long.MAX_VALUE);
+		assertThat(pingTimes.getCount(), is(3));
+		assertThat(pingTimes.getMin(), is(3.0));
+		assertThat(pingTimes.getLast(), is(5.0));
+	}
+
+	@Test
+	public void missingValuesAreSkipped() {
+		recorder.sample(1000, asList(peer("a", "10", null)));
+		recorder.sample(2000, asList(peer("a", "invalid", null)));
+		recorder.sample(3000, asList(peer("a", "30", null)));
+		assertThat(recorder.getStatistics("a", "averagePingTime", 0, 3000).getMean(), is(20.0));
+		assertThat(recorder.getStatistics("a", "totalBytesIn", 0, 3000).getCount(), is(0));
+		assertThat(Double.isNaN(recorder.getStatistics("a", "totalBytesIn", 0, 3000).getMean()), is(true));
+	}
+
+	@Test
+	public void windowBoundsAreFoundInWrappedBuffer() {
+		for (int sample = 1; sample <= 5; sample++) {
+			recorder.sample(sample * 1000, asList(peer("a", String.valueOf(sample), "0")));
+		}
+		assertThat(recorder.getStatistics("a", "averagePingTime", 4000, 4000).getMean(), is(4.0));
+		assertThat(recorder.getStatistics("a", "averagePingTime", 3500, 5500).getCount(), is(2));
+		assertThat(recorder.getStatistics("a", "averagePingTime", Long.MIN_VALUE, 3000).getLast(), is(3.0));
+		assertThat(recorder.getStatistics("a", "averagePingTime", 6000, 7000).getCount(), is(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void samplesOutOfOrderAreRejected() {
+		recorder.sample(2000, asList(peer("a", "10", "0")));
+		recorder.sample(1000, asList(peer("b", "10", "0")));
+	}
+
+	@Test
+	public void removedPeerIsForgotten() {
+		recorder.sample(1000, asList(peer("a", "10", "0")));
+		recorder.remove("a");
+		assertThat(recorder.getSampleCount("a"), is(0));
+		assertThat(recorder.getStatistics("a", "averagePingTime", 0, 1000).getCount(), is(0));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unrecordedFieldIsRejected() {
+		recorder.getStatistics("a", "backoff", 0, 1000);
+	}
+
+	private static Peer peer(String identity, String averagePingTime, String totalBytesIn) {
+		FcpMessage message = new FcpMessage("Peer");
+		message.setField("identity", identity);
+		message.setField("volatile.averagePingTime", averagePingTime);
+		if (totalBytesIn != null) {
+			message.setField("volatile.totalBytesIn", totalBytesIn);
+		}
+		return new Peer(message);
+	}
+
+}
@@ -0,0 +1,60 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import net.pterodactylus.fcp.EndListPeers;
+import net.pterodactylus.fcp.FcpMessage;
+import net.pterodactylus.fcp.Peer;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link PeerTable}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class PeerTableTest {
+
+	private final PeerTable peerTable = new PeerTable(true, false);
+
+	@Before
+	public void listPeers() {
+		peerTable.startListing("list");
+		peerTable.receivedPeer(null, createPeer("list", "metadata.timeLastRoutable=1"));
+		FcpMessage endListPeers = new FcpMessage("EndListPeers");
+		endListPeers.setField("Identifier", "list");
+		peerTable.receivedEndListPeers(null, new EndListPeers(endListPeers));
+	}
+
+	@Test
+	public void peerWithoutListedDataDoesNotReplaceListedPeer() {
+		peerTable.receivedPeer(null, createPeer("other", "volatile.status=CONNECTED"));
+		assertThat(peerTable.getPeer("peer").getMetadata("timeLastRoutable"), is("1"));
+	}
+
+	@Test
+	public void peerWithListedDataReplacesListedPeer() {
+		peerTable.receivedPeer(null, createPeer("other", "metadata.timeLastRoutable=2"));
+		assertThat(peerTable.getPeer("peer").getMetadata("timeLastRoutable"), is("2"));
+	}
+
+	@Test
+	public void newPeerIsAddedWithoutListedData() {
+		FcpMessage peer = new FcpMessage("Peer");
+		peer.setField("Identifier", "add");
+		peer.setField("identity", "new");
+		peerTable.receivedPeer(null, new Peer(peer));
+		assertThat(peerTable.size(), is(2));
+	}
+
+	private static Peer createPeer(String identifier, String field) {
+		FcpMessage peer = new FcpMessage("Peer");
+		peer.setField("Identifier", identifier);
+		peer.setField("identity", "peer");
+		peer.setField(field.substring(0, field.indexOf('=')), field.substring(field.indexOf('=') + 1));
+		return new Peer(peer);
+	}
+
+}
@@ -0,0 +1,98 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.pterodactylus.fcp.FcpMessage;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.SimpleProgress;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Unit test for {@link ProgressCoalescer}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProgressCoalescerTest {
+
+	private long nanos;
+	private final List<Integer> delivered = new ArrayList<Integer>();
+	private final ProgressCoalescer progressCoalescer = new ProgressCoalescer(new ProgressListener() {
+
+		@Override
+		public void progressUpdated(RequestProgress requestProgress) {
+			delivered.add(requestProgress.getSucceededBlocks());
+		}
+	}, 1, TimeUnit.SECONDS, null, new Ticker() {
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+	});
+
+	@Test
+	public void progressIsHeldBackUntilIntervalHasPassed() {
+		progress(1, 10, false);
+		progress(2, 10, false);
+		progress(3, 10, false);
+		assertThat(delivered.toString(), is("[1]"));
+		nanos += TimeUnit.SECONDS.toNanos(1);
+		progress(4, 10, false);
+		assertThat(delivered.toString(), is("[1, 4]"));
+	}
+
+	@Test
+	public void stateChangesAreDeliveredImmediately() {
+		progress(1, 10, false);
+		progress(2, 10, true);
+		progress(10, 10, true);
+		assertThat(delivered.toString(), is("[1, 2, 10]"));
+	}
+
+	@Test
+	public void heldBackProgressIsDeliveredOnFlushAndFinish() {
+		progress(1, 10, false);
+		progress(2, 10, false);
+		nanos += TimeUnit.SECONDS.toNanos(1);
+		progressCoalescer.flush();
+		progress(3, 10, false);
+		FcpMessage getFailed = new FcpMessage("GetFailed");
+		getFailed.setField("Identifier", "request");
+		progressCoalescer.receivedGetFailed(null, new GetFailed(getFailed));
+		progressCoalescer.flush();
+		assertThat(delivered.toString(), is("[1, 2, 3]"));
+	}
+
+	@Test
+	public void flushHoldsBackProgressUntilIntervalHasPassed() {
+		progress(1, 10, false);
+		progress(2, 10, false);
+		nanos += TimeUnit.MILLISECONDS.toNanos(500);
+		progressCoalescer.flush();
+		assertThat(delivered.toString(), is("[1]"));
+		nanos += TimeUnit.MILLISECONDS.toNanos(500);
+		progressCoalescer.flush();
+		assertThat(delivered.toString(), is("[1, 2]"));
+	}
+
+	private void progress(int succeeded, int required, boolean finalizedTotal) {
+		FcpMessage simpleProgress = new FcpMessage("SimpleProgress");
+		simpleProgress.setField("Identifier", "request");
+		simpleProgress.setField("Total", String.valueOf(required));
+		simpleProgress.setField("Required", String.valueOf(required));
+		simpleProgress.setField("Succeeded", String.valueOf(succeeded));
+		simpleProgress.setField("Failed", "0");
+		simpleProgress.setField("FatallyFailed", "0");
+		simpleProgress.setField("FinalizedTotal", String.valueOf(finalizedTotal));
+		progressCoalescer.receivedSimpleProgress(null, new SimpleProgress(simpleProgress));
+	}
+
+}
@@ -0,0 +1,56 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Unit test for {@link ProgressEstimator}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProgressEstimatorTest {
+
+	private long nanos;
+	private final ProgressEstimator progressEstimator = new ProgressEstimator(10, TimeUnit.SECONDS, new Ticker() {
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+	});
+
+	@Test
+	public void steadyProgressConvergesToItsRate() {
+		for (int second = 0; second <= 100; second++) {
+			progressEstimator.update("a", second * 5, 1000);
+			progressEstimator.update("b", second * 3, 1000);
+			nanos += TimeUnit.SECONDS.toNanos(1);
+		}
+		nanos -= TimeUnit.SECONDS.toNanos(1);
+		assertThat(progressEstimator.getRate("a"), closeTo(5, 0.01));
+		assertThat(progressEstimator.getTotalRate(), closeTo(8, 0.01));
+		assertThat(progressEstimator.getEta("a", TimeUnit.SECONDS), is(100L));
+	}
+
+	@Test
+	public void requestWithoutProgressIsStalled() {
+		progressEstimator.update("a", 0, 100);
+		progressEstimator.update("b", 0, 100);
+		nanos += TimeUnit.SECONDS.toNanos(30);
+		progressEstimator.update("a", 10, 100);
+		progressEstimator.update("b", 0, 100);
+		assertThat(progressEstimator.getStalledRequests(20, TimeUnit.SECONDS), contains("b"));
+		assertThat(progressEstimator.getEta("b", TimeUnit.SECONDS), is(-1L));
+		progressEstimator.remove("b");
+		assertThat(progressEstimator.size(), is(1));
+	}
+
+}
@@ -0,0 +1,139 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Unit test for {@link QueryCache}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class QueryCacheTest {
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	private final FakeTicker ticker = new FakeTicker();
+	private final QueryCache queryCache = new QueryCache(5, TimeUnit.SECONDS, ticker);
+	private final AtomicInteger queries = new AtomicInteger();
+
+	@After
+	public void shutdownExecutor() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void concurrentQueriesAreCoalesced() throws Exception {
+		final CountDownLatch answer = new CountDownLatch(1);
+		Callable<String> caller = new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return queryCache.get("node:a", new QueryCache.Query<String>() {
+
+					@Override
+					public String run() {
+						queries.incrementAndGet();
+						try {
+							answer.await();
+						} catch (InterruptedException ie1) {
+							throw new RuntimeException(ie1);
+						}
+						return "answer";
+					}
+				});
+			}
+		};
+		Future<String> firstCaller = executorService.submit(caller);
+		while (queries.get() == 0) {
+			Thread.sleep(10);
+		}
+		Future<String> secondCaller = executorService.submit(caller);
+		long deadline = System.currentTimeMillis() + 10000;
+		while ((queryCache.getHits() == 0) && (System.currentTimeMillis() < deadline)) {
+			Thread.sleep(10);
+		}
+		answer.countDown();
+		assertThat(firstCaller.get(10, TimeUnit.SECONDS), is("answer"));
+		assertThat(secondCaller.get(10, TimeUnit.SECONDS), is("answer"));
+		assertThat(queries.get(), is(1));
+	}
+
+	@Test
+	public void answerExpiresAfterTimeToLive() throws Exception {
+		assertThat(queryCache.get("node:a", countingQuery()), is(1));
+		assertThat(queryCache.get("node:a", countingQuery()), is(1));
+		assertThat(queryCache.get("node:b", countingQuery()), is(2));
+		ticker.advance(5, TimeUnit.SECONDS);
+		assertThat(queryCache.get("node:a", countingQuery()), is(3));
+		assertThat(queryCache.getHits(), is(1L));
+		assertThat(queryCache.getMisses(), is(3L));
+	}
+
+	@Test
+	public void pushMessagesInvalidateMatchingAnswers() throws Exception {
+		queryCache.get(QueryCache.PEERS + "a", countingQuery());
+		queryCache.get(QueryCache.CONFIG + "a", countingQuery());
+		queryCache.receivedPeerRemoved(null, null);
+		assertThat(queryCache.get(QueryCache.PEERS + "a", countingQuery()), is(3));
+		assertThat(queryCache.get(QueryCache.CONFIG + "a", countingQuery()), is(2));
+		queryCache.receivedConfigData(null, null);
+		assertThat(queryCache.get(QueryCache.CONFIG + "a", countingQuery()), is(4));
+	}
+
+	@Test
+	public void failuresAreNotCached() throws Exception {
+		try {
+			queryCache.get("node:a", new QueryCache.Query<Integer>() {
+
+				@Override
+				public Integer run() throws IOException {
+					throw new IOException();
+				}
+			});
+			fail();
+		} catch (IOException ioe1) {
+			/* expected. */
+		}
+		assertThat(queryCache.get("node:a", countingQuery()), is(1));
+	}
+
+	private QueryCache.Query<Integer> countingQuery() {
+		return new QueryCache.Query<Integer>() {
+
+			@Override
+			public Integer run() {
+				return queries.incrementAndGet();
+			}
+		};
+	}
+
+	private static class FakeTicker extends Ticker {
+
+		private long nanos;
+
+		public void advance(long duration, TimeUnit unit) {
+			nanos += unit.toNanos(duration);
+		}
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Ticker;
+
+/**
+ * Unit test for {@link RedirectCache}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class RedirectCacheTest {
+
+	private long nanos;
+	private final RedirectCache redirectCache = new RedirectCache(2, new Ticker() {
+
+		@Override
+		public long read() {
+			return nanos;
+		}
+	});
+
+	@Test
+	public void uskRedirectExpiresButOtherRedirectsDoNot() {
+		redirectCache.setUskTimeToLive(1, TimeUnit.MINUTES);
+		redirectCache.put("USK@a/site/1/", "USK@a/site/3/");
+		redirectCache.put("SSK@b/site", "CHK@c");
+		assertThat(redirectCache.get("USK@a/site/1/"), is("USK@a/site/3/"));
+		nanos += TimeUnit.MINUTES.toNanos(1);
+		assertThat(redirectCache.get("USK@a/site/1/"), nullValue());
+		assertThat(redirectCache.get("SSK@b/site"), is("CHK@c"));
+		assertThat(redirectCache.getHits(), is(2L));
+		assertThat(redirectCache.getMisses(), is(1L));
+	}
+
+	@Test
+	public void storingSameUskRedirectDoesNotExtendItsTimeToLive() {
+		redirectCache.setUskTimeToLive(1, TimeUnit.MINUTES);
+		redirectCache.put("USK@a/site/1/", "USK@a/site/3/");
+		nanos += TimeUnit.SECONDS.toNanos(40);
+		redirectCache.put("USK@a/site/1/", "USK@a/site/3/");
+		nanos += TimeUnit.SECONDS.toNanos(40);
+		assertThat(redirectCache.get("USK@a/site/1/"), nullValue());
+	}
+
+	@Test
+	public void leastRecentlyUsedRedirectIsEvicted() {
+		redirectCache.put("KSK@a", "CHK@a");
+		redirectCache.put("KSK@b", "CHK@b");
+		redirectCache.get("KSK@a");
+		redirectCache.put("KSK@c", "CHK@c");
+		assertThat(redirectCache.get("KSK@b"), nullValue());
+		assertThat(redirectCache.get("KSK@a"), is("CHK@a"));
+		redirectCache.invalidate("KSK@a");
+		assertThat(redirectCache.get("KSK@a"), nullValue());
+	}
+
+}
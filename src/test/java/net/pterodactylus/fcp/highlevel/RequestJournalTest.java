@@ -0,0 +1,180 @@
+package net.pterodactylus.fcp.highlevel;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import net.pterodactylus.fcp.ClientGet;
+import net.pterodactylus.fcp.DataFound;
+import net.pterodactylus.fcp.FcpMessage;
+import net.pterodactylus.fcp.GetFailed;
+import net.pterodactylus.fcp.Persistence;
+import net.pterodactylus.fcp.PersistentRequestRemoved;
+import net.pterodactylus.fcp.ProtocolError;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link RequestJournal}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class RequestJournalTest {
+
+	private File file;
+
+	@Before
+	public void createFile() throws IOException {
+		file = File.createTempFile("request-journal-test-", "");
+		file.delete();
+	}
+
+	@After
+	public void removeFile() {
+		file.delete();
+		new File(file.getPath() + ".compact").delete();
+	}
+
+	@Test
+	public void submittedRequestsAreRecordedWithTheirOptions() throws IOException {
+		RequestJournal requestJournal = new RequestJournal(file);
+		requestJournal.record(clientGet("KSK@a", "a"));
+		JournalEntry entry = requestJournal.getEntry("a");
+		assertThat(entry.getType(), is("ClientGet"));
+		assertThat(entry.getUri(), is("KSK@a"));
+		assertThat(entry.isGlobal(), is(true));
+		assertThat(entry.getOptions().get("Persistence"), is("forever"));
+		assertThat(entry.getOptions().containsKey("Identifier"), is(false));
+		assertThat(entry.getState(), is(JournalEntry.State.PENDING));
+		requestJournal.close();
+	}
+
+	@Test
+	public void terminalStatesAreRecorded() throws IOException {
+		RequestJournal requestJournal = new RequestJournal(file);
+		requestJournal.record(clientGet("KSK@a", "a"));
+		requestJournal.record(clientGet("KSK@b", "b"));
+		requestJournal.record(clientGet("KSK@c", "c"));
+		requestJournal.receivedDataFound(null, new DataFound(message("DataFound", "Identifier=a")));
+		requestJournal.receivedGetFailed(null, new GetFailed(message("GetFailed", "Identifier=b", "Code=28")));
+		requestJournal.receivedDataFound(null, new DataFound(message("DataFound", "Identifier=unknown")));
+		assertThat(requestJournal.getEntry("a").getState(), is(JournalEntry.State.SUCCEEDED));
+		assertThat(requestJournal.getEntry("b").getState(), is(JournalEntry.State.FAILED));
+		assertThat(requestJournal.getEntry("b").getErrorCode(), is(28));
+		assertThat(requestJournal.getPendingEntries().size(), is(1));
+		assertThat(requestJournal.getEntry("unknown"), nullValue());
+		requestJournal.close();
+	}
+
+	@Test
+	public void removedRequestsAreDropped() throws IOException {
+		RequestJournal requestJournal = new RequestJournal(file);
+		requestJournal.record(clientGet("KSK@a", "a"));
+		requestJournal.record(clientGet("KSK@b", "b"));
+		requestJournal.record(clientGet("KSK@c", "c"));
+		requestJournal.receivedPersistentRequestRemoved(null, new PersistentRequestRemoved(message("PersistentRequestRemoved", "Identifier=a")));
+		requestJournal.receivedProtocolError(null, new ProtocolError(message("ProtocolError", "Identifier=b", "Code=15")));
+		requestJournal.remove("c");
+		assertThat(requestJournal.size(), is(0));
+		requestJournal.close();
+	}
+
+	@Test
+	public void journalIsReplayedWhenReopened() throws IOException {
+		RequestJournal requestJournal = new RequestJournal(file);
+		requestJournal.record(clientGet("KSK@a", "a"));
+		requestJournal.record(clientGet("KSK@b", "b"));
+		requestJournal.record(clientGet("KSK@c", "c"));
+		requestJournal.receivedGetFailed(null, new GetFailed(message("GetFailed", "Identifier=b", "Code=13")));
+		requestJournal.remove("c");
+		requestJournal.close();
+		RequestJournal reopenedJournal = new RequestJournal(file);
+		assertThat(reopenedJournal.size(), is(2));
+		assertThat(reopenedJournal.getEntry("a").getState(), is(JournalEntry.State.PENDING));
+		assertThat(reopenedJournal.getEntry("b").getErrorCode(), is(13));
+		reopenedJournal.record(clientGet("KSK@d", "d"));
+		reopenedJournal.close();
+		assertThat(new RequestJournal(file).size(), is(3));
+	}
+
+	@Test
+	public void truncatedRecordIsIgnored() throws IOException {
+		RequestJournal requestJournal = new RequestJournal(file);
+		requestJournal.record(clientGet("KSK@a", "a"));
+		requestJournal.close();
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+		try {
+			int length = randomAccessFile.readInt();
+			randomAccessFile.seek(12 + length);
+			randomAccessFile.writeInt(1000);
+			randomAccessFile.writeByte(1);
+		} finally {
+			randomAccessFile.close();
+		}
+		RequestJournal reopenedJournal = new RequestJournal(file);
+		assertThat(reopenedJournal.size(), is(1));
+		reopenedJournal.record(clientGet("KSK@b", "b"));
+		reopenedJournal.close();
+		assertThat(new RequestJournal(file).size(), is(2));
+	}
+
+	@Test
+	public void compactionKeepsOnlyLiveRequests() throws IOException {
+		RequestJournal requestJournal = new RequestJournal(file);
+		for (int index = 0; index < 2000; index++) {
+			requestJournal.record(clientGet("KSK@" + index, String.valueOf(index)));
+			requestJournal.remove(String.valueOf(index));
+		}
+		requestJournal.record(clientGet("KSK@live", "live"));
+		requestJournal.receivedDataFound(null, new DataFound(message("DataFound", "Identifier=live")));
+		requestJournal.compact();
+		requestJournal.close();
+		assertThat(file.length() < 64 * 1024 + 1, is(true));
+		RequestJournal reopenedJournal = new RequestJournal(file);
+		assertThat(reopenedJournal.size(), is(1));
+		assertThat(reopenedJournal.getEntry("live").getState(), is(JournalEntry.State.SUCCEEDED));
+		reopenedJournal.close();
+	}
+
+	@Test
+	public void backgroundCompactionKeepsConcurrentRecords() throws IOException {
+		RequestJournal requestJournal = new RequestJournal(file);
+		for (int index = 0; index < 3000; index++) {
+			requestJournal.record(clientGet("KSK@" + index, String.valueOf(index)));
+			if ((index % 2) == 0) {
+				requestJournal.remove(String.valueOf(index));
+			} else {
+				requestJournal.receivedDataFound(null, new DataFound(message("DataFound", "Identifier=" + index)));
+			}
+		}
+		requestJournal.close();
+		RequestJournal reopenedJournal = new RequestJournal(file);
+		assertThat(reopenedJournal.size(), is(1500));
+		for (JournalEntry entry : reopenedJournal.getEntries()) {
+			assertThat(entry.getState(), is(JournalEntry.State.SUCCEEDED));
+		}
+		reopenedJournal.close();
+	}
+
+	private static ClientGet clientGet(String uri, String identifier) {
+		ClientGet clientGet = new ClientGet(uri, identifier);
+		clientGet.setPersistence(Persistence.forever);
+		clientGet.setGlobal(true);
+		return clientGet;
+	}
+
+	private static FcpMessage message(String name, String... fields) {
+		FcpMessage message = new FcpMessage(name);
+		for (String field : fields) {
+			message.setField(field.substring(0, field.indexOf('=')), field.substring(field.indexOf('=') + 1));
+		}
+		return message;
+	}
+
+}